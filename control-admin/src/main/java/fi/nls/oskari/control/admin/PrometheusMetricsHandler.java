@@ -0,0 +1,212 @@
+package fi.nls.oskari.control.admin;
+
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.control.*;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.util.PropertyUtil;
+import org.oskari.command.CommandBulkhead;
+import org.oskari.command.CommandMetrics;
+import org.oskari.command.OskariCommand;
+import org.oskari.metrics.LatencyHistogram;
+import org.oskari.metrics.PrometheusTextWriter;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics in the Prometheus text exposition format for scraping:
+ * - latency histograms for action routes
+ * - active/queued/rejected requests for action route bulkheads
+ * - hit/miss/eviction/load counters for caches
+ * - connection pool usage and time spent waiting for connections for Redis
+ * - latency histograms for requests to backend services by host
+ * - execution counters and latency for commands calling external services, active/queued
+ *   executions for command groups
+ *
+ * Available for admins or for requests with header "Authorization: Bearer [token]" where token
+ * matches the property "oskari.metrics.token". The response is written directly from the counters
+ * so scraping is cheap.
+ */
+@OskariActionRoute("PrometheusMetrics")
+public class PrometheusMetricsHandler extends RestActionHandler {
+
+    private static final Logger LOG = LogFactory.getLogger(PrometheusMetricsHandler.class);
+    private static final String PROPERTY_TOKEN = "oskari.metrics.token";
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private static final double NANOS_IN_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private byte[] token;
+
+    @Override
+    public void init() {
+        String configured = PropertyUtil.getOptional(PROPERTY_TOKEN);
+        token = configured == null || configured.isEmpty() ? null : configured.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void preProcess(ActionParameters params) throws ActionException {
+        if (!params.getUser().isAdmin() && !hasValidToken(params.getHttpHeader(IOHelper.HEADER_AUTHORIZATION))) {
+            throw new ActionDeniedException("Admin only");
+        }
+    }
+
+    protected boolean hasValidToken(String header) {
+        if (token == null || header == null || !header.startsWith(BEARER_PREFIX)) {
+            return false;
+        }
+        byte[] received = header.substring(BEARER_PREFIX.length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(token, received);
+    }
+
+    @Override
+    public void handleGet(ActionParameters params) throws ActionException {
+        final HttpServletResponse resp = params.getResponse();
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(PrometheusTextWriter.CONTENT_TYPE);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(resp.getOutputStream(), StandardCharsets.UTF_8))) {
+            write(new PrometheusTextWriter(out));
+        } catch (IOException e) {
+            LOG.info("Couldn't write metrics:", e.getMessage());
+            LOG.debug(e);
+        }
+    }
+
+    protected void write(PrometheusTextWriter writer) throws IOException {
+        writer.writeHistograms("oskari_action_duration_seconds",
+                "Time spent handling requests by action route",
+                "route", ActionControl.getLatencyHistograms().getAll());
+        writeBulkheads(writer);
+        writeCaches(writer);
+        writeRedisPool(writer);
+        writer.writeHistograms("oskari_backend_request_duration_seconds",
+                "Time from opening connections to backend services until the response has been read by host",
+                "host", IOHelper.getBackendLatency().getAll());
+        writeCommands(writer);
+    }
+
+    private void writeBulkheads(PrometheusTextWriter writer) throws IOException {
+        final Map<String, ActionBulkhead> bulkheads = new TreeMap<>();
+        for (ActionBulkhead bulkhead : ActionControl.getBulkheads().values()) {
+            bulkheads.put(bulkhead.getName(), bulkhead);
+        }
+        writer.writeHeader("oskari_bulkhead_active", "gauge", "Requests being handled");
+        for (ActionBulkhead bulkhead : bulkheads.values()) {
+            writer.writeSample("oskari_bulkhead_active", "bulkhead", bulkhead.getName(), bulkhead.getActiveCount());
+        }
+        writer.writeHeader("oskari_bulkhead_queue_depth", "gauge", "Requests waiting to be handled");
+        for (ActionBulkhead bulkhead : bulkheads.values()) {
+            writer.writeSample("oskari_bulkhead_queue_depth", "bulkhead", bulkhead.getName(), bulkhead.getQueueDepth());
+        }
+        writer.writeHeader("oskari_bulkhead_rejections_total", "counter", "Requests rejected because of too many concurrent requests");
+        for (ActionBulkhead bulkhead : bulkheads.values()) {
+            writer.writeSample("oskari_bulkhead_rejections_total", "bulkhead", bulkhead.getName(), bulkhead.getRejectedCount());
+        }
+    }
+
+    private void writeRedisPool(PrometheusTextWriter writer) throws IOException {
+        writer.writeHistograms("oskari_redis_pool_borrow_duration_seconds",
+                "Time spent waiting for a connection from the Redis connection pool",
+                "pool", Collections.singletonMap("redis", JedisManager.getPoolBorrowLatency()));
+        writer.writeHeader("oskari_redis_pool_borrow_failures_total", "counter", "Failed attempts to get a connection from the pool");
+        writer.writeSample("oskari_redis_pool_borrow_failures_total", JedisManager.getPoolBorrowFailures());
+        writer.writeHeader("oskari_redis_pool_active", "gauge", "Connections in use (-1 when not connected)");
+        writer.writeSample("oskari_redis_pool_active", JedisManager.getPoolActive());
+        writer.writeHeader("oskari_redis_pool_idle", "gauge", "Idle connections in the pool (-1 when not connected)");
+        writer.writeSample("oskari_redis_pool_idle", JedisManager.getPoolIdle());
+        writer.writeHeader("oskari_redis_pool_waiters", "gauge", "Threads waiting for a connection (-1 when not connected)");
+        writer.writeSample("oskari_redis_pool_waiters", JedisManager.getPoolWaiters());
+    }
+
+    private void writeCommands(PrometheusTextWriter writer) throws IOException {
+        final Map<String, CommandMetrics> commands = OskariCommand.getMetrics();
+        final Map<String, LatencyHistogram> latency = new LinkedHashMap<>();
+        for (Map.Entry<String, CommandMetrics> entry : commands.entrySet()) {
+            latency.put(entry.getKey(), entry.getValue().getLatency());
+        }
+        writer.writeHistograms("oskari_command_duration_seconds",
+                "Time spent running commands by group:key", "command", latency);
+        writer.writeHeader("oskari_command_executions_total", "counter", "Command executions by result");
+        for (Map.Entry<String, CommandMetrics> entry : commands.entrySet()) {
+            CommandMetrics metrics = entry.getValue();
+            writeCommandSample(writer, entry.getKey(), "success", metrics.getSuccessCount());
+            writeCommandSample(writer, entry.getKey(), "failure", metrics.getFailureCount());
+            writeCommandSample(writer, entry.getKey(), "timeout", metrics.getTimeoutCount());
+            writeCommandSample(writer, entry.getKey(), "short_circuited", metrics.getShortCircuitedCount());
+            writeCommandSample(writer, entry.getKey(), "rejected", metrics.getRejectedCount());
+        }
+        writer.writeHeader("oskari_command_fallbacks_total", "counter", "Fallbacks used for failed commands by result");
+        for (Map.Entry<String, CommandMetrics> entry : commands.entrySet()) {
+            CommandMetrics metrics = entry.getValue();
+            writer.writeSample("oskari_command_fallbacks_total", "command", entry.getKey(),
+                    "result", "success", metrics.getFallbackSuccessCount());
+            writer.writeSample("oskari_command_fallbacks_total", "command", entry.getKey(),
+                    "result", "failure", metrics.getFallbackFailureCount());
+        }
+        final Map<String, CommandBulkhead> groups = OskariCommand.getBulkheads();
+        writer.writeHeader("oskari_command_group_active", "gauge", "Commands running by group");
+        for (CommandBulkhead bulkhead : groups.values()) {
+            writer.writeSample("oskari_command_group_active", "group", bulkhead.getName(), bulkhead.getActiveCount());
+        }
+        writer.writeHeader("oskari_command_group_queue_depth", "gauge", "Commands waiting to run by group");
+        for (CommandBulkhead bulkhead : groups.values()) {
+            writer.writeSample("oskari_command_group_queue_depth", "group", bulkhead.getName(), bulkhead.getQueueDepth());
+        }
+    }
+
+    private void writeCommandSample(PrometheusTextWriter writer, String command, String result, long value)
+            throws IOException {
+        writer.writeSample("oskari_command_executions_total", "command", command, "result", result, value);
+    }
+
+    private void writeCaches(PrometheusTextWriter writer) throws IOException {
+        final Map<String, Cache> caches = new TreeMap<>();
+        for (String name : CacheManager.getCacheNames()) {
+            caches.put(name, CacheManager.getCache(name));
+        }
+        writer.writeHeader("oskari_cache_hits_total", "counter", "Cache lookups that found a value");
+        for (Cache cache : caches.values()) {
+            writer.writeSample("oskari_cache_hits_total", "cache", cache.getName(), cache.getHitCount());
+        }
+        writer.writeHeader("oskari_cache_misses_total", "counter", "Cache lookups that didn't find a value");
+        for (Cache cache : caches.values()) {
+            writer.writeSample("oskari_cache_misses_total", "cache", cache.getName(), cache.getMissCount());
+        }
+        writer.writeHeader("oskari_cache_evictions_total", "counter", "Items removed by cache limit or flush");
+        for (Cache cache : caches.values()) {
+            writer.writeSample("oskari_cache_evictions_total", "cache", cache.getName(), cache.getEvictionCount());
+        }
+        writer.writeHeader("oskari_cache_loads_total", "counter", "Values loaded to cache with a load function");
+        for (Cache cache : caches.values()) {
+            writer.writeSample("oskari_cache_loads_total", "cache", cache.getName(), cache.getLoadCount());
+        }
+        writer.writeHeader("oskari_cache_load_duration_seconds_total", "counter", "Time spent loading values to cache");
+        for (Cache cache : caches.values()) {
+            writer.writeSample("oskari_cache_load_duration_seconds_total", "cache", cache.getName(),
+                    cache.getTotalLoadTimeNanos() / NANOS_IN_SECOND);
+        }
+        writer.writeHeader("oskari_cache_size", "gauge", "Number of items in cache");
+        for (Cache cache : caches.values()) {
+            writer.writeSample("oskari_cache_size", "cache", cache.getName(), cache.getSize());
+        }
+        writer.writeHeader("oskari_cache_limit", "gauge", "Maximum number of items in cache");
+        for (Cache cache : caches.values()) {
+            writer.writeSample("oskari_cache_limit", "cache", cache.getName(), cache.getLimit());
+        }
+    }
+}
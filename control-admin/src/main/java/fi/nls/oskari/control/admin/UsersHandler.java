@@ -29,9 +29,15 @@ public class UsersHandler extends RestActionHandler {
     private static final String PARAM_SCREENNAME = "user";
     private static final String PARAM_PASSWORD = "pass";
     private static final String PARAM_EMAIL = "email";
+    private static final String PARAM_LIMIT = "limit";
+    private static final String PARAM_OFFSET = "offset";
+    private static final String PARAM_SEARCH = "search";
 
     @Override
     public void init() {
+        if (userService != null) {
+            return;
+        }
         try {
             userService = UserService.getInstance();
         } catch (ServiceException se) {
@@ -39,6 +45,10 @@ public class UsersHandler extends RestActionHandler {
         }
     }
 
+    public void setUserService(UserService service) {
+        this.userService = service;
+    }
+
     @Override
     public void handleGet(ActionParameters params) throws ActionException {
         final JSONObject response;
@@ -50,17 +60,22 @@ public class UsersHandler extends RestActionHandler {
                 response = user2Json(user);
             } else {
                 LOG.debug("handleGet: no id");
-                List<User> users = userService.getUsers();
-
+                // paging is optional, without limit all users are returned
+                int limit = params.getHttpParam(PARAM_LIMIT, -1);
+                int offset = params.getHttpParam(PARAM_OFFSET, 0);
+                String search = params.getHttpParam(PARAM_SEARCH);
+                List<User> users = userService.getUsersWithRoles(limit, offset, search);
                 LOG.debug("Found: " + users.size() + "users");
+
                 response = new JSONObject();
                 JSONArray arr = new JSONArray();
                 response.put("users", arr);
-
-                List<User> newUsers = userService.getUsersWithRoles();
-                for (User user : newUsers) {
+                for (User user : users) {
                     arr.put(user2Json(user));
                 }
+                if (limit > -1 || search != null) {
+                    response.put("total", userService.getUserCount(search));
+                }
             }
         } catch (ServiceException | JSONException se) {
             throw new ActionException(se.getMessage(), se);
@@ -0,0 +1,103 @@
+package fi.nls.oskari.control.admin;
+
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.domain.Role;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.service.UserService;
+import fi.nls.test.control.JSONActionRouteTest;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+public class UsersHandlerTest extends JSONActionRouteTest {
+
+    private UserService userService;
+    private UsersHandler handler;
+
+    @Before
+    public void init() throws Exception {
+        User alice = new User();
+        alice.setId(1);
+        alice.setScreenname("alice");
+        alice.addRole(new Role());
+        User bob = new User();
+        bob.setId(2);
+        bob.setScreenname("bob");
+
+        userService = mock(UserService.class);
+        doReturn(Arrays.asList(alice, bob)).when(userService).getUsersWithRoles(anyInt(), anyInt(), any());
+        doReturn(42).when(userService).getUserCount(any());
+
+        handler = new UsersHandler();
+        handler.setUserService(userService);
+        handler.init();
+    }
+
+    @Test
+    public void testListWithoutPaging() throws Exception {
+        ActionParameters params = createActionParams(getAdminUser());
+        handler.handleGet(params);
+
+        verify(userService).getUsersWithRoles(-1, 0, null);
+        verify(userService, never()).getUserCount(any());
+        JSONObject response = getResponseJSON();
+        assertEquals(2, response.getJSONArray("users").length());
+        assertEquals("alice", response.getJSONArray("users").getJSONObject(0).getString("user"));
+        assertFalse("Total is only sent when paging", response.has("total"));
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        Map<String, String> query = new HashMap<>();
+        query.put("limit", "2");
+        query.put("offset", "10");
+        ActionParameters params = createActionParams(query, getAdminUser());
+        handler.handleGet(params);
+
+        verify(userService).getUsersWithRoles(2, 10, null);
+        verify(userService).getUserCount(isNull());
+        JSONObject response = getResponseJSON();
+        assertEquals(2, response.getJSONArray("users").length());
+        assertEquals(42, response.getInt("total"));
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        Map<String, String> query = new HashMap<>();
+        query.put("search", "smith");
+        query.put("offset", "not a number");
+        ActionParameters params = createActionParams(query, getAdminUser());
+        handler.handleGet(params);
+
+        verify(userService).getUsersWithRoles(-1, 0, "smith");
+        verify(userService).getUserCount("smith");
+        assertEquals(42, getResponseJSON().getInt("total"));
+    }
+
+    @Test
+    public void testEmptyPage() throws Exception {
+        doReturn(Collections.emptyList()).when(userService).getUsersWithRoles(anyInt(), anyInt(), any());
+        Map<String, String> query = new HashMap<>();
+        query.put("limit", "20");
+        query.put("offset", "100");
+        ActionParameters params = createActionParams(query, getAdminUser());
+        handler.handleGet(params);
+
+        verify(userService).getUsersWithRoles(20, 100, null);
+        JSONObject response = getResponseJSON();
+        assertEquals(0, response.getJSONArray("users").length());
+        assertEquals("Total is sent for pages past the end", 42, response.getInt("total"));
+    }
+}
@@ -1,22 +1,26 @@
 package fi.nls.oskari.control.data;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import javax.imageio.ImageIO;
 
-import org.apache.pdfbox.pdmodel.PDDocument;
+import javax.servlet.http.HttpServletResponse;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import org.opengis.referencing.FactoryException;
 import org.oskari.print.PrintService;
+import org.oskari.print.job.PrintJob;
+import org.oskari.print.job.PrintJobQueue;
+import org.oskari.print.job.PrintQueueFullException;
 import org.oskari.print.request.PrintFormat;
 import org.oskari.print.request.PrintLayer;
 import org.oskari.print.request.PrintRequest;
@@ -28,6 +32,7 @@ import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.control.ActionRejectedException;
 import fi.nls.oskari.control.feature.AbstractWFSFeaturesHandler;
 import fi.nls.oskari.domain.User;
 import fi.nls.oskari.domain.map.OskariLayer;
@@ -37,6 +42,7 @@ import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.ResponseHelper;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.PropertyUtil;
 
 @OskariActionRoute("GetPrint")
 public class GetPrintHandler extends AbstractWFSFeaturesHandler {
@@ -61,6 +67,14 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
     private static final String PARM_TIME = "time";
     private static final String PARM_FORMATTED_TIME = "formattedTime";
     private static final String PARM_TIMESERIES_LABEL = "timeseriesPrintLabel";
+    private static final String PARM_ASYNC = "async";
+    private static final String PARM_JOB_ID = "jobId";
+    private static final String PARM_DOWNLOAD = "download";
+
+    private static final String KEY_ID = "id";
+    private static final String KEY_STATUS = "status";
+    private static final String KEY_FORMAT = "format";
+    private static final String KEY_ERROR = "error";
 
     private static final String ALLOWED_FORMATS = Arrays.toString(new String[] {
             PrintFormat.PDF.contentType, PrintFormat.PNG.contentType
@@ -83,6 +97,10 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
     private static final int MARGIN_HEIGHT = 15 * 2;
 
     private PrintService printService;
+    private PrintJobQueue printQueue;
+    // max time for synchronous print requests to wait for the result
+    private long printTimeout;
+    private int retryAfter;
 
     public static int mmToPx(int mm) {
         return (int) Math.round((OGC_DPI * mm) / MM_PER_INCH);
@@ -95,6 +113,11 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
         if (printService == null) {
             printService = new PrintService(featureClient);
         }
+        if (printQueue == null) {
+            printQueue = new PrintJobQueue(printService);
+        }
+        printTimeout = PropertyUtil.getOptional("print.queue.timeout", 300) * 1000L;
+        retryAfter = PropertyUtil.getOptional("print.queue.retryAfter", 10);
     }
 
     @Override
@@ -104,21 +127,91 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
     }
 
     public void handleAction(ActionParameters params) throws ActionException {
+        String jobId = params.getHttpParam(PARM_JOB_ID);
+        if (jobId != null) {
+            handleJob(jobId, params);
+            return;
+        }
         PrintRequest pr = createPrintRequest(params);
         for (PrintLayer layer : pr.getLayers()) {
             layerAccessHandlers.forEach(handler -> handler.handle(layer.getOskariLayer(), pr.getUser()));
         }
-        switch (pr.getFormat()) {
-        case PDF:
-            handlePDF(pr, params);
-            break;
-        case PNG:
-            handlePNG(pr, params);
-            break;
-        default:
-            throw new ActionParamsException(String.format(
-                    "Invalid value for key '%s'. Allowed values are: %s",
-                    PARM_FORMAT, ALLOWED_FORMATS));
+        PrintJob job;
+        try {
+            job = printQueue.submit(pr, getOwner(params));
+        } catch (PrintQueueFullException e) {
+            throw new ActionRejectedException(e.getMessage(), retryAfter);
+        } catch (ServiceException e) {
+            // request is too large to be printed
+            throw new ActionParamsException(e.getMessage());
+        }
+        if (params.getHttpParam(PARM_ASYNC, false)) {
+            // client polls with jobId for the status and downloads the result when done
+            ResponseHelper.writeResponse(params, getJobJSON(job));
+            return;
+        }
+        try {
+            Path file = job.await(printTimeout);
+            writePrint(params, job, file);
+        } catch (ServiceException e) {
+            throw new ActionException("Failed to create " + pr.getFormat(), e);
+        } finally {
+            printQueue.remove(job);
+        }
+    }
+
+    private void handleJob(String jobId, ActionParameters params) throws ActionException {
+        PrintJob job = printQueue.getJob(jobId);
+        if (job == null || !job.isOwnedBy(getOwner(params))) {
+            throw new ActionParamsException("Print job not found: " + jobId);
+        }
+        if (!params.getHttpParam(PARM_DOWNLOAD, false)) {
+            ResponseHelper.writeResponse(params, getJobJSON(job));
+            return;
+        }
+        Path file = job.getFile();
+        if (file == null) {
+            throw new ActionParamsException("Print job is not finished: " + jobId);
+        }
+        writePrint(params, job, file);
+    }
+
+    /**
+     * Jobs of logged in users are bound to the user. All guests have the same user id
+     * so their jobs are bound to the session instead.
+     */
+    private static String getOwner(ActionParameters params) {
+        User user = params.getUser();
+        if (user == null || user.isGuest()) {
+            return "session:" + params.getRequest().getSession(true).getId();
+        }
+        return "user:" + user.getId();
+    }
+
+    private JSONObject getJobJSON(PrintJob job) {
+        JSONObject json = new JSONObject();
+        JSONHelper.putValue(json, KEY_ID, job.getId());
+        JSONHelper.putValue(json, KEY_STATUS, job.getStatus().name());
+        JSONHelper.putValue(json, KEY_FORMAT, job.getFormat().contentType);
+        if (job.getError() != null) {
+            JSONHelper.putValue(json, KEY_ERROR, job.getError());
+        }
+        return json;
+    }
+
+    private void writePrint(ActionParameters params, PrintJob job, Path file) throws ActionException {
+        // prints can be large, stream them from disk instead of reading them to memory
+        HttpServletResponse response = params.getResponse();
+        try {
+            long size = Files.size(file);
+            response.setStatus(200);
+            response.setContentType(job.getFormat().contentType);
+            response.setContentLengthLong(size);
+            try (OutputStream out = response.getOutputStream()) {
+                Files.copy(file, out);
+            }
+        } catch (IOException e) {
+            throw new ActionException("Failed to write print", e);
         }
     }
 
@@ -426,28 +519,6 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
         return arr;
     }
 
-    private void handlePNG(PrintRequest pr, ActionParameters params) throws ActionException {
-        try {
-            BufferedImage bi = printService.getPNG(pr);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(bi, PrintFormat.PNG.fileExtension, baos);
-            ResponseHelper.writeResponse(params, 200, PrintFormat.PNG.contentType, baos);
-        } catch (IOException | ServiceException e) {
-            throw new ActionException("Failed to create PNG", e);
-        }
-    }
-
-    private void handlePDF(PrintRequest pr, ActionParameters params) throws ActionException {
-        try (PDDocument doc = new PDDocument()) {
-            printService.getPDF(pr, doc);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            doc.save(baos);
-            ResponseHelper.writeResponse(params, 200, PrintFormat.PDF.contentType, baos);
-        } catch (IOException | ServiceException e) {
-            throw new ActionException("Failed to create PDF", e);
-        }
-    }
-
     private static class LayerProperties {
 
         private final String id;
@@ -12,12 +12,11 @@ import org.geotools.geojson.geom.GeometryJSON;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.command.CommandException;
+import org.oskari.command.CommandException.FailureType;
 import org.oskari.service.user.UserLayerService;
 import org.oskari.service.wfs.client.OskariWFSClient;
 
-import com.netflix.hystrix.exception.HystrixRuntimeException;
-import com.netflix.hystrix.exception.HystrixRuntimeException.FailureType;
-
 import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.ActionCommonException;
 import fi.nls.oskari.control.ActionConstants;
@@ -111,7 +110,7 @@ public class GetWFSFeaturesHandler extends AbstractWFSFeaturesHandler {
             CoordinateReferenceSystem targetCRS, Optional<UserLayerService> contentProcessor) throws ActionException {
         try {
             return featureClient.getFeatures(id, layer, bbox, targetCRS, contentProcessor);
-        } catch (HystrixRuntimeException e) {
+        } catch (CommandException e) {
             if (e.getFailureType() == FailureType.SHORTCIRCUIT) {
                 throw new ActionCommonException(ERR_SHORT_CIRCUIT);
             }
@@ -24,6 +24,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.net.HttpURLConnection;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import fi.nls.oskari.service.capabilities.CapabilitiesConstants;
 import static fi.nls.oskari.control.ActionConstants.KEY_ID;
@@ -32,7 +34,7 @@ import static fi.nls.oskari.map.layer.formatters.LayerJSONFormatter.KEY_GLOBAL_L
 
 
 @OskariActionRoute("GetLayerTile")
-public class GetLayerTileHandler extends ActionHandler {
+public class GetLayerTileHandler extends AsyncActionHandler {
 
     private static final Logger LOG = LogFactory.getLogger(GetLayerTileHandler.class);
     private static final String LEGEND = "legend";
@@ -63,11 +65,13 @@ public class GetLayerTileHandler extends ActionHandler {
     }
 
     /**
-     * Action handler
+     * Action handler. Layer and permissions are resolved on the calling thread and the
+     * tile is proxied asynchronously so the request doesn't reserve a container thread
+     * while waiting for the service.
      * @param params Parameters
      * @throws ActionException
      */
-    public void handleAction(final ActionParameters params)
+    public CompletionStage<Void> handleActionAsync(final ActionParameters params)
             throws ActionException {
 
         // Resolve layer
@@ -88,9 +92,20 @@ public class GetLayerTileHandler extends ActionHandler {
             // For example legend url for proxied layers can be empty
             // -> not an error really, but we don't want to go any further either
             ResponseHelper.writeError(params, "No URL configured", HttpServletResponse.SC_NOT_FOUND);
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
+        // TODO: we should handle redirects here or in IOHelper or start using a lib that handles 301/302 properly
+        HttpURLConnection con = getConnection(url, layer);
+
+        layerAccessHandlers.forEach(handler -> handler.handle(layer, params.getUser()));
+
+        final String payload = postParams;
+        return runAsync(() -> proxy(params, layerId, url, con, httpMethod, doOutPut, payload));
+    }
+
+    private void proxy(final ActionParameters params, final int layerId, final String url, final HttpURLConnection con,
+                       final String httpMethod, final boolean doOutPut, final String postParams) throws ActionException {
         final MetricRegistry metrics = ActionControl.getMetrics();
 
         Timer.Context actionTimer = null;
@@ -98,11 +113,6 @@ public class GetLayerTileHandler extends ActionHandler {
             final com.codahale.metrics.Timer timer = metrics.timer(METRICS_PREFIX + "." + layerId);
             actionTimer = timer.time();
         }
-        // TODO: we should handle redirects here or in IOHelper or start using a lib that handles 301/302 properly
-        HttpURLConnection con = getConnection(url, layer);
-
-        layerAccessHandlers.forEach(handler -> handler.handle(layer, params.getUser()));
-
         try {
             con.setRequestMethod(httpMethod);
             con.setDoOutput(doOutPut);
@@ -5,7 +5,7 @@ import static fi.nls.oskari.control.ActionConstants.PARAM_LANGUAGE;
 import static fi.nls.oskari.control.ActionConstants.PARAM_SRS;
 import static fi.nls.oskari.control.ActionConstants.PARAM_ID;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -19,6 +19,7 @@ import fi.nls.oskari.map.layer.formatters.LayerJSONFormatter;
 import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -59,7 +60,7 @@ public class GetMapLayerGroupsHandler extends ActionHandler {
             OskariLayer.TYPE_ARCGIS93,
             OskariLayer.TYPE_VECTOR_TILE);
 
-    private static final Cache<String> cache = CacheManager.getCache(CACHE_NAME);
+    private static final Cache<CachedList> cache = CacheManager.getCache(CACHE_NAME);
 
     private OskariLayerService layerService;
     private OskariMapLayerGroupService groupService;
@@ -105,29 +106,25 @@ public class GetMapLayerGroupsHandler extends ActionHandler {
         final String crs = params.getHttpParam(PARAM_SRS);
         final String requestedIds = params.getHttpParam(PARAM_ID);
         final boolean forceProxy = params.getHttpParam(PARAM_FORCE_PROXY, false);
-        String response = null;
         String cacheKey = getCacheKey(user, lang, crs, forceProxy);
         if (requestedIds == null) {
             // only use cache when the whole listing is requested
             // Note! Cache needs to be flushed externally on other routes when permissions/layers are changed
-            response = cache.get(cacheKey);
-        }
-        if (response == null) {
-            // NOTE, isSecure doesn't change in instances without restarting it so it's safe to skip on the cache key
-            response = getList(user, lang, crs, requestedIds, forceProxy, EnvHelper.isSecure(params));
-            if (requestedIds == null) {
-                // only use cache when the whole listing is requested
-                cache.put(cacheKey, response);
+            CachedList cached = cache.get(cacheKey);
+            if (cached != null) {
+                ResponseHelper.writeResponseWithETag(params, ResponseHelper.CONTENT_TYPE_JSON_UTF8, cached.json, cached.etag);
+                return;
             }
         }
-        try {
-            params.getResponse().setCharacterEncoding("UTF-8");
-            params.getResponse().setContentType("application/json;charset=UTF-8");
-            params.getResponse().getWriter().print(response);
-        } catch (IOException e) {
-            LOG.info("Couldn't write answer:", e.getMessage());
-            LOG.debug(e);
+        // NOTE, isSecure doesn't change in instances without restarting it so it's safe to skip on the cache key
+        final byte[] response = getList(user, lang, crs, requestedIds, forceProxy, EnvHelper.isSecure(params))
+                .getBytes(StandardCharsets.UTF_8);
+        final String etag = ResponseHelper.getETag(response);
+        if (requestedIds == null) {
+            // only use cache when the whole listing is requested
+            cache.put(cacheKey, new CachedList(response, etag));
         }
+        ResponseHelper.writeResponseWithETag(params, ResponseHelper.CONTENT_TYPE_JSON_UTF8, response, etag);
     }
 
     public String getList(User user, String lang, String crs, String requestedIds, boolean forceProxy, boolean isSecure) throws ActionException {
@@ -280,4 +277,16 @@ public class GetMapLayerGroupsHandler extends ActionHandler {
                 .collect(Collectors.joining("_"));
     }
 
+    /**
+     * Layer listing as UTF-8 JSON with an ETag so unchanged listings can be answered with 304
+     */
+    private static class CachedList {
+        private final byte[] json;
+        private final String etag;
+
+        private CachedList(byte[] json, String etag) {
+            this.json = json;
+            this.etag = etag;
+        }
+    }
 }
@@ -262,7 +262,7 @@ public class GetAppSetupHandler extends ActionHandler {
             appSetup.put(KEY_ENV, EnvHelper.getEnvironmentJSON(params, view));
             appSetup.put(KEY_STARTUP, startupSequence);
             appSetup.put(KEY_CONFIGURATION, configuration);
-            ResponseHelper.writeResponse(params, appSetup);
+            ResponseHelper.writeResponseWithETag(params, appSetup);
         } catch (JSONException jsonex) {
             throw new ActionException("Malformed startup sequence/config!", jsonex);
         }
@@ -83,7 +83,9 @@ public class WFSLayerPermissionsStore {
 	}
 
     /**
-     * Destroys all permissions in redis
+     * Destroys all permissions in redis.
+     * Keys are removed in batches with SCAN so Redis isn't blocked while removing them.
+     * The key names are shared with transport so generation keys can't be used here.
      */
 	@JsonIgnore
 	public static void destroyAll() {
@@ -15,6 +15,7 @@ import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONObject;
 
+import javax.servlet.http.HttpServletResponse;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -72,11 +73,14 @@ public class RoutingHandler extends ActionHandler {
         routeparams.setMode(params.getHttpParam(PARAM_MODE, PropertyUtil.get("routing.default.mode")));
 
         RouteResponse result = service.getRoute(routeparams);
-        JSONObject response = result.toJSON();
-        if(params.getUser().isAdmin()) {
-            JSONHelper.putValue(response, "otpUrl", result.getRequestUrl());
+        if(!params.getUser().isAdmin()) {
+            // written as serialized by the service
+            ResponseHelper.writeResponse(params, HttpServletResponse.SC_OK,
+                    ResponseHelper.CONTENT_TYPE_JSON_UTF8, result.toBytes());
+            return;
         }
-
+        JSONObject response = result.toJSON();
+        JSONHelper.putValue(response, "otpUrl", result.getRequestUrl());
         ResponseHelper.writeResponse(params, response);
 
     }
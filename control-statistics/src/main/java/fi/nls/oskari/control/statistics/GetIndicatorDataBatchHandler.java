@@ -0,0 +1,361 @@
+package fi.nls.oskari.control.statistics;
+
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.control.RestActionHandler;
+import fi.nls.oskari.control.statistics.data.*;
+import fi.nls.oskari.control.statistics.plugins.*;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.util.ResponseHelper;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongFunction;
+
+/**
+ * Returns data for multiple indicators/selectors/regionsets in one request. Used for example
+ * for time series and diagrams with several indicators.
+ *
+ * - action_route=GetIndicatorDataBatch
+ *
+ * Payload is a JSON array (POST):
+ * [{
+ *     "datasource": 1,
+ *     "indicator": "232",
+ *     "regionset": 7,
+ *     "selectors": { "sex": "male", "year": "2012" }
+ * }, ...]
+ *
+ * Response is a JSON array with an item for each requested item in the same order.
+ * Each item has the request fields and either "data" (same as GetIndicatorData response) or "error".
+ *
+ * Cached data is read with a single Redis MGET. Missing data is fetched concurrently so that
+ * each datasource handles its items sequentially. Items that aren't fetched in
+ * "statistics.batch.timeoutms" (defaults to 30000) get an error.
+ *
+ * Fetches run on a shared pool of "statistics.batch.threads" (defaults to 4) threads with at most
+ * "statistics.batch.queue" (defaults to 50) waiting tasks. When the queue is full the items get an error
+ * instead of waiting. Each datasource serves at most "statistics.batch.datasource.threads" (defaults to 2)
+ * fetches at a time over all requests so one slow datasource can't take all the threads.
+ *
+ * A timed out fetch is interrupted but plugins mostly block on HTTP calls that ignore interrupts. The call
+ * keeps running, holding its thread and datasource permit, until it returns and its result is discarded.
+ */
+@OskariActionRoute("GetIndicatorDataBatch")
+public class GetIndicatorDataBatchHandler extends RestActionHandler {
+
+    private static final Logger LOG = LogFactory.getLogger(GetIndicatorDataBatchHandler.class);
+
+    private static final String KEY_DATA = "data";
+    private static final String KEY_ERROR = "error";
+    private static final int MAX_ITEMS = PropertyUtil.getOptional("statistics.batch.max", 500);
+    private static final long FETCH_TIMEOUT_MS = PropertyUtil.getOptional("statistics.batch.timeoutms", 30000);
+    private static final int FETCH_THREADS = PropertyUtil.getOptional("statistics.batch.threads", 4);
+    private static final int DATASOURCE_THREADS = PropertyUtil.getOptional("statistics.batch.datasource.threads", 2);
+    private static final ExecutorService FETCH_EXECUTOR = new ThreadPoolExecutor(
+            FETCH_THREADS, FETCH_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(PropertyUtil.getOptional("statistics.batch.queue", 50)),
+            r -> {
+                Thread t = new Thread(r, "oskari-stats-batch");
+                t.setDaemon(true);
+                return t;
+            });
+    // concurrent fetches per datasource id
+    private static final ConcurrentMap<Long, Semaphore> DATASOURCE_PERMITS = new ConcurrentHashMap<>();
+
+    @Override
+    public void handlePost(ActionParameters params) throws ActionException {
+        final List<BatchItem> items = parseItems(params.getPayLoad());
+        resolveIndicators(items, params.getUser(), StatisticalDatasourcePluginManager.getInstance()::getPlugin);
+        readFromCache(items);
+        fetchMissing(items, FETCH_TIMEOUT_MS);
+        writeResponse(params, items);
+    }
+
+    protected static List<BatchItem> parseItems(String payload) throws ActionParamsException {
+        final JSONArray json;
+        try {
+            json = new JSONArray(payload);
+        } catch (JSONException e) {
+            throw new ActionParamsException("Expected a JSON array as payload");
+        }
+        if (json.length() > MAX_ITEMS) {
+            throw new ActionParamsException("Too many items: " + json.length() + ", max is " + MAX_ITEMS);
+        }
+        final List<BatchItem> items = new ArrayList<>(json.length());
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject item = json.optJSONObject(i);
+            if (item == null) {
+                throw new ActionParamsException("Expected a JSON object at index " + i);
+            }
+            try {
+                items.add(new BatchItem(
+                        item.getLong(StatisticsHelper.PARAM_DATASOURCE_ID),
+                        item.getString(StatisticsHelper.PARAM_INDICATOR_ID),
+                        item.getLong(StatisticsHelper.PARAM_REGIONSET),
+                        item.getJSONObject(StatisticsHelper.PARAM_SELECTORS)));
+            } catch (JSONException e) {
+                throw new ActionParamsException("Invalid item at index " + i + ": " + e.getMessage());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Looks up the plugin and indicator (with permission check) once per indicator. Failures are
+     * recorded as errors on the items.
+     */
+    protected static void resolveIndicators(List<BatchItem> items, User user,
+                                            LongFunction<StatisticalDatasourcePlugin> plugins) {
+        final Map<String, StatisticalIndicator> indicators = new HashMap<>();
+        final Set<String> failed = new HashSet<>();
+        final Map<Long, String> prefixes = new HashMap<>();
+        for (BatchItem item : items) {
+            item.plugin = plugins.apply(item.datasourceId);
+            if (item.plugin == null) {
+                item.error = "No such datasource: " + item.datasourceId;
+                continue;
+            }
+            String key = item.datasourceId + ":" + item.indicatorId;
+            if (failed.contains(key)) {
+                item.error = "Failed to get indicator";
+                continue;
+            }
+            StatisticalIndicator indicator;
+            if (indicators.containsKey(key)) {
+                indicator = indicators.get(key);
+            } else {
+                try {
+                    indicator = item.plugin.getIndicator(user, item.indicatorId);
+                } catch (Exception e) {
+                    LOG.warn("Getting indicator failed for", item.indicatorId, "on datasource", item.datasourceId,
+                            "-", e.getMessage());
+                    failed.add(key);
+                    item.error = "Failed to get indicator";
+                    continue;
+                }
+                indicators.put(key, indicator);
+            }
+            if (indicator == null) {
+                // indicator can be null if user doesn't have permission to it
+                item.error = "No such indicator: " + item.indicatorId + " on datasource: " + item.datasourceId;
+                continue;
+            }
+            item.indicator = indicator;
+            // one generation lookup per datasource
+            String prefix = prefixes.computeIfAbsent(item.datasourceId, StatisticsHelper::getIndicatorDataCachePrefix);
+            item.cacheKey = StatisticsHelper.getIndicatorDataCacheKey(
+                    prefix, item.indicatorId, item.regionsetId, item.selectors);
+        }
+    }
+
+    private void readFromCache(List<BatchItem> items) {
+        final List<BatchItem> cacheable = new ArrayList<>();
+        for (BatchItem item : items) {
+            if (item.error == null && item.plugin.canCache()) {
+                cacheable.add(item);
+            }
+        }
+        if (cacheable.isEmpty()) {
+            return;
+        }
+        final String[] keys = cacheable.stream().map(item -> item.cacheKey).toArray(String[]::new);
+        final List<String> values = JedisManager.mget(keys);
+        for (int i = 0; i < cacheable.size(); i++) {
+            String value = values.get(i);
+            if (value != null && !value.isEmpty()) {
+                cacheable.get(i).data = value;
+            }
+        }
+    }
+
+    protected static void fetchMissing(List<BatchItem> items, long timeoutMs) {
+        fetchMissing(items, timeoutMs, FETCH_EXECUTOR);
+    }
+
+    protected static void fetchMissing(List<BatchItem> items, long timeoutMs, ExecutorService executor) {
+        final Map<Long, List<BatchItem>> missingByDatasource = new LinkedHashMap<>();
+        for (BatchItem item : items) {
+            if (item.error == null && item.data == null) {
+                missingByDatasource.computeIfAbsent(item.datasourceId, __ -> new ArrayList<>()).add(item);
+            }
+        }
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        final Map<Future<?>, List<BatchItem>> tasks = new LinkedHashMap<>();
+        for (Map.Entry<Long, List<BatchItem>> entry : missingByDatasource.entrySet()) {
+            final List<BatchItem> datasourceItems = entry.getValue();
+            final Semaphore permits = DATASOURCE_PERMITS.computeIfAbsent(entry.getKey(),
+                    __ -> new Semaphore(DATASOURCE_THREADS));
+            try {
+                tasks.put(executor.submit(() -> {
+                    for (BatchItem item : datasourceItems) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return null;
+                        }
+                        if (!permits.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                            markUnfinished(datasourceItems, "Timed out");
+                            return null;
+                        }
+                        try {
+                            fetch(item);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                    return null;
+                }), datasourceItems);
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Too many queued indicator data fetches, rejected datasource", entry.getKey());
+                markUnfinished(datasourceItems, "Too many requests, try again later");
+            }
+        }
+        for (Map.Entry<Future<?>, List<BatchItem>> task : tasks.entrySet()) {
+            try {
+                task.getKey().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted while fetching indicator data");
+                task.getKey().cancel(true);
+                markUnfinished(task.getValue(), "Interrupted");
+            } catch (TimeoutException e) {
+                LOG.warn("Fetching indicator data timed out for datasource", task.getValue().get(0).datasourceId);
+                task.getKey().cancel(true);
+                markUnfinished(task.getValue(), "Timed out");
+            } catch (ExecutionException e) {
+                LOG.warn(e.getCause(), "Fetching indicator data failed");
+                markUnfinished(task.getValue(), "Failed to get indicator data");
+            }
+        }
+        // write fetched data to cache with one round trip
+        final Map<String, String> toCache = new HashMap<>();
+        for (List<BatchItem> datasourceItems : missingByDatasource.values()) {
+            for (BatchItem item : datasourceItems) {
+                if (item.error == null && item.data != null && item.plugin.canCache()) {
+                    toCache.put(item.cacheKey, item.data);
+                }
+            }
+        }
+        JedisManager.setex(toCache, JedisManager.EXPIRY_TIME_DAY);
+    }
+
+    /**
+     * Sets the error for items that didn't get data. A cancelled task might still set data
+     * afterwards, the error takes precedence when writing the response.
+     */
+    private static void markUnfinished(List<BatchItem> items, String error) {
+        for (BatchItem item : items) {
+            if (item.data == null && item.error == null) {
+                item.error = error;
+            }
+        }
+    }
+
+    private static void fetch(BatchItem item) {
+        try {
+            StatisticalIndicatorLayer layer = item.indicator.getLayer(item.regionsetId);
+            if (layer == null) {
+                item.error = "No such regionset: " + item.regionsetId;
+                return;
+            }
+            StatisticalIndicatorDataModel selectors = StatisticsHelper.getIndicatorDataModel(item.selectors);
+            Map<String, IndicatorValue> values = item.plugin.getIndicatorValues(item.indicator, selectors, layer);
+            item.data = StatisticsHelper.valuesToJSON(values).toString();
+        } catch (Exception e) {
+            LOG.warn("Fetching indicator data failed for", item.indicatorId, "on datasource", item.datasourceId,
+                    "-", e.getMessage());
+            item.error = "Failed to get indicator data";
+        }
+    }
+
+    /**
+     * Writes the response directly to the output stream. Data is already serialized JSON
+     * (as read from Redis) so it's written out without parsing.
+     */
+    private void writeResponse(ActionParameters params, List<BatchItem> items) {
+        final HttpServletResponse resp = params.getResponse();
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(ResponseHelper.CONTENT_TYPE_JSON_UTF8);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(resp.getOutputStream(), StandardCharsets.UTF_8))) {
+            writeItems(out, items);
+        } catch (IOException e) {
+            LOG.info("Couldn't write answer:", e.getMessage());
+            LOG.debug(e);
+        }
+    }
+
+    protected static void writeItems(Writer out, List<BatchItem> items) throws IOException {
+        out.write('[');
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            items.get(i).write(out);
+        }
+        out.write(']');
+    }
+
+    protected static class BatchItem {
+        private final long datasourceId;
+        private final String indicatorId;
+        private final long regionsetId;
+        private final JSONObject selectors;
+
+        private StatisticalDatasourcePlugin plugin;
+        private StatisticalIndicator indicator;
+        private String cacheKey;
+        private volatile String data;
+        private volatile String error;
+
+        protected BatchItem(long datasourceId, String indicatorId, long regionsetId, JSONObject selectors) {
+            this.datasourceId = datasourceId;
+            this.indicatorId = indicatorId;
+            this.regionsetId = regionsetId;
+            this.selectors = selectors;
+        }
+
+        protected String getData() {
+            return data;
+        }
+
+        protected String getError() {
+            return error;
+        }
+
+        private void write(Writer out) throws IOException {
+            out.write("{\"" + StatisticsHelper.PARAM_DATASOURCE_ID + "\":");
+            out.write(Long.toString(datasourceId));
+            out.write(",\"" + StatisticsHelper.PARAM_INDICATOR_ID + "\":");
+            out.write(JSONObject.quote(indicatorId));
+            out.write(",\"" + StatisticsHelper.PARAM_REGIONSET + "\":");
+            out.write(Long.toString(regionsetId));
+            out.write(",\"" + StatisticsHelper.PARAM_SELECTORS + "\":");
+            out.write(selectors.toString());
+            // read once, a cancelled fetch might still be setting data
+            final String error = this.error;
+            final String data = this.data;
+            if (error == null && data != null) {
+                out.write(",\"" + KEY_DATA + "\":");
+                out.write(data);
+            } else {
+                out.write(",\"" + KEY_ERROR + "\":");
+                out.write(JSONObject.quote(error == null ? "No data" : error));
+            }
+            out.write('}');
+        }
+    }
+}
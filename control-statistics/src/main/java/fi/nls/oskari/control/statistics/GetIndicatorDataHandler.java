@@ -16,7 +16,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * This ActionHandler retrieves data for an indicator for the frontend
@@ -35,6 +34,11 @@ public class GetIndicatorDataHandler extends ActionHandler {
      */
     private static final StatisticalDatasourcePluginManager PLUGIN_MANAGER = StatisticalDatasourcePluginManager.getInstance();
 
+    @Override
+    public void init() {
+        StatisticsHelper.registerIndicatorCacheMetrics();
+    }
+
     @Override
     public void handleAction(ActionParameters params) throws ActionException {
         final long pluginId = params.getRequiredParamLong(StatisticsHelper.PARAM_DATASOURCE_ID);
@@ -101,11 +105,7 @@ public class GetIndicatorDataHandler extends ActionHandler {
 
     private JSONObject toJSON(Map<String, IndicatorValue> values) throws ActionException {
         try {
-            JSONObject json = new JSONObject();
-            for (Entry<String, IndicatorValue> entry : values.entrySet()) {
-                entry.getValue().putToJSONObject(json, entry.getKey());
-            }
-            return json;
+            return StatisticsHelper.valuesToJSON(values);
         } catch (JSONException e) {
             throw new ActionException("Something went wrong in serializing indicator data", e);
         }
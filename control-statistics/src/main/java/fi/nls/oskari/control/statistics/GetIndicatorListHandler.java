@@ -49,7 +49,7 @@ public class GetIndicatorListHandler extends ActionHandler {
     public void handleAction(ActionParameters ap) throws ActionException {
         final int srcId = ap.getRequiredParamInt(StatisticsHelper.PARAM_DATASOURCE_ID);
         JSONObject response = getIndicatorsListJSON(srcId, ap.getUser(), ap.getLocale().getLanguage());
-        ResponseHelper.writeResponse(ap, response);
+        ResponseHelper.writeResponseWithETag(ap, response);
     }
 
     /**
@@ -29,6 +29,11 @@ public class GetIndicatorMetadataHandler extends ActionHandler {
      */
     private static final StatisticalDatasourcePluginManager pluginManager = StatisticalDatasourcePluginManager.getInstance();
 
+    @Override
+    public void init() {
+        StatisticsHelper.registerIndicatorCacheMetrics();
+    }
+
     @Override
     public void handleAction(ActionParameters ap) throws ActionException {
         final long pluginId = ap.getRequiredParamInt(StatisticsHelper.PARAM_DATASOURCE_ID);
@@ -7,17 +7,24 @@ import fi.nls.oskari.control.statistics.db.RegionSet;
 import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.ConversionHelper;
+import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.ResponseHelper;
+import org.geotools.referencing.CRS;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.TransformException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Returns the region information.
@@ -32,12 +39,32 @@ import java.util.List;
          },
          "geojson" : { ... }
      }, ...]
+ *
+ * Optional parameters "resolution" (map units per pixel) or "scale" (scale denominator) can be
+ * used to request geometries simplified for the zoom level. Shared borders between regions are
+ * simplified the same way so neighbouring regions stay aligned. The resolution is rounded down
+ * to a power of two so there's a limited amount of variants to cache. Resolutions finer than
+ * 1 m/px get the original geometries and resolutions coarser than 8192 m/px are treated as 8192 m/px.
+ * Responses are cached gzipped in Redis and written as is to clients accepting gzip.
+ * Responses have an ETag and If-None-Match is answered with 304 using the ETag stored next to the cached regions.
  */
 @OskariActionRoute("GetRegions")
 public class GetRegionsHandler extends ActionHandler {
 
-    private static final String CACHE_KEY_PREFIX = "oskari:stats:regionset:";
+    // values are gzipped JSON, previously plain JSON was cached with "oskari:stats:regionset:"
+    private static final String CACHE_KEY_PREFIX = "oskari:stats:regionset:gz:";
+    // ETag of the cached gzipped JSON so unchanged regions can be answered with 304 without reading them
+    private static final String ETAG_KEY_SUFFIX = ":etag";
+    private static final String ETAG_GZIP_SUFFIX = "-gzip";
     private static final String KEY_REGIONS = "regions";
+    private static final String PARAM_RESOLUTION = "resolution";
+    private static final String PARAM_SCALE = "scale";
+    // OGC standardized rendering pixel size
+    private static final double PIXEL_SIZE_METERS = 0.00028;
+    private static final double METERS_PER_DEGREE = 2 * Math.PI * 6378137 / 360;
+    // simplifying below a meter saves little, coarser levels would collapse most regions
+    private static final double MIN_RESOLUTION_METERS = 1;
+    private static final double MAX_RESOLUTION_METERS = 8192;
 
     private RegionSetService service;
 
@@ -55,8 +82,92 @@ public class GetRegionsHandler extends ActionHandler {
     public void handleAction(ActionParameters ap) throws ActionException {
         final int layerId = ap.getRequiredParamInt("regionset");
         final String srs = ap.getRequiredParam(ActionConstants.PARAM_SRS);
-        JSONObject response = getRegionInfoJSON(layerId, srs);
-        ResponseHelper.writeResponse(ap, response);
+        final Integer level = getResolutionLevel(ap, srs);
+        final RegionSet regionset = service.getRegionSet(layerId);
+        if (regionset == null) {
+            throw new ActionParamsException("Regionset not found");
+        }
+        final String acceptEncoding = ap.getHttpHeader(IOHelper.HEADER_ACCEPT_ENCODING);
+        final boolean gzip = acceptEncoding != null && acceptEncoding.contains(IOHelper.ENCODING_GZIP);
+        ap.getResponse().addHeader("Vary", IOHelper.HEADER_ACCEPT_ENCODING);
+
+        final String cachedETag = JedisManager.get(getCacheKey(layerId, srs, level) + ETAG_KEY_SUFFIX);
+        if (cachedETag != null && ResponseHelper.writeNotModified(ap, getETag(cachedETag, gzip))) {
+            return;
+        }
+        final byte[] gzipped = getRegionsGzipped(layerId, regionset, srs, level);
+        // computed from the content so it always matches what is written
+        final String etag = getETag(ResponseHelper.getETag(gzipped), gzip);
+        if (gzip) {
+            ap.getResponse().addHeader("Content-Encoding", IOHelper.ENCODING_GZIP);
+            ResponseHelper.writeResponseWithETag(ap, ResponseHelper.CONTENT_TYPE_JSON_UTF8, gzipped, etag);
+            return;
+        }
+        try {
+            ResponseHelper.writeResponseWithETag(ap, ResponseHelper.CONTENT_TYPE_JSON_UTF8, IOHelper.ungzip(gzipped).toByteArray(), etag);
+        } catch (IOException e) {
+            throw new ActionException("Failed to read regions", e);
+        }
+    }
+
+    /**
+     * Gzipped and plain responses are different representations so they need different ETags
+     */
+    private static String getETag(String etag, boolean gzip) {
+        if (!gzip) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + ETAG_GZIP_SUFFIX + "\"";
+    }
+
+    private static String getCacheKey(long id, String srs, Integer level) {
+        return CACHE_KEY_PREFIX + id + ":" + srs + (level == null ? "" : ":r" + level);
+    }
+
+    /**
+     * Resolution is rounded down to a power of two and the exponent is used as the level
+     * @return null for full resolution
+     */
+    protected static Integer getResolutionLevel(ActionParameters ap, String srs) throws ActionParamsException {
+        double resolution = ConversionHelper.getDouble(ap.getHttpParam(PARAM_RESOLUTION), -1);
+        double scale = ConversionHelper.getDouble(ap.getHttpParam(PARAM_SCALE), -1);
+        if (!(resolution > 0) && !(scale > 0)) {
+            return null;
+        }
+        final boolean degrees = isDegrees(srs);
+        if (!(resolution > 0)) {
+            resolution = scale * PIXEL_SIZE_METERS;
+            if (degrees) {
+                resolution /= METERS_PER_DEGREE;
+            }
+        }
+        return getResolutionLevel(resolution, degrees);
+    }
+
+    /**
+     * @param resolution in map units per pixel
+     * @param degrees true if map units are degrees, otherwise meters
+     * @return null for full resolution, otherwise a level between the levels of
+     * MIN_RESOLUTION_METERS and MAX_RESOLUTION_METERS
+     */
+    protected static Integer getResolutionLevel(double resolution, boolean degrees) {
+        if (!(resolution > 0)) {
+            return null;
+        }
+        final double unitsPerMeter = degrees ? 1 / METERS_PER_DEGREE : 1;
+        if (resolution < MIN_RESOLUTION_METERS * unitsPerMeter) {
+            return null;
+        }
+        return Math.min(Math.getExponent(resolution), Math.getExponent(MAX_RESOLUTION_METERS * unitsPerMeter));
+    }
+
+    private static boolean isDegrees(String srs) throws ActionParamsException {
+        try {
+            CoordinateReferenceSystem crs = CRS.decode(srs);
+            return "°".equals(crs.getCoordinateSystem().getAxis(0).getUnit().toString());
+        } catch (FactoryException e) {
+            throw new ActionParamsException("Invalid srs: " + srs);
+        }
     }
 
     /**
@@ -74,21 +185,32 @@ public class GetRegionsHandler extends ActionHandler {
     }
 
     public JSONObject requestRegionInfoJSON(long id, RegionSet regionset, final String srs) throws ActionException {
-        final String cacheKey = CACHE_KEY_PREFIX + id + ":" + srs;
-        final String cachedData = JedisManager.get(cacheKey);
-        if (cachedData != null && !cachedData.isEmpty()) {
-            try {
-                return new JSONObject(cachedData);
-            } catch (JSONException e) {
-                // Failed serializing. Skipping the cache.
-            }
+        try {
+            byte[] json = IOHelper.ungzip(getRegionsGzipped(id, regionset, srs, null)).toByteArray();
+            return new JSONObject(new String(json, StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            throw new ActionException("Failed to read regions", e);
         }
+    }
+
+    /**
+     * @param level resolution level from getResolutionLevel(), null for full resolution
+     * @return regions JSON gzipped
+     */
+    protected byte[] getRegionsGzipped(long id, RegionSet regionset, final String srs, Integer level) throws ActionException {
+        final String cacheKey = getCacheKey(id, srs, level);
+        final byte[] key = cacheKey.getBytes(StandardCharsets.UTF_8);
+        final byte[] cachedData = JedisManager.get(key);
+        if (cachedData != null && cachedData.length > 0) {
+            return cachedData;
+        }
+        final double tolerance = level == null ? 0 : Math.scalb(1d, level);
         final JSONObject response = new JSONObject();
         final JSONArray regions = new JSONArray();
         JSONHelper.putValue(response, KEY_REGIONS, regions);
 
         try {
-            final List<Region> result = RegionSetHelper.getRegions(regionset, srs);
+            final List<Region> result = RegionSetHelper.getRegions(regionset, srs, tolerance);
             for (Region region : result) {
                 regions.put(region.toJSON());
             }
@@ -104,8 +226,18 @@ public class GetRegionsHandler extends ActionHandler {
             throw new ActionException("Failed to perform transformation", e);
         }
 
-        JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, response.toString());
-        return response;
+        final byte[] gzipped;
+        try {
+            gzipped = IOHelper.gzip(response.toString().getBytes(StandardCharsets.UTF_8)).toByteArray();
+        } catch (IOException e) {
+            throw new ActionException("Failed to compress regions", e);
+        }
+        // ETag first so it never outlives the cached regions, both written with one round trip
+        final Map<String, byte[]> toCache = new LinkedHashMap<>();
+        toCache.put(cacheKey + ETAG_KEY_SUFFIX, ResponseHelper.getETag(gzipped).getBytes(StandardCharsets.UTF_8));
+        toCache.put(cacheKey, gzipped);
+        JedisManager.setexBytes(toCache, JedisManager.EXPIRY_TIME_DAY);
+        return gzipped;
     }
 
 }
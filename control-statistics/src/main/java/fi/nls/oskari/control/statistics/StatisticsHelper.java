@@ -5,8 +5,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.control.ActionControl;
 import fi.nls.oskari.control.statistics.data.*;
+import fi.nls.oskari.control.statistics.plugins.StatisticalDatasourcePlugin;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -27,15 +31,49 @@ public class StatisticsHelper {
     public static final String PARAM_SELECTORS = "selectors";
     public static final String PARAM_REGIONSET = "regionset";
 
+    private static final String METRICS_INDICATOR_CACHE = "Oskari.Statistics.IndicatorCache";
+
+    /**
+     * Registers gauges for the in-memory indicator metadata cache. Safe to call more than once.
+     */
+    public static void registerIndicatorCacheMetrics() {
+        MetricRegistry metrics = ActionControl.getMetrics();
+        metrics.gauge(METRICS_INDICATOR_CACHE + ".hits",
+                () -> (Gauge<Long>) StatisticalDatasourcePlugin::getIndicatorCacheHits);
+        metrics.gauge(METRICS_INDICATOR_CACHE + ".misses",
+                () -> (Gauge<Long>) StatisticalDatasourcePlugin::getIndicatorCacheMisses);
+        metrics.gauge(METRICS_INDICATOR_CACHE + ".size",
+                () -> (Gauge<Long>) StatisticalDatasourcePlugin::getIndicatorCacheSize);
+        metrics.gauge(METRICS_INDICATOR_CACHE + ".hitRate", () -> (Gauge<Double>) () -> {
+            long hits = StatisticalDatasourcePlugin.getIndicatorCacheHits();
+            long total = hits + StatisticalDatasourcePlugin.getIndicatorCacheMisses();
+            return total == 0 ? 0d : (double) hits / total;
+        });
+    }
+
     public static String getIndicatorMetadataCacheKey(long datasourceId, String indicatorId) {
         return "oskari_get_indicator_metadata_handler_" + datasourceId + ":" + indicatorId;
     }
 
     public static String getIndicatorDataCacheKey(long datasourceId, String indicatorId,
                                                   long layerId, JSONObject selectorJSON) {
-        StringBuilder cacheKey = new StringBuilder("oskari:stats:");
-        cacheKey.append(datasourceId);
-        cacheKey.append(":data:");
+        return getIndicatorDataCacheKey(getIndicatorDataCachePrefix(datasourceId), indicatorId, layerId, selectorJSON);
+    }
+
+    /**
+     * Returns the prefix for indicator data keys of the datasource including the current generation
+     * so data cached before the latest datasource update isn't used. Falls back to the prefix without
+     * generation if Redis is not available.
+     */
+    public static String getIndicatorDataCachePrefix(long datasourceId) {
+        String namespace = StatisticalDatasourcePlugin.getIndicatorDataCacheNamespace(datasourceId);
+        String prefix = JedisManager.getGenerationPrefix(namespace);
+        return prefix == null ? namespace : prefix;
+    }
+
+    public static String getIndicatorDataCacheKey(String prefix, String indicatorId,
+                                                  long layerId, JSONObject selectorJSON) {
+        StringBuilder cacheKey = new StringBuilder(prefix);
         cacheKey.append(indicatorId);
         cacheKey.append(':');
         cacheKey.append(layerId);
@@ -75,6 +113,14 @@ public class StatisticsHelper {
         return selectors;
     }
 
+    public static JSONObject valuesToJSON(Map<String, IndicatorValue> values) throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, IndicatorValue> entry : values.entrySet()) {
+            entry.getValue().putToJSONObject(json, entry.getKey());
+        }
+        return json;
+    }
+
     public static JSONObject toJSON(StatisticalIndicator indicator) throws JSONException {
         JSONObject pluginIndicatorJSON = new JSONObject();
         Map<String, String> name = indicator.getName();
@@ -0,0 +1,189 @@
+package fi.nls.oskari.control.statistics;
+
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicator;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicatorLayer;
+import fi.nls.oskari.control.statistics.plugins.StatisticalDatasourcePlugin;
+import fi.nls.oskari.domain.User;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GetIndicatorDataBatchHandlerTest {
+
+    @Test
+    public void testParseItems() throws Exception {
+        List<GetIndicatorDataBatchHandler.BatchItem> items = GetIndicatorDataBatchHandler.parseItems(
+                "[{\"datasource\":1,\"indicator\":\"232\",\"regionset\":7,\"selectors\":{\"year\":\"2012\"}}," +
+                "{\"datasource\":2,\"indicator\":\"233\",\"regionset\":8,\"selectors\":{}}]");
+        assertEquals(2, items.size());
+
+        JSONArray json = write(items);
+        JSONObject first = json.getJSONObject(0);
+        assertEquals(1, first.getLong("datasource"));
+        assertEquals("232", first.getString("indicator"));
+        assertEquals(7, first.getLong("regionset"));
+        assertEquals("2012", first.getJSONObject("selectors").getString("year"));
+        assertEquals("233", json.getJSONObject(1).getString("indicator"));
+    }
+
+    @Test
+    public void testParseItemsInvalid() {
+        String[] invalid = {
+                "{\"datasource\":1}",
+                "[1]",
+                "[{\"datasource\":1,\"indicator\":\"232\",\"selectors\":{}}]",
+                "not json"
+        };
+        for (String payload : invalid) {
+            try {
+                GetIndicatorDataBatchHandler.parseItems(payload);
+                fail("Should have failed: " + payload);
+            } catch (ActionParamsException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testErrorsPerItem() throws Exception {
+        StatisticalIndicatorLayer layer = mock(StatisticalIndicatorLayer.class);
+        StatisticalIndicator indicator = mock(StatisticalIndicator.class);
+        when(indicator.getLayer(7)).thenReturn(layer);
+        StatisticalDatasourcePlugin plugin = mock(StatisticalDatasourcePlugin.class);
+        when(plugin.getIndicator(any(), eq("ok"))).thenReturn(indicator);
+        when(plugin.getIndicator(any(), eq("fail"))).thenThrow(new IllegalStateException("Service down"));
+        when(plugin.getIndicatorValues(any(), any(), any())).thenReturn(Collections.emptyMap());
+
+        StatisticalIndicator slowIndicator = mock(StatisticalIndicator.class);
+        when(slowIndicator.getLayer(7)).thenReturn(layer);
+        StatisticalDatasourcePlugin slowPlugin = mock(StatisticalDatasourcePlugin.class);
+        when(slowPlugin.getIndicator(any(), anyString())).thenReturn(slowIndicator);
+        when(slowPlugin.getIndicatorValues(any(), any(), any())).thenAnswer(invocation -> {
+            Thread.sleep(5000);
+            return Collections.emptyMap();
+        });
+
+        List<GetIndicatorDataBatchHandler.BatchItem> items = Arrays.asList(
+                item(1, "ok", 7),
+                item(1, "fail", 7),
+                item(1, "fail", 7),
+                item(1, "missing", 7),
+                item(1, "ok", 8),
+                item(2, "ok", 7),
+                item(3, "slow", 7));
+        GetIndicatorDataBatchHandler.resolveIndicators(items, new User(),
+                id -> id == 1 ? plugin : id == 3 ? slowPlugin : null);
+        long start = System.currentTimeMillis();
+        GetIndicatorDataBatchHandler.fetchMissing(items, 200);
+        assertTrue("Should time out", System.currentTimeMillis() - start < 2000);
+
+        JSONArray json = write(items);
+        assertEquals("Response should have an item for each requested item", items.size(), json.length());
+        assertEquals(0, json.getJSONObject(0).getJSONObject("data").length());
+        assertFalse(json.getJSONObject(0).has("error"));
+        assertEquals("Failed to get indicator", json.getJSONObject(1).getString("error"));
+        assertEquals("Failed to get indicator", json.getJSONObject(2).getString("error"));
+        assertEquals("No such indicator: missing on datasource: 1", json.getJSONObject(3).getString("error"));
+        assertEquals("No such regionset: 8", json.getJSONObject(4).getString("error"));
+        assertEquals("No such datasource: 2", json.getJSONObject(5).getString("error"));
+        assertFalse(json.getJSONObject(6).has("data"));
+        assertTrue(json.getJSONObject(6).has("error"));
+    }
+
+    @Test
+    public void testRejectedWhenQueueFull() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1));
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // one running and one queued task fill the pool
+            Callable<Boolean> blocking = () -> release.await(5, TimeUnit.SECONDS);
+            executor.submit(blocking);
+            executor.submit(blocking);
+
+            List<GetIndicatorDataBatchHandler.BatchItem> items = Collections.singletonList(item(10, "ok", 7));
+            StatisticalDatasourcePlugin plugin = plugin(0, null, null);
+            GetIndicatorDataBatchHandler.resolveIndicators(items, new User(), id -> plugin);
+            GetIndicatorDataBatchHandler.fetchMissing(items, 5000, executor);
+            assertEquals("Too many requests, try again later", write(items).getJSONObject(0).getString("error"));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrencyPerDatasource() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        StatisticalDatasourcePlugin plugin = plugin(200, running, maxRunning);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<GetIndicatorDataBatchHandler.BatchItem>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(requests.submit(() -> {
+                    List<GetIndicatorDataBatchHandler.BatchItem> items = Collections.singletonList(item(11, "ok", 7));
+                    GetIndicatorDataBatchHandler.resolveIndicators(items, new User(), id -> plugin);
+                    GetIndicatorDataBatchHandler.fetchMissing(items, 5000, executor);
+                    return items;
+                }));
+            }
+            for (Future<List<GetIndicatorDataBatchHandler.BatchItem>> result : results) {
+                assertNull(result.get().get(0).getError());
+            }
+            assertEquals("Default is two concurrent fetches per datasource", 2, maxRunning.get());
+        } finally {
+            requests.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plugin with indicator "ok" having regionset 7. Fetching values takes the given time and
+     * tracks the number of concurrent fetches.
+     */
+    private static StatisticalDatasourcePlugin plugin(long sleepMs, AtomicInteger running, AtomicInteger maxRunning)
+            throws Exception {
+        StatisticalIndicator indicator = mock(StatisticalIndicator.class);
+        when(indicator.getLayer(7)).thenReturn(mock(StatisticalIndicatorLayer.class));
+        StatisticalDatasourcePlugin plugin = mock(StatisticalDatasourcePlugin.class);
+        when(plugin.getIndicator(any(), eq("ok"))).thenReturn(indicator);
+        when(plugin.getIndicatorValues(any(), any(), any())).thenAnswer(invocation -> {
+            if (running != null) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            }
+            Thread.sleep(sleepMs);
+            if (running != null) {
+                running.decrementAndGet();
+            }
+            return Collections.emptyMap();
+        });
+        return plugin;
+    }
+
+    private static GetIndicatorDataBatchHandler.BatchItem item(long datasource, String indicator, long regionset) {
+        return new GetIndicatorDataBatchHandler.BatchItem(datasource, indicator, regionset, new JSONObject());
+    }
+
+    private static JSONArray write(List<GetIndicatorDataBatchHandler.BatchItem> items) throws Exception {
+        StringWriter out = new StringWriter();
+        GetIndicatorDataBatchHandler.writeItems(out, items);
+        return new JSONArray(out.toString());
+    }
+}
@@ -0,0 +1,30 @@
+package fi.nls.oskari.control.statistics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GetRegionsHandlerTest {
+
+    @Test
+    public void testResolutionLevel() {
+        assertNull(GetRegionsHandler.getResolutionLevel(-1, false));
+        assertNull(GetRegionsHandler.getResolutionLevel(Double.NaN, false));
+        assertNull("Finer than a meter should use full resolution", GetRegionsHandler.getResolutionLevel(0.5, false));
+        assertEquals(0, (int) GetRegionsHandler.getResolutionLevel(1, false));
+        assertEquals(1, (int) GetRegionsHandler.getResolutionLevel(3, false));
+        assertEquals(12, (int) GetRegionsHandler.getResolutionLevel(8000, false));
+        assertEquals("Coarse end should be capped", 13, (int) GetRegionsHandler.getResolutionLevel(1e9, false));
+        assertEquals(13, (int) GetRegionsHandler.getResolutionLevel(Double.POSITIVE_INFINITY, false));
+    }
+
+    @Test
+    public void testResolutionLevelDegrees() {
+        // a meter is about 9e-6 degrees
+        assertNull(GetRegionsHandler.getResolutionLevel(1e-6, true));
+        assertEquals(-14, (int) GetRegionsHandler.getResolutionLevel(1e-4, true));
+        // 8192 meters is about 0.07 degrees
+        assertEquals(-4, (int) GetRegionsHandler.getResolutionLevel(10, true));
+    }
+}
@@ -19,4 +19,11 @@ public class StatisticsHelperTest {
         Assert.assertEquals(expected, actual);
     }
 
+    @Test
+    public void testGetCacheKeyWithGeneration() throws JSONException {
+        JSONObject selectionJSON = new JSONObject("{\"year\":\"2015\"}");
+        String actual = StatisticsHelper.getIndicatorDataCacheKey("oskari:stats:1:data:g3:", "232", 1850L, selectionJSON);
+        Assert.assertEquals("oskari:stats:1:data:g3:232:1850:year=2015", actual);
+    }
+
 }
@@ -1,12 +1,18 @@
 package org.oskari.control.userlayer;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.function.BiConsumer;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import fi.nls.oskari.annotation.Oskari;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.domain.User;
 import fi.nls.oskari.domain.map.userlayer.UserLayer;
 import fi.nls.oskari.service.OskariComponentManager;
-import fi.nls.oskari.util.JSONHelper;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
@@ -14,10 +20,12 @@ import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.expression.Expression;
@@ -40,6 +48,9 @@ public class UserLayerWFSHelper extends UserLayerService {
     private static final String USERLAYER_ATTR_USER_LAYER_ID = "user_layer_id";
     private static final String USERLAYER_ATTR_PROPERTY_JSON = "property_json";
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Cache<SimpleFeatureType> schemaCache = CacheManager.getCache(UserLayerWFSHelper.class.getName() + ".schema");
     private FilterFactory ff;
     private int userlayerLayerId;
     private UserLayerDbService service;
@@ -83,7 +94,6 @@ public class UserLayerWFSHelper extends UserLayerService {
         return ff.and(Arrays.asList(userlayerIdEquals, bboxFilter));
     }
 
-    @SuppressWarnings("unchecked")
     public SimpleFeatureCollection postProcess(SimpleFeatureCollection sfc) throws Exception {
         if (sfc.isEmpty()) {
             // return early as no need for processing and getSchema() throws npe if we move forward
@@ -92,41 +102,164 @@ public class UserLayerWFSHelper extends UserLayerService {
         List<SimpleFeature> fc = new ArrayList<>();
         SimpleFeatureType schema;
 
-        String geomAttrName = sfc.getSchema().getGeometryDescriptor().getLocalName();
-
         try (SimpleFeatureIterator it = sfc.features()) {
-            SimpleFeature firstFeatureForSchemaGeneration = it.next();
-            // parse the _first feature_ AND _generate schema_ based on it
-            String property_json_for_first = (String) firstFeatureForSchemaGeneration.getAttribute(USERLAYER_ATTR_PROPERTY_JSON);
-            JSONObject properties_for_first = new JSONObject(property_json_for_first);
-            Set<String> featureAttributeNames = JSONHelper.getObjectAsMap(properties_for_first).keySet();
-
-            schema = createType(sfc.getSchema(), properties_for_first);
+            SimpleFeature firstFeature = it.next();
+            // schema is generated based on the _first feature_ (cached per userlayer while the attributes match)
+            schema = getSchema(sfc.getSchema(), firstFeature);
             SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+            int geomIndex = schema.indexOf(schema.getGeometryDescriptor().getLocalName());
 
-            // process and add the the first feature to the result collection
-            builder.set(geomAttrName, firstFeatureForSchemaGeneration.getDefaultGeometry());
-            for (String attrName : featureAttributeNames) {
-                builder.set(attrName, properties_for_first.get(attrName));
-            }
-            fc.add(builder.buildFeature(firstFeatureForSchemaGeneration.getID()));
-
-            // process and add the _remaining features_ to the result collection
+            fc.add(buildFeature(builder, geomIndex, firstFeature));
             while (it.hasNext()) {
-                SimpleFeature feature = it.next();
-                builder.set(geomAttrName, feature.getDefaultGeometry());
-                String property_json = (String) feature.getAttribute(USERLAYER_ATTR_PROPERTY_JSON);
-                JSONObject properties = new JSONObject(property_json);
-                for (String attrName : featureAttributeNames) {
-                    builder.set(attrName, properties.opt(attrName));
-                }
-                fc.add(builder.buildFeature(feature.getID()));
+                fc.add(buildFeature(builder, geomIndex, it.next()));
             }
         }
 
         return new GeoJSONFeatureCollection(fc, schema);
     }
 
+    private SimpleFeature buildFeature(SimpleFeatureBuilder builder, int geomIndex, SimpleFeature feature)
+            throws IOException {
+        SimpleFeatureType schema = builder.getFeatureType();
+        builder.set(geomIndex, feature.getDefaultGeometry());
+        // properties not part of the schema are ignored and missing ones are left as null
+        readProperties((String) feature.getAttribute(USERLAYER_ATTR_PROPERTY_JSON), (name, value) -> {
+            int i = schema.indexOf(name);
+            if (i >= 0) {
+                builder.set(i, value);
+            }
+        });
+        return builder.buildFeature(feature.getID());
+    }
+
+    private SimpleFeatureType getSchema(SimpleFeatureType schema, SimpleFeature firstFeature) throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        readProperties((String) firstFeature.getAttribute(USERLAYER_ATTR_PROPERTY_JSON), properties::put);
+
+        String cacheKey = getSchemaCacheKey(schema, firstFeature);
+        SimpleFeatureType cached = cacheKey == null ? null : schemaCache.get(cacheKey);
+        if (cached != null && matches(cached, schema, properties)) {
+            return cached;
+        }
+        SimpleFeatureType type = createType(schema, properties);
+        if (cacheKey != null) {
+            schemaCache.put(cacheKey, type);
+        }
+        return type;
+    }
+
+    /**
+     * @return true if type is what createType() would create for the schema and properties
+     */
+    private boolean matches(SimpleFeatureType type, SimpleFeatureType schema, Map<String, Object> properties) {
+        // geometry + properties
+        if (type.getAttributeCount() != properties.size() + 1) {
+            return false;
+        }
+        if (!type.getGeometryDescriptor().getType().getBinding()
+                .equals(schema.getGeometryDescriptor().getType().getBinding())) {
+            return false;
+        }
+        return properties.entrySet().stream().allMatch(property -> {
+            AttributeDescriptor descriptor = type.getDescriptor(property.getKey());
+            return descriptor != null && descriptor.getType().getBinding().equals(getBinding(property.getValue()));
+        });
+    }
+
+    private static Class<?> getBinding(Object value) {
+        return value == null ? Object.class : value.getClass();
+    }
+
+    private String getSchemaCacheKey(SimpleFeatureType schema, SimpleFeature feature) {
+        Object userlayerId = feature.getAttribute(USERLAYER_ATTR_USER_LAYER_ID);
+        if (userlayerId == null) {
+            return null;
+        }
+        return userlayerId + "_" + CRS.toSRS(schema.getCoordinateReferenceSystem());
+    }
+
+    /**
+     * Reads top-level properties from property_json without building an intermediate JSONObject.
+     * Values are mapped to the same types org.json would produce so the generated schema stays the same.
+     */
+    private static void readProperties(String json, BiConsumer<String, Object> consumer) throws IOException {
+        if (json == null || json.isEmpty()) {
+            return;
+        }
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected property_json to be a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                consumer.accept(name, readValue(parser));
+            }
+        }
+    }
+
+    private static Object readValue(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return readNumber(parser);
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                return readArray(parser);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Like org.json: Integer if the value fits, then Long, Double for decimals and
+     * integers too big for a long are kept as text.
+     */
+    private static Object readNumber(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getDoubleValue();
+        }
+        switch (parser.getNumberType()) {
+            case INT:
+                return parser.getIntValue();
+            case LONG:
+                return parser.getLongValue();
+            default:
+                return parser.getText();
+        }
+    }
+
+    private static JSONObject readObject(JsonParser parser) throws IOException {
+        JSONObject obj = new JSONObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            Object value = readValue(parser);
+            try {
+                obj.put(name, value == null ? JSONObject.NULL : value);
+            } catch (JSONException e) {
+                throw new IOException("Invalid value for " + name + " in property_json", e);
+            }
+        }
+        return obj;
+    }
+
+    private static JSONArray readArray(JsonParser parser) throws IOException {
+        JSONArray arr = new JSONArray();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            Object value = readValue(parser);
+            arr.put(value == null ? JSONObject.NULL : value);
+        }
+        return arr;
+    }
+
     public boolean hasViewPermission(String id, User user) {
         UserLayer layer = getLayer(parseId(id));
         if (layer == null) {
@@ -147,17 +280,13 @@ public class UserLayerWFSHelper extends UserLayerService {
         return UserLayerDataService.getBaseLayer();
     }
 
-    private SimpleFeatureType createType(SimpleFeatureType schema, JSONObject properties) throws JSONException {
+    private SimpleFeatureType createType(SimpleFeatureType schema, Map<String, Object> properties) {
         SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
         typeBuilder.setName(schema.getName());
         typeBuilder.add(schema.getGeometryDescriptor());
         typeBuilder.setDefaultGeometry(schema.getGeometryDescriptor().getLocalName());
-        @SuppressWarnings("unchecked")
-        Iterator<String> keys = properties.keys();
-        while (keys.hasNext()) {
-            String key = keys.next();
-            Object obj = properties.get(key);
-            typeBuilder.add(key, obj.getClass());
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            typeBuilder.add(property.getKey(), getBinding(property.getValue()));
         }
         return typeBuilder.buildFeatureType();
     }
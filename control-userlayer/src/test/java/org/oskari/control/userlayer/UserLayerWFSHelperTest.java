@@ -1,6 +1,7 @@
 package org.oskari.control.userlayer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.io.InputStream;
 import java.util.List;
@@ -9,6 +10,7 @@ import java.util.Map;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.referencing.CRS;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.opengis.feature.Property;
@@ -117,6 +119,77 @@ public class UserLayerWFSHelperTest {
         }
     }
 
+    @Test
+    public void testNullAndNestedValues() throws Exception {
+        Map<String, Object> geojson = readResource("geojson.json");
+        List<Map> features = (List<Map>) geojson.get("features");
+        Map<String, Object> attributes = (Map<String, Object>) features.get(0).get("properties");
+        JSONObject props = new JSONObject((String) attributes.get("property_json"));
+        props.put("NESTED", new JSONObject("{\"key\":\"value\"}"));
+        props.put("EMPTY", JSONObject.NULL);
+        attributes.put("property_json", props.toString());
+        SimpleFeatureCollection original = createCollection(geojson);
+
+        SimpleFeatureCollection retyped = new UserLayerWFSHelper().postProcess(original);
+        try (SimpleFeatureIterator it = retyped.features()) {
+            SimpleFeature feature = it.next();
+            assertEquals(7, feature.getAttributeCount());
+            assertEquals("value", ((JSONObject) feature.getAttribute("NESTED")).getString("key"));
+            assertNull(feature.getAttribute("EMPTY"));
+        }
+    }
+
+    @Test
+    public void testValueTypesMatchOrgJson() throws Exception {
+        Map<String, Object> geojson = readResource("geojson.json");
+        List<Map> features = (List<Map>) geojson.get("features");
+        Map<String, Object> attributes = (Map<String, Object>) features.get(0).get("properties");
+        String propertyJson = "{\"INT\": 1, \"LONG\": 3000000000, \"BIG\": 123456789012345678901234567890,"
+                + " \"DOUBLE\": 1.5, \"EXP\": 1e3,"
+                + " \"NESTED\": {\"list\": [1, 3000000000, null, {\"value\": 2.0}], \"empty\": null}}";
+        attributes.put("property_json", propertyJson);
+        JSONObject expected = new JSONObject(propertyJson);
+
+        SimpleFeatureCollection retyped = new UserLayerWFSHelper().postProcess(createCollection(geojson));
+        try (SimpleFeatureIterator it = retyped.features()) {
+            SimpleFeature feature = it.next();
+            for (String name : new String[] { "INT", "LONG", "BIG", "DOUBLE", "EXP" }) {
+                assertEquals(name, expected.get(name), feature.getAttribute(name));
+                assertEquals(name, expected.get(name).getClass(), feature.getAttribute(name).getClass());
+            }
+            JSONObject nested = (JSONObject) feature.getAttribute("NESTED");
+            JSONArray list = nested.getJSONArray("list");
+            JSONArray expectedList = expected.getJSONObject("NESTED").getJSONArray("list");
+            assertEquals(expectedList.length(), list.length());
+            assertEquals(expectedList.get(0), list.get(0));
+            assertEquals(expectedList.get(1), list.get(1));
+            assertEquals(JSONObject.NULL, list.get(2));
+            assertEquals(expectedList.getJSONObject(3).get("value"), list.getJSONObject(3).get("value"));
+            assertEquals(JSONObject.NULL, nested.get("empty"));
+        }
+    }
+
+    @Test
+    public void testCachedSchemaWithChangedAttributeType() throws Exception {
+        UserLayerWFSHelper helper = new UserLayerWFSHelper();
+        Map<String, Object> geojson = readResource("geojson.json");
+        try (SimpleFeatureIterator it = helper.postProcess(createCollection(geojson)).features()) {
+            assertEquals(Integer.class, it.next().getFeatureType().getDescriptor("INTERPOLOI").getType().getBinding());
+        }
+
+        // same userlayer with the same attribute names but a different type
+        List<Map> features = (List<Map>) geojson.get("features");
+        Map<String, Object> attributes = (Map<String, Object>) features.get(0).get("properties");
+        JSONObject props = new JSONObject((String) attributes.get("property_json"));
+        props.put("INTERPOLOI", "1");
+        attributes.put("property_json", props.toString());
+        try (SimpleFeatureIterator it = helper.postProcess(createCollection(geojson)).features()) {
+            SimpleFeature feature = it.next();
+            assertEquals(String.class, feature.getFeatureType().getDescriptor("INTERPOLOI").getType().getBinding());
+            assertEquals("1", feature.getAttribute("INTERPOLOI"));
+        }
+    }
+
     private void dropAttrFromFirstFeature(Map<String, Object> geojson) throws Exception {
         List<Map> features = (List<Map>) geojson.get("features");
         Map<String, Object> firstFeature = features.get(0);
@@ -50,6 +50,29 @@ public abstract class OskariBaseAnnotationProcessor extends AbstractProcessor {
         registration.write(StandardLocation.CLASS_OUTPUT);
     }
 
+    /**
+     * Writes entries to an index file. Unlike the SPI file in registerControls() the file
+     * is not merged with the entries of previous compilations so entries of renamed or removed
+     * classes don't linger. Should be called once per compilation with all the entries.
+     *
+     * @param entries lines to write
+     * @param serviceName fully qualified class name of the interface the entries are for
+     * @param fileName resource path for the index
+     * @throws java.io.IOException
+     */
+    public void registerIndex(
+            final Collection<String> entries, final String serviceName, final String fileName)
+            throws IOException {
+
+        final ServiceRegistration registration = new ServiceRegistration(
+                processingEnv, serviceName, fileName);
+
+        for (final String entry : entries) {
+            registration.addClass(entry);
+        }
+        registration.write(StandardLocation.CLASS_OUTPUT);
+    }
+
     /* ************************************
      * Convenience methods
      * ************************************
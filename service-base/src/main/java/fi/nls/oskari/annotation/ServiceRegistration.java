@@ -43,6 +43,8 @@ public class ServiceRegistration {
 
     private final String className;
 
+    private final String fileName;
+
     /**
      * The classes that are already known to be in this file. If
      * this {@code Set} already contains a class-name, the name
@@ -68,6 +70,22 @@ public class ServiceRegistration {
     public ServiceRegistration(
             final ProcessingEnvironment environment,
             final String className) {
+        this(environment, className, "META-INF/services/" + className);
+    }
+
+    /**
+     * Create a new, empty {@code ServiceRegistration} object that is written
+     * to the given resource instead of the services file. Used for indexes
+     * with one entry per line like the action route index.
+     *
+     * @param environment the {@code ProcessingEnvironment} to work within
+     * @param className the name of the service class the entries are for
+     * @param fileName the resource path of the file
+     */
+    public ServiceRegistration(
+            final ProcessingEnvironment environment,
+            final String className,
+            final String fileName) {
 
         if(environment == null) {
             throw new IllegalArgumentException(
@@ -81,10 +99,11 @@ public class ServiceRegistration {
 
         this.environment = environment;
         this.className = className;
+        this.fileName = fileName;
     }
 
     private String getFileName() {
-        return "META-INF/services/" + className;
+        return fileName;
     }
 
     /**
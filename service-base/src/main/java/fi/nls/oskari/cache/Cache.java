@@ -4,12 +4,17 @@ import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.PropertyUtil;
 import org.oskari.cluster.ClusterManager;
+import org.oskari.cluster.MessageListener;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Simple generic in memory cache
@@ -20,6 +25,7 @@ public class Cache<T> {
 
     private static final Logger LOG = LogFactory.getLogger(Cache.class);
 
+    private static final String CLUSTER_FUNCTIONALITY_ID = "cache";
     protected static final String CLUSTER_CMD_FLUSH = "FLUSH";
     protected static final String CLUSTER_CMD_REMOVE_PREFIX = "REM: ";
 
@@ -33,6 +39,13 @@ public class Cache<T> {
     private boolean cacheSizeConfigured = false;
     private boolean cacheMissDebugEnabled = false;
 
+    // statistics for monitoring, see getHitCount() etc
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadTimeNanos = new LongAdder();
+
     public void setCacheMissDebugEnabled(boolean enabled) {
         cacheMissDebugEnabled = enabled;
     }
@@ -53,8 +66,24 @@ public class Cache<T> {
         if (ClusterManager.isClustered()) {
             LOG.info("Cluster aware cache:", getName());
             ClusterManager
-                    .getClientFor("cache")
-                    .addListener(getName(), (msg) -> handleClusterMsg(msg));
+                    .getClientFor(CLUSTER_FUNCTIONALITY_ID)
+                    .addListener(getName(), new MessageListener() {
+                        @Override
+                        public void onMessage(String msg) {
+                            handleClusterMsg(msg);
+                        }
+
+                        @Override
+                        public void onMessages(List<String> messages) {
+                            handleClusterMsgs(messages);
+                        }
+
+                        @Override
+                        public void onMessagesMissed() {
+                            // we don't know what was removed on other nodes
+                            flush(true);
+                        }
+                    });
         }
     }
 
@@ -116,13 +145,24 @@ public class Cache<T> {
     }
 
     public T get(final String name) {
-        flush(false);
-        T value = items.get(name);
-
-        if(cacheMissDebugEnabled && value == null) {
+        T value = getUncounted(name);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        if(cacheMissDebugEnabled) {
             LOG.debug("Cache", getName(), "miss for name", name);
         }
-        return value;
+        return null;
+    }
+
+    /**
+     * Same as get(name) but doesn't affect hit/miss statistics
+     */
+    protected T getUncounted(final String name) {
+        flush(false);
+        return items.get(name);
     }
 
     public T remove(final String name) {
@@ -138,6 +178,19 @@ public class Cache<T> {
         return value;
     }
 
+    /**
+     * Removes the items without notifying other cluster nodes
+     */
+    protected void removeAllSilent(final Collection<String> names) {
+        flush(false);
+        for (String name : names) {
+            items.remove(name);
+        }
+        // one pass over the queue instead of one per key
+        keys.removeAll(names);
+        LOG.debug("Removed", names.size(), "cached items:", getName());
+    }
+
     public boolean put(final String name, final T item) {
         flush(false);
         if(item == null) {
@@ -151,8 +204,8 @@ public class Cache<T> {
             LOG.warn("Cache", getName(), "overflowing! Limit is", limit);
             LOG.info("Configure larger limit for cache by setting the property:", getLimitPropertyName());
             final String key = keys.poll();
-            if(key != null) {
-                items.remove(key);
+            if(key != null && items.remove(key) != null) {
+                evictions.increment();
             }
         }
         T existing = items.put(name, item);
@@ -172,6 +225,7 @@ public class Cache<T> {
         if(force || isTimeToFlush(now)) {
             // flushCache
             LOG.info("Flushing cache! Cache:", getName(), "Forced: ", force, getName());
+            evictions.add(items.size());
             items.clear();
             keys.clear();
             lastFlush = now;
@@ -188,6 +242,50 @@ public class Cache<T> {
         return expiration - (currentTime() - lastFlush);
     }
 
+    /**
+     * Records the time it took to load a value that was missing from the cache
+     * @param nanos load time in nanoseconds
+     */
+    protected void recordLoad(long nanos) {
+        loads.increment();
+        loadTimeNanos.add(nanos);
+    }
+
+    /**
+     * Number of get() calls that found a value
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of get() calls that didn't find a value
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of items removed because the limit was reached or the cache was flushed
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of values loaded to the cache with a load function (see ComputeOnceCache)
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * Total time spent loading values in nanoseconds
+     */
+    public long getTotalLoadTimeNanos() {
+        return loadTimeNanos.sum();
+    }
+
     private static long currentTime() {
         return System.nanoTime() / 1000000L;
     }
@@ -214,16 +312,31 @@ public class Cache<T> {
         LOG.warn("Received unrecognized cluster msg:", data);
     }
 
-    private void notifyRemoval(String key) {
-        notifyCluster(CLUSTER_CMD_REMOVE_PREFIX + key);
+    protected void handleClusterMsgs(List<String> messages) {
+        LOG.debug("Got", messages.size(), "messages:", getName());
+        final Set<String> removed = new HashSet<>();
+        for (String data : messages) {
+            if (CLUSTER_CMD_FLUSH.equals(data)) {
+                flush(true);
+                return;
+            }
+            if (data.startsWith(CLUSTER_CMD_REMOVE_PREFIX)) {
+                removed.add(data.substring(CLUSTER_CMD_REMOVE_PREFIX.length()));
+            } else {
+                LOG.warn("Received unrecognized cluster msg:", data);
+            }
+        }
+        // silently so we don't trigger new cluster messages
+        removeAllSilent(removed);
     }
 
-    private void notifyCluster(String msg) {
+    private void notifyRemoval(String key) {
         if (!ClusterManager.isClustered()) {
             return;
         }
+        // bulk updates remove lots of keys so these are sent in batches
         ClusterManager
-            .getClientFor("cache")
-            .sendMessage(getName(), msg);
+            .getClientFor(CLUSTER_FUNCTIONALITY_ID)
+            .sendBatched(getName(), CLUSTER_CMD_REMOVE_PREFIX + key);
     }
 }
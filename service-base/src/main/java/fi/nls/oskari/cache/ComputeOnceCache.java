@@ -33,12 +33,17 @@ public class ComputeOnceCache<T> extends Cache<T> {
             // Re-check the cache - maybe someone just completed this
             // and executed the if (b.get()) {}-block after we
             // had already finished the first cache.get(key) call;
-            T val = super.get(k);
+            T val = getUncounted(k);
             if (val != null) {
                 return val;
             }
             b.set(true);
-            return mappingFunction.apply(k);
+            long start = System.nanoTime();
+            try {
+                return mappingFunction.apply(k);
+            } finally {
+                recordLoad(System.nanoTime() - start);
+            }
         });
 
         if (b.get()) {
@@ -5,16 +5,34 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.PropertyUtil;
+import org.oskari.metrics.LatencyHistogram;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * Manages Jedis connections using JedisPool (connection pool)
+ *
+ * Each call borrows a connection from the pool and makes a round trip to Redis. Use the
+ * multiple key variants (mget(), setex(Map), setexBytes(), hmget(), hgetAll()) when handling
+ * many keys at once so they are sent with a single round trip.
  */
 public class JedisManager {
 
@@ -31,6 +49,14 @@ public class JedisManager {
     private static final String KEY_REDIS_PORT = "redis.port";
     private static final String KEY_REDIS_POOL_SIZE = "redis.pool.size";
     private static Boolean isClustered = null;
+    // hint for number of keys returned by one SCAN call
+    private static final int SCAN_COUNT = 1000;
+    private static final String GENERATION_KEY = "generation";
+    // UNLINK requires Redis 4.0, DEL is used instead once the server has rejected it
+    private static volatile boolean unlinkSupported = true;
+
+    private static final LatencyHistogram POOL_BORROW_LATENCY = new LatencyHistogram();
+    private static final LongAdder POOL_BORROW_FAILURES = new LongAdder();
 
     /**
      * Blocking construction of instances from other classes by making constructor private
@@ -68,6 +94,7 @@ public class JedisManager {
         poolConfig.setTestOnBorrow(true);
         final JedisPool oldPool = pool;
         pool = new JedisPool(poolConfig, host, port);
+        unlinkSupported = true;
         log.debug("Created Redis connection pool with host", host, "port", port);
         if (null != oldPool) {
             log.debug("Closing old Jedis pool");
@@ -76,7 +103,49 @@ public class JedisManager {
     }
 
     public static void shutdown() {
-        pool.close();
+        final JedisPool oldPool = pool;
+        pool = null;
+        if (oldPool != null) {
+            oldPool.close();
+        }
+    }
+
+    /**
+     * @return time spent waiting for connections from the pool
+     */
+    public static LatencyHistogram getPoolBorrowLatency() {
+        return POOL_BORROW_LATENCY;
+    }
+
+    /**
+     * @return number of times getting a connection from the pool failed
+     */
+    public static long getPoolBorrowFailures() {
+        return POOL_BORROW_FAILURES.sum();
+    }
+
+    /**
+     * @return number of connections in use or -1 if not connected
+     */
+    public static int getPoolActive() {
+        final JedisPool current = pool;
+        return current == null ? -1 : current.getNumActive();
+    }
+
+    /**
+     * @return number of idle connections in the pool or -1 if not connected
+     */
+    public static int getPoolIdle() {
+        final JedisPool current = pool;
+        return current == null ? -1 : current.getNumIdle();
+    }
+
+    /**
+     * @return number of threads waiting for a connection or -1 if not connected
+     */
+    public static int getPoolWaiters() {
+        final JedisPool current = pool;
+        return current == null ? -1 : current.getNumWaiters();
     }
 
     /**
@@ -97,9 +166,13 @@ public class JedisManager {
     }
 
     public Jedis getJedis(boolean throwException) {
+        final long start = System.nanoTime();
         try {
-            return pool.getResource();
+            Jedis jedis = pool.getResource();
+            POOL_BORROW_LATENCY.record(System.nanoTime() - start);
+            return jedis;
         } catch (Exception e) {
+            POOL_BORROW_FAILURES.increment();
             log.error("Getting Jedis connection from the pool failed:", e.getMessage());
             if (e.getCause() != null) {
                 log.debug(e, "Cause:", e.getCause().getMessage());
@@ -183,6 +256,111 @@ public class JedisManager {
         }
 	}
 
+    /**
+     * Thread-safe MGET for Redis. Gets the values for multiple keys in one round trip.
+     *
+     * @param keys
+     * @return values in the same order as keys, null for missing keys (or all null if Redis is not available)
+     */
+    public static List<String> mget(String... keys) {
+        if (keys.length == 0) {
+            return Collections.emptyList();
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return Arrays.asList(new String[keys.length]);
+            }
+            return jedis.mget(keys);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to mget", keys.length, "keys");
+            return Arrays.asList(new String[keys.length]);
+        } catch (Exception e) {
+            log.error("Getting", keys.length, "keys from Redis failed:", e.getMessage());
+            return Arrays.asList(new String[keys.length]);
+        }
+    }
+
+    /**
+     * Thread-safe byte[] MGET for Redis. Gets the values for multiple keys in one round trip.
+     *
+     * @param keys
+     * @return values in the same order as keys, null for missing keys (or all null if Redis is not available)
+     */
+    public static List<byte[]> mget(byte[]... keys) {
+        if (keys.length == 0) {
+            return Collections.emptyList();
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return Arrays.asList(new byte[keys.length][]);
+            }
+            return jedis.mget(keys);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to mget", keys.length, "keys");
+            return Arrays.asList(new byte[keys.length][]);
+        } catch (Exception e) {
+            log.error("Getting", keys.length, "keys from Redis failed:", e.getMessage());
+            return Arrays.asList(new byte[keys.length][]);
+        }
+    }
+
+    /**
+     * Thread-safe pipelined SETEX for Redis. Sets multiple keys with one round trip.
+     *
+     * @param values keys and values to set
+     * @param seconds expiry time for all keys
+     * @return true if values were sent to Redis
+     */
+    public static boolean setex(Map<String, String> values, int seconds) {
+        if (values.isEmpty()) {
+            return true;
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return false;
+            }
+            final Pipeline pipeline = jedis.pipelined();
+            values.forEach((key, value) -> pipeline.setex(key, seconds, value));
+            pipeline.sync();
+            return true;
+        } catch(JedisConnectionException e) {
+            log.error("Failed to set", values.size(), "keys");
+            return false;
+        } catch (Exception e) {
+            log.error("Setting", values.size(), "keys to Redis failed:", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Thread-safe pipelined byte[] SETEX for Redis. Sets multiple keys with one round trip.
+     * Commands are sent in the iteration order of values.
+     *
+     * @param values keys (as UTF-8) and values to set
+     * @param seconds expiry time for all keys
+     * @return true if values were sent to Redis
+     */
+    public static boolean setexBytes(Map<String, byte[]> values, int seconds) {
+        if (values.isEmpty()) {
+            return true;
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return false;
+            }
+            final Pipeline pipeline = jedis.pipelined();
+            values.forEach((key, value) -> pipeline.setex(key.getBytes(StandardCharsets.UTF_8), seconds, value));
+            pipeline.sync();
+            return true;
+        } catch(JedisConnectionException e) {
+            log.error("Failed to set", values.size(), "keys");
+            return false;
+        } catch (Exception e) {
+            log.error("Setting", values.size(), "keys to Redis failed:", e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Thread-safe String SETEX for Redis
      *
@@ -231,9 +409,10 @@ public class JedisManager {
     }
 
     /**
-     * Thread-safe KEYS
+     * Thread-safe listing of keys starting with prefix. Uses SCAN so Redis isn't blocked
+     * while iterating the keyspace (unlike KEYS).
      *
-     * @param pattern
+     * @param pattern key prefix
      * @return keys
      */
     public static Set<String> keys(String pattern) {
@@ -241,16 +420,34 @@ public class JedisManager {
             if (jedis == null) {
                 return Collections.emptySet();
             }
-            return jedis.keys(pattern + "*");
+            final Set<String> keys = new HashSet<>();
+            scan(jedis, pattern, keys::addAll);
+            return keys;
         } catch(JedisConnectionException e) {
-            log.error("Failed to run KEYS", pattern);
+            log.error("Failed to run SCAN", pattern);
             return null;
         } catch (Exception e) {
-            log.error("Running KEYS", pattern + "on Redis failed:", e.getMessage());
+            log.error("Running SCAN", pattern + "on Redis failed:", e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Iterates keys starting with prefix in batches of SCAN_COUNT with SCAN.
+     * The same key might be passed to consumer more than once if the keyspace is modified while scanning.
+     */
+    private static void scan(Jedis jedis, String prefix, Consumer<List<String>> consumer) {
+        final ScanParams params = new ScanParams().match(prefix + "*").count(SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            if (!result.getResult().isEmpty()) {
+                consumer.accept(result.getResult());
+            }
+            cursor = result.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
     /**
      * Thread-safe String HKEYS for Redis
      *
@@ -294,6 +491,90 @@ public class JedisManager {
         }
 	}
 
+    /**
+     * Thread-safe HMGET for Redis. Gets multiple fields of a hash in one round trip.
+     *
+     * @param key
+     * @param fields
+     * @return values in the same order as fields, null for missing fields or null when there was an exception
+     */
+    public static List<String> hmget(String key, String... fields) {
+        if (fields.length == 0) {
+            return Collections.emptyList();
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return null;
+            }
+            return jedis.hmget(key, fields);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to hmget", key);
+            return null;
+        } catch (Exception e) {
+            log.error("Getting HMGET", key + "on Redis failed:", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Thread-safe pipelined HGETALL for Redis. Gets multiple hashes with one round trip.
+     *
+     * @param keys
+     * @return hashes in the same order as keys (empty for missing keys) or null when there was an exception
+     */
+    public static List<Map<String, String>> hgetAll(String... keys) {
+        if (keys.length == 0) {
+            return Collections.emptyList();
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return null;
+            }
+            final Pipeline pipeline = jedis.pipelined();
+            final List<Response<Map<String, String>>> responses = new ArrayList<>(keys.length);
+            for (String key : keys) {
+                responses.add(pipeline.hgetAll(key));
+            }
+            pipeline.sync();
+            final List<Map<String, String>> result = new ArrayList<>(keys.length);
+            for (Response<Map<String, String>> response : responses) {
+                result.add(response.get());
+            }
+            return result;
+        } catch(JedisConnectionException e) {
+            log.error("Failed to hgetAll", keys.length, "keys");
+            return null;
+        } catch (Exception e) {
+            log.error("Getting HGETALL for", keys.length, "keys on Redis failed:", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Thread-safe multiple field HSET for Redis. Sets multiple fields of a hash in one round trip.
+     *
+     * @param key
+     * @param fields fields and values to set
+     * @return number of fields added or null when there was an exception
+     */
+    public static Long hset(String key, Map<String, String> fields) {
+        if (fields.isEmpty()) {
+            return 0L;
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return null;
+            }
+            return jedis.hset(key, fields);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to hset", key);
+            return null;
+        } catch (Exception e) {
+            log.error("Setting", fields.size(), "fields for", key, "failed miserably");
+            return null;
+        }
+    }
+
     /**
      * Thread-safe Long HSET for Redis
      *
@@ -383,21 +664,22 @@ public class JedisManager {
     }
 
     /**
-     * Thread-safe Long DEL with key set
+     * Thread-safe removal of all keys starting with prefix. Keys are listed with SCAN and
+     * removed with UNLINK (DEL before Redis 4.0) in batches so Redis isn't blocked for other clients.
+     * Keys added while the scan is running might not be removed. Prefer generation keys
+     * (see getGenerationPrefix()) for namespaces that are invalidated often.
      *
-     * @param key
-     * @return long
+     * @param key prefix for keys to remove
+     * @return number of removed keys
      */
     public static Long delAll(String key) {
         try (Jedis jedis = instance.getJedis()){
             if (jedis == null) {
                 return null;
             }
-            Set<String> keys = jedis.keys(key + "*");
-            if(keys.size() > 0) {
-                return jedis.del(keys.toArray(new String[keys.size()]));
-            }
-            return 0L;
+            final LongAdder count = new LongAdder();
+            scan(jedis, key, keys -> count.add(unlink(jedis, keys.toArray(new String[keys.size()]))));
+            return count.sum();
         } catch(JedisConnectionException e) {
             log.error("Failed to del", key + "*");
             return null;
@@ -407,6 +689,67 @@ public class JedisManager {
         }
     }
 
+    /**
+     * Returns a prefix for keys in namespace that includes the current generation of the namespace:
+     * [namespace]g[generation]: All keys in the namespace can be invalidated at once with
+     * invalidateGeneration() without scanning. Old keys are no longer referenced after invalidation
+     * so they should be stored with an expiry time.
+     *
+     * @param namespace for example "oskari:stats:"
+     * @return prefix for keys or null if Redis is not available
+     */
+    public static String getGenerationPrefix(String namespace) {
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return null;
+            }
+            final String generation = jedis.get(namespace + GENERATION_KEY);
+            return namespace + "g" + (generation == null ? "0" : generation) + ":";
+        } catch(JedisConnectionException e) {
+            log.error("Failed to get generation for", namespace);
+            return null;
+        } catch (Exception e) {
+            log.error("Getting generation for", namespace, "failed:", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Invalidates all keys in namespace by incrementing the generation used in getGenerationPrefix()
+     *
+     * @param namespace
+     * @return new generation or null when there was an exception
+     */
+    public static Long invalidateGeneration(String namespace) {
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return null;
+            }
+            return jedis.incr(namespace + GENERATION_KEY);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to increment generation for", namespace);
+            return null;
+        } catch (Exception e) {
+            log.error("Incrementing generation for", namespace, "failed:", e.getMessage());
+            return null;
+        }
+    }
+
+    private static long unlink(Jedis jedis, String[] keys) {
+        if (unlinkSupported) {
+            try {
+                return jedis.unlink(keys);
+            } catch (JedisDataException e) {
+                if (e.getMessage() == null || !e.getMessage().startsWith("ERR unknown command")) {
+                    throw e;
+                }
+                log.info("Redis doesn't support UNLINK, using DEL instead");
+                unlinkSupported = false;
+            }
+        }
+        return jedis.del(keys);
+    }
+
     /**
      * Returns length of string for a key (0 if key doesn't exist).
      * -1 means system level error.
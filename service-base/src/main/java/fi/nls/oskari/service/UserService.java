@@ -11,6 +11,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Common interface for managing users.
@@ -208,6 +210,44 @@ public abstract class UserService {
         return Collections.emptyList();
     }
 
+    /**
+     * Return a page of users with roles matching the optional search text. The default implementation
+     * filters and pages the result of getUsersWithRoles() in memory so concrete implementations should
+     * override this with a more efficient one.
+     * @param limit max number of users to return, -1 for all
+     * @param offset number of users to skip
+     * @param search text to match against username, first name, last name or email (ignored if null/empty)
+     * @return List<User> users
+     * @throws ServiceException
+     */
+    public List<User> getUsersWithRoles(int limit, int offset, String search) throws ServiceException {
+        List<User> users = filterUsers(getUsersWithRoles(), search);
+        int from = Math.min(Math.max(offset, 0), users.size());
+        int to = limit < 0 ? users.size() : Math.min(from + limit, users.size());
+        return users.subList(from, to);
+    }
+
+    /**
+     * Return the number of users matching the optional search text.
+     * @param search text to match against username, first name, last name or email (ignored if null/empty)
+     * @return number of users
+     * @throws ServiceException
+     */
+    public int getUserCount(String search) throws ServiceException {
+        return filterUsers(getUsersWithRoles(), search).size();
+    }
+
+    private List<User> filterUsers(List<User> users, String search) {
+        if (search == null || search.trim().isEmpty()) {
+            return users;
+        }
+        final String text = search.trim().toLowerCase();
+        return users.stream()
+                .filter(u -> Stream.of(u.getScreenname(), u.getFirstname(), u.getLastname(), u.getEmail())
+                        .anyMatch(value -> value != null && value.toLowerCase().contains(text)))
+                .collect(Collectors.toList());
+    }
+
     /**
      * Create a new user. This method should be overridden in concrete implementation. The
      * default implementation always throws an exception.
@@ -4,6 +4,7 @@ import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import org.apache.commons.codec.binary.Base64;
+import org.oskari.metrics.LatencyHistograms;
 
 import javax.net.ssl.*;
 import java.io.*;
@@ -50,6 +51,14 @@ public class IOHelper {
     private static HostnameVerifier TRUSTED_VERIFIER;
     private static String userAgent;
 
+    private static final LatencyHistograms BACKEND_LATENCY = new LatencyHistograms(
+            PropertyUtil.getOptional("oskari.metrics.backend.maxHosts", 100));
+    // when connections created with getConnection() were opened, removed when the response is read.
+    // Kept per thread so requests don't contend on a shared map. Responses are read on the thread
+    // that opened the connection, one read on another thread just isn't recorded.
+    private static final ThreadLocal<Map<HttpURLConnection, Long>> CONNECTION_STARTS =
+            ThreadLocal.withInitial(WeakHashMap::new);
+
     public static int getConnectionTimeoutMs() {
         return PropertyUtil.getOptional("oskari.connection.timeout", 3000);
     }
@@ -112,6 +121,8 @@ public class IOHelper {
             try (InputStream inner = isResponseGZIPd(conn) ? new GZIPInputStream(in) : in) {
                 return readString(inner, charset);
             }
+        } finally {
+            recordBackendLatency(conn);
         }
     }
 
@@ -193,6 +204,8 @@ public class IOHelper {
             try (InputStream inner = isResponseGZIPd(conn) ? new GZIPInputStream(in) : in) {
                 return readBytes(inner);
             }
+        } finally {
+            recordBackendLatency(conn);
         }
     }
 
@@ -206,6 +219,8 @@ public class IOHelper {
             try (InputStream inner = isResponseGZIPd(conn) ? new GZIPInputStream(in) : in) {
                 copy(inner, out);
             }
+        } finally {
+            recordBackendLatency(conn);
         }
     }
 
@@ -213,6 +228,25 @@ public class IOHelper {
         return ENCODING_GZIP.equals(conn.getContentEncoding());
     }
 
+    /**
+     * Time from opening the connection with getConnection() until the response has been read (or failed)
+     * with readString(), readBytes() or readBytesTo(). Includes connecting, sending the request and
+     * waiting for the response. Labeled with the host of the connection.
+     */
+    public static LatencyHistograms getBackendLatency() {
+        return BACKEND_LATENCY;
+    }
+
+    private static void recordBackendLatency(HttpURLConnection conn) {
+        Long start = CONNECTION_STARTS.get().remove(conn);
+        if (start == null) {
+            // not opened with getConnection() so we don't know when the request started
+            return;
+        }
+        URL url = conn.getURL();
+        BACKEND_LATENCY.record(url == null ? null : url.getHost(), System.nanoTime() - start);
+    }
+
     /**
      * Reads the given input stream and returns its contents as a byte array.
      * @param is
@@ -329,6 +363,7 @@ public class IOHelper {
         log.debug("Opening connection to", pUrl);
         final URL url = new URL(pUrl);
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        CONNECTION_STARTS.get().put(conn, System.nanoTime());
         conn.setConnectTimeout(getConnectionTimeoutMs());
         conn.setReadTimeout(getReadTimeoutMs());
         conn.setRequestProperty(HEADER_ACCEPT_CHARSET, CHARSET_UTF8);
@@ -26,6 +26,7 @@ SOFTWARE.
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -1128,57 +1129,79 @@ public class JSONObject implements Serializable {
         if (string == null || string.length() == 0) {
             return "\"\"";
         }
+        StringWriter sw = new StringWriter(string.length() + 4);
+        try {
+            return quote(string, sw).toString();
+        } catch (IOException e) {
+            // StringWriter doesn't throw
+            return "";
+        }
+    }
+
+    /**
+     * Write a string in double quotes with backslash sequences in all the
+     * right places to a writer. Same as quote(String) without building the
+     * quoted string in memory.
+     * @param string A String
+     * @param w The writer
+     * @return The writer.
+     * @throws IOException
+     */
+    public static Writer quote(String string, Writer w) throws IOException {
+        if (string == null || string.length() == 0) {
+            w.write("\"\"");
+            return w;
+        }
 
         char         b;
         char         c = 0;
         int          i;
         int          len = string.length();
-        StringBuffer sb = new StringBuffer(len + 4);
         String       t;
 
-        sb.append('"');
+        w.write('"');
         for (i = 0; i < len; i += 1) {
             b = c;
             c = string.charAt(i);
             switch (c) {
             case '\\':
             case '"':
-                sb.append('\\');
-                sb.append(c);
+                w.write('\\');
+                w.write(c);
                 break;
             case '/':
                 if (b == '<') {
-                    sb.append('\\');
+                    w.write('\\');
                 }
-                sb.append(c);
+                w.write(c);
                 break;
             case '\b':
-                sb.append("\\b");
+                w.write("\\b");
                 break;
             case '\t':
-                sb.append("\\t");
+                w.write("\\t");
                 break;
             case '\n':
-                sb.append("\\n");
+                w.write("\\n");
                 break;
             case '\f':
-                sb.append("\\f");
+                w.write("\\f");
                 break;
             case '\r':
-                sb.append("\\r");
+                w.write("\\r");
                 break;
             default:
                 if (c < ' ' || (c >= '\u0080' && c < '\u00a0') ||
                                (c >= '\u2000' && c < '\u2100')) {
                     t = "000" + Integer.toHexString(c);
-                    sb.append("\\u" + t.substring(t.length() - 4));
+                    w.write("\\u" + t.substring(t.length() - 4));
                 } else {
-                    sb.append(c);
+                    w.write(c);
                 }
             }
         }
-        sb.append('"');
-        return sb.toString();
+        w.write('"');
+        return w;
     }
 
     /**
@@ -1547,16 +1570,9 @@ public class JSONObject implements Serializable {
                     writer.write(',');
                 }
                 Object k = keys.next();
-                writer.write(quote(k.toString()));
+                quote(k.toString(), writer);
                 writer.write(':');
-                Object v = this.map.get(k);
-                if (v instanceof JSONObject) {
-                    ((JSONObject)v).write(writer);
-                } else if (v instanceof JSONArray) {
-                    ((JSONArray)v).write(writer);
-                } else {
-                    writer.write(valueToString(v));
-                }
+                writeValue(writer, this.map.get(k));
                 b = true;
             }
             writer.write('}');
@@ -1565,4 +1581,20 @@ public class JSONObject implements Serializable {
             throw new JSONException(e);
         }
      }
+
+    /**
+     * Write a value as JSON text to a writer. Same as valueToString() but
+     * nested objects, arrays and strings are written directly to the writer.
+     */
+    static void writeValue(Writer writer, Object value) throws JSONException, IOException {
+        if (value instanceof JSONObject) {
+            ((JSONObject)value).write(writer);
+        } else if (value instanceof JSONArray) {
+            ((JSONArray)value).write(writer);
+        } else if (value instanceof String) {
+            quote((String)value, writer);
+        } else {
+            writer.write(valueToString(value));
+        }
+    }
 }
\ No newline at end of file
@@ -4,20 +4,64 @@ import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.OskariRuntimeException;
+import fi.nls.oskari.util.PropertyUtil;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPubSub;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
+/**
+ * Sends and receives messages between cluster nodes with Redis pub/sub.
+ *
+ * Messages sent with sendMessage() are published right away. Messages sent with sendBatched()
+ * are collected for a short window and published as one message per channel. Batches are numbered
+ * per sending node and channel so receivers ignore late or duplicate batches and notify listeners
+ * with onMessagesMissed() when a batch is missing.
+ */
 public class ClusterClient extends JedisPubSub {
 
     private final static Logger LOG = LogFactory.getLogger(ClusterClient.class);
+
+    // time to collect messages for a batch
+    private static final int BATCH_WINDOW_MS = PropertyUtil.getOptional("oskari.cluster.batch.windowms", 50);
+    // max messages in one published batch, larger batches are split
+    private static final int BATCH_MAX_SIZE = PropertyUtil.getOptional("oskari.cluster.batch.maxSize", 500);
+    private static final long RECONNECT_DELAY_MS = 5000;
+
+    protected static final String BATCH_PREFIX = "BATCH ";
+    private static final char BATCH_SEPARATOR = '\n';
+
+    // shared by all clients, a single thread keeps batches in sequence order
+    private static final ScheduledExecutorService SENDER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "oskari-cluster-sender");
+        t.setDaemon(true);
+        return t;
+    });
+
     private ExecutorService service = Executors.newFixedThreadPool(1);
-    private String functionalityId;
+    private final String functionalityId;
+    private final BiFunction<String, String, Long> publisher;
     private Jedis client;
-    private Map<String, List<MessageListener>> listeners = new HashMap<>();
+    private final Map<String, List<MessageListener>> listeners = new ConcurrentHashMap<>();
+    private volatile boolean stopped;
+    private final AtomicInteger subscriptions = new AtomicInteger();
+
+    // messages waiting to be sent by channel, guarded by itself
+    private final Map<String, Set<String>> pending = new LinkedHashMap<>();
+    // guards sending so batches are published in sequence order
+    private final Object sendLock = new Object();
+    // last sequence number sent by channel
+    private final Map<String, Long> sentSequences = new HashMap<>();
+    // last sequence number received by sending node and channel
+    private final Map<String, Long> receivedSequences = new ConcurrentHashMap<>();
 
     /**
      * Same as JedisManager.publish() but this uses the same functionality id <> channel separation as when
@@ -49,11 +93,20 @@ public class ClusterClient extends JedisPubSub {
     }
 
     public ClusterClient(String functionalityId) {
+        this(functionalityId, JedisManager::publish);
+        startListening(getFullChannelPrefix());
+    }
+
+    /**
+     * For tests: publishes messages with the given function and doesn't subscribe to Redis
+     * @param publisher called with channel and message
+     */
+    ClusterClient(String functionalityId, BiFunction<String, String, Long> publisher) {
         if (functionalityId == null) {
             throw new OskariRuntimeException("Requires functionalityId");
         }
         this.functionalityId = functionalityId;
-        startListening(getFullChannelPrefix());
+        this.publisher = publisher;
     }
 
     /**
@@ -62,7 +115,7 @@ public class ClusterClient extends JedisPubSub {
      * @param listener
      */
     public void addListener(String channel, MessageListener listener) {
-        List<MessageListener> existingListeners = listeners.computeIfAbsent(channel, key -> new ArrayList<>());
+        List<MessageListener> existingListeners = listeners.computeIfAbsent(channel, key -> new CopyOnWriteArrayList<>());
         existingListeners.add(listener);
     }
 
@@ -76,22 +129,69 @@ public class ClusterClient extends JedisPubSub {
         return ClusterClient.sendMessage(functionalityId, channel, message);
     }
 
+    /**
+     * Queues the message to be sent with other messages to the same channel within
+     * "oskari.cluster.batch.windowms" (defaults to 50ms). Meant for messages that can be repeated
+     * without side-effects like cache invalidations: a message queued more than once within the window
+     * is sent once. Listeners receive the batch with MessageListener.onMessages().
+     * @param channel
+     * @param message
+     */
+    public void sendBatched(String channel, String message) {
+        final boolean schedule;
+        synchronized (pending) {
+            schedule = pending.isEmpty();
+            pending.computeIfAbsent(channel, key -> new LinkedHashSet<>()).add(message);
+        }
+        if (schedule) {
+            SENDER.schedule(this::sendPending, BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Publishes messages queued with sendBatched()
+     */
+    void sendPending() {
+        synchronized (sendLock) {
+            final Map<String, Set<String>> batches;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batches = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+            for (Map.Entry<String, Set<String>> batch : batches.entrySet()) {
+                final String channel = batch.getKey();
+                final List<String> messages = new ArrayList<>(batch.getValue());
+                for (int i = 0; i < messages.size(); i += BATCH_MAX_SIZE) {
+                    final long sequence = sentSequences.merge(channel, 1L, Long::sum);
+                    final String data = encodeBatch(sequence, messages.subList(i, Math.min(messages.size(), i + BATCH_MAX_SIZE)));
+                    // if publishing fails receivers notice the missing batch from the next sequence number
+                    publisher.apply(getChannel(functionalityId, channel), ClusterManager.createClusterMsg(data));
+                }
+            }
+        }
+    }
+
     /**
      * Removes listeners and closes connection to Redis. A "destroy"/cleanup method and you can't use the subscriber
      * after calling this.
      */
     public void stopListening() {
+        stopped = true;
+        sendPending();
         listeners.clear();
         try {
             // shutdown thread so it's not reconnecting
-            service.shutdown();
+            service.shutdownNow();
         } catch (Exception ignored) {
             LOG.ignore("Error shutting down listener thread", ignored);
         }
         try {
             // unsubscribe from Redis
             // closes the client it was passed as well
-            this.unsubscribe();
+            this.punsubscribe();
         } catch (Exception ignored) {
             LOG.ignore("Error unsubscribing while shutting down", ignored);
         }
@@ -109,10 +209,104 @@ public class ClusterClient extends JedisPubSub {
         if (channel == null || msg == null) {
             return;
         }
-        LOG.debug("Got message:", msg);
-        getListeners(channel)
-            .stream()
-            .forEach(l -> l.onMessage(msg));
+        final List<MessageListener> channelListeners = getListeners(channel);
+        if (!msg.startsWith(BATCH_PREFIX)) {
+            LOG.debug("Got message:", msg);
+            channelListeners.forEach(l -> l.onMessage(msg));
+            return;
+        }
+        // the message is prefixed with the id of the sending node
+        final String sender = data.substring(0, data.length() - msg.length() - 1);
+        handleBatch(sender, channel, msg, channelListeners);
+    }
+
+    /**
+     * Not meant to be overridden. It's just a method we are overriding from JedisPubSub.
+     * @param pattern
+     * @param subscribedChannels
+     */
+    @Override
+    public void onPSubscribe(String pattern, int subscribedChannels) {
+        if (subscriptions.incrementAndGet() > 1) {
+            // messages sent while reconnecting were lost
+            LOG.info("Resubscribed to", pattern, "- messages might have been missed");
+            listeners.values().forEach(list -> list.forEach(MessageListener::onMessagesMissed));
+        }
+    }
+
+    private void handleBatch(String sender, String channel, String batch, List<MessageListener> channelListeners) {
+        final int headerEnd = batch.indexOf(BATCH_SEPARATOR);
+        final long sequence;
+        try {
+            sequence = Long.parseLong(batch.substring(BATCH_PREFIX.length(), headerEnd == -1 ? batch.length() : headerEnd));
+        } catch (NumberFormatException e) {
+            LOG.warn("Cluster protocol error. Invalid batch:", batch);
+            return;
+        }
+        // messages are received on the subscriber thread so there's no need to synchronize
+        final String senderChannel = sender + "_" + channel;
+        final Long previous = receivedSequences.get(senderChannel);
+        if (previous != null && sequence <= previous) {
+            LOG.debug("Ignoring late or duplicate batch", sequence, "on", channel);
+            return;
+        }
+        receivedSequences.put(senderChannel, sequence);
+        // first batch from a node can have any sequence number since this node might have started after it
+        if (previous != null && sequence > previous + 1) {
+            LOG.info("Missed", sequence - previous - 1, "batches on", channel);
+            channelListeners.forEach(MessageListener::onMessagesMissed);
+            return;
+        }
+        final List<String> messages = decodeBatch(batch, headerEnd);
+        LOG.debug("Got", messages.size(), "messages on", channel);
+        channelListeners.forEach(l -> l.onMessages(messages));
+    }
+
+    /**
+     * Batch is "BATCH [sequence]" followed by the messages on separate lines. Newlines and
+     * backslashes in messages are escaped.
+     */
+    static String encodeBatch(long sequence, List<String> messages) {
+        final StringBuilder batch = new StringBuilder(BATCH_PREFIX).append(sequence);
+        for (String msg : messages) {
+            batch.append(BATCH_SEPARATOR);
+            for (int i = 0; i < msg.length(); i++) {
+                char c = msg.charAt(i);
+                if (c == '\\') {
+                    batch.append("\\\\");
+                } else if (c == BATCH_SEPARATOR) {
+                    batch.append("\\n");
+                } else {
+                    batch.append(c);
+                }
+            }
+        }
+        return batch.toString();
+    }
+
+    /**
+     * @param headerEnd index of the separator after sequence number, -1 if the batch has no messages
+     */
+    static List<String> decodeBatch(String batch, int headerEnd) {
+        final List<String> messages = new ArrayList<>();
+        if (headerEnd == -1) {
+            return messages;
+        }
+        final StringBuilder msg = new StringBuilder();
+        for (int i = headerEnd + 1; i < batch.length(); i++) {
+            char c = batch.charAt(i);
+            if (c == BATCH_SEPARATOR) {
+                messages.add(msg.toString());
+                msg.setLength(0);
+            } else if (c == '\\' && i + 1 < batch.length()) {
+                i++;
+                msg.append(batch.charAt(i) == 'n' ? BATCH_SEPARATOR : batch.charAt(i));
+            } else {
+                msg.append(c);
+            }
+        }
+        messages.add(msg.toString());
+        return messages;
     }
 
     private String getFullChannelPrefix() {
@@ -129,19 +323,29 @@ public class ClusterClient extends JedisPubSub {
     }
 
     private void startListening(String prefix) {
-        // if subscribe raises en exception the Thread will end
-        // and the executor will execute the next task -> reconnecting the client
+        // if subscribe raises an exception wait for a while and reconnect
+        // listeners are notified about missed messages in onPSubscribe()
         service.execute(() -> {
-            try (Jedis jedis = createClient())  {
-                LOG.info("Subscribing to all channels starting with", prefix);
-                // Subscribe is a blocking action hence the thread
-                // Also we don't care about pooling here since
-                // the client remains blocked for subscription
-                jedis.psubscribe(this, prefix + "*");
-            } catch (Exception e) {
-                LOG.error(e,"Problem listening to channel:", prefix);
-            } finally {
-                client = null;
+            while (!stopped) {
+                try (Jedis jedis = createClient()) {
+                    LOG.info("Subscribing to all channels starting with", prefix);
+                    // Subscribe is a blocking action hence the thread
+                    // Also we don't care about pooling here since
+                    // the client remains blocked for subscription
+                    jedis.psubscribe(this, prefix + "*");
+                } catch (Exception e) {
+                    LOG.error(e, "Problem listening to channel:", prefix);
+                } finally {
+                    client = null;
+                }
+                if (stopped) {
+                    return;
+                }
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
             }
         });
     }
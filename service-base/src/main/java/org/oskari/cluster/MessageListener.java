@@ -1,6 +1,25 @@
 package org.oskari.cluster;
 
+import java.util.List;
+
 @FunctionalInterface
 public interface MessageListener {
     void onMessage(String msg);
+
+    /**
+     * Called with the messages of a batch sent with ClusterClient.sendBatched().
+     * Override to handle the messages in one go instead of one by one.
+     * @param messages messages in the order they were queued by the sender
+     */
+    default void onMessages(List<String> messages) {
+        messages.forEach(this::onMessage);
+    }
+
+    /**
+     * Called when messages might have been missed: a batch didn't arrive or the connection to Redis
+     * was lost for a while. Listeners that keep state based on messages (like caches) should reset it.
+     */
+    default void onMessagesMissed() {
+        // nothing to do by default
+    }
 }
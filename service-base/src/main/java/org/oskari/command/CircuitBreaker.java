@@ -0,0 +1,124 @@
+package org.oskari.command;
+
+/**
+ * Stops calling a failing service for a while so it has time to recover and callers fail fast.
+ *
+ * The circuit opens when at least requestVolumeThreshold requests have been made in the rolling
+ * window and errorThresholdPercentage of them failed. After sleepWindowMs one request is let through:
+ * if it succeeds the circuit closes, otherwise it stays open for another sleep window.
+ *
+ * The rolling window is split to buckets so old results are dropped gradually.
+ */
+public class CircuitBreaker {
+
+    private static final int BUCKETS = 10;
+
+    public enum Permit {
+        // circuit is open
+        DENIED,
+        // circuit is closed
+        ALLOWED,
+        // the one request let through while the circuit is open
+        TRIAL
+    }
+
+    private final int requestVolumeThreshold;
+    private final int errorThresholdPercentage;
+    private final long bucketMs;
+    private final long sleepWindowMs;
+
+    private final int[] successes = new int[BUCKETS];
+    private final int[] errors = new int[BUCKETS];
+    private long currentBucket;
+    // time the circuit was opened or last trial request was let through, 0 when closed
+    private long openedAt;
+    private boolean trialRunning;
+
+    public CircuitBreaker(CommandSettings settings) {
+        this.requestVolumeThreshold = settings.getRequestVolumeThreshold();
+        this.errorThresholdPercentage = settings.getErrorThresholdPercentage();
+        this.bucketMs = Math.max(1, settings.getRollingWindowMs() / BUCKETS);
+        this.sleepWindowMs = settings.getSleepWindowMs();
+    }
+
+    /**
+     * @return DENIED if the circuit is open, TRIAL if the request is let through to test the service
+     * after the sleep window and ALLOWED if the circuit is closed. The permit is passed to markSuccess()/markError().
+     */
+    public synchronized Permit allowRequest() {
+        if (openedAt == 0) {
+            return Permit.ALLOWED;
+        }
+        long now = System.currentTimeMillis();
+        if (!trialRunning && now - openedAt >= sleepWindowMs) {
+            trialRunning = true;
+            openedAt = now;
+            return Permit.TRIAL;
+        }
+        return Permit.DENIED;
+    }
+
+    public synchronized boolean isOpen() {
+        return openedAt != 0;
+    }
+
+    public synchronized void markSuccess(Permit permit) {
+        if (permit == Permit.TRIAL) {
+            reset();
+            return;
+        }
+        if (openedAt != 0) {
+            // started before the circuit opened, only the trial request can close it
+            return;
+        }
+        successes[bucket()]++;
+    }
+
+    public synchronized void markError(Permit permit) {
+        if (permit == Permit.TRIAL) {
+            // start another sleep window
+            trialRunning = false;
+            openedAt = System.currentTimeMillis();
+            return;
+        }
+        if (openedAt != 0) {
+            return;
+        }
+        errors[bucket()]++;
+        int total = 0;
+        int failed = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += successes[i] + errors[i];
+            failed += errors[i];
+        }
+        if (total >= requestVolumeThreshold && failed * 100 >= errorThresholdPercentage * total) {
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    private void reset() {
+        openedAt = 0;
+        trialRunning = false;
+        for (int i = 0; i < BUCKETS; i++) {
+            successes[i] = 0;
+            errors[i] = 0;
+        }
+    }
+
+    /**
+     * @return index of the bucket for current time, clearing buckets that have fallen out of the window
+     */
+    private int bucket() {
+        long bucket = System.currentTimeMillis() / bucketMs;
+        if (bucket != currentBucket) {
+            long expired = Math.min(BUCKETS, bucket - currentBucket);
+            for (long i = 1; i <= expired; i++) {
+                int index = (int) ((currentBucket + i) % BUCKETS);
+                successes[index] = 0;
+                errors[index] = 0;
+            }
+            currentBucket = bucket;
+        }
+        return (int) (bucket % BUCKETS);
+    }
+}
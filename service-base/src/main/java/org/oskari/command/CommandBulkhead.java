@@ -0,0 +1,106 @@
+package org.oskari.command;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits concurrent executions for a command group so a slow service can't use up all the threads.
+ * Executions beyond the limit wait in a bounded queue. Waiting tasks don't use a thread: they are
+ * handed to the executor when a permit is released.
+ */
+public class CommandBulkhead {
+
+    private final String name;
+    private final int concurrency;
+    private final int queueSize;
+    private final Semaphore permits;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public CommandBulkhead(String name, int concurrency, int queueSize) {
+        this.name = name;
+        this.concurrency = concurrency;
+        this.queueSize = queueSize;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Runs the task on the executor when a permit is available. The task must call release() when done.
+     * @return false if rejected because the queue is full
+     */
+    public boolean submit(Runnable task, Executor executor) {
+        if (permits.tryAcquire()) {
+            executor.execute(task);
+            return true;
+        }
+        if (queued.incrementAndGet() > queueSize) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        pending.add(task);
+        // a permit might have been released while queueing
+        drain(executor);
+        return true;
+    }
+
+    /**
+     * Waits on the caller's thread for a permit. The caller counts towards the queue while waiting.
+     * The caller must call release() when done.
+     * @return false if rejected because the queue is full or no permit was released in time
+     */
+    public boolean acquire(long timeoutMs) throws InterruptedException {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > queueSize) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void release(Executor executor) {
+        permits.release();
+        drain(executor);
+    }
+
+    private void drain(Executor executor) {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Runnable task = pending.poll();
+            if (task == null) {
+                permits.release();
+                return;
+            }
+            queued.decrementAndGet();
+            executor.execute(task);
+        }
+    }
+
+    public int getActiveCount() {
+        return concurrency - permits.availablePermits();
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,35 @@
+package org.oskari.command;
+
+/**
+ * Thrown when an OskariCommand fails and it doesn't have a fallback (or the fallback fails)
+ */
+public class CommandException extends RuntimeException {
+
+    public enum FailureType {
+        // run() threw an exception
+        COMMAND_EXCEPTION,
+        // run() didn't complete in time
+        TIMEOUT,
+        // circuit is open because of earlier failures
+        SHORTCIRCUIT,
+        // too many concurrent executions for the command group
+        REJECTED
+    }
+
+    private final FailureType failureType;
+    private final String commandKey;
+
+    public CommandException(FailureType failureType, String commandKey, String message, Throwable cause) {
+        super(message, cause);
+        this.failureType = failureType;
+        this.commandKey = commandKey;
+    }
+
+    public FailureType getFailureType() {
+        return failureType;
+    }
+
+    public String getCommandKey() {
+        return commandKey;
+    }
+}
@@ -0,0 +1,86 @@
+package org.oskari.command;
+
+import org.oskari.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution counters and latency for a command key
+ */
+public class CommandMetrics {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder fallbackSuccesses = new LongAdder();
+    private final LongAdder fallbackFailures = new LongAdder();
+
+    void markSuccess(long nanos) {
+        successes.increment();
+        latency.record(nanos);
+    }
+
+    void markFailure(CommandException.FailureType type, long nanos) {
+        switch (type) {
+            case TIMEOUT:
+                timeouts.increment();
+                latency.record(nanos);
+                break;
+            case SHORTCIRCUIT:
+                shortCircuited.increment();
+                break;
+            case REJECTED:
+                rejected.increment();
+                break;
+            default:
+                failures.increment();
+                latency.record(nanos);
+        }
+    }
+
+    void markFallback(boolean success) {
+        if (success) {
+            fallbackSuccesses.increment();
+        } else {
+            fallbackFailures.increment();
+        }
+    }
+
+    /**
+     * @return time spent in run() for completed, failed and timed out executions
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getShortCircuitedCount() {
+        return shortCircuited.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getFallbackSuccessCount() {
+        return fallbackSuccesses.sum();
+    }
+
+    public long getFallbackFailureCount() {
+        return fallbackFailures.sum();
+    }
+}
@@ -0,0 +1,105 @@
+package org.oskari.command;
+
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Settings for OskariCommand. Defaults are read from properties with a prefix:
+ * - [prefix].job.pool.size: concurrent executions for the command group (defaults to 10)
+ * - [prefix].job.pool.queue: executions waiting for their turn before rejecting new ones (defaults to 100)
+ * - [prefix].job.pool.limit: upper bound for job.pool.queue, the smaller one is used (defaults to 100)
+ * - [prefix].job.timeoutms: execution timeout (defaults to 15000)
+ * - [prefix].failrequests: requests in the window before the circuit can open (defaults to 5)
+ * - [prefix].failpercentage: percentage of failed requests that opens the circuit (defaults to 50)
+ * - [prefix].rollingwindow: window for counting failed requests in ms (defaults to 100000)
+ * - [prefix].sleepwindow: time the circuit stays open before trying again in ms (defaults to 20000)
+ *
+ * For example prefix "oskari.wfs" reads "oskari.wfs.job.timeoutms".
+ */
+public class CommandSettings {
+
+    private int concurrency = 10;
+    private int queueSize = 100;
+    private int timeoutMs = 15000;
+    private int requestVolumeThreshold = 5;
+    private int errorThresholdPercentage = 50;
+    private int rollingWindowMs = 100000;
+    private int sleepWindowMs = 20000;
+
+    public static CommandSettings fromProperties(String prefix) {
+        CommandSettings settings = new CommandSettings();
+        settings.concurrency = PropertyUtil.getOptional(prefix + ".job.pool.size", settings.concurrency);
+        // Hystrix had both a hard queue limit and a rejection threshold, keep the limit working for existing configs
+        settings.queueSize = Math.min(
+                PropertyUtil.getOptional(prefix + ".job.pool.queue", settings.queueSize),
+                PropertyUtil.getOptional(prefix + ".job.pool.limit", settings.queueSize));
+        settings.timeoutMs = PropertyUtil.getOptional(prefix + ".job.timeoutms", settings.timeoutMs);
+        settings.requestVolumeThreshold = PropertyUtil.getOptional(prefix + ".failrequests", settings.requestVolumeThreshold);
+        settings.errorThresholdPercentage = PropertyUtil.getOptional(prefix + ".failpercentage", settings.errorThresholdPercentage);
+        settings.rollingWindowMs = PropertyUtil.getOptional(prefix + ".rollingwindow", settings.rollingWindowMs);
+        settings.sleepWindowMs = PropertyUtil.getOptional(prefix + ".sleepwindow", settings.sleepWindowMs);
+        return settings;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public CommandSettings withConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public CommandSettings withQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public CommandSettings withTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    public int getRequestVolumeThreshold() {
+        return requestVolumeThreshold;
+    }
+
+    public CommandSettings withRequestVolumeThreshold(int requestVolumeThreshold) {
+        this.requestVolumeThreshold = requestVolumeThreshold;
+        return this;
+    }
+
+    public int getErrorThresholdPercentage() {
+        return errorThresholdPercentage;
+    }
+
+    public CommandSettings withErrorThresholdPercentage(int errorThresholdPercentage) {
+        this.errorThresholdPercentage = errorThresholdPercentage;
+        return this;
+    }
+
+    public int getRollingWindowMs() {
+        return rollingWindowMs;
+    }
+
+    public CommandSettings withRollingWindowMs(int rollingWindowMs) {
+        this.rollingWindowMs = rollingWindowMs;
+        return this;
+    }
+
+    public int getSleepWindowMs() {
+        return sleepWindowMs;
+    }
+
+    public CommandSettings withSleepWindowMs(int sleepWindowMs) {
+        this.sleepWindowMs = sleepWindowMs;
+        return this;
+    }
+}
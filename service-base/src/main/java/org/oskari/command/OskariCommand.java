@@ -0,0 +1,409 @@
+package org.oskari.command;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs calls to external services with a timeout, a bulkhead limiting concurrent calls per
+ * command group, a circuit breaker per command key and an optional fallback.
+ *
+ * Subclasses implement run() and optionally hasFallback() and getFallback(). A command instance
+ * can be executed once:
+ * - execute() runs the command on a shared executor and waits for the result
+ * - queue() runs the command on a shared executor and returns a Future for the result
+ * - executeOnCallerThread() runs the command on the caller's thread and interrupts it on timeout
+ *
+ * Use execute() or queue() when the caller needs a hard bound on how long it waits, for example
+ * a request thread calling a service with blocking socket reads. executeOnCallerThread() saves the
+ * hand-off to another thread and suits callers that can wait until run() notices the interrupt,
+ * for example background jobs or run() implementations with their own connect/read timeouts.
+ *
+ * When the command fails, times out, is rejected by the bulkhead or the circuit is open,
+ * the result of getFallback() is returned. Without a fallback a CommandException is thrown
+ * (wrapped in ExecutionException for queue()).
+ *
+ * The shared executor uses virtual threads when "oskari.command.virtualThreads=true" and
+ * the JVM supports them.
+ */
+public abstract class OskariCommand<T> {
+
+    private static final Logger LOG = LogFactory.getLogger(OskariCommand.class);
+
+    private static final int MAX_METRICS = PropertyUtil.getOptional("oskari.command.metrics.maxKeys", 1000);
+    private static final String OTHER = "other";
+
+    private static final Map<String, CommandBulkhead> BULKHEADS = new ConcurrentHashMap<>();
+    private static final Map<String, CircuitBreaker> CIRCUITS = new ConcurrentHashMap<>();
+    private static final Map<String, CommandMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+    private static final int STATE_NEW = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_DONE = 2;
+    private static final int STATE_TIMED_OUT = 3;
+    private static final int STATE_INTERRUPTED = 4;
+
+    private final String key;
+    private final CommandSettings settings;
+    private final CommandBulkhead bulkhead;
+    private final CircuitBreaker circuit;
+    private final CommandMetrics metrics;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicInteger state = new AtomicInteger(STATE_NEW);
+    private CircuitBreaker.Permit permit;
+    private CompletableFuture<T> future;
+    private ScheduledFuture<?> timer;
+    private long submitted;
+    private volatile Thread worker;
+
+    /**
+     * @param group commands in the same group share the bulkhead, settings for the bulkhead are
+     *              taken from the first command created for the group
+     * @param key identifies the service for circuit breaking and metrics
+     * @param settings
+     */
+    protected OskariCommand(String group, String key, CommandSettings settings) {
+        this.key = group + ":" + key;
+        this.settings = settings;
+        this.bulkhead = BULKHEADS.computeIfAbsent(group,
+                name -> new CommandBulkhead(name, settings.getConcurrency(), settings.getQueueSize()));
+        this.circuit = CIRCUITS.computeIfAbsent(this.key, __ -> new CircuitBreaker(settings));
+        this.metrics = getMetricsFor(this.key);
+    }
+
+    /**
+     * Calls the external service
+     */
+    protected abstract T run() throws Exception;
+
+    /**
+     * Override to return true when the command has a fallback
+     */
+    protected boolean hasFallback() {
+        return false;
+    }
+
+    /**
+     * Override with hasFallback() to return a value when run() fails or can't be called
+     */
+    protected T getFallback() {
+        return null;
+    }
+
+    /**
+     * @return group:key for the command
+     */
+    public String getCommandKey() {
+        return key;
+    }
+
+    public boolean isCircuitBreakerOpen() {
+        return circuit.isOpen();
+    }
+
+    /**
+     * Runs the command on the shared executor and waits for the result. The caller's thread is never
+     * interrupted by the command: on timeout the result is returned even if run() is stuck in
+     * a call that doesn't react to interrupts (like a blocking socket read).
+     * @return result of run() or getFallback()
+     * @throws CommandException if the command fails and there's no fallback
+     */
+    public T execute() {
+        final Future<T> future = queue();
+        try {
+            try {
+                return future.get(settings.getTimeoutMs(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // the timer might be late, time out here so the wait stays bounded
+                onTimeout();
+                return future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CommandException(CommandException.FailureType.COMMAND_EXCEPTION, key, key + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            onTimeout();
+            throw new CommandException(CommandException.FailureType.TIMEOUT, key, key + " was interrupted", e);
+        }
+    }
+
+    /**
+     * Runs the command on the caller's thread. The timeout includes the time waiting for the bulkhead.
+     * On timeout the caller's thread is interrupted and the timeout result is returned once run()
+     * returns, so the wait isn't bounded when run() doesn't react to interrupts. The interrupt is
+     * cleared before returning.
+     * @return result of run() or getFallback()
+     * @throws CommandException if the command fails and there's no fallback
+     */
+    public T executeOnCallerThread() {
+        markStarted();
+        permit = circuit.allowRequest();
+        if (permit == CircuitBreaker.Permit.DENIED) {
+            return onFailure(CommandException.FailureType.SHORTCIRCUIT, null, 0);
+        }
+        this.submitted = System.nanoTime();
+        try {
+            if (!bulkhead.acquire(settings.getTimeoutMs())) {
+                final long waited = System.nanoTime() - submitted;
+                final boolean timedOut = TimeUnit.NANOSECONDS.toMillis(waited) >= settings.getTimeoutMs();
+                return onFailure(timedOut ? CommandException.FailureType.TIMEOUT : CommandException.FailureType.REJECTED,
+                        null, waited);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return onFailure(CommandException.FailureType.REJECTED, e, 0);
+        }
+        try {
+            worker = Thread.currentThread();
+            state.set(STATE_RUNNING);
+            final long start = System.nanoTime();
+            final long remaining = settings.getTimeoutMs() - TimeUnit.NANOSECONDS.toMillis(start - submitted);
+            timer = TIMER.schedule(() -> {
+                interruptWorker();
+            }, Math.max(0, remaining), TimeUnit.MILLISECONDS);
+            T result = null;
+            Exception error = null;
+            try {
+                result = run();
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                timer.cancel(false);
+                finish();
+            }
+            final long nanos = System.nanoTime() - start;
+            if (state.get() != STATE_DONE) {
+                return onFailure(CommandException.FailureType.TIMEOUT, error, nanos);
+            }
+            if (error != null) {
+                return onFailure(CommandException.FailureType.COMMAND_EXCEPTION, error, nanos);
+            }
+            onSuccess(nanos);
+            return result;
+        } finally {
+            worker = null;
+            bulkhead.release(EXECUTOR);
+        }
+    }
+
+    /**
+     * Runs the command on the shared executor. The timeout includes the time waiting in the bulkhead queue.
+     * On timeout the future is completed right away and the thread running the command is interrupted.
+     * @return future for the result of run() or getFallback()
+     */
+    public Future<T> queue() {
+        markStarted();
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        permit = circuit.allowRequest();
+        if (permit == CircuitBreaker.Permit.DENIED) {
+            complete(future, () -> onFailure(CommandException.FailureType.SHORTCIRCUIT, null, 0));
+            return future;
+        }
+        this.future = future;
+        this.submitted = System.nanoTime();
+        this.timer = TIMER.schedule(this::onTimeout, settings.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        if (!bulkhead.submit(this::runQueued, EXECUTOR)) {
+            timer.cancel(false);
+            if (state.compareAndSet(STATE_NEW, STATE_DONE)) {
+                complete(future, () -> onFailure(CommandException.FailureType.REJECTED, null, 0));
+            }
+        }
+        return future;
+    }
+
+    private void runQueued() {
+        try {
+            worker = Thread.currentThread();
+            if (!state.compareAndSet(STATE_NEW, STATE_RUNNING)) {
+                // timed out while waiting in the queue
+                return;
+            }
+            final long start = System.nanoTime();
+            T result = null;
+            Exception error = null;
+            try {
+                result = run();
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                timer.cancel(false);
+                finish();
+            }
+            if (state.get() != STATE_DONE) {
+                // future was completed on timeout
+                return;
+            }
+            final long nanos = System.nanoTime() - start;
+            if (error != null) {
+                final Exception cause = error;
+                complete(future, () -> onFailure(CommandException.FailureType.COMMAND_EXCEPTION, cause, nanos));
+            } else {
+                onSuccess(nanos);
+                future.complete(result);
+            }
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            worker = null;
+            bulkhead.release(EXECUTOR);
+        }
+    }
+
+    /**
+     * Called by the timer (or execute() if the timer is late). Completes the future with the timeout
+     * result if the command is still queued or running. A running command is interrupted.
+     */
+    private void onTimeout() {
+        if (state.compareAndSet(STATE_NEW, STATE_TIMED_OUT)) {
+            // still queued, runQueued() will skip run()
+        } else if (!interruptWorker()) {
+            // completed or already timed out
+            return;
+        }
+        // fallbacks are expected to be cheap so running it on the timer thread is fine
+        complete(future, () -> onFailure(CommandException.FailureType.TIMEOUT, null, System.nanoTime() - submitted));
+    }
+
+    /**
+     * @return true if run() was still running and the thread running it was interrupted
+     */
+    private boolean interruptWorker() {
+        if (!state.compareAndSet(STATE_RUNNING, STATE_TIMED_OUT)) {
+            return false;
+        }
+        worker.interrupt();
+        state.set(STATE_INTERRUPTED);
+        return true;
+    }
+
+    /**
+     * Called after run() on the thread that ran it
+     */
+    private void finish() {
+        if (state.compareAndSet(STATE_RUNNING, STATE_DONE)) {
+            return;
+        }
+        // timed out, wait for the timer to interrupt this thread so the interrupt can be cleared
+        while (state.get() != STATE_INTERRUPTED) {
+            Thread.yield();
+        }
+        Thread.interrupted();
+    }
+
+    private void markStarted() {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("Command instance can only be executed once");
+        }
+    }
+
+    private void onSuccess(long nanos) {
+        metrics.markSuccess(nanos);
+        circuit.markSuccess(permit);
+    }
+
+    private T onFailure(CommandException.FailureType type, Throwable cause, long nanos) {
+        metrics.markFailure(type, nanos);
+        if (type != CommandException.FailureType.SHORTCIRCUIT) {
+            circuit.markError(permit);
+        }
+        final String message = key + " failed: " + type;
+        LOG.debug(message, cause == null ? "" : cause.getMessage());
+        if (!hasFallback()) {
+            throw new CommandException(type, key, message, cause);
+        }
+        final T fallback;
+        try {
+            fallback = getFallback();
+        } catch (RuntimeException e) {
+            metrics.markFallback(false);
+            throw new CommandException(type, key, message + " and fallback failed", cause);
+        }
+        metrics.markFallback(true);
+        return fallback;
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, Supplier<T> result) {
+        try {
+            future.complete(result.get());
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static CommandMetrics getMetricsFor(String key) {
+        CommandMetrics metrics = METRICS.get(key);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (METRICS.size() >= MAX_METRICS) {
+            // keys can be URLs so limit the amount of metrics
+            return METRICS.computeIfAbsent(OTHER, __ -> new CommandMetrics());
+        }
+        return METRICS.computeIfAbsent(key, __ -> new CommandMetrics());
+    }
+
+    /**
+     * @return metrics by group:key sorted by key
+     */
+    public static Map<String, CommandMetrics> getMetrics() {
+        return new TreeMap<>(METRICS);
+    }
+
+    /**
+     * @return bulkheads by group sorted by group
+     */
+    public static Map<String, CommandBulkhead> getBulkheads() {
+        return new TreeMap<>(BULKHEADS);
+    }
+
+    private static ExecutorService createExecutor() {
+        if (PropertyUtil.getOptional("oskari.command.virtualThreads", false)) {
+            try {
+                // Java 21+
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception e) {
+                LOG.warn("Virtual threads are not available, using platform threads for commands");
+            }
+        }
+        // the number of threads is limited by the bulkheads
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "oskari-command-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "oskari-command-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        // most commands complete before timeout
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
@@ -0,0 +1,46 @@
+package org.oskari.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency histograms keyed by a label value (like action route or backend host).
+ * The number of label values is limited so unexpected values (like hosts from user input)
+ * can't grow the memory usage and the scrape output without bounds. Values recorded after
+ * the limit has been reached (or without a label) are recorded with label value "other" ({@link #OTHER}).
+ */
+public class LatencyHistograms {
+
+    public static final String OTHER = "other";
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final int maxLabels;
+
+    public LatencyHistograms(int maxLabels) {
+        this.maxLabels = maxLabels;
+    }
+
+    public void record(String label, long nanos) {
+        get(label).record(nanos);
+    }
+
+    public LatencyHistogram get(String label) {
+        LatencyHistogram histogram = histograms.get(label);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (label == null || histograms.size() >= maxLabels) {
+            label = OTHER;
+        }
+        return histograms.computeIfAbsent(label, __ -> new LatencyHistogram());
+    }
+
+    /**
+     * @return histograms sorted by label value
+     */
+    public Map<String, LatencyHistogram> getAll() {
+        return new TreeMap<>(histograms);
+    }
+}
@@ -0,0 +1,130 @@
+package org.oskari.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4) that is also
+ * accepted by OpenMetrics scrapers.
+ * See https://prometheus.io/docs/instrumenting/exposition_formats/
+ */
+public class PrometheusTextWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String[] BUCKET_LABELS = new String[LatencyHistogram.BUCKETS.length + 1];
+    static {
+        for (int i = 0; i < LatencyHistogram.BUCKETS.length; i++) {
+            BUCKET_LABELS[i] = Double.toString(LatencyHistogram.BUCKETS[i]);
+        }
+        BUCKET_LABELS[LatencyHistogram.BUCKETS.length] = "+Inf";
+    }
+
+    private final Writer out;
+
+    public PrometheusTextWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void writeHeader(String name, String type, String help) throws IOException {
+        out.write("# HELP ");
+        out.write(name);
+        out.write(' ');
+        out.write(escapeHelp(help));
+        out.write("\n# TYPE ");
+        out.write(name);
+        out.write(' ');
+        out.write(type);
+        out.write('\n');
+    }
+
+    /**
+     * Writes a sample with a single label
+     */
+    public void writeSample(String name, String labelName, String labelValue, double value) throws IOException {
+        out.write(name);
+        out.write('{');
+        writeLabel(labelName, labelValue);
+        out.write("} ");
+        writeValue(value);
+        out.write('\n');
+    }
+
+    /**
+     * Writes a sample with two labels
+     */
+    public void writeSample(String name, String labelName, String labelValue,
+                            String label2Name, String label2Value, double value) throws IOException {
+        out.write(name);
+        out.write('{');
+        writeLabel(labelName, labelValue);
+        out.write(',');
+        writeLabel(label2Name, label2Value);
+        out.write("} ");
+        writeValue(value);
+        out.write('\n');
+    }
+
+    public void writeSample(String name, double value) throws IOException {
+        out.write(name);
+        out.write(' ');
+        writeValue(value);
+        out.write('\n');
+    }
+
+    /**
+     * Writes all the histograms as one metric family with label values from the map keys
+     */
+    public void writeHistograms(String name, String help, String labelName, Map<String, LatencyHistogram> histograms)
+            throws IOException {
+        writeHeader(name, "histogram", help);
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            String labelValue = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            long[] counts = histogram.getCumulativeCounts();
+            for (int i = 0; i < counts.length; i++) {
+                out.write(name);
+                out.write("_bucket{");
+                writeLabel(labelName, labelValue);
+                out.write(",le=\"");
+                out.write(BUCKET_LABELS[i]);
+                out.write("\"} ");
+                out.write(Long.toString(counts[i]));
+                out.write('\n');
+            }
+            writeSample(name + "_sum", labelName, labelValue, histogram.getSumSeconds());
+            // use the +Inf bucket so _count always matches the buckets
+            writeSample(name + "_count", labelName, labelValue, counts[counts.length - 1]);
+        }
+    }
+
+    private void writeLabel(String labelName, String labelValue) throws IOException {
+        out.write(labelName);
+        out.write("=\"");
+        out.write(escapeLabelValue(labelValue));
+        out.write('"');
+    }
+
+    private void writeValue(double value) throws IOException {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            out.write(Long.toString((long) value));
+        } else {
+            out.write(Double.toString(value));
+        }
+    }
+
+    protected static String escapeLabelValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf('\\') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
@@ -6,8 +6,12 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import org.oskari.cluster.ClusterManager;
 
+import java.util.Arrays;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 
@@ -43,4 +47,34 @@ public class CacheClusterTest {
         // but not trigger another notify for cluster
         Mockito.verify(cache, never()).remove(cacheKey);
     }
+
+    @Test
+    public void testClusterMsgsRemoveInBulk() {
+        Cache<String> cache = spy(Cache.class);
+        cache.setName("Clustered");
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        cache.handleClusterMsgs(Arrays.asList(
+                Cache.CLUSTER_CMD_REMOVE_PREFIX + "key1",
+                Cache.CLUSTER_CMD_REMOVE_PREFIX + "key5",
+                Cache.CLUSTER_CMD_REMOVE_PREFIX + "missing"));
+        assertEquals(8, cache.getSize());
+        assertNull(cache.get("key1"));
+        assertNull(cache.get("key5"));
+        assertEquals("value2", cache.get("key2"));
+        // but not trigger another notify for cluster
+        Mockito.verify(cache, never()).remove("key1");
+        Mockito.verify(cache, never()).flush(true);
+    }
+
+    @Test
+    public void testClusterMsgsFlush() {
+        Cache<String> cache = spy(Cache.class);
+        cache.setName("Clustered");
+        cache.put("key", "value");
+        cache.handleClusterMsgs(Arrays.asList(Cache.CLUSTER_CMD_REMOVE_PREFIX + "other", Cache.CLUSTER_CMD_FLUSH));
+        Mockito.verify(cache).flush(true);
+        assertEquals(0, cache.getSize());
+    }
 }
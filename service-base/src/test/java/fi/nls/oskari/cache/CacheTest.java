@@ -5,6 +5,14 @@ import fi.nls.oskari.util.PropertyUtil;
 import org.junit.After;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 /**
@@ -79,4 +87,62 @@ public class CacheTest {
         assertTrue("Cache lastFlush + expiration + 10 should be cleared for flush", cache.isTimeToFlush(last + expiration + 10));
     }
 
+    @Test
+    public void testStatistics() {
+        final ComputeOnceCache<String> cache = CacheManager.getCache("Statistics", () -> new ComputeOnceCache<>(2));
+        assertNull(cache.get("a"));
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+        assertEquals("B", cache.get("b", key -> "B"));
+        assertEquals("B", cache.get("b", key -> "not loaded"));
+        // limit reached -> "a" is evicted
+        cache.put("c", "C");
+
+        assertEquals("Hits", 2, cache.getHitCount());
+        assertEquals("Misses", 2, cache.getMissCount());
+        assertEquals("Loads", 1, cache.getLoadCount());
+        assertEquals("Evictions", 1, cache.getEvictionCount());
+
+        cache.flush(true);
+        assertEquals("Flushed items count as evictions", 3, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testComputeOnceConcurrently() throws Exception {
+        final ComputeOnceCache<Object> cache = CacheManager.getCache("ComputeOnceConcurrently", () -> new ComputeOnceCache<>(10));
+        final AtomicInteger computed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get("key", key -> {
+                        computed.incrementAndGet();
+                        try {
+                            // keep the computation running while the other threads ask for the same key
+                            Thread.sleep(200);
+                        } catch (InterruptedException ignored) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return new Object();
+                    });
+                }));
+            }
+            start.countDown();
+            Object first = results.get(0).get();
+            for (Future<Object> result : results) {
+                assertSame("All threads get the same value", first, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Value is computed once", 1, computed.get());
+        assertEquals("Loads", 1, cache.getLoadCount());
+        assertNotNull(cache.get("key", key -> null));
+        assertEquals(1, computed.get());
+    }
+
 }
@@ -0,0 +1,305 @@
+package fi.nls.oskari.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal in-process stand-in for Redis so JedisManager can be tested without a Redis server.
+ * Speaks the RESP protocol and supports the commands used by JedisManager for strings
+ * and hashes. Expiry times are accepted but ignored. Values are kept as ISO-8859-1 strings
+ * so binary values survive the round trip.
+ */
+public class InProcessRedis implements AutoCloseable {
+
+    private final ServerSocket server;
+    private final Map<String, Object> data = new ConcurrentHashMap<>();
+    private final AtomicInteger commands = new AtomicInteger();
+    private final AtomicInteger reads = new AtomicInteger();
+    private final Map<String, String> cursors = new ConcurrentHashMap<>();
+    private final AtomicInteger cursorIds = new AtomicInteger();
+    private final Set<String> disabledCommands = ConcurrentHashMap.newKeySet();
+
+    public InProcessRedis() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "in-process-redis");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return number of commands received
+     */
+    public int getCommandCount() {
+        return commands.get();
+    }
+
+    /**
+     * @return number of times a client had to wait for more commands (~round trips)
+     */
+    public int getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * Answers the command with an unknown command error like older Redis versions do
+     */
+    public void disableCommand(String name) {
+        disabledCommands.add(name.toUpperCase());
+    }
+
+    public void reset() {
+        data.clear();
+        disabledCommands.clear();
+        commands.set(0);
+        reads.set(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread t = new Thread(() -> serve(socket), "in-process-redis-client");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             InputStream in = new BufferedInputStream(s.getInputStream());
+             OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            while (true) {
+                if (in.available() == 0) {
+                    // everything sent so far has been handled -> reply before blocking
+                    out.flush();
+                    reads.incrementAndGet();
+                }
+                List<String> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                commands.incrementAndGet();
+                handle(command, out);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        String line = readLine(in);
+        if (line == null) {
+            return null;
+        }
+        if (line.charAt(0) != '*') {
+            throw new IOException("Unexpected input: " + line);
+        }
+        int count = Integer.parseInt(line.substring(1));
+        List<String> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int len = Integer.parseInt(readLine(in).substring(1));
+            byte[] value = new byte[len];
+            int read = 0;
+            while (read < len) {
+                int n = in.read(value, read, len - read);
+                if (n == -1) {
+                    return null;
+                }
+                read += n;
+            }
+            // CRLF
+            in.read();
+            in.read();
+            args.add(new String(value, StandardCharsets.ISO_8859_1));
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\r') {
+                in.read();
+                return sb.toString();
+            }
+            sb.append((char) c);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handle(List<String> cmd, OutputStream out) throws IOException {
+        final String name = cmd.get(0).toUpperCase();
+        if (disabledCommands.contains(name)) {
+            error(out, "ERR unknown command '" + name + "'");
+            return;
+        }
+        switch (name) {
+            case "PING":
+                simple(out, "PONG");
+                break;
+            case "SET":
+                data.put(cmd.get(1), cmd.get(2));
+                simple(out, "OK");
+                break;
+            case "SETEX":
+                data.put(cmd.get(1), cmd.get(3));
+                simple(out, "OK");
+                break;
+            case "GET":
+                bulk(out, (String) data.get(cmd.get(1)));
+                break;
+            case "INCR":
+                long incremented = Long.parseLong((String) data.getOrDefault(cmd.get(1), "0")) + 1;
+                data.put(cmd.get(1), Long.toString(incremented));
+                integer(out, incremented);
+                break;
+            case "MGET":
+                array(out, cmd.size() - 1);
+                for (int i = 1; i < cmd.size(); i++) {
+                    bulk(out, (String) data.get(cmd.get(i)));
+                }
+                break;
+            case "DEL":
+            case "UNLINK":
+                int removed = 0;
+                for (int i = 1; i < cmd.size(); i++) {
+                    if (data.remove(cmd.get(i)) != null) {
+                        removed++;
+                    }
+                }
+                integer(out, removed);
+                break;
+            case "HSET":
+                Map<String, String> hash = (Map<String, String>) data.computeIfAbsent(cmd.get(1), k -> new ConcurrentHashMap<>());
+                int added = 0;
+                for (int i = 2; i < cmd.size(); i += 2) {
+                    if (hash.put(cmd.get(i), cmd.get(i + 1)) == null) {
+                        added++;
+                    }
+                }
+                integer(out, added);
+                break;
+            case "HGET":
+                bulk(out, getHash(cmd.get(1)).get(cmd.get(2)));
+                break;
+            case "HMGET":
+                array(out, cmd.size() - 2);
+                for (int i = 2; i < cmd.size(); i++) {
+                    bulk(out, getHash(cmd.get(1)).get(cmd.get(i)));
+                }
+                break;
+            case "HGETALL":
+                Map<String, String> all = getHash(cmd.get(1));
+                array(out, all.size() * 2);
+                for (Map.Entry<String, String> entry : all.entrySet()) {
+                    bulk(out, entry.getKey());
+                    bulk(out, entry.getValue());
+                }
+                break;
+            case "SCAN":
+                scan(cmd, out);
+                break;
+            default:
+                error(out, "ERR unknown command '" + name + "'");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getHash(String key) {
+        Object value = data.get(key);
+        return value instanceof Map ? (Map<String, String>) value : new TreeMap<>();
+    }
+
+    /**
+     * Keys are iterated in sorted order and the cursor refers to the last returned key so
+     * keys that exist for the whole iteration are returned even if other keys are removed.
+     */
+    private void scan(List<String> cmd, OutputStream out) throws IOException {
+        String cursor = cmd.get(1);
+        Pattern match = null;
+        int count = 10;
+        for (int i = 2; i < cmd.size(); i += 2) {
+            if ("MATCH".equalsIgnoreCase(cmd.get(i))) {
+                match = Pattern.compile(cmd.get(i + 1).replace("*", ".*").replace("?", "."));
+            } else if ("COUNT".equalsIgnoreCase(cmd.get(i))) {
+                count = Integer.parseInt(cmd.get(i + 1));
+            }
+        }
+        TreeMap<String, Object> sorted = new TreeMap<>(data);
+        String last = "0".equals(cursor) ? null : cursors.remove(cursor);
+        List<String> keys = new ArrayList<>(last == null ? sorted.keySet() : sorted.tailMap(last, false).keySet());
+        List<String> result = new ArrayList<>();
+        int end = Math.min(count, keys.size());
+        for (int i = 0; i < end; i++) {
+            if (match == null || match.matcher(keys.get(i)).matches()) {
+                result.add(keys.get(i));
+            }
+        }
+        String next = "0";
+        if (end < keys.size()) {
+            next = Integer.toString(cursorIds.incrementAndGet());
+            cursors.put(next, keys.get(end - 1));
+        }
+        array(out, 2);
+        bulk(out, next);
+        array(out, result.size());
+        for (String key : result) {
+            bulk(out, key);
+        }
+    }
+
+    private static void simple(OutputStream out, String value) throws IOException {
+        write(out, "+" + value + "\r\n");
+    }
+
+    private static void error(OutputStream out, String value) throws IOException {
+        write(out, "-" + value + "\r\n");
+    }
+
+    private static void integer(OutputStream out, long value) throws IOException {
+        write(out, ":" + value + "\r\n");
+    }
+
+    private static void array(OutputStream out, int size) throws IOException {
+        write(out, "*" + size + "\r\n");
+    }
+
+    private static void bulk(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            write(out, "$-1\r\n");
+            return;
+        }
+        write(out, "$" + value.length() + "\r\n" + value + "\r\n");
+    }
+
+    private static void write(OutputStream out, String value) throws IOException {
+        out.write(value.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
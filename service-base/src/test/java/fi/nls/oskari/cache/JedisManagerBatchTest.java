@@ -0,0 +1,142 @@
+package fi.nls.oskari.cache;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the multiple key operations against an in-process Redis stand-in
+ */
+public class JedisManagerBatchTest {
+
+    private static InProcessRedis redis;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        redis = new InProcessRedis();
+        JedisManager.connect(4, "localhost", redis.getPort());
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        JedisManager.shutdown();
+        redis.close();
+    }
+
+    @Before
+    public void reset() {
+        redis.reset();
+    }
+
+    @Test
+    public void testSetexAndMget() {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("key" + i, "value" + i);
+        }
+        assertTrue(JedisManager.setex(values, 60));
+        assertTrue(redis.getCommandCount() >= 100);
+        assertTrue("Pipelined commands should use a few round trips", redis.getReadCount() < 10);
+
+        List<String> result = JedisManager.mget("key0", "missing", "key99");
+        assertEquals(Arrays.asList("value0", null, "value99"), result);
+    }
+
+    @Test
+    public void testBytes() {
+        byte[] binary = new byte[256];
+        for (int i = 0; i < binary.length; i++) {
+            binary[i] = (byte) i;
+        }
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        values.put("bin1", binary);
+        values.put("bin2", "value".getBytes(StandardCharsets.UTF_8));
+        assertTrue(JedisManager.setexBytes(values, 60));
+
+        List<byte[]> result = JedisManager.mget("bin1".getBytes(StandardCharsets.UTF_8), "missing".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(binary, result.get(0));
+        assertNull(result.get(1));
+    }
+
+    @Test
+    public void testHashes() {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("a", "1");
+        fields.put("b", "2");
+        assertEquals(2L, (long) JedisManager.hset("hash1", fields));
+        JedisManager.hset("hash2", "c", "3");
+
+        assertEquals(Arrays.asList("1", null, "2"), JedisManager.hmget("hash1", "a", "missing", "b"));
+        List<Map<String, String>> hashes = JedisManager.hgetAll("hash1", "hash2", "missing");
+        assertEquals(fields, hashes.get(0));
+        assertEquals("3", hashes.get(1).get("c"));
+        assertTrue(hashes.get(2).isEmpty());
+    }
+
+    @Test
+    public void testDelAll() {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 2500; i++) {
+            values.put("delall:" + i, "value");
+        }
+        values.put("other", "value");
+        JedisManager.setex(values, 60);
+        assertEquals(2500, JedisManager.keys("delall:").size());
+        assertEquals(2500L, (long) JedisManager.delAll("delall:"));
+        assertTrue(JedisManager.keys("delall:").isEmpty());
+        assertEquals("value", JedisManager.get("other"));
+    }
+
+    @Test
+    public void testDelAllWithoutUnlink() {
+        // Redis < 4.0
+        redis.disableCommand("UNLINK");
+        for (int i = 0; i < 10; i++) {
+            JedisManager.setex("delall:" + i, 60, "value");
+        }
+        assertEquals(10L, (long) JedisManager.delAll("delall:"));
+        assertTrue(JedisManager.keys("delall:").isEmpty());
+    }
+
+    @Test
+    public void testGeneration() {
+        final String namespace = "generation:";
+        final String prefix = JedisManager.getGenerationPrefix(namespace);
+        assertEquals("generation:g0:", prefix);
+        JedisManager.setex(prefix + "key", 60, "value");
+        assertEquals("value", JedisManager.get(JedisManager.getGenerationPrefix(namespace) + "key"));
+
+        assertEquals(1L, (long) JedisManager.invalidateGeneration(namespace));
+        assertEquals("generation:g1:", JedisManager.getGenerationPrefix(namespace));
+        assertNull(JedisManager.get(JedisManager.getGenerationPrefix(namespace) + "key"));
+    }
+
+    @Test
+    public void testShutdownTwice() throws Exception {
+        JedisManager.shutdown();
+        JedisManager.shutdown();
+        // reconnect for the other tests
+        JedisManager.connect(4, "localhost", redis.getPort());
+        JedisManager.setex("key", 60, "value");
+        assertEquals("value", JedisManager.get("key"));
+    }
+
+    @Test
+    public void testPoolMetrics() {
+        long borrowed = JedisManager.getPoolBorrowLatency().getCount();
+        JedisManager.get("key");
+        assertEquals(borrowed + 1, JedisManager.getPoolBorrowLatency().getCount());
+        assertEquals(0, JedisManager.getPoolActive());
+        assertTrue(JedisManager.getPoolIdle() > 0);
+    }
+}
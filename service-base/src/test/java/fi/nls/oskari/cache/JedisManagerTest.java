@@ -5,9 +5,12 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @Ignore
@@ -41,6 +44,13 @@ public class JedisManagerTest {
         assertTrue("Should get 'lollol'", Arrays.equals(testBytes, value.getBytes()));
     }
 
+    @Test
+    public void testMget() {
+        List<String> values = JedisManager.mget(key, "missing");
+        assertEquals(value, values.get(0));
+        assertNull(values.get(1));
+    }
+
     @Test
     public void testSet() {
         Set<String> hSet = JedisManager.hkeys(hKey);
@@ -56,6 +66,27 @@ public class JedisManagerTest {
         assertTrue("Should contain key 'lol'", keys.contains(key));
     }
 
+    @Test
+    public void testDelAll() {
+        for (int i = 0; i < 2500; i++) {
+            JedisManager.setex("delall:" + i, 60, "value");
+        }
+        assertEquals(2500L, (long) JedisManager.delAll("delall:"));
+        assertTrue(JedisManager.keys("delall:").isEmpty());
+    }
+
+    @Test
+    public void testGeneration() {
+        final String namespace = "generation:test:";
+        final String prefix = JedisManager.getGenerationPrefix(namespace);
+        JedisManager.setex(prefix + key, 60, value);
+        assertEquals(value, JedisManager.get(JedisManager.getGenerationPrefix(namespace) + key));
+
+        JedisManager.invalidateGeneration(namespace);
+        assertFalse("Prefix should change", prefix.equals(JedisManager.getGenerationPrefix(namespace)));
+        assertNull(JedisManager.get(JedisManager.getGenerationPrefix(namespace) + key));
+    }
+
     @Test
     public void testPubSub() {
         final JedisSubscriber sub = new JedisSubscriber();
@@ -1,16 +1,25 @@
 package fi.nls.oskari.util;
 
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.oskari.metrics.LatencyHistogram;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -149,4 +158,53 @@ public class IOHelperTest {
             throw e;
         }
     }
+
+    @Test
+    public void testBackendLatencyIncludesWaitingForResponse() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ignored) {
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+            LatencyHistogram histogram = IOHelper.getBackendLatency().get("127.0.0.1");
+            long count = histogram.getCount();
+            double sum = histogram.getSumSeconds();
+
+            HttpURLConnection conn = IOHelper.getConnection(url);
+            // blocks until the server responds, before the response is read
+            assertEquals(200, conn.getResponseCode());
+            assertEquals("ok", IOHelper.readString(conn));
+            assertEquals(count + 1, histogram.getCount());
+            assertTrue("Waiting for the response should be included", histogram.getSumSeconds() - sum >= 0.3);
+
+            HttpURLConnection other = (HttpURLConnection) new URL(url).openConnection();
+            assertEquals("ok", IOHelper.readString(other));
+            assertEquals("Connections not opened by IOHelper aren't recorded", count + 1, histogram.getCount());
+
+            // start times are kept per thread, requests on other threads are recorded separately
+            HttpURLConnection pending = IOHelper.getConnection(url);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<String> response = executor.submit(() -> IOHelper.readString(IOHelper.getConnection(url)));
+                assertEquals("ok", response.get());
+            } finally {
+                executor.shutdownNow();
+            }
+            assertEquals(count + 2, histogram.getCount());
+            assertEquals("ok", IOHelper.readString(pending));
+            assertEquals(count + 3, histogram.getCount());
+        } finally {
+            server.stop(0);
+        }
+    }
 }
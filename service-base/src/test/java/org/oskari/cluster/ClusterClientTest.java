@@ -4,8 +4,10 @@ import fi.nls.oskari.cache.JedisManager;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -77,6 +79,91 @@ public class ClusterClientTest {
         sub2.stopListening();
     }
 
+    @Test
+    public void testSendBatched() {
+        final List<String[]> published = new ArrayList<>();
+        final ClusterClient sender = new ClusterClient("test", (channel, data) -> {
+            published.add(new String[] { channel, data });
+            return 1L;
+        });
+        sender.sendBatched("cacheA", "REM: first");
+        sender.sendBatched("cacheA", "REM: multi\nline\\");
+        sender.sendBatched("cacheB", "REM: other");
+        sender.sendBatched("cacheA", "REM: first");
+        sender.sendPending();
+        assertEquals("Should publish one message per channel", 2, published.size());
+
+        final ClusterClient receiver = new ClusterClient("test", (channel, data) -> 0L);
+        final List<String> received = new ArrayList<>();
+        receiver.addListener("cacheA", new MessageListener() {
+            @Override
+            public void onMessage(String msg) {
+                fail("Batch should be handled with onMessages()");
+            }
+
+            @Override
+            public void onMessages(List<String> messages) {
+                received.addAll(messages);
+            }
+        });
+        String otherNode = UUID.randomUUID().toString();
+        for (String[] msg : published) {
+            receiver.onPMessage(null, JedisManager.PUBSUB_CHANNEL_PREFIX + msg[0], otherNode + "_" + msg[1]);
+        }
+        assertEquals("Duplicates should be sent once", Arrays.asList("REM: first", "REM: multi\nline\\"), received);
+    }
+
+    @Test
+    public void testBatchSplit() {
+        final AtomicInteger published = new AtomicInteger();
+        final ClusterClient sender = new ClusterClient("test", (channel, data) -> {
+            published.incrementAndGet();
+            return 1L;
+        });
+        for (int i = 0; i < 1200; i++) {
+            sender.sendBatched("cache", "REM: " + i);
+        }
+        sender.sendPending();
+        assertEquals("Should split to batches of 500", 3, published.get());
+    }
+
+    @Test
+    public void testBatchSequence() {
+        final ClusterClient receiver = new ClusterClient("test", (channel, data) -> 0L);
+        final List<String> received = new ArrayList<>();
+        final AtomicInteger missed = new AtomicInteger();
+        receiver.addListener("cache", new MessageListener() {
+            @Override
+            public void onMessage(String msg) {
+                received.add(msg);
+            }
+
+            @Override
+            public void onMessagesMissed() {
+                missed.incrementAndGet();
+            }
+        });
+        final String channel = JedisManager.PUBSUB_CHANNEL_PREFIX + ClusterClient.getChannel("test", "cache");
+        final String otherNode = UUID.randomUUID().toString() + "_";
+        receiver.onPMessage(null, channel, otherNode + ClusterClient.encodeBatch(5, Arrays.asList("first")));
+        receiver.onPMessage(null, channel, otherNode + ClusterClient.encodeBatch(5, Arrays.asList("duplicate")));
+        receiver.onPMessage(null, channel, otherNode + ClusterClient.encodeBatch(6, Arrays.asList("second")));
+        assertEquals(Arrays.asList("first", "second"), received);
+        assertEquals(0, missed.get());
+
+        receiver.onPMessage(null, channel, otherNode + ClusterClient.encodeBatch(8, Arrays.asList("after gap")));
+        assertEquals("Should notify about the missing batch", 1, missed.get());
+        receiver.onPMessage(null, channel, otherNode + ClusterClient.encodeBatch(7, Arrays.asList("late")));
+        assertEquals("Late batch should be ignored", Arrays.asList("first", "second"), received);
+
+        // sequences are tracked per node
+        receiver.onPMessage(null, channel, UUID.randomUUID().toString() + "_" + ClusterClient.encodeBatch(1, Arrays.asList("new node")));
+        assertEquals(Arrays.asList("first", "second", "new node"), received);
+        // non-batched messages are passed as is
+        receiver.onPMessage(null, channel, otherNode + "FLUSH");
+        assertEquals("FLUSH", received.get(3));
+    }
+
     /**
      * Checks if we are able to connect to redis with a simple scenario
      * No point in running Redis tests if it is not available on the env we are running the test.
@@ -0,0 +1,325 @@
+package org.oskari.command;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OskariCommandTest {
+
+    private static class TestCommand extends OskariCommand<String> {
+        private final Callable task;
+        private final String fallback;
+
+        TestCommand(String group, String key, CommandSettings settings, Callable task, String fallback) {
+            super(group, key, settings);
+            this.task = task;
+            this.fallback = fallback;
+        }
+
+        @Override
+        protected String run() throws Exception {
+            return task.call();
+        }
+
+        @Override
+        protected boolean hasFallback() {
+            return fallback != null;
+        }
+
+        @Override
+        protected String getFallback() {
+            return fallback;
+        }
+    }
+
+    private interface Callable {
+        String call() throws Exception;
+    }
+
+    private static CommandSettings settings() {
+        return new CommandSettings().withTimeoutMs(200);
+    }
+
+    @Test
+    public void testSuccess() throws Exception {
+        assertEquals("ok", new TestCommand("test", "success", settings(), () -> "ok", null).execute());
+        assertEquals("ok", new TestCommand("test", "success", settings(), () -> "ok", null).queue().get());
+        CommandMetrics metrics = OskariCommand.getMetrics().get("test:success");
+        assertEquals(2, metrics.getSuccessCount());
+        assertEquals(2, metrics.getLatency().getCount());
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        Callable fail = () -> {
+            throw new IllegalStateException("fail");
+        };
+        assertEquals("fallback", new TestCommand("test", "fallback", settings(), fail, "fallback").execute());
+        try {
+            new TestCommand("test", "fallback", settings(), fail, null).execute();
+            fail("Should have thrown");
+        } catch (CommandException e) {
+            assertEquals(CommandException.FailureType.COMMAND_EXCEPTION, e.getFailureType());
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        try {
+            new TestCommand("test", "fallback", settings(), fail, null).queue().get();
+            fail("Should have thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CommandException);
+        }
+        CommandMetrics metrics = OskariCommand.getMetrics().get("test:fallback");
+        assertEquals(3, metrics.getFailureCount());
+        assertEquals(1, metrics.getFallbackSuccessCount());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Callable slow = () -> {
+            Thread.sleep(5000);
+            return "slow";
+        };
+        long start = System.currentTimeMillis();
+        try {
+            new TestCommand("test", "timeout", settings(), slow, null).execute();
+            fail("Should have timed out");
+        } catch (CommandException e) {
+            assertEquals(CommandException.FailureType.TIMEOUT, e.getFailureType());
+        }
+        assertTrue("Should be interrupted", System.currentTimeMillis() - start < 2000);
+        assertFalse("Interrupt should be cleared", Thread.currentThread().isInterrupted());
+
+        Future<String> result = new TestCommand("test", "timeout", settings(), slow, "fallback").queue();
+        assertEquals("fallback", result.get(2, TimeUnit.SECONDS));
+        assertEquals(2, OskariCommand.getMetrics().get("test:timeout").getTimeoutCount());
+    }
+
+    @Test
+    public void testExecuteOnCallerThread() throws Exception {
+        Thread caller = Thread.currentThread();
+        assertEquals("ok", new TestCommand("test", "caller", settings(),
+                () -> Thread.currentThread() == caller ? "ok" : "other thread", null).executeOnCallerThread());
+
+        Callable slow = () -> {
+            Thread.sleep(5000);
+            return "slow";
+        };
+        long start = System.currentTimeMillis();
+        assertEquals("fallback", new TestCommand("test", "caller", settings(), slow, "fallback").executeOnCallerThread());
+        assertTrue("Should be interrupted", System.currentTimeMillis() - start < 2000);
+        assertFalse("Interrupt should be cleared", Thread.currentThread().isInterrupted());
+
+        CommandMetrics metrics = OskariCommand.getMetrics().get("test:caller");
+        assertEquals(1, metrics.getSuccessCount());
+        assertEquals(1, metrics.getTimeoutCount());
+    }
+
+    @Test
+    public void testExecuteOnCallerThreadWaitsForBulkhead() throws Exception {
+        CommandSettings settings = new CommandSettings().withConcurrency(1).withQueueSize(1).withTimeoutMs(5000);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> running = new TestCommand("callerbulkhead", "test", settings, () -> {
+            release.await();
+            return "ok";
+        }, null).queue();
+        try {
+            new TestCommand("callerbulkhead", "test", settings().withTimeoutMs(200), () -> "waited", null)
+                    .executeOnCallerThread();
+            fail("Should have timed out while waiting for the bulkhead");
+        } catch (CommandException e) {
+            assertEquals(CommandException.FailureType.TIMEOUT, e.getFailureType());
+        }
+        release.countDown();
+        assertEquals("ok", running.get(1, TimeUnit.SECONDS));
+        assertEquals("waited", new TestCommand("callerbulkhead", "test", settings, () -> "waited", null)
+                .executeOnCallerThread());
+        assertEquals(0, OskariCommand.getBulkheads().get("callerbulkhead").getQueueDepth());
+    }
+
+    @Test
+    public void testTimeoutOnBlockingRead() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            // accepts the connection but never writes anything, socket reads don't react to interrupts
+            Callable read = () -> {
+                try (Socket socket = new Socket("localhost", server.getLocalPort());
+                     InputStream in = socket.getInputStream()) {
+                    return Integer.toString(in.read());
+                }
+            };
+            long start = System.currentTimeMillis();
+            try {
+                new TestCommand("test", "blockingread", settings(), read, null).execute();
+                fail("Should have timed out");
+            } catch (CommandException e) {
+                assertEquals(CommandException.FailureType.TIMEOUT, e.getFailureType());
+            }
+            assertTrue("Should return on timeout", System.currentTimeMillis() - start < 2000);
+            assertFalse("Caller shouldn't be interrupted", Thread.currentThread().isInterrupted());
+        }
+    }
+
+    @Test
+    public void testTimeoutWhileQueued() throws Exception {
+        CommandSettings settings = new CommandSettings().withConcurrency(1).withQueueSize(1).withTimeoutMs(5000);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> running = new TestCommand("queuetimeout", "test", settings, () -> {
+            release.await();
+            return "ok";
+        }, null).queue();
+        long start = System.currentTimeMillis();
+        assertEquals("fallback", new TestCommand("queuetimeout", "test", settings().withTimeoutMs(200),
+                () -> "queued", "fallback").execute());
+        assertTrue("Time in queue should count", System.currentTimeMillis() - start < 2000);
+        release.countDown();
+        assertEquals("ok", running.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        CommandSettings settings = settings().withRequestVolumeThreshold(3).withSleepWindowMs(100);
+        Callable fail = () -> {
+            throw new IllegalStateException("fail");
+        };
+        for (int i = 0; i < 3; i++) {
+            new TestCommand("test", "circuit", settings, fail, "fallback").execute();
+        }
+        TestCommand command = new TestCommand("test", "circuit", settings, () -> "ok", "fallback");
+        assertTrue(command.isCircuitBreakerOpen());
+        assertEquals("Should short circuit", "fallback", command.execute());
+        assertEquals(1, OskariCommand.getMetrics().get("test:circuit").getShortCircuitedCount());
+
+        Thread.sleep(150);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> trial = new TestCommand("test", "circuit", settings, () -> {
+            release.await();
+            throw new IllegalStateException("fail");
+        }, "fallback").queue();
+        assertEquals("Only one trial request at a time", "fallback",
+                new TestCommand("test", "circuit", settings, () -> "ok", "fallback").execute());
+        release.countDown();
+        assertEquals("fallback", trial.get(1, TimeUnit.SECONDS));
+        assertTrue("Failed trial should keep the circuit open", command.isCircuitBreakerOpen());
+
+        Thread.sleep(150);
+        command = new TestCommand("test", "circuit", settings, () -> "ok", "fallback");
+        assertEquals("Trial request should be let through", "ok", command.execute());
+        assertFalse(command.isCircuitBreakerOpen());
+    }
+
+    @Test
+    public void testCircuitBreakerIgnoresLateSuccess() throws Exception {
+        CommandSettings settings = settings().withTimeoutMs(5000).withRequestVolumeThreshold(3).withSleepWindowMs(10000);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> late = new TestCommand("test", "late", settings, () -> {
+            release.await();
+            return "ok";
+        }, null).queue();
+        Callable fail = () -> {
+            throw new IllegalStateException("fail");
+        };
+        for (int i = 0; i < 3; i++) {
+            new TestCommand("test", "late", settings, fail, "fallback").execute();
+        }
+        TestCommand command = new TestCommand("test", "late", settings, () -> "ok", "fallback");
+        assertTrue(command.isCircuitBreakerOpen());
+        release.countDown();
+        assertEquals("ok", late.get(1, TimeUnit.SECONDS));
+        assertTrue("Request started before the circuit opened shouldn't close it", command.isCircuitBreakerOpen());
+    }
+
+    @Test
+    public void testBulkhead() throws Exception {
+        CommandSettings settings = new CommandSettings().withConcurrency(1).withQueueSize(1).withTimeoutMs(5000);
+        CountDownLatch release = new CountDownLatch(1);
+        Callable blocking = () -> {
+            release.await();
+            return "ok";
+        };
+        Future<String> running = new TestCommand("bulkhead", "test", settings, blocking, null).queue();
+        Future<String> queued = new TestCommand("bulkhead", "test", settings, () -> "queued", null).queue();
+        Future<String> rejected = new TestCommand("bulkhead", "test", settings, () -> "rejected", "fallback").queue();
+        assertEquals("fallback", rejected.get(1, TimeUnit.SECONDS));
+        assertFalse(queued.isDone());
+        release.countDown();
+        assertEquals("ok", running.get(1, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(1, TimeUnit.SECONDS));
+
+        CommandBulkhead bulkhead = OskariCommand.getBulkheads().get("bulkhead");
+        // permit is released after the future is completed
+        for (int i = 0; i < 100 && bulkhead.getActiveCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, bulkhead.getRejectedCount());
+        assertEquals(0, bulkhead.getActiveCount());
+        assertEquals(0, bulkhead.getQueueDepth());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSingleUse() {
+        TestCommand command = new TestCommand("test", "single", settings(), () -> "ok", null);
+        command.execute();
+        command.execute();
+    }
+
+    /**
+     * Compares the overhead of running a command on the caller's thread, on the shared executor and
+     * handing it off to a fixed thread pool per command group (like Hystrix thread isolation does).
+     */
+    @Test
+    @Ignore("Benchmark, run manually")
+    public void benchmarkOverhead() throws Exception {
+        final int callers = 20;
+        final int calls = 20000;
+        final CommandSettings settings = new CommandSettings().withConcurrency(callers).withQueueSize(calls).withTimeoutMs(10000);
+        final ExecutorService groupPool = Executors.newFixedThreadPool(callers);
+        final Callable work = () -> Long.toString(System.nanoTime());
+        try {
+            for (int round = 0; round < 3; round++) {
+                long callerThread = run(callers, calls, () -> new TestCommand("benchmark", "caller", settings, work, null).executeOnCallerThread());
+                long shared = run(callers, calls, () -> new TestCommand("benchmark", "shared", settings, work, null).execute());
+                long handOff = run(callers, calls, () -> groupPool.submit(work::call).get());
+                System.out.println("Round " + round + ": caller thread " + callerThread / calls + " ns/call, "
+                        + "shared executor " + shared / calls + " ns/call, "
+                        + "thread pool hand-off " + handOff / calls + " ns/call");
+            }
+        } finally {
+            groupPool.shutdown();
+        }
+    }
+
+    /**
+     * @return time in nanoseconds
+     */
+    private static long run(int callers, int calls, Callable call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<Future<?>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> {
+                for (int j = 0; j < calls / callers; j++) {
+                    call.call();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        long time = System.nanoTime() - start;
+        executor.shutdown();
+        return time;
+    }
+}
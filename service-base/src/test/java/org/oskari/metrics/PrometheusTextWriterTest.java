@@ -0,0 +1,64 @@
+package org.oskari.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrometheusTextWriterTest {
+
+    @Test
+    public void testWriteHistograms() throws Exception {
+        LatencyHistograms histograms = new LatencyHistograms(1);
+        histograms.record("GetMaps", TimeUnit.MILLISECONDS.toNanos(3));
+        histograms.record("GetMaps", TimeUnit.MILLISECONDS.toNanos(200));
+        histograms.record("GetMaps", TimeUnit.SECONDS.toNanos(20));
+        // over the label limit
+        histograms.record("GetSome\"thing\"", TimeUnit.MILLISECONDS.toNanos(500));
+
+        StringWriter out = new StringWriter();
+        new PrometheusTextWriter(out).writeHistograms("oskari_action_duration_seconds", "Action time",
+                "route", histograms.getAll());
+
+        String expected = "# HELP oskari_action_duration_seconds Action time\n"
+                + "# TYPE oskari_action_duration_seconds histogram\n"
+                + bucket("GetMaps", "0.005", 1)
+                + bucket("GetMaps", "0.01", 1)
+                + bucket("GetMaps", "0.025", 1)
+                + bucket("GetMaps", "0.05", 1)
+                + bucket("GetMaps", "0.1", 1)
+                + bucket("GetMaps", "0.25", 2)
+                + bucket("GetMaps", "0.5", 2)
+                + bucket("GetMaps", "1.0", 2)
+                + bucket("GetMaps", "2.5", 2)
+                + bucket("GetMaps", "5.0", 2)
+                + bucket("GetMaps", "10.0", 2)
+                + bucket("GetMaps", "+Inf", 3)
+                + "oskari_action_duration_seconds_sum{route=\"GetMaps\"} 20.203\n"
+                + "oskari_action_duration_seconds_count{route=\"GetMaps\"} 3\n";
+        String actual = out.toString();
+        assertEquals(expected, actual.substring(0, actual.indexOf("oskari_action_duration_seconds_bucket{route=\"other\"")));
+        assertEquals(1, histograms.get(LatencyHistograms.OTHER).getCount());
+    }
+
+    @Test
+    public void testWriteSampleWithTwoLabels() throws Exception {
+        StringWriter out = new StringWriter();
+        new PrometheusTextWriter(out).writeSample("oskari_command_executions_total",
+                "command", "print:http://example.com/wms?a=\"b\"", "result", "timeout", 2);
+        assertEquals("oskari_command_executions_total{command=\"print:http://example.com/wms?a=\\\"b\\\"\",result=\"timeout\"} 2\n",
+                out.toString());
+    }
+
+    @Test
+    public void testEscapeLabelValue() {
+        assertEquals("plain", PrometheusTextWriter.escapeLabelValue("plain"));
+        assertEquals("a\\\"b\\\\c\\n", PrometheusTextWriter.escapeLabelValue("a\"b\\c\n"));
+    }
+
+    private static String bucket(String route, String le, long count) {
+        return "oskari_action_duration_seconds_bucket{route=\"" + route + "\",le=\"" + le + "\"} " + count + "\n";
+    }
+}
@@ -1,6 +1,7 @@
 package fi.nls.oskari.annotation;
 
 import fi.nls.oskari.control.ActionHandler;
+import fi.nls.oskari.control.ActionRouteIndex;
 
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
@@ -11,12 +12,16 @@ import javax.tools.Diagnostic.Kind;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Runs on compile time and processes any @OskariActionRoute annotation.
  * Checks that the annotated Class is a concrete Class that is assignable as fi.nls.oskari.control.ActionHandler.
- * If it isn't the compilation will fail. If it is an entry is written to an SPI services file to be used on runtime.
- * The file is created if it didn't exist and duplicates aren't written.
+ * If it isn't the compilation will fail. If it is an entry is written to an SPI services file and
+ * "[route]=[class name]" to the route index (see ActionRouteIndex) to be used on runtime.
+ * The services file is merged with the one from previous compilations and duplicates aren't written.
+ * The route index is rebuilt on each compilation from the classes compiled in it. Handlers left out of
+ * the index (like ones not recompiled in an IDE build) are still found with the services file.
  */
 @SupportedAnnotationTypes(OskariActionRouteAnnotationProcessor.ANNOTATION_TYPE)
 public class OskariActionRouteAnnotationProcessor extends OskariBaseAnnotationProcessor {
@@ -26,10 +31,17 @@ public class OskariActionRouteAnnotationProcessor extends OskariBaseAnnotationPr
     public static final String ANNOTATION_TYPE = "fi.nls.oskari.annotation.OskariActionRoute";
     public static final String SERVICE_NAME = "fi.nls.oskari.control.ActionHandler";
 
+    // route index entries from all rounds, written when processing is over
+    private final Set<String> routes = new TreeSet<>();
+
     @Override
     public boolean process(
             final Set<? extends TypeElement> annotations,
             final RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
         if (annotations == null || annotations.isEmpty()) {
             return false;
         }
@@ -77,6 +89,9 @@ public class OskariActionRouteAnnotationProcessor extends OskariBaseAnnotationPr
                     }
 
                     results.add(el.getQualifiedName().toString());
+                    // same as ActionHandler.getName()
+                    final String routeKey = route.value().isEmpty() ? el.getSimpleName().toString() : route.value();
+                    routes.add(routeKey + "=" + el.getQualifiedName().toString());
                 }
             }
 
@@ -92,4 +107,16 @@ public class OskariActionRouteAnnotationProcessor extends OskariBaseAnnotationPr
 
         return true;
     }
+
+    private void writeIndex() {
+        if (routes.isEmpty()) {
+            return;
+        }
+        try {
+            registerIndex(routes, SERVICE_NAME, ActionRouteIndex.RESOURCE);
+        } catch (final IOException ioe) {
+            processingEnv.getMessager().printMessage(
+                    Kind.ERROR, "I/O Error writing " + ActionRouteIndex.RESOURCE + ": " + ioe.getMessage());
+        }
+    }
 }
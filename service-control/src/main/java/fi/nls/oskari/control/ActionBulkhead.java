@@ -0,0 +1,136 @@
+package fi.nls.oskari.control;
+
+import fi.nls.oskari.util.PropertyUtil;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of concurrently handled requests for a group of action routes so expensive
+ * actions can't occupy all the threads of the servlet container. Requests exceeding the limit wait
+ * in a bounded queue for a while and are rejected when the queue is full or waiting times out.
+ *
+ * Configured with properties (name is the group name):
+ * - actioncontrol.bulkheads=print,vector
+ * - actioncontrol.bulkhead.[name].routes=GetPrint (defaults to the group name so single routes don't need this)
+ * - actioncontrol.bulkhead.[name].concurrency=4 (max concurrently handled requests, defaults to 10)
+ * - actioncontrol.bulkhead.[name].queue=10 (max requests waiting, defaults to the concurrency)
+ * - actioncontrol.bulkhead.[name].timeout=5000 (max time a request waits in milliseconds, defaults to 5000)
+ * - actioncontrol.bulkhead.[name].retryAfter=5 (value of the Retry-After header in seconds on rejection, defaults to 5)
+ */
+public class ActionBulkhead {
+
+    static final String PROPERTY_BULKHEADS = "actioncontrol.bulkheads";
+    static final String PROPERTY_PREFIX = "actioncontrol.bulkhead.";
+
+    private final String name;
+    private final List<String> routes;
+    private final int concurrency;
+    private final int maxQueue;
+    private final long timeoutMs;
+    private final int retryAfterSeconds;
+
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public ActionBulkhead(String name, List<String> routes, int concurrency, int maxQueue, long timeoutMs, int retryAfterSeconds) {
+        this.name = name;
+        this.routes = Collections.unmodifiableList(routes);
+        this.concurrency = concurrency;
+        this.maxQueue = maxQueue;
+        this.timeoutMs = timeoutMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.permits = new Semaphore(concurrency, true);
+    }
+
+    /**
+     * Reads the configuration for given group name from properties
+     */
+    static ActionBulkhead fromProperties(String name) {
+        final String prefix = PROPERTY_PREFIX + name + ".";
+        String[] routes = PropertyUtil.getCommaSeparatedList(prefix + "routes");
+        if (routes.length == 0) {
+            routes = new String[] { name };
+        }
+        final int concurrency = PropertyUtil.getOptional(prefix + "concurrency", 10);
+        return new ActionBulkhead(name, Arrays.asList(routes),
+                concurrency,
+                PropertyUtil.getOptional(prefix + "queue", concurrency),
+                PropertyUtil.getOptional(prefix + "timeout", 5000),
+                PropertyUtil.getOptional(prefix + "retryAfter", 5));
+    }
+
+    /**
+     * Waits for a permit to handle a request. The permit must be released with release() after
+     * the request has been handled.
+     * @throws ActionRejectedException if the queue is full or no permit was available in time
+     */
+    public void acquire() throws ActionRejectedException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            throw reject();
+        }
+        boolean acquired = false;
+        try {
+            acquired = permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queued.decrementAndGet();
+        }
+        if (!acquired) {
+            throw reject();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    private ActionRejectedException reject() {
+        rejected.increment();
+        return new ActionRejectedException("Server is busy, try again later", retryAfterSeconds);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getRoutes() {
+        return routes;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return number of requests being handled
+     */
+    public int getActiveCount() {
+        return concurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return number of requests waiting for a permit
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return number of rejected requests
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -1,18 +1,32 @@
 package fi.nls.oskari.control;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.PropertyUtil;
+import org.oskari.metrics.LatencyHistograms;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Router for Ajax Requests made by the Oskari Map Framework.
+ *
+ * Default handlers are found with ActionRouteIndex and initialized on the first request to the route
+ * or by warmUp() that initializes all of them in parallel on startup.
  */
 public class ActionControl {
     /**
@@ -25,18 +39,42 @@ public class ActionControl {
     private static final String METRICS_PREFIX = "Oskari.ActionControl";
     static final String PROPERTY_BLACKLIST = "actioncontrol.blacklist";
     static final String PROPERTY_WHITELIST = "actioncontrol.whitelist";
+    static final String PROPERTY_WARMUP_THREADS = "actioncontrol.warmup.threads";
+
+    // route -> handler class name for default handlers that might not be initialized yet
+    private static final ConcurrentMap<String, String> ROUTES = new ConcurrentHashMap<>();
+    // route -> handler initialization so each handler is initialized once
+    private static final ConcurrentMap<String, FutureTask<ActionHandler>> INITIALIZING = new ConcurrentHashMap<>();
+
+    private static final int WARMUP_NOT_STARTED = 0;
+    private static final int WARMUP_RUNNING = 1;
+    private static final int WARMUP_DONE = 2;
+    private static final int WARMUP_FAILED = 3;
+    private static volatile int WARMUP_STATE = WARMUP_NOT_STARTED;
 
     private static Set<String> BLACKLISTED_ACTIONS = null;
     private static Set<String> WHITELISTED_ACTIONS = null;
+    // route -> bulkhead limiting concurrent requests for the route
+    private static volatile Map<String, ActionBulkhead> BULKHEADS = null;
 
     private static final boolean GATHER_METRICS = PropertyUtil.getOptional("actioncontrol.metrics", true);
 
     private static final MetricRegistry METRIC_REGISTRY = new MetricRegistry();
 
+    // routes are limited to registered actions so this only guards against a huge amount of registered routes
+    private static final LatencyHistograms ACTION_LATENCY = new LatencyHistograms(1000);
+
     public static MetricRegistry getMetrics() {
         return METRIC_REGISTRY;
     }
 
+    /**
+     * Bucketed latency histograms for handled requests labeled with the action route
+     */
+    public static LatencyHistograms getLatencyHistograms() {
+        return ACTION_LATENCY;
+    }
+
     /**
      * Adds an action route handler with given route key
      * @param action route key
@@ -95,17 +133,138 @@ public class ActionControl {
 	}
 
     /**
-     * Uses ServiceLoader to find all ActionHandlers in classpath. Adds them as handlers with the route key
-     * returned by getName() method.
+     * Uses ActionRouteIndex to find all ActionHandlers in classpath. Registers them with the route key
+     * from @OskariActionRoute. The handlers are instantiated and initialized on the first request to the route
+     * or by warmUp().
      */
     public synchronized static void addDefaultControls() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = ActionControl.class.getClassLoader();
+        }
+        final Map<String, String> routes = ActionRouteIndex.load(loader);
+        for (Map.Entry<String, String> route : routes.entrySet()) {
+            if (!isAllowedKey(route.getKey())) {
+                LOG.debug("Action disabled by config - Skipping", route.getKey(), "=", route.getValue());
+                continue;
+            }
+            ROUTES.put(route.getKey(), route.getValue());
+        }
+        LOG.info("Found", ROUTES.size(), "action routes");
+    }
+
+    /**
+     * Initializes handlers for all default routes so requests don't have to wait for it. Handlers are
+     * initialized in parallel with "actioncontrol.warmup.threads" threads (defaults to number of processors).
+     * Requests to routes that haven't been initialized yet initialize the handler on the request thread.
+     * Returns when all handlers have been initialized or the warm-up has failed (see isWarmUpFailed()).
+     */
+    public static void warmUp() {
+        WARMUP_STATE = WARMUP_RUNNING;
+        final long start = System.nanoTime();
+        boolean done = false;
+        ExecutorService executor = null;
+        try {
+            if (actions.isEmpty() && ROUTES.isEmpty()) {
+                addDefaultControls();
+            }
+            final int threads = PropertyUtil.getOptional(PROPERTY_WARMUP_THREADS, Runtime.getRuntime().availableProcessors());
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+                Thread t = new Thread(r, "oskari-action-warmup-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            final List<Future<ActionHandler>> handlers = new ArrayList<>();
+            for (String route : ROUTES.keySet()) {
+                handlers.add(executor.submit(() -> initRoute(route)));
+            }
+            for (Future<ActionHandler> handler : handlers) {
+                handler.get();
+            }
+            done = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Action warm-up was interrupted");
+        } catch (ExecutionException e) {
+            // initRoute() logs errors so this shouldn't happen
+            LOG.error(e.getCause(), "Action warm-up failed");
+        } catch (RuntimeException e) {
+            LOG.error(e, "Action warm-up failed");
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            // always end in a final state so status checks don't wait for a warm-up that isn't running
+            WARMUP_STATE = done ? WARMUP_DONE : WARMUP_FAILED;
+        }
+        LOG.info("Initialized", actions.size(), "action routes in",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), "ms");
+    }
 
-        ServiceLoader<ActionHandler> impl = ServiceLoader.load(ActionHandler.class);
+    /**
+     * Runs warmUp() on a background thread
+     */
+    public static void warmUpAsync() {
+        WARMUP_STATE = WARMUP_RUNNING;
+        Thread warmUp = new Thread(ActionControl::warmUp, "oskari-action-warmup");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
 
-        for (ActionHandler loadedImpl : impl) {
-            if ( loadedImpl != null ) {
-                addAction(loadedImpl.getName(), loadedImpl);
+    /**
+     * @return true if warm-up has been started, see warmUp()
+     */
+    public static boolean isWarmUpStarted() {
+        return WARMUP_STATE != WARMUP_NOT_STARTED;
+    }
+
+    /**
+     * @return true if all handlers have been initialized by warmUp()
+     */
+    public static boolean isWarmedUp() {
+        return WARMUP_STATE == WARMUP_DONE;
+    }
+
+    /**
+     * @return true if warmUp() ended before all handlers were initialized. Handlers that weren't
+     * initialized are initialized on the first request to the route.
+     */
+    public static boolean isWarmUpFailed() {
+        return WARMUP_STATE == WARMUP_FAILED;
+    }
+
+    /**
+     * Instantiates and initializes the handler for a default route unless it has been done already
+     * @return handler or null if the route isn't a default route or the handler couldn't be initialized
+     */
+    private static ActionHandler initRoute(final String action) {
+        final String className = ROUTES.get(action);
+        if (className == null) {
+            return null;
+        }
+        final FutureTask<ActionHandler> task = new FutureTask<>(() -> {
+            addAction(action, className);
+            final ActionHandler handler = actions.get(action);
+            if (handler == null) {
+                // init failed
+                ROUTES.remove(action);
             }
+            return handler;
+        });
+        FutureTask<ActionHandler> existing = INITIALIZING.putIfAbsent(action, task);
+        if (existing == null) {
+            existing = task;
+            task.run();
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LOG.error(e.getCause(), "Action init failed:", action, "=", className);
+            return null;
         }
     }
 
@@ -116,33 +275,169 @@ public class ActionControl {
      * @throws ActionException if route is not registered or something goes wrong while handling the request
      */
 	public static void routeAction(final String action, final ActionParameters params) throws ActionException {
-		if (actions.isEmpty()) {
-		    addDefaultControls();
-		}
-        if (actions.containsKey(action)) {
-            Timer.Context actionTimer = null;
-            if(GATHER_METRICS) {
-                final Meter actionMeter = getMetrics().meter(METRICS_PREFIX);
-                actionMeter.mark();
-                final com.codahale.metrics.Timer timer = METRIC_REGISTRY.timer(METRICS_PREFIX + "." + action);
-                actionTimer = timer.time();
+        final ActionHandler handler = getHandler(action);
+        final ActionBulkhead bulkhead = getBulkheads().get(action);
+        if (bulkhead != null) {
+            bulkhead.acquire();
+        }
+        final Runnable metrics = startMetrics(action);
+        try {
+            handler.handleAction(params);
+        } catch (ActionException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new ActionException("Unhandled exception occured", ex);
+        } finally {
+            metrics.run();
+            if (bulkhead != null) {
+                bulkhead.release();
             }
+        }
+	}
 
+    /**
+     * Routes a request to a handler matching the route key. Handlers extending AsyncActionHandler
+     * are handled asynchronously, others are handled before this method returns.
+     * @param action route key
+     * @param params parameters describing the request
+     * @return stage that completes when the request has been handled. Completes exceptionally
+     * with ActionException if route is not registered or something goes wrong while handling the request.
+     * Cancelling the returned stage (on timeout) cancels the stage returned by the handler.
+     */
+    public static CompletionStage<Void> routeActionAsync(final String action, final ActionParameters params) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final ActionHandler handler;
+        try {
+            handler = getHandler(action);
+            if (!(handler instanceof AsyncActionHandler)) {
+                routeAction(action, params);
+                result.complete(null);
+                return result;
+            }
+        } catch (ActionException ex) {
+            result.completeExceptionally(ex);
+            return result;
+        }
+        final ActionBulkhead bulkhead = getBulkheads().get(action);
+        if (bulkhead != null) {
             try {
-                actions.get(action).handleAction(params);
-            } catch (ActionException ex) {
-                throw ex;
-            } catch (Exception ex) {
-                throw new ActionException("Unhandled exception occured", ex);
-            } finally {
-                if(actionTimer != null) {
-                    actionTimer.stop();
-                }
+                bulkhead.acquire();
+            } catch (ActionRejectedException ex) {
+                result.completeExceptionally(ex);
+                return result;
+            }
+        }
+        final Runnable metrics = startMetrics(action);
+        CompletionStage<Void> stage;
+        try {
+            stage = ((AsyncActionHandler) handler).handleActionAsync(params);
+        } catch (Exception ex) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            stage = failed;
+        }
+        final CompletionStage<Void> handlerStage = stage;
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                handlerStage.toCompletableFuture().cancel(true);
+            }
+        });
+        stage.whenComplete((ignored, error) -> {
+            metrics.run();
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+            if (error != null) {
+                result.completeExceptionally(AsyncActionHandler.toActionException(error));
+            } else {
+                result.complete(null);
             }
-        } else {
+        });
+        return result;
+    }
+
+    /**
+     * @param action route key
+     * @return true if the route is handled asynchronously by routeActionAsync()
+     */
+    public static boolean isAsync(final String action) {
+        if (!hasAction(action)) {
+            return false;
+        }
+        try {
+            return getHandler(action) instanceof AsyncActionHandler;
+        } catch (ActionParamsException e) {
+            return false;
+        }
+    }
+
+    private static ActionHandler getHandler(final String action) throws ActionParamsException {
+        if (actions.isEmpty() && ROUTES.isEmpty()) {
+            addDefaultControls();
+        }
+        ActionHandler handler = actions.get(action);
+        if (handler == null) {
+            handler = initRoute(action);
+        }
+        if (handler == null) {
             throw new ActionParamsException("ActionRoute not defined: " + action);
         }
-	}
+        return handler;
+    }
+
+    /**
+     * Starts gathering metrics for a request
+     * @return callback to run when the request has been handled
+     */
+    private static Runnable startMetrics(final String action) {
+        if (!GATHER_METRICS) {
+            return () -> {};
+        }
+        final Meter actionMeter = getMetrics().meter(METRICS_PREFIX);
+        actionMeter.mark();
+        final Timer.Context actionTimer = METRIC_REGISTRY.timer(METRICS_PREFIX + "." + action).time();
+        final long start = System.nanoTime();
+        return () -> {
+            actionTimer.stop();
+            ACTION_LATENCY.record(action, System.nanoTime() - start);
+        };
+    }
+
+    /**
+     * Bulkheads configured with properties (see ActionBulkhead) mapped by action route
+     */
+    public static Map<String, ActionBulkhead> getBulkheads() {
+        if (BULKHEADS == null) {
+            initBulkheads();
+        }
+        return BULKHEADS;
+    }
+
+    private synchronized static void initBulkheads() {
+        if (BULKHEADS != null) {
+            return;
+        }
+        final Map<String, ActionBulkhead> bulkheads = new HashMap<>();
+        for (String name : PropertyUtil.getCommaSeparatedList(ActionBulkhead.PROPERTY_BULKHEADS)) {
+            final ActionBulkhead bulkhead = ActionBulkhead.fromProperties(name);
+            for (String route : bulkhead.getRoutes()) {
+                if (bulkheads.containsKey(route)) {
+                    LOG.warn("Route", route, "has multiple bulkheads configured. Using", bulkheads.get(route).getName());
+                    continue;
+                }
+                bulkheads.put(route, bulkhead);
+            }
+            final String prefix = METRICS_PREFIX + ".bulkhead." + name;
+            METRIC_REGISTRY.remove(prefix + ".active");
+            METRIC_REGISTRY.remove(prefix + ".queued");
+            METRIC_REGISTRY.remove(prefix + ".rejected");
+            METRIC_REGISTRY.register(prefix + ".active", (Gauge<Integer>) bulkhead::getActiveCount);
+            METRIC_REGISTRY.register(prefix + ".queued", (Gauge<Integer>) bulkhead::getQueueDepth);
+            METRIC_REGISTRY.register(prefix + ".rejected", (Gauge<Long>) bulkhead::getRejectedCount);
+            LOG.info("Limiting concurrent requests to", bulkhead.getConcurrency(), "for routes:", bulkhead.getRoutes());
+        }
+        BULKHEADS = Collections.unmodifiableMap(bulkheads);
+    }
 
     /**
      * Convenient way to check if we have an implementation for the route registered
@@ -153,10 +448,10 @@ public class ActionControl {
         if(action == null) {
             return false;
         }
-        if (actions.isEmpty()) {
+        if (actions.isEmpty() && ROUTES.isEmpty()) {
             addDefaultControls();
         }
-        return actions.containsKey(action);
+        return actions.containsKey(action) || ROUTES.containsKey(action);
     }
 
     /**
@@ -172,8 +467,12 @@ public class ActionControl {
             }
         }
         actions.clear();
+        ROUTES.clear();
+        INITIALIZING.clear();
+        WARMUP_STATE = WARMUP_NOT_STARTED;
         BLACKLISTED_ACTIONS = null;
         WHITELISTED_ACTIONS = null;
+        BULKHEADS = null;
     }
 
     /**
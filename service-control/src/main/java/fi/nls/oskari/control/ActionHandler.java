@@ -1,7 +1,5 @@
 package fi.nls.oskari.control;
 
-import fi.nls.oskari.annotation.OskariActionRoute;
-
 /**
  * ActionHandler is a common interface for handling requests. Concrete subclasses can be annotated with
  * @OskariActionRoute("handlerKey") to register them on runtime.
@@ -13,13 +11,7 @@ public abstract class ActionHandler {
      * @return key for the route
      */
     public String getName () {
-        if(getClass().isAnnotationPresent(OskariActionRoute.class)) {
-            OskariActionRoute r = getClass().getAnnotation(OskariActionRoute.class);
-            if(!r.value().isEmpty()) {
-                return r.value();
-            }
-        }
-        return getClass().getSimpleName();
+        return ActionRouteIndex.getRoute(getClass());
     }
 	/**
 	 * Handler method for requests
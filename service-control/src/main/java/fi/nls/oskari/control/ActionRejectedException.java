@@ -0,0 +1,19 @@
+package fi.nls.oskari.control;
+
+/**
+ * Request was rejected because the server is too busy to handle it right now.
+ * Should be responded with 503 and a Retry-After header.
+ */
+public class ActionRejectedException extends ActionException {
+
+    private final int retryAfterSeconds;
+
+    public ActionRejectedException(final String message, final int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,108 @@
+package fi.nls.oskari.control;
+
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Maps action routes to ActionHandler class names without instantiating the handlers.
+ *
+ * Routes are read from "META-INF/oskari/action-routes" files written by OskariActionRouteAnnotationProcessor
+ * on compile time. Each line has "[route]=[class name]". Handlers only registered in the SPI services file
+ * (compiled without the index) are loaded to read the route from the annotation, but not instantiated.
+ */
+public class ActionRouteIndex {
+
+    public static final String RESOURCE = "META-INF/oskari/action-routes";
+    private static final String SERVICES = "META-INF/services/" + ActionHandler.class.getName();
+
+    private static final Logger LOG = LogFactory.getLogger(ActionRouteIndex.class);
+
+    /**
+     * @param loader class loader to find the index files and classes with
+     * @return class names by route in classpath order. If a route is defined more than once the last one is used.
+     */
+    public static Map<String, String> load(ClassLoader loader) {
+        final Map<String, String> routes = new LinkedHashMap<>();
+        final Set<String> indexed = new HashSet<>();
+        for (String line : readLines(loader, RESOURCE)) {
+            final int separator = line.indexOf('=');
+            if (separator <= 0) {
+                LOG.warn("Invalid route index entry:", line);
+                continue;
+            }
+            final String className = line.substring(separator + 1).trim();
+            addRoute(routes, line.substring(0, separator).trim(), className);
+            indexed.add(className);
+        }
+        for (String className : readLines(loader, SERVICES)) {
+            if (indexed.contains(className)) {
+                continue;
+            }
+            try {
+                // don't initialize the class, we only need the annotation
+                addRoute(routes, getRoute(Class.forName(className, false, loader)), className);
+            } catch (ClassNotFoundException | LinkageError e) {
+                LOG.warn("Couldn't load ActionHandler:", className, "-", e.getMessage());
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * @return @OskariActionRoute annotation value if any or defaults to class name
+     */
+    public static String getRoute(Class<?> handlerClass) {
+        final OskariActionRoute route = handlerClass.getAnnotation(OskariActionRoute.class);
+        if (route != null && !route.value().isEmpty()) {
+            return route.value();
+        }
+        return handlerClass.getSimpleName();
+    }
+
+    private static void addRoute(Map<String, String> routes, String route, String className) {
+        final String existing = routes.put(route, className);
+        if (existing != null && !existing.equals(className)) {
+            LOG.warn("Route", route, "is defined by", existing, "and", className, "- using", className);
+        }
+    }
+
+    /**
+     * Reads all the resources with given name. Ignores comments starting with '#' and empty lines.
+     */
+    private static List<String> readLines(ClassLoader loader, String resource) {
+        final List<String> lines = new ArrayList<>();
+        try {
+            final Enumeration<URL> urls = loader.getResources(resource);
+            while (urls.hasMoreElements()) {
+                final URL url = urls.nextElement();
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        final int comment = line.indexOf('#');
+                        if (comment != -1) {
+                            line = line.substring(0, comment);
+                        }
+                        line = line.trim();
+                        if (!line.isEmpty()) {
+                            lines.add(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Couldn't read:", url, "-", e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Couldn't find resources:", resource, "-", e.getMessage());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,100 @@
+package fi.nls.oskari.control;
+
+import fi.nls.oskari.util.PropertyUtil;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class for handlers that mostly wait for backend services. The request is handled
+ * asynchronously (Servlet 3 async) so the servlet container thread is released while waiting
+ * and the number of container threads doesn't limit the number of concurrent backend requests.
+ *
+ * Implementations should do cheap things (parameter validation, permission checks) directly in
+ * handleActionAsync() and run the backend call with runAsync(). The response is written to
+ * params.getResponse() as usual.
+ *
+ * Backend calls are run on a shared pool with "actioncontrol.async.threads" threads (defaults to 200).
+ * Use ActionBulkhead to limit the number of concurrent requests for a route.
+ */
+public abstract class AsyncActionHandler extends ActionHandler {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            PropertyUtil.getOptional("actioncontrol.async.threads", 200),
+            r -> {
+                Thread t = new Thread(r, "oskari-action-async-" + THREAD_COUNT.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
+    /**
+     * Handler method for requests
+     * @param params
+     * @return stage that completes when the response has been written
+     * @throws ActionException if the action cannot be handled. The returned stage can also complete exceptionally.
+     */
+    public abstract CompletionStage<Void> handleActionAsync(ActionParameters params) throws ActionException;
+
+    /**
+     * Handles the request synchronously by waiting for handleActionAsync() to complete
+     */
+    @Override
+    public void handleAction(ActionParameters params) throws ActionException {
+        try {
+            handleActionAsync(params).toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ActionException("Interrupted while handling action", e);
+        } catch (ExecutionException e) {
+            throw toActionException(e);
+        }
+    }
+
+    /**
+     * Runs the task on the shared pool for backend calls. Cancelling the returned future
+     * interrupts the thread running the task.
+     */
+    protected static CompletableFuture<Void> runAsync(AsyncTask task) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final Future<?> running = EXECUTOR.submit(() -> {
+            try {
+                task.run();
+                future.complete(null);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        future.whenComplete((ignored, error) -> {
+            if (future.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Unwraps the cause of an exceptionally completed stage
+     */
+    public static ActionException toActionException(Throwable t) {
+        if ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof ActionException) {
+            return (ActionException) t;
+        }
+        return new ActionException("Unhandled exception occured",
+                t instanceof Exception ? (Exception) t : new RuntimeException(t));
+    }
+
+    @FunctionalInterface
+    public interface AsyncTask {
+        void run() throws Exception;
+    }
+}
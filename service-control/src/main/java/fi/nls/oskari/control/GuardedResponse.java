@@ -0,0 +1,252 @@
+package fi.nls.oskari.control;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Response given to asynchronously handled requests. After complete() is called (on timeout) the
+ * handler can't modify the response anymore: writes throw IOException and headers/status changes are
+ * ignored. The container may already be reusing the actual response for another request at that point.
+ */
+public class GuardedResponse extends HttpServletResponseWrapper {
+
+    private boolean completed;
+    private ServletOutputStream out;
+    private PrintWriter writer;
+
+    public GuardedResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * Stops passing anything to the actual response. Waits for a write in progress to finish.
+     */
+    public synchronized void complete() {
+        completed = true;
+    }
+
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    private synchronized void checkNotCompleted() throws IOException {
+        if (completed) {
+            throw new IOException("Response has already been completed");
+        }
+    }
+
+    @Override
+    public synchronized ServletOutputStream getOutputStream() throws IOException {
+        checkNotCompleted();
+        if (out == null) {
+            out = new GuardedOutputStream(super.getOutputStream());
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized PrintWriter getWriter() throws IOException {
+        checkNotCompleted();
+        if (writer == null) {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding == null ? Charset.forName("ISO-8859-1") : Charset.forName(encoding);
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset));
+        }
+        return writer;
+    }
+
+    @Override
+    public synchronized void setStatus(int sc) {
+        if (!completed) {
+            super.setStatus(sc);
+        }
+    }
+
+    @Override
+    public synchronized void sendError(int sc) throws IOException {
+        checkNotCompleted();
+        super.sendError(sc);
+    }
+
+    @Override
+    public synchronized void sendError(int sc, String msg) throws IOException {
+        checkNotCompleted();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public synchronized void sendRedirect(String location) throws IOException {
+        checkNotCompleted();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public synchronized void setHeader(String name, String value) {
+        if (!completed) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void addHeader(String name, String value) {
+        if (!completed) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void setIntHeader(String name, int value) {
+        if (!completed) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void addIntHeader(String name, int value) {
+        if (!completed) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public synchronized void setDateHeader(String name, long date) {
+        if (!completed) {
+            super.setDateHeader(name, date);
+        }
+    }
+
+    @Override
+    public synchronized void addDateHeader(String name, long date) {
+        if (!completed) {
+            super.addDateHeader(name, date);
+        }
+    }
+
+    @Override
+    public synchronized void addCookie(Cookie cookie) {
+        if (!completed) {
+            super.addCookie(cookie);
+        }
+    }
+
+    @Override
+    public synchronized void setContentType(String type) {
+        if (!completed) {
+            super.setContentType(type);
+        }
+    }
+
+    @Override
+    public synchronized void setContentLength(int len) {
+        if (!completed) {
+            super.setContentLength(len);
+        }
+    }
+
+    @Override
+    public synchronized void setContentLengthLong(long len) {
+        if (!completed) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public synchronized void setCharacterEncoding(String charset) {
+        if (!completed) {
+            super.setCharacterEncoding(charset);
+        }
+    }
+
+    @Override
+    public synchronized void setLocale(Locale loc) {
+        if (!completed) {
+            super.setLocale(loc);
+        }
+    }
+
+    @Override
+    public synchronized void setBufferSize(int size) {
+        if (!completed) {
+            super.setBufferSize(size);
+        }
+    }
+
+    @Override
+    public synchronized void flushBuffer() throws IOException {
+        checkNotCompleted();
+        super.flushBuffer();
+    }
+
+    @Override
+    public synchronized void reset() {
+        if (!completed) {
+            super.reset();
+        }
+    }
+
+    @Override
+    public synchronized void resetBuffer() {
+        if (!completed) {
+            super.resetBuffer();
+        }
+    }
+
+    private class GuardedOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+
+        GuardedOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (GuardedResponse.this) {
+                checkNotCompleted();
+                delegate.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (GuardedResponse.this) {
+                checkNotCompleted();
+                delegate.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (GuardedResponse.this) {
+                checkNotCompleted();
+                delegate.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (GuardedResponse.this) {
+                if (!completed) {
+                    delegate.close();
+                }
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -6,11 +6,17 @@ import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Convenience methods for writing a response.
@@ -19,6 +25,17 @@ public class ResponseHelper {
 
     public static final String CONTENT_TYPE_JSON_UTF8 = "application/json;charset=UTF-8";
 
+    public static final String HEADER_ETAG = "ETag";
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    // browsers may store the response but need to check with the server that it's still valid before using it
+    public static final String CACHE_CONTROL_REVALIDATE = "private, no-cache";
+
+    // chars encoded at a time when serializing JSON to the response
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     private static final Logger LOG = LogFactory.getLogger(ResponseHelper.class);
 
     /**
@@ -32,6 +49,9 @@ public class ResponseHelper {
             if(response instanceof JSONObject || response instanceof JSONArray) {
                 params.getResponse().setCharacterEncoding("UTF-8");
                 params.getResponse().setContentType("application/json;charset=UTF-8");
+                // serialized directly to the response instead of building the whole JSON as a String
+                writeJSON(params.getResponse().getWriter(), response);
+                return;
             }
             params.getResponse().getWriter().print(response);
         } catch (IOException e) {
@@ -41,15 +61,39 @@ public class ResponseHelper {
     }
 
     /**
-     * Writes out the given response as JSON
+     * Writes out the given response as JSON. The JSON is serialized directly to the response
+     * with chunked transfer encoding so large responses are not buffered in memory.
      *
      * @param params reference to ActionParams
      * @param sc HTTP Status Code to send
      * @param json JSONObject to send
      */
     public static final void writeResponse(ActionParameters params, int sc, JSONObject json) {
-        final byte[] b = json.toString().getBytes(StandardCharsets.UTF_8);
-        writeResponse(params, sc, CONTENT_TYPE_JSON_UTF8, b);
+        final HttpServletResponse resp = params.getResponse();
+        resp.setStatus(sc);
+        resp.setContentType(CONTENT_TYPE_JSON_UTF8);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(resp.getOutputStream(), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)) {
+            writeJSON(out, json);
+        } catch (IOException e) {
+            LOG.info("Couldn't write answer:", e.getMessage());
+            LOG.debug(e);
+        }
+    }
+
+    private static void writeJSON(Writer out, Object json) throws IOException {
+        try {
+            if (json instanceof JSONArray) {
+                ((JSONArray) json).write(out);
+            } else {
+                ((JSONObject) json).write(out);
+            }
+        } catch (JSONException e) {
+            // write() wraps IOExceptions from the writer
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Couldn't serialize JSON", e);
+        }
     }
 
     /**
@@ -111,6 +155,119 @@ public class ResponseHelper {
         writeResponse(params, sc, contentType, content.getBytes(StandardCharsets.UTF_8));
     }
 
+    /**
+     * Writes out the given JSON response with an ETag computed from the content. Responds with
+     * 304 Not Modified without a body if the client already has the same content.
+     *
+     * @param params reference to params to get the writer
+     * @param response JSONObject or JSONArray to write
+     */
+    public static final void writeResponseWithETag(ActionParameters params, final Object response) {
+        final String json = response.toString();
+        if (writeNotModified(params, getETag(json.getBytes(StandardCharsets.UTF_8)))) {
+            return;
+        }
+        try {
+            params.getResponse().setCharacterEncoding("UTF-8");
+            params.getResponse().setContentType(CONTENT_TYPE_JSON_UTF8);
+            params.getResponse().getWriter().print(json);
+        } catch (IOException e) {
+            LOG.info("Couldn't write answer:", e.getMessage());
+            LOG.debug(e);
+        }
+    }
+
+    /**
+     * Writes out the given response with an ETag. Responds with 304 Not Modified without a body
+     * if the client already has the same content.
+     *
+     * @param params reference to ActionParams
+     * @param contentType of the response
+     * @param b byte array containing the response body
+     * @param etag precomputed ETag for the content or null to compute it from the content
+     */
+    public static final void writeResponseWithETag(ActionParameters params, String contentType, byte[] b, String etag) {
+        if (writeNotModified(params, etag == null ? getETag(b) : etag)) {
+            return;
+        }
+        writeResponse(params, HttpServletResponse.SC_OK, contentType, b);
+    }
+
+    /**
+     * Sets the ETag and Cache-Control headers for the response. If the ETag matches
+     * the If-None-Match header of the request, responds with 304 Not Modified.
+     * Handlers that can get the ETag cheaply (for example from a cache) can call this before
+     * rendering the response:
+     * <pre>
+     * {@code
+     *  if (ResponseHelper.writeNotModified(params, etag)) {
+     *      return;
+     *  }
+     * }
+     * </pre>
+     * @param params reference to ActionParams
+     * @param etag quoted ETag like the ones returned by getETag()
+     * @return true if 304 Not Modified was sent and nothing else should be written
+     */
+    public static final boolean writeNotModified(ActionParameters params, String etag) {
+        final HttpServletResponse resp = params.getResponse();
+        resp.setHeader(HEADER_ETAG, etag);
+        resp.setHeader(HEADER_CACHE_CONTROL, CACHE_CONTROL_REVALIDATE);
+        if (!isMatch(params.getHttpHeader(HEADER_IF_NONE_MATCH), etag)) {
+            return false;
+        }
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    /**
+     * @param ifNoneMatch value of If-None-Match header
+     * @param etag quoted ETag
+     * @return true if any of the entity tags in the header matches the ETag
+     */
+    protected static boolean isMatch(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            // weak comparison is used for If-None-Match
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a strong ETag for the content
+     * @param content response body
+     * @return quoted ETag (a hash of the content)
+     */
+    public static final String getETag(byte[] content) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            // 128 bits is plenty for telling versions apart
+            final char[] etag = new char[34];
+            etag[0] = '"';
+            for (int i = 0; i < 16; i++) {
+                etag[1 + i * 2] = HEX[(hash[i] >> 4) & 0xF];
+                etag[2 + i * 2] = HEX[hash[i] & 0xF];
+            }
+            etag[33] = '"';
+            return new String(etag);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Writes a generic error message as response with error code 500
      *
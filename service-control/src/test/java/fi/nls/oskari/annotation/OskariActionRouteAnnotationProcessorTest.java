@@ -0,0 +1,67 @@
+package fi.nls.oskari.annotation;
+
+import fi.nls.oskari.control.ActionRouteIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OskariActionRouteAnnotationProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRenamedRouteIsRemovedFromIndex() throws Exception {
+        File src = folder.newFolder("src");
+        File out = folder.newFolder("classes");
+
+        compile(writeHandler(src, "Before"), out);
+        assertEquals(Collections.singletonList("Before=test.RoutedHandler"), readIndex(out));
+
+        // incremental build with the output directory on the classpath like Maven does
+        compile(writeHandler(src, "After"), out);
+        assertEquals(Collections.singletonList("After=test.RoutedHandler"), readIndex(out));
+    }
+
+    private static File writeHandler(File dir, String route) throws Exception {
+        File file = new File(dir, "test/RoutedHandler.java");
+        file.getParentFile().mkdirs();
+        String source = "package test;\n"
+                + "/** Handler for testing */\n"
+                + "@fi.nls.oskari.annotation.OskariActionRoute(\"" + route + "\")\n"
+                + "public class RoutedHandler extends fi.nls.oskari.control.ActionHandler {\n"
+                + "    public void handleAction(fi.nls.oskari.control.ActionParameters params) {}\n"
+                + "}\n";
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void compile(File source, File out) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-d", out.getPath(),
+                    "-classpath", out.getPath() + File.pathSeparator + System.getProperty("java.class.path"));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, null, options, null,
+                    files.getJavaFileObjects(source));
+            task.setProcessors(Collections.singletonList(new OskariActionRouteAnnotationProcessor()));
+            assertTrue("Compilation failed", task.call());
+        }
+    }
+
+    private static List<String> readIndex(File out) throws Exception {
+        return Files.readAllLines(new File(out, ActionRouteIndex.RESOURCE).toPath(), StandardCharsets.UTF_8);
+    }
+}
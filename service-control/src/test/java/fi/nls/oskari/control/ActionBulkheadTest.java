@@ -0,0 +1,89 @@
+package fi.nls.oskari.control;
+
+import fi.nls.oskari.util.PropertyUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ActionBulkheadTest {
+
+    @After
+    public void teardown() throws Exception {
+        PropertyUtil.clearProperties();
+        ActionControl.teardown();
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        PropertyUtil.addProperty(ActionBulkhead.PROPERTY_BULKHEADS, "expensive, GetAppSetup");
+        PropertyUtil.addProperty("actioncontrol.bulkhead.expensive.routes", "GetPrint, GetWFSVectorTile");
+        PropertyUtil.addProperty("actioncontrol.bulkhead.expensive.concurrency", "2");
+
+        ActionBulkhead expensive = ActionControl.getBulkheads().get("GetPrint");
+        assertNotNull(expensive);
+        assertSame(expensive, ActionControl.getBulkheads().get("GetWFSVectorTile"));
+        assertEquals(2, expensive.getConcurrency());
+        assertEquals(Arrays.asList("GetAppSetup"), ActionControl.getBulkheads().get("GetAppSetup").getRoutes());
+        assertNull(ActionControl.getBulkheads().get("GetLayerTile"));
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws Exception {
+        ActionBulkhead bulkhead = new ActionBulkhead("test", Collections.singletonList("test"), 1, 0, 1000, 7);
+        bulkhead.acquire();
+        assertEquals(1, bulkhead.getActiveCount());
+        try {
+            bulkhead.acquire();
+            fail("Should have been rejected");
+        } catch (ActionRejectedException e) {
+            assertEquals(7, e.getRetryAfterSeconds());
+        }
+        assertEquals(1, bulkhead.getRejectedCount());
+        bulkhead.release();
+        bulkhead.acquire();
+        bulkhead.release();
+        assertEquals(0, bulkhead.getActiveCount());
+    }
+
+    @Test
+    public void testRejectOnTimeout() throws Exception {
+        ActionBulkhead bulkhead = new ActionBulkhead("test", Collections.singletonList("test"), 1, 1, 10, 5);
+        bulkhead.acquire();
+        try {
+            bulkhead.acquire();
+            fail("Should have been rejected");
+        } catch (ActionRejectedException expected) {
+        }
+        assertEquals(0, bulkhead.getQueueDepth());
+        assertEquals(1, bulkhead.getRejectedCount());
+    }
+
+    @Test
+    public void testQueuedRequestGetsPermit() throws Exception {
+        ActionBulkhead bulkhead = new ActionBulkhead("test", Collections.singletonList("test"), 1, 1, 5000, 5);
+        bulkhead.acquire();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread waiting = new Thread(() -> {
+            try {
+                bulkhead.acquire();
+                done.countDown();
+            } catch (ActionRejectedException ignored) {
+            }
+        });
+        waiting.start();
+        while (bulkhead.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+        bulkhead.release();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.getQueueDepth());
+        assertEquals(1, bulkhead.getActiveCount());
+        assertEquals(0, bulkhead.getRejectedCount());
+    }
+}
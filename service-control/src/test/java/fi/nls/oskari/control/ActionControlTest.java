@@ -2,8 +2,21 @@ package fi.nls.oskari.control;
 
 import fi.nls.oskari.util.PropertyUtil;
 import org.junit.After;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -12,10 +25,17 @@ import static org.junit.Assert.assertTrue;
  */
 public class ActionControlTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ClassLoader originalLoader = Thread.currentThread().getContextClassLoader();
+
     @After
     public void teardown() throws Exception {
         PropertyUtil.clearProperties();
         ActionControl.teardown();
+        Thread.currentThread().setContextClassLoader(originalLoader);
+        CountingActionHandler.INITIALIZED.set(0);
     }
 
     @Test
@@ -68,4 +88,93 @@ public class ActionControlTest {
         assertTrue("Should have whitelisted and forced actions", ActionControl.hasAction("white1") && ActionControl.hasAction("white32") && ActionControl.hasAction("dummy2"));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDefaultRoutesInitializedOnFirstUse()
+            throws Exception {
+        PropertyUtil.addProperty(ActionControl.PROPERTY_BLACKLIST, "blacklisted");
+        useRouteIndex("counting=" + CountingActionHandler.class.getName() + "\n"
+                + "blacklisted=" + CountingActionHandler.class.getName() + "\n");
+        assertTrue("Should have indexed action", ActionControl.hasAction("counting"));
+        assertFalse("Shouldn't have blacklisted action", ActionControl.hasAction("blacklisted"));
+        assertEquals("Handler should be initialized on first use", 0, CountingActionHandler.INITIALIZED.get());
+        assertFalse(ActionControl.isAsync("counting"));
+        assertFalse(ActionControl.isAsync("counting"));
+        assertEquals("Handler should be initialized once", 1, CountingActionHandler.INITIALIZED.get());
+    }
+
+    @Test
+    public void testWarmUp()
+            throws Exception {
+        StringBuilder index = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            index.append("route").append(i).append('=').append(CountingActionHandler.class.getName()).append('\n');
+        }
+        useRouteIndex(index.toString());
+        assertFalse(ActionControl.isWarmedUp());
+        ActionControl.warmUp();
+        assertTrue(ActionControl.isWarmedUp());
+        assertEquals("All handlers should be initialized", 20, CountingActionHandler.INITIALIZED.get());
+        for (int i = 0; i < 20; i++) {
+            assertTrue(ActionControl.hasAction("route" + i));
+            ActionControl.isAsync("route" + i);
+        }
+        assertEquals("Handlers shouldn't be initialized again", 20, CountingActionHandler.INITIALIZED.get());
+    }
+
+    @Test
+    public void testWarmUpInterrupted()
+            throws Exception {
+        useRouteIndex("blocking=" + BlockingActionHandler.class.getName() + "\n");
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread warmUp = new Thread(() -> {
+            ActionControl.warmUp();
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        warmUp.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+        warmUp.start();
+        try {
+            assertTrue("Handler init should start", BlockingActionHandler.STARTED.await(5, TimeUnit.SECONDS));
+            warmUp.interrupt();
+            warmUp.join(5000);
+        } finally {
+            BlockingActionHandler.RELEASE.countDown();
+        }
+        assertFalse("Warm-up should return when interrupted", warmUp.isAlive());
+        assertTrue("Interrupt flag should be kept", interrupted.get());
+        assertFalse(ActionControl.isWarmedUp());
+        assertTrue("Warm-up should end in a final state", ActionControl.isWarmUpFailed());
+    }
+
+    private void useRouteIndex(String content) throws Exception {
+        File dir = folder.newFolder();
+        File index = new File(dir, ActionRouteIndex.RESOURCE);
+        index.getParentFile().mkdirs();
+        Files.write(index.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] { dir.toURI().toURL() }, originalLoader));
+    }
+
+    public static class BlockingActionHandler extends DummyActionHandler {
+        static final CountDownLatch STARTED = new CountDownLatch(1);
+        static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+        @Override
+        public void init() {
+            STARTED.countDown();
+            try {
+                RELEASE.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static class CountingActionHandler extends DummyActionHandler {
+        static final AtomicInteger INITIALIZED = new AtomicInteger();
+
+        @Override
+        public void init() {
+            INITIALIZED.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package fi.nls.oskari.control;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ActionRouteIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoad() throws Exception {
+        File dir = folder.newFolder();
+        write(dir, ActionRouteIndex.RESOURCE, "# comment\n"
+                + "Dummy=fi.nls.oskari.control.DummyActionHandler\n"
+                + "\n"
+                + "invalid line\n"
+                + "Other = fi.nls.oskari.control.OtherHandler # trailing comment\n");
+        write(dir, "META-INF/services/" + ActionHandler.class.getName(),
+                "fi.nls.oskari.control.DummyActionHandler\n"
+                + "fi.nls.oskari.control.ActionRouteIndexTest$LegacyHandler\n"
+                + "fi.nls.oskari.control.MissingHandler\n");
+
+        Map<String, String> routes = ActionRouteIndex.load(new URLClassLoader(new URL[] { dir.toURI().toURL() }, getClass().getClassLoader()));
+        assertEquals("fi.nls.oskari.control.DummyActionHandler", routes.get("Dummy"));
+        assertEquals("fi.nls.oskari.control.OtherHandler", routes.get("Other"));
+        // from services file without index entry, route defaults to class name
+        assertEquals(LegacyHandler.class.getName(), routes.get("LegacyHandler"));
+        assertFalse("Indexed handler should not be added again with class name", routes.containsKey("DummyActionHandler"));
+        assertEquals(3, routes.size());
+    }
+
+    @Test
+    public void testGetRoute() {
+        assertEquals("DummyActionHandler", ActionRouteIndex.getRoute(DummyActionHandler.class));
+        assertEquals(new DummyActionHandler().getName(), ActionRouteIndex.getRoute(DummyActionHandler.class));
+    }
+
+    private static void write(File dir, String resource, String content) throws Exception {
+        File file = new File(dir, resource);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static class LegacyHandler extends ActionHandler {
+        @Override
+        public void handleAction(ActionParameters params) {
+            // do nothing
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package fi.nls.oskari.control;
+
+import com.sun.net.httpserver.HttpServer;
+import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.util.PropertyUtil;
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncActionHandlerTest {
+
+    @After
+    public void teardown() throws Exception {
+        PropertyUtil.clearProperties();
+        ActionControl.teardown();
+    }
+
+    @Test
+    public void testRouteActionAsync() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ActionControl.addAction("async", new AsyncActionHandler() {
+            @Override
+            public CompletionStage<Void> handleActionAsync(ActionParameters params) {
+                return runAsync(() -> release.await());
+            }
+        });
+        assertTrue(ActionControl.isAsync("async"));
+
+        CompletableFuture<Void> result = ActionControl.routeActionAsync("async", new ActionParameters()).toCompletableFuture();
+        assertFalse("Handled on another thread", result.isDone());
+        release.countDown();
+        result.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSyncHandlerIsCompletedImmediately() throws Exception {
+        ActionControl.addAction("sync", new DummyActionHandler());
+        assertFalse(ActionControl.isAsync("sync"));
+        assertTrue(ActionControl.routeActionAsync("sync", new ActionParameters()).toCompletableFuture().isDone());
+    }
+
+    @Test
+    public void testExceptions() throws Exception {
+        ActionControl.addAction("fail", new AsyncActionHandler() {
+            @Override
+            public CompletionStage<Void> handleActionAsync(ActionParameters params) {
+                return runAsync(() -> {
+                    throw new ActionParamsException("Bad params");
+                });
+            }
+        });
+        try {
+            ActionControl.routeActionAsync("fail", new ActionParameters()).toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ActionParamsException);
+        }
+        // sync routing waits for the result and throws the original exception
+        try {
+            ActionControl.routeAction("fail", new ActionParameters());
+            fail("Should have failed");
+        } catch (ActionParamsException expected) {
+        }
+        try {
+            ActionControl.routeActionAsync("missing", new ActionParameters()).toCompletableFuture().get();
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ActionParamsException);
+        }
+    }
+
+    @Test
+    public void testCancelInterruptsHandlerAndReleasesBulkhead() throws Exception {
+        PropertyUtil.addProperty(ActionBulkhead.PROPERTY_BULKHEADS, "slow");
+        PropertyUtil.addProperty("actioncontrol.bulkhead.slow.routes", "slow");
+        PropertyUtil.addProperty("actioncontrol.bulkhead.slow.concurrency", "1");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ActionControl.addAction("slow", new AsyncActionHandler() {
+            @Override
+            public CompletionStage<Void> handleActionAsync(ActionParameters params) {
+                return runAsync(() -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(60000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                });
+            }
+        });
+        CompletableFuture<Void> result = ActionControl.routeActionAsync("slow", new ActionParameters()).toCompletableFuture();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(1, ActionControl.getBulkheads().get("slow").getActiveCount());
+
+        result.cancel(true);
+        assertTrue("Handler should be interrupted", interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals("Permit should be released", 0, ActionControl.getBulkheads().get("slow").getActiveCount());
+    }
+
+    /**
+     * Simulates a servlet container with a fixed thread pool handling requests that proxy
+     * a slow backend service.
+     */
+    @Test
+    @Ignore("Benchmark, run manually")
+    public void benchmarkSlowBackend() throws Exception {
+        final int containerThreads = 20;
+        final int requests = 400;
+        final long backendDelayMs = 200;
+
+        HttpServer backend = HttpServer.create(new InetSocketAddress("localhost", 0), requests);
+        backend.setExecutor(Executors.newCachedThreadPool());
+        backend.createContext("/", exchange -> {
+            try {
+                Thread.sleep(backendDelayMs);
+            } catch (InterruptedException ignored) {
+            }
+            byte[] body = "tile".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        backend.start();
+        final String url = "http://localhost:" + backend.getAddress().getPort() + "/";
+
+        ActionControl.addAction("sync", new ActionHandler() {
+            @Override
+            public void handleAction(ActionParameters params) throws ActionException {
+                fetch(url);
+            }
+        });
+        ActionControl.addAction("async", new AsyncActionHandler() {
+            @Override
+            public CompletionStage<Void> handleActionAsync(ActionParameters params) {
+                return runAsync(() -> fetch(url));
+            }
+        });
+        try {
+            // warm up
+            run("sync", containerThreads, containerThreads);
+            run("async", containerThreads, containerThreads);
+
+            long syncTime = run("sync", containerThreads, requests);
+            long asyncTime = run("async", containerThreads, requests);
+            System.out.println("Backend delay " + backendDelayMs + "ms, " + containerThreads + " container threads");
+            System.out.println("Sync: " + (requests * 1000L / syncTime) + " requests/s");
+            System.out.println("Async: " + (requests * 1000L / asyncTime) + " requests/s");
+        } finally {
+            backend.stop(0);
+        }
+    }
+
+    private static void fetch(String url) throws ActionException {
+        try {
+            IOHelper.readBytes(IOHelper.getConnection(url));
+        } catch (Exception e) {
+            throw new ActionException("Backend failed", e);
+        }
+    }
+
+    /**
+     * @return time in ms to complete all requests
+     */
+    private static long run(String route, int containerThreads, int requests) throws Exception {
+        ExecutorService container = Executors.newFixedThreadPool(containerThreads);
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            container.execute(() -> ActionControl.routeActionAsync(route, new ActionParameters())
+                    .whenComplete((v, e) -> done.countDown()));
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        container.shutdown();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
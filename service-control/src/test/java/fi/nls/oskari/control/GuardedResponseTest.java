@@ -0,0 +1,75 @@
+package fi.nls.oskari.control;
+
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class GuardedResponseTest {
+
+    @Test
+    public void testNoWritesAfterComplete() throws Exception {
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        HttpServletResponse actual = mock(HttpServletResponse.class);
+        when(actual.getOutputStream()).thenReturn(stream(written));
+
+        GuardedResponse response = new GuardedResponse(actual);
+        response.setContentType("image/png");
+        OutputStream out = response.getOutputStream();
+        out.write(new byte[] { 1, 2 });
+        response.complete();
+        assertTrue(response.isCompleted());
+
+        try {
+            out.write(new byte[] { 3 });
+            fail("Write after complete should fail");
+        } catch (IOException expected) {
+        }
+        try {
+            response.getWriter();
+            fail("Writer after complete should fail");
+        } catch (IOException expected) {
+        }
+        try {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            fail("Error after complete should fail");
+        } catch (IOException expected) {
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain");
+        response.setHeader("X-Late", "true");
+        out.close();
+
+        assertArrayEquals(new byte[] { 1, 2 }, written.toByteArray());
+        verify(actual).setContentType("image/png");
+        verify(actual, never()).setContentType("text/plain");
+        verify(actual, never()).setStatus(anyInt());
+        verify(actual, never()).sendError(anyInt());
+        verify(actual, never()).setHeader(anyString(), anyString());
+    }
+
+    private static ServletOutputStream stream(OutputStream out) {
+        return new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+    }
+}
@@ -0,0 +1,164 @@
+package fi.nls.oskari.util;
+
+import fi.nls.oskari.control.ActionParameters;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ResponseHelperTest {
+
+    private static final String ETAG = "\"abc\"";
+
+    @Test
+    public void testGetETag() {
+        String etag = ResponseHelper.getETag("test".getBytes(StandardCharsets.UTF_8));
+        assertTrue("Should be quoted", etag.startsWith("\"") && etag.endsWith("\""));
+        assertEquals(34, etag.length());
+        assertEquals("Same content should have the same ETag", etag, ResponseHelper.getETag("test".getBytes(StandardCharsets.UTF_8)));
+        assertNotEquals(etag, ResponseHelper.getETag("test2".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testIsMatch() {
+        assertFalse(ResponseHelper.isMatch(null, ETAG));
+        assertTrue(ResponseHelper.isMatch(ETAG, ETAG));
+        assertTrue(ResponseHelper.isMatch("*", ETAG));
+        assertTrue(ResponseHelper.isMatch("W/" + ETAG, ETAG));
+        assertTrue(ResponseHelper.isMatch("\"xyz\", " + ETAG, ETAG));
+        assertFalse(ResponseHelper.isMatch("\"xyz\"", ETAG));
+        assertFalse("ETags are quoted", ResponseHelper.isMatch("abc", ETAG));
+    }
+
+    @Test
+    public void testWriteNotModified() {
+        ActionParameters params = createParams(ETAG);
+        assertTrue(ResponseHelper.writeNotModified(params, ETAG));
+        verify(params.getResponse()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(params.getResponse()).setHeader(ResponseHelper.HEADER_ETAG, ETAG);
+
+        params = createParams("\"xyz\"");
+        assertFalse(ResponseHelper.writeNotModified(params, ETAG));
+        verify(params.getResponse(), never()).setStatus(anyInt());
+        verify(params.getResponse()).setHeader(ResponseHelper.HEADER_ETAG, ETAG);
+        verify(params.getResponse()).setHeader(ResponseHelper.HEADER_CACHE_CONTROL, ResponseHelper.CACHE_CONTROL_REVALIDATE);
+    }
+
+    private ActionParameters createParams(String ifNoneMatch) {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        doReturn(ifNoneMatch).when(req).getHeader(ResponseHelper.HEADER_IF_NONE_MATCH);
+        ActionParameters params = new ActionParameters();
+        params.setRequest(req);
+        params.setResponse(mock(HttpServletResponse.class));
+        return params;
+    }
+
+    @Test
+    public void testWriteJSON() throws Exception {
+        JSONObject json = createJSON(10);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ActionParameters params = createParams(null);
+        doReturn(new TestOutputStream(baos)).when(params.getResponse()).getOutputStream();
+        ResponseHelper.writeResponse(params, 200, json);
+        assertEquals("Streamed JSON should match toString()", json.toString(), new String(baos.toByteArray(), StandardCharsets.UTF_8));
+        verify(params.getResponse()).setStatus(200);
+        verify(params.getResponse()).setContentType(ResponseHelper.CONTENT_TYPE_JSON_UTF8);
+
+        StringWriter writer = new StringWriter();
+        params = createParams(null);
+        doReturn(new PrintWriter(writer)).when(params.getResponse()).getWriter();
+        ResponseHelper.writeResponse(params, json.getJSONArray("features"));
+        assertEquals(json.getJSONArray("features").toString(), writer.toString());
+    }
+
+    /**
+     * Compares bytes allocated when writing a large JSON response by building it as a String
+     * and by streaming it to the response.
+     */
+    @Test
+    @Ignore("Benchmark, run manually")
+    public void benchmarkWriteJSON() throws Exception {
+        final JSONObject json = createJSON(20000);
+        final int rounds = 20;
+        final ActionParameters params = createParams(null);
+        doReturn(new TestOutputStream(null)).when(params.getResponse()).getOutputStream();
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < rounds; i++) {
+            // warm up
+            ResponseHelper.writeResponse(params, 200, ResponseHelper.CONTENT_TYPE_JSON_UTF8, json.toString().getBytes(StandardCharsets.UTF_8));
+            ResponseHelper.writeResponse(params, 200, json);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            ResponseHelper.writeResponse(params, 200, ResponseHelper.CONTENT_TYPE_JSON_UTF8, json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        System.out.println("String: " + (threads.getThreadAllocatedBytes(threadId) - allocated) / rounds / 1024 + " kB allocated/response, "
+                + (System.nanoTime() - start) / rounds / 1000 + " us/response");
+
+        allocated = threads.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            ResponseHelper.writeResponse(params, 200, json);
+        }
+        System.out.println("Streamed: " + (threads.getThreadAllocatedBytes(threadId) - allocated) / rounds / 1024 + " kB allocated/response, "
+                + (System.nanoTime() - start) / rounds / 1000 + " us/response");
+    }
+
+    private JSONObject createJSON(int count) throws Exception {
+        JSONArray features = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONObject feature = new JSONObject();
+            feature.put("id", i);
+            feature.put("name", "Region \"" + i + "\" </script> \u00e4\u00f6 \u2028");
+            feature.put("coordinates", new JSONArray().put(24.9384 + i).put(60.1699));
+            feature.put("visible", i % 2 == 0);
+            feature.put("parent", JSONObject.NULL);
+            features.put(feature);
+        }
+        return new JSONObject().put("type", "FeatureCollection").put("features", features);
+    }
+
+    private static class TestOutputStream extends ServletOutputStream {
+        private final OutputStream out;
+        TestOutputStream(OutputStream out) {
+            this.out = out;
+        }
+        @Override
+        public void write(int b) throws IOException {
+            if (out != null) {
+                out.write(b);
+            }
+        }
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (out != null) {
+                out.write(b, off, len);
+            }
+        }
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}
@@ -5,6 +5,7 @@ import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
@@ -12,6 +13,11 @@ import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
 import javax.sql.DataSource;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Simple MyBatis Dao for saving CSW metadata for maplayers
@@ -55,4 +61,55 @@ public class OskariLayerMetadataDao {
             session.close();
         }
     }
+
+    /**
+     * @return time of last save for each saved metadata id
+     */
+    public Map<String, Date> findTimestamps() {
+        final Map<String, Date> result = new HashMap<>();
+        try (SqlSession session = factory.openSession()) {
+            final OskariLayerMetadataDto.Mapper mapper = session.getMapper(OskariLayerMetadataDto.Mapper.class);
+            for (Map<String, Object> row : mapper.findTimestamps()) {
+                result.put((String) getIgnoreCase(row, "metadataid"), (Date) getIgnoreCase(row, "ts"));
+            }
+        } catch (Exception e) {
+            log.error(e, "Error reading metadata timestamps");
+        }
+        return result;
+    }
+
+    private static Object getIgnoreCase(Map<String, Object> row, String key) {
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            if (key.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Saves the metadata in one batched transaction
+     * @param existing metadata ids that are already saved and should be updated
+     * @return number of saved records, 0 if the transaction failed
+     */
+    public int saveMetadata(List<OskariLayerMetadataDto> list, Set<String> existing) {
+        if (list.isEmpty()) {
+            return 0;
+        }
+        try (SqlSession session = factory.openSession(ExecutorType.BATCH)) {
+            final OskariLayerMetadataDto.Mapper mapper = session.getMapper(OskariLayerMetadataDto.Mapper.class);
+            for (OskariLayerMetadataDto dto : list) {
+                if (existing.contains(dto.metadataId)) {
+                    mapper.updateByMetadataId(dto);
+                } else {
+                    mapper.insert(dto);
+                }
+            }
+            session.commit();
+            return list.size();
+        } catch (Exception e) {
+            log.error(e, "Error saving metadata for", list.size(), "records");
+            return 0;
+        }
+    }
 }
@@ -5,6 +5,8 @@ import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
 import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A data transfer object for interacting with the ``oskari_maplayer_metadata`` database table.
@@ -20,6 +22,12 @@ public class OskariLayerMetadataDto {
 
         @Update("UPDATE oskari_maplayer_metadata SET wkt=#{wkt}, json=#{json}, ts=NOW() WHERE id=#{id}")
         public void update(final OskariLayerMetadataDto metadata);
+
+        @Update("UPDATE oskari_maplayer_metadata SET wkt=#{wkt}, json=#{json}, ts=NOW() WHERE metadataid=#{metadataId}")
+        public void updateByMetadataId(final OskariLayerMetadataDto metadata);
+
+        @Select("SELECT metadataid, ts FROM oskari_maplayer_metadata")
+        public List<Map<String, Object>> findTimestamps();
     }
 
     public OskariLayerMetadataDto() {
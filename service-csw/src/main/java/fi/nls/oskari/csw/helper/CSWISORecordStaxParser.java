@@ -0,0 +1,1287 @@
+package fi.nls.oskari.csw.helper;
+
+import fi.nls.oskari.csw.domain.CSWIsoRecord;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import org.geotools.geometry.jts.JTS;
+import org.locationtech.jts.geom.*;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+import static fi.nls.oskari.csw.helper.CSWISORecordNamespaceContext.GCONS;
+import static fi.nls.oskari.csw.helper.CSWISORecordNamespaceContext.GMDNS;
+import static fi.nls.oskari.csw.helper.CSWISORecordNamespaceContext.GMLNS;
+import static fi.nls.oskari.csw.helper.CSWISORecordNamespaceContext.SRVNS;
+
+/**
+ * Parser for gmd:MD_Metadata elements. Reads the record in a single pass with StAX instead of
+ * building a DOM and evaluating XPath expressions against it. The tests check that the result is
+ * the same as with the earlier DOM based CSWISORecordParser.
+ *
+ * Localized values are resolved after the whole record has been read since gmd:locale is listed
+ * after some of the fields using it.
+ *
+ * Keeps state while parsing so use one instance per thread.
+ */
+public class CSWISORecordStaxParser {
+
+    private static final Logger log = LogFactory.getLogger(CSWISORecordStaxParser.class);
+    private static final String EXCLUDED_ONLINE_RESOURCE_PROTOCOL = "WWW:DOWNLOAD-1.0-ftp--download";
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'kk:mm:ss");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    // we need to map languages from 3-letter codes to 2-letter codes
+    private static final Map<String, String> ISO3letterOskariLangMapping = new HashMap<>();
+
+    static {
+        for (final String language : Locale.getISOLanguages()) {
+            final Locale locale = new Locale(language);
+            ISO3letterOskariLangMapping.put(locale.getISO3Language(), locale.getLanguage());
+        }
+    }
+
+    // gmd:report elements read to data qualities and their node names, same as in the earlier CSWISORecordDataQualityParser
+    private static final List<String> DATA_QUALITY_TYPES = Arrays.asList(
+            "DQ_AbsoluteExternalPositionalAccuracy", "DQ_CompletenessCommission", "DQ_CompletenessOmission",
+            "DQ_ConceptualConsistency", "DQ_DomainConsistency", "DQ_FormatConsistency", "DQ_TopologicalConsistency",
+            "DQ_GriddedDataPositionalAccuracy", "DQ_AccuracyOfATimeMeasurement", "DQ_TemporalConsistency",
+            "DQ_TemporalValidity", "DQ_ThematicClassificationCorrectness", "DQ_NonQuantitativeAttributeAccuracy",
+            "DQ_QuantitativeAttributeAccuracy");
+    // the space in "temporalValidity " was there in CSWISORecordDataQualityParser too
+    private static final List<String> DATA_QUALITY_NAMES = Arrays.asList(
+            "absoluteExternalPositionalAccuracy", "completenessCommission", "completenessOmission",
+            "conceptualConsistency", "domainConsistency", "formatConsistency", "topologicalConsistency",
+            "griddedDataPositionalAccuracy", "accuracyOfTimeMeasurement", "temporalConsistency",
+            "temporalValidity ", "thematicClassificationCorrectness", "nonQuantitativeAttributeAccuracy",
+            "quantitativeAttributeAccuracy");
+
+    private final GeometryFactory gf = new GeometryFactory(new PrecisionModel(), 4326);
+
+    // state for the record being parsed
+    private final Map<String, String> locales = new HashMap<>();
+    private boolean localesFailed;
+    private String localeId;
+    private final List<Runnable> localizedValues = new ArrayList<>();
+
+    /**
+     * @param reader positioned at the start of gmd:MD_Metadata, left at the end of it
+     */
+    public CSWIsoRecord parse(final XMLStreamReader reader, final Locale locale, MathTransform transform) throws XMLStreamException, TransformException {
+        locales.clear();
+        localesFailed = false;
+        localeId = null;
+        localizedValues.clear();
+
+        CSWIsoRecord record = new CSWIsoRecord();
+        Text fileIdentifier = null;
+        Text standardName = null;
+        Text standardVersion = null;
+        Text language = null;
+        String characterSet = null;
+        Text dateStamp = null;
+        boolean distributionFound = false;
+
+        while (nextChild(reader)) {
+            if (!GMDNS.equals(reader.getNamespaceURI())) {
+                skip(reader);
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "identificationInfo":
+                    readIdentificationInfo(reader, record.getIdentifications(), transform);
+                    break;
+                case "dataQualityInfo":
+                    readDataQualityInfo(reader, record);
+                    break;
+                case "distributionInfo":
+                    distributionFound = readDistributionInfo(reader, record, distributionFound);
+                    break;
+                case "fileIdentifier":
+                    fileIdentifier = first(fileIdentifier, reader, GCONS, "CharacterString");
+                    break;
+                case "hierarchyLevel":
+                    readAttributes(reader, GMDNS, "MD_ScopeCode", "codeListValue", record.getScopeCodes());
+                    break;
+                case "metadataStandardName":
+                    standardName = first(standardName, reader, GCONS, "CharacterString");
+                    break;
+                case "metadataStandardVersion":
+                    standardVersion = first(standardVersion, reader, GCONS, "CharacterString");
+                    break;
+                case "language":
+                    language = first(language, reader, GCONS, "CharacterString");
+                    break;
+                case "characterSet":
+                    if (characterSet == null) {
+                        characterSet = readAttribute(reader, GMDNS, "MD_CharacterSetCode", "codeListValue");
+                    } else {
+                        skip(reader);
+                    }
+                    break;
+                case "contact":
+                    readResponsibleParties(reader, record.getMetadataResponsibleParties());
+                    break;
+                case "dateStamp":
+                    dateStamp = first(dateStamp, reader, GCONS, "DateTime");
+                    break;
+                case "referenceSystemInfo":
+                    readReferenceSystems(reader, record.getReferenceSystems());
+                    break;
+                case "locale":
+                    readLocale(reader);
+                    break;
+                default:
+                    skip(reader);
+            }
+        }
+
+        localeId = locales.get(locale.getISO3Language());
+        for (Runnable localizedValue : localizedValues) {
+            localizedValue.run();
+        }
+        if (fileIdentifier != null) {
+            record.setFileIdentifier(fileIdentifier.get());
+        }
+        if (standardName != null) {
+            record.setMetadataStandardName(standardName.get());
+        }
+        if (standardVersion != null) {
+            record.setMetadataStandardVersion(standardVersion.get());
+        }
+        if (language != null) {
+            record.setMetadataLanguage(getLanguageIfAvailable(language.get()));
+        }
+        if (characterSet != null) {
+            record.setMetadataCharacterSet(characterSet);
+        }
+        if (dateStamp != null) {
+            try {
+                record.setMetadataDateStamp(LocalDateTime.parse(dateStamp.get(), DATE_TIME_FORMAT));
+            } catch (Exception e) {
+                // TODO: should we add raw xml content if parsing fails
+            }
+        }
+        return record;
+    }
+
+    private void readIdentificationInfo(XMLStreamReader reader, List<CSWIsoRecord.Identification> identifications, MathTransform transform) throws XMLStreamException, TransformException {
+        while (nextChild(reader)) {
+            if (is(reader, GMDNS, "MD_DataIdentification")) {
+                identifications.add(readIdentification(reader, new CSWIsoRecord.DataIdentification(), transform));
+            } else if (is(reader, SRVNS, "SV_ServiceIdentification")) {
+                identifications.add(readIdentification(reader, new CSWIsoRecord.ServiceIdentification(), transform));
+            } else {
+                skip(reader);
+            }
+        }
+    }
+
+    private CSWIsoRecord.Identification readIdentification(XMLStreamReader reader, CSWIsoRecord.Identification identification, MathTransform transform) throws XMLStreamException, TransformException {
+        Text abstractText = null;
+        Text serviceType = null;
+        Text serviceTypeVersion = null;
+        boolean citationFound = false;
+        List<Envelope> envelopes = new ArrayList<>();
+        CSWIsoRecord.DataIdentification di = identification instanceof CSWIsoRecord.DataIdentification
+                ? (CSWIsoRecord.DataIdentification) identification : null;
+        CSWIsoRecord.ServiceIdentification si = identification instanceof CSWIsoRecord.ServiceIdentification
+                ? (CSWIsoRecord.ServiceIdentification) identification : null;
+
+        while (nextChild(reader)) {
+            String ns = reader.getNamespaceURI();
+            String name = reader.getLocalName();
+            if ("extent".equals(name)) {
+                // geographic extents are read from any namespace, temporal only from gmd
+                readExtent(reader, GMDNS.equals(ns), identification, envelopes);
+            } else if (GMDNS.equals(ns) && "abstract".equals(name)) {
+                abstractText = first(abstractText, reader, GCONS, "CharacterString");
+            } else if (GMDNS.equals(ns) && "citation".equals(name)) {
+                citationFound = readCitation(reader, identification, citationFound);
+            } else if (GMDNS.equals(ns) && "descriptiveKeywords".equals(name)) {
+                readKeywords(reader, identification.getDescriptiveKeywords());
+            } else if (GMDNS.equals(ns) && "graphicOverview".equals(name)) {
+                readBrowseGraphics(reader, identification.getBrowseGraphics());
+            } else if (GMDNS.equals(ns) && "pointOfContact".equals(name)) {
+                readResponsibleParties(reader, identification.getResponsibleParties());
+            } else if (GMDNS.equals(ns) && "resourceConstraints".equals(name)) {
+                readResourceConstraints(reader, identification);
+            } else if (di != null && GMDNS.equals(ns) && "characterSet".equals(name)) {
+                addIfNotNull(di.getCharacterSets(), getAttribute(reader, "codeListValue"));
+                skip(reader);
+            } else if (di != null && GMDNS.equals(ns) && "language".equals(name)) {
+                addLocalized(di.getLanguages(), readLocalized(reader, GCONS, "CharacterString"), true);
+            } else if (di != null && GMDNS.equals(ns) && "topicCategory".equals(name)) {
+                addLocalized(di.getTopicCategories(), readLocalized(reader, GMDNS, "MD_TopicCategoryCode"), false);
+            } else if (di != null && GMDNS.equals(ns) && "spatialResolution".equals(name)) {
+                readResolution(reader, di.getSpatialResolutions());
+            } else if (di != null && GMDNS.equals(ns) && "spatialRepresentationType".equals(name)) {
+                readAttributes(reader, GMDNS, "MD_SpatialRepresentationTypeCode", "codeListValue", di.getSpatialRepresentationTypes());
+            } else if (si != null && SRVNS.equals(ns) && "operatesOn".equals(name)) {
+                addIfNotNull(si.getOperatesOn(), getAttribute(reader, "uuidref"));
+                skip(reader);
+            } else if (si != null && SRVNS.equals(ns) && "serviceType".equals(name)) {
+                serviceType = first(serviceType, reader, GCONS, "LocalName");
+            } else if (si != null && SRVNS.equals(ns) && "serviceTypeVersion".equals(name)) {
+                serviceTypeVersion = first(serviceTypeVersion, reader, GCONS, "LocalName");
+            } else {
+                skip(reader);
+            }
+        }
+
+        final Text abstractValue = abstractText;
+        localizedValues.add(() -> identification.setAbstractText(abstractValue == null ? null : abstractValue.get()));
+        if (serviceType != null) {
+            final Text value = serviceType;
+            localizedValues.add(() -> si.setServiceType(value.get()));
+        }
+        if (serviceTypeVersion != null) {
+            final Text value = serviceTypeVersion;
+            localizedValues.add(() -> si.setServiceTypeVersion(value.get()));
+        }
+        setExtents(identification, envelopes, transform);
+        return identification;
+    }
+
+    private void readExtent(XMLStreamReader reader, boolean temporal, CSWIsoRecord.Identification identification, List<Envelope> envelopes) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "EX_Extent")) {
+                skip(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                if (is(reader, GMDNS, "geographicElement")) {
+                    while (nextChild(reader)) {
+                        if (is(reader, GMDNS, "EX_GeographicBoundingBox")) {
+                            addIfNotNull(envelopes, readBoundingBox(reader));
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                } else if (temporal && is(reader, GMDNS, "temporalElement")) {
+                    readTemporalElement(reader, identification.getTemporalExtents());
+                } else {
+                    skip(reader);
+                }
+            }
+        }
+    }
+
+    private void readTemporalElement(XMLStreamReader reader, List<CSWIsoRecord.Identification.TemporalExtent> temporalExtents) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "EX_TemporalExtent")) {
+                skip(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                if (!is(reader, GMDNS, "extent")) {
+                    skip(reader);
+                    continue;
+                }
+                while (nextChild(reader)) {
+                    if (!is(reader, GMLNS, "TimePeriod")) {
+                        skip(reader);
+                        continue;
+                    }
+                    CSWIsoRecord.Identification.TemporalExtent temporalExtent = new CSWIsoRecord.Identification.TemporalExtent();
+                    boolean beginFound = false;
+                    boolean endFound = false;
+                    while (nextChild(reader)) {
+                        if (!beginFound && is(reader, GMLNS, "beginPosition")) {
+                            temporalExtent.setBegin(getText(reader));
+                            beginFound = true;
+                        } else if (!endFound && is(reader, GMLNS, "endPosition")) {
+                            temporalExtent.setEnd(getText(reader));
+                            endFound = true;
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                    temporalExtents.add(temporalExtent);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return west, east, north, south or null if any is missing
+     */
+    private Envelope readBoundingBox(XMLStreamReader reader) throws XMLStreamException {
+        String westBoundLongitude = null, southBoundLatitude = null, eastBoundLongitude = null, northBoundLatitude = null;
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "westBoundLongitude":
+                    westBoundLongitude = readLatLonValue(reader);
+                    break;
+                case "southBoundLatitude":
+                    southBoundLatitude = readLatLonValue(reader);
+                    break;
+                case "eastBoundLongitude":
+                    eastBoundLongitude = readLatLonValue(reader);
+                    break;
+                case "northBoundLatitude":
+                    northBoundLatitude = readLatLonValue(reader);
+                    break;
+                default:
+                    skip(reader);
+            }
+        }
+        if (isEmpty(westBoundLongitude) || isEmpty(southBoundLatitude)
+                || isEmpty(eastBoundLongitude) || isEmpty(northBoundLatitude)) {
+            return null;
+        }
+        return new Envelope(
+                Double.parseDouble(westBoundLongitude),
+                Double.parseDouble(eastBoundLongitude),
+                Double.parseDouble(northBoundLatitude),
+                Double.parseDouble(southBoundLatitude));
+    }
+
+    private String readLatLonValue(XMLStreamReader reader) throws XMLStreamException {
+        String ret = null;
+        while (nextChild(reader)) {
+            if ("Decimal".equals(reader.getLocalName())) {
+                // not trimmed, same as CSWISORecordParser did
+                ret = readText(reader);
+            } else {
+                skip(reader);
+            }
+        }
+        return ret;
+    }
+
+    private void setExtents(CSWIsoRecord.Identification identification, List<Envelope> envelopes, MathTransform transform) throws TransformException {
+        if (envelopes.isEmpty()) {
+            return;
+        }
+        List<CSWIsoRecord.Envelope> wktExtents = identification.getEnvelopes();
+        Polygon[] extents = new Polygon[envelopes.size()];
+        for (int i = 0; i < extents.length; i++) {
+            Envelope env = envelopes.get(i);
+            if (transform != null) {
+                env = JTS.transform(env, transform);
+            }
+            CSWIsoRecord.Envelope envStr = new CSWIsoRecord.Envelope();
+            envStr.setWestBoundLongitude(env.getMinX());
+            envStr.setEastBoundLongitude(env.getMaxX());
+            envStr.setSouthBoundLatitude(env.getMinY());
+            envStr.setNorthBoundLatitude(env.getMaxY());
+            wktExtents.add(envStr);
+            extents[i] = gf.createPolygon(gf.createLinearRing(new Coordinate[]{
+                    new Coordinate(env.getMinX(), env.getMinY()),
+                    new Coordinate(env.getMaxX(), env.getMinY()),
+                    new Coordinate(env.getMaxX(), env.getMaxY()),
+                    new Coordinate(env.getMinX(), env.getMaxY()),
+                    new Coordinate(env.getMinX(), env.getMinY())}), null);
+        }
+        identification.setExtents(gf.createGeometryCollection(extents));
+    }
+
+    /**
+     * Only the first gmd:CI_Citation is read
+     * @return true if citation has been found
+     */
+    private boolean readCitation(XMLStreamReader reader, CSWIsoRecord.Identification identification, boolean found) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (found || !is(reader, GMDNS, "CI_Citation")) {
+                skip(reader);
+                continue;
+            }
+            found = true;
+            final CSWIsoRecord.Identification.Citation citation = new CSWIsoRecord.Identification.Citation();
+            identification.setCitation(citation);
+            Text title = null;
+            String dateType = null;
+            String date = null;
+            while (nextChild(reader)) {
+                if (is(reader, GMDNS, "title")) {
+                    title = first(title, reader, GCONS, "CharacterString");
+                } else if (is(reader, GMDNS, "date")) {
+                    while (nextChild(reader)) {
+                        if (!is(reader, GMDNS, "CI_Date")) {
+                            skip(reader);
+                            continue;
+                        }
+                        while (nextChild(reader)) {
+                            if (dateType == null && is(reader, GMDNS, "dateType")) {
+                                dateType = readAttribute(reader, GMDNS, "CI_DateTypeCode", "codeListValue");
+                            } else if (date == null && is(reader, GMDNS, "date")) {
+                                date = readChildText(reader, GCONS, "Date");
+                            } else {
+                                skip(reader);
+                            }
+                        }
+                    }
+                } else if (is(reader, GMDNS, "identifier")) {
+                    readResourceIdentifiers(reader, citation.getResourceIdentifiers());
+                } else {
+                    skip(reader);
+                }
+            }
+            if (title != null) {
+                final Text value = title;
+                localizedValues.add(() -> citation.setTitle(value.get()));
+            }
+            CSWIsoRecord.Identification.DateWithType dateWithType = new CSWIsoRecord.Identification.DateWithType();
+            if (dateType != null) {
+                dateWithType.setDateType(dateType);
+            }
+            if (date != null) {
+                try {
+                    dateWithType.setDate(LocalDate.parse(date, DATE_FORMAT));
+                } catch (Exception e) {
+                    dateWithType.setXmlDate(date);
+                }
+            }
+            citation.setDate(dateWithType);
+        }
+        return found;
+    }
+
+    private void readResourceIdentifiers(XMLStreamReader reader, List<CSWIsoRecord.Identification.Citation.ResourceIdentifier> resourceIdentifiers) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "RS_Identifier")) {
+                skip(reader);
+                continue;
+            }
+            final CSWIsoRecord.Identification.Citation.ResourceIdentifier resourceIdentifier = new CSWIsoRecord.Identification.Citation.ResourceIdentifier();
+            Text code = null;
+            Text codeSpace = null;
+            while (nextChild(reader)) {
+                if (is(reader, GMDNS, "code")) {
+                    code = first(code, reader, GCONS, "CharacterString");
+                } else if (is(reader, GMDNS, "codeSpace")) {
+                    codeSpace = first(codeSpace, reader, GCONS, "CharacterString");
+                } else {
+                    skip(reader);
+                }
+            }
+            final Text codeValue = code;
+            final Text codeSpaceValue = codeSpace;
+            localizedValues.add(() -> {
+                if (codeValue != null) {
+                    resourceIdentifier.setCode(codeValue.get());
+                }
+                if (codeSpaceValue != null) {
+                    resourceIdentifier.setCodeSpace(codeSpaceValue.get());
+                }
+            });
+            resourceIdentifiers.add(resourceIdentifier);
+        }
+    }
+
+    private void readKeywords(XMLStreamReader reader, List<String> keywords) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "MD_Keywords")) {
+                skip(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                if (is(reader, GMDNS, "keyword")) {
+                    addLocalized(keywords, readLocalized(reader, GCONS, "CharacterString"), false);
+                } else {
+                    skip(reader);
+                }
+            }
+        }
+    }
+
+    private void readBrowseGraphics(XMLStreamReader reader, List<CSWIsoRecord.BrowseGraphic> browseGraphics) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "MD_BrowseGraphic")) {
+                skip(reader);
+                continue;
+            }
+            final CSWIsoRecord.BrowseGraphic browseGraphic = new CSWIsoRecord.BrowseGraphic();
+            Text fileName = null;
+            Text fileDescription = null;
+            Text fileType = null;
+            while (nextChild(reader)) {
+                if (is(reader, GMDNS, "fileName")) {
+                    fileName = first(fileName, reader, GCONS, "CharacterString");
+                } else if (is(reader, GMDNS, "fileDescription")) {
+                    fileDescription = first(fileDescription, reader, GCONS, "CharacterString");
+                } else if (is(reader, GMDNS, "fileType")) {
+                    fileType = first(fileType, reader, GCONS, "CharacterString");
+                } else {
+                    skip(reader);
+                }
+            }
+            final Text fileNameValue = fileName;
+            final Text fileDescriptionValue = fileDescription;
+            final Text fileTypeValue = fileType;
+            localizedValues.add(() -> {
+                if (fileNameValue != null) {
+                    browseGraphic.setFileName(fileNameValue.get());
+                }
+                if (fileDescriptionValue != null) {
+                    browseGraphic.setFileDescription(fileDescriptionValue.get());
+                }
+                if (fileTypeValue != null) {
+                    browseGraphic.setFileType(fileTypeValue.get());
+                }
+            });
+            browseGraphics.add(browseGraphic);
+        }
+    }
+
+    private void readResponsibleParties(XMLStreamReader reader, List<CSWIsoRecord.ResponsibleParty> responsibleParties) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "CI_ResponsibleParty")) {
+                skip(reader);
+                continue;
+            }
+            final CSWIsoRecord.ResponsibleParty responsibleParty = new CSWIsoRecord.ResponsibleParty();
+            Text organisationName = null;
+            while (nextChild(reader)) {
+                if (is(reader, GMDNS, "organisationName")) {
+                    organisationName = first(organisationName, reader, GCONS, "CharacterString");
+                } else if (is(reader, GMDNS, "contactInfo")) {
+                    readElectronicMailAddresses(reader, responsibleParty.getElectronicMailAddresses());
+                } else {
+                    skip(reader);
+                }
+            }
+            final Text value = organisationName;
+            localizedValues.add(() -> responsibleParty.setOrganisationName(value == null ? null : value.get()));
+            responsibleParties.add(responsibleParty);
+        }
+    }
+
+    private void readElectronicMailAddresses(XMLStreamReader reader, List<String> addresses) throws XMLStreamException {
+        // gmd:CI_Contact/gmd:address/gmd:CI_Address/gmd:electronicMailAddress
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "CI_Contact")) {
+                skip(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                if (!is(reader, GMDNS, "address")) {
+                    skip(reader);
+                    continue;
+                }
+                while (nextChild(reader)) {
+                    if (!is(reader, GMDNS, "CI_Address")) {
+                        skip(reader);
+                        continue;
+                    }
+                    while (nextChild(reader)) {
+                        if (is(reader, GMDNS, "electronicMailAddress")) {
+                            addLocalized(addresses, readLocalized(reader, GCONS, "CharacterString"), false);
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Piles up constraint types from multiple resource constraint elements like CSWISORecordParser did
+    private void readResourceConstraints(XMLStreamReader reader, CSWIsoRecord.Identification identification) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (is(reader, GMDNS, "MD_LegalConstraints")) {
+                while (nextChild(reader)) {
+                    if (is(reader, GMDNS, "accessConstraints")) {
+                        readAttributes(reader, GMDNS, "MD_RestrictionCode", "codeListValue", identification.getAccessConstraints());
+                    } else if (is(reader, GMDNS, "otherConstraints")) {
+                        addLocalized(identification.getOtherConstraints(), readLocalized(reader, GCONS, "CharacterString"), false);
+                    } else {
+                        skip(reader);
+                    }
+                }
+            } else if (is(reader, GMDNS, "MD_SecurityConstraints")) {
+                while (nextChild(reader)) {
+                    if (is(reader, GMDNS, "classification")) {
+                        readAttributes(reader, GMDNS, "MD_ClassificationCode", "codeListValue", identification.getClassifications());
+                    } else {
+                        skip(reader);
+                    }
+                }
+            } else if (is(reader, GMDNS, "MD_Constraints")) {
+                while (nextChild(reader)) {
+                    if (is(reader, GMDNS, "useLimitation")) {
+                        addLocalized(identification.getUseLimitations(), readLocalized(reader, GCONS, "CharacterString"), false);
+                    } else {
+                        skip(reader);
+                    }
+                }
+            } else {
+                skip(reader);
+            }
+        }
+    }
+
+    private void readResolution(XMLStreamReader reader, List<Integer> resolutions) throws XMLStreamException {
+        // gmd:MD_Resolution/gmd:equivalentScale/gmd:MD_RepresentativeFraction/gmd:denominator/gco:Integer
+        String[] path = {"MD_Resolution", "equivalentScale", "MD_RepresentativeFraction", "denominator"};
+        readResolution(reader, resolutions, path, 0);
+    }
+
+    private void readResolution(XMLStreamReader reader, List<Integer> resolutions, String[] path, int depth) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (depth == path.length && is(reader, GCONS, "Integer")) {
+                String value = getText(reader);
+                try {
+                    resolutions.add(Integer.parseInt(value));
+                } catch (NumberFormatException nfe) {
+                    log.warn("Invalid resolution integer:", value);
+                }
+            } else if (depth < path.length && is(reader, GMDNS, path[depth])) {
+                readResolution(reader, resolutions, path, depth + 1);
+            } else {
+                skip(reader);
+            }
+        }
+    }
+
+    private void readReferenceSystems(XMLStreamReader reader, List<String> referenceSystems) throws XMLStreamException {
+        // gmd:MD_ReferenceSystem/gmd:referenceSystemIdentifier/gmd:RS_Identifier/gmd:code/gco:CharacterString
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "MD_ReferenceSystem")) {
+                skip(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                if (!is(reader, GMDNS, "referenceSystemIdentifier")) {
+                    skip(reader);
+                    continue;
+                }
+                while (nextChild(reader)) {
+                    if (!is(reader, GMDNS, "RS_Identifier")) {
+                        skip(reader);
+                        continue;
+                    }
+                    while (nextChild(reader)) {
+                        if (is(reader, GMDNS, "code")) {
+                            while (nextChild(reader)) {
+                                if (is(reader, GCONS, "CharacterString")) {
+                                    referenceSystems.add(getText(reader));
+                                } else {
+                                    skip(reader);
+                                }
+                            }
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Only the first gmd:MD_Distribution is read
+     * @return true if distribution info has been found
+     */
+    private boolean readDistributionInfo(XMLStreamReader reader, CSWIsoRecord record, boolean found) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (found || !is(reader, GMDNS, "MD_Distribution")) {
+                skip(reader);
+                continue;
+            }
+            found = true;
+            while (nextChild(reader)) {
+                if (is(reader, GMDNS, "distributionFormat")) {
+                    readDistributionFormats(reader, record.getDistributionFormats());
+                } else if (is(reader, GMDNS, "transferOptions")) {
+                    readOnlineResources(reader, record.getOnlineResources());
+                } else {
+                    skip(reader);
+                }
+            }
+        }
+        return found;
+    }
+
+    private void readDistributionFormats(XMLStreamReader reader, List<CSWIsoRecord.DistributionFormat> formats) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "MD_Format")) {
+                skip(reader);
+                continue;
+            }
+            Text name = null;
+            Text version = null;
+            while (nextChild(reader)) {
+                if (is(reader, GMDNS, "name")) {
+                    name = first(name, reader, GCONS, "CharacterString");
+                } else if (is(reader, GMDNS, "version")) {
+                    version = first(version, reader, GCONS, "CharacterString");
+                } else {
+                    skip(reader);
+                }
+            }
+            final CSWIsoRecord.DistributionFormat format = new CSWIsoRecord.DistributionFormat();
+            final Text nameValue = name;
+            final Text versionValue = version;
+            localizedValues.add(() -> {
+                format.setName(nameValue == null ? null : nameValue.get());
+                format.setVersion(versionValue == null ? null : versionValue.get());
+            });
+            formats.add(format);
+        }
+    }
+
+    private void readOnlineResources(XMLStreamReader reader, List<CSWIsoRecord.OnlineResource> onlineResources) throws XMLStreamException {
+        // gmd:MD_DigitalTransferOptions/gmd:onLine/gmd:CI_OnlineResource
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "MD_DigitalTransferOptions")) {
+                skip(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                if (!is(reader, GMDNS, "onLine")) {
+                    skip(reader);
+                    continue;
+                }
+                while (nextChild(reader)) {
+                    if (!is(reader, GMDNS, "CI_OnlineResource")) {
+                        skip(reader);
+                        continue;
+                    }
+                    Text name = null;
+                    Text url = null;
+                    boolean excluded = false;
+                    while (nextChild(reader)) {
+                        if (is(reader, GMDNS, "name")) {
+                            name = first(name, reader, GCONS, "CharacterString");
+                        } else if (is(reader, GMDNS, "linkage")) {
+                            url = first(url, reader, GMDNS, "URL");
+                        } else if (is(reader, GMDNS, "protocol")) {
+                            while (nextChild(reader)) {
+                                if (is(reader, GCONS, "CharacterString")) {
+                                    excluded |= EXCLUDED_ONLINE_RESOURCE_PROTOCOL.equals(readText(reader));
+                                } else {
+                                    skip(reader);
+                                }
+                            }
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                    if (excluded) {
+                        continue;
+                    }
+                    final CSWIsoRecord.OnlineResource onlineResource = new CSWIsoRecord.OnlineResource();
+                    final Text nameValue = name;
+                    final Text urlValue = url;
+                    localizedValues.add(() -> {
+                        onlineResource.setName(nameValue == null ? null : nameValue.get());
+                        onlineResource.setUrl(urlValue == null ? null : urlValue.get());
+                    });
+                    onlineResources.add(onlineResource);
+                }
+            }
+        }
+    }
+
+    private void readLocale(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (localesFailed || !is(reader, GMDNS, "PT_Locale")) {
+                skip(reader);
+                continue;
+            }
+            final String localeKey = getAttribute(reader, "id");
+            String lang3letter = null;
+            boolean languageCodeFound = false;
+            while (nextChild(reader)) {
+                if (languageCodeFound || !"languageCode".equals(reader.getLocalName())) {
+                    skip(reader);
+                    continue;
+                }
+                // Note! assuming only one exists
+                languageCodeFound = true;
+                boolean found = false;
+                while (nextChild(reader)) {
+                    if (!found && "LanguageCode".equals(reader.getLocalName())) {
+                        found = true;
+                        lang3letter = getAttribute(reader, "codeListValue");
+                        if (lang3letter == null) {
+                            localesFailed = true;
+                        }
+                    }
+                    skip(reader);
+                }
+            }
+            if (localeKey == null) {
+                localesFailed = true;
+            }
+            if (localesFailed) {
+                log.warn("Error parsing locales: missing id or codeListValue");
+            } else if (lang3letter != null) {
+                locales.put(lang3letter, localeKey);
+            }
+        }
+    }
+
+    private void readDataQualityInfo(XMLStreamReader reader, CSWIsoRecord record) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "DQ_DataQuality")) {
+                skip(reader);
+                continue;
+            }
+            CSWIsoRecord.DataQualityObject dataQualityObject = record.getDataQualityObject();
+            if (dataQualityObject == null) {
+                dataQualityObject = new CSWIsoRecord.DataQualityObject();
+                record.setDataQualityObject(dataQualityObject);
+            }
+            readDataQuality(reader, dataQualityObject);
+        }
+    }
+
+    private void readDataQuality(XMLStreamReader reader, CSWIsoRecord.DataQualityObject dataQualityObject) throws XMLStreamException {
+        // reports are listed grouped by type like CSWISORecordDataQualityParser did
+        List<List<CSWIsoRecord.DataQuality>> reports = new ArrayList<>(DATA_QUALITY_TYPES.size());
+        for (int i = 0; i < DATA_QUALITY_TYPES.size(); i++) {
+            reports.add(new ArrayList<>());
+        }
+        boolean lineageFound = false;
+        while (nextChild(reader)) {
+            if (is(reader, GMDNS, "lineage")) {
+                while (nextChild(reader)) {
+                    if (!is(reader, GMDNS, "LI_Lineage")) {
+                        skip(reader);
+                        continue;
+                    }
+                    while (nextChild(reader)) {
+                        if (!lineageFound && is(reader, GMDNS, "statement")) {
+                            lineageFound = true;
+                            addLocalized(dataQualityObject.getLineageStatements(), readLocalized(reader, GCONS, "CharacterString"), false);
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                }
+            } else if (is(reader, GMDNS, "report")) {
+                while (nextChild(reader)) {
+                    int type = GMDNS.equals(reader.getNamespaceURI()) ? DATA_QUALITY_TYPES.indexOf(reader.getLocalName()) : -1;
+                    if (type == -1) {
+                        skip(reader);
+                        continue;
+                    }
+                    CSWIsoRecord.DataQuality dataQuality = readReport(reader);
+                    dataQuality.setNodeName(DATA_QUALITY_NAMES.get(type));
+                    reports.get(type).add(dataQuality);
+                }
+            } else {
+                skip(reader);
+            }
+        }
+        for (List<CSWIsoRecord.DataQuality> list : reports) {
+            dataQualityObject.getDataQualities().addAll(list);
+        }
+    }
+
+    private CSWIsoRecord.DataQuality readReport(XMLStreamReader reader) throws XMLStreamException {
+        final CSWIsoRecord.DataQuality dataQuality = new CSWIsoRecord.DataQuality();
+        Text nameOfMeasure = null;
+        Text measureIdentificationCode = null;
+        String measureIdentificationAuthorization = null;
+        Text measureDescription = null;
+        String evaluationMethodType = null;
+        Text evaluationMethodDescription = null;
+        boolean nameOfMeasureFound = false, codeFound = false, authorizationFound = false,
+                measureDescriptionFound = false, evaluationMethodTypeFound = false, evaluationMethodDescriptionFound = false;
+        List<String> dateTimes = new ArrayList<>();
+        while (nextChild(reader)) {
+            if (!GMDNS.equals(reader.getNamespaceURI())) {
+                skip(reader);
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "nameOfMeasure":
+                    if (nameOfMeasureFound) {
+                        skip(reader);
+                    } else {
+                        nameOfMeasure = readLocalized(reader, GCONS, "CharacterString");
+                        nameOfMeasureFound = true;
+                    }
+                    break;
+                case "measureIdentification":
+                    while (nextChild(reader)) {
+                        if (!codeFound && is(reader, GMDNS, "code")) {
+                            measureIdentificationCode = readLocalized(reader, GCONS, "CharacterString");
+                            codeFound = true;
+                        } else if (!authorizationFound && is(reader, GMDNS, "authorization")) {
+                            measureIdentificationAuthorization = getText(reader);
+                            authorizationFound = true;
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                    break;
+                case "measureDescription":
+                    if (measureDescriptionFound) {
+                        skip(reader);
+                    } else {
+                        measureDescription = readLocalized(reader, GCONS, "CharacterString");
+                        measureDescriptionFound = true;
+                    }
+                    break;
+                case "evaluationMethodType":
+                    if (evaluationMethodTypeFound) {
+                        skip(reader);
+                    } else {
+                        evaluationMethodType = getText(reader);
+                        evaluationMethodTypeFound = true;
+                    }
+                    break;
+                case "evaluationMethodDescription":
+                    if (evaluationMethodDescriptionFound) {
+                        skip(reader);
+                    } else {
+                        evaluationMethodDescription = readLocalized(reader, GCONS, "CharacterString");
+                        evaluationMethodDescriptionFound = true;
+                    }
+                    break;
+                case "dateTime":
+                    dateTimes.add(getText(reader));
+                    break;
+                case "result":
+                    while (nextChild(reader)) {
+                        if (is(reader, GMDNS, "DQ_ConformanceResult")) {
+                            dataQuality.getConformanceResultList().add(readConformanceResult(reader));
+                        } else if (is(reader, GMDNS, "DQ_QuantitativeResult")) {
+                            dataQuality.getQuantitativeResultList().add(readQuantitativeResult(reader));
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                    break;
+                default:
+                    skip(reader);
+            }
+        }
+        dataQuality.setMeasureIdentificationAuthorization(measureIdentificationAuthorization);
+        dataQuality.setEvaluationMethodType(evaluationMethodType);
+        dataQuality.setEvaluationProcedure(null); //TODO parse //CI_Citation
+        dataQuality.setDateTime(dateTimes);
+        final Text nameOfMeasureValue = nameOfMeasure;
+        final Text codeValue = measureIdentificationCode;
+        final Text descriptionValue = measureDescription;
+        final Text methodDescriptionValue = evaluationMethodDescription;
+        localizedValues.add(() -> {
+            dataQuality.setNameOfMeasure(get(nameOfMeasureValue));
+            dataQuality.setMeasureIdentificationCode(get(codeValue));
+            dataQuality.setMeasureDescription(get(descriptionValue));
+            dataQuality.setEvaluationMethodDescription(get(methodDescriptionValue));
+        });
+        return dataQuality;
+    }
+
+    private CSWIsoRecord.DataQualityConformanceResult readConformanceResult(XMLStreamReader reader) throws XMLStreamException {
+        final CSWIsoRecord.DataQualityConformanceResult result = new CSWIsoRecord.DataQualityConformanceResult();
+        Text specification = null;
+        Text explanation = null;
+        boolean specificationFound = false, explanationFound = false, passFound = false;
+        while (nextChild(reader)) {
+            if (is(reader, GMDNS, "specification")) {
+                while (nextChild(reader)) {
+                    if (!is(reader, GMDNS, "CI_Citation")) {
+                        skip(reader);
+                        continue;
+                    }
+                    while (nextChild(reader)) {
+                        if (!specificationFound && is(reader, GMDNS, "title")) {
+                            specification = readLocalized(reader, GCONS, "CharacterString");
+                            specificationFound = true;
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                }
+            } else if (!explanationFound && is(reader, GMDNS, "explanation")) {
+                explanation = readLocalized(reader, GCONS, "CharacterString");
+                explanationFound = true;
+            } else if (!passFound && is(reader, GMDNS, "pass")) {
+                String pass = getText(reader);
+                result.setPass("1".equals(pass) || Boolean.valueOf(pass));
+                passFound = true;
+            } else {
+                skip(reader);
+            }
+        }
+        final Text specificationValue = specification;
+        final Text explanationValue = explanation;
+        localizedValues.add(() -> {
+            result.setSpecification(get(specificationValue));
+            result.setExplanation(get(explanationValue));
+        });
+        return result;
+    }
+
+    private CSWIsoRecord.DataQualityQuantitativeResult readQuantitativeResult(XMLStreamReader reader) throws XMLStreamException {
+        final CSWIsoRecord.DataQualityQuantitativeResult result = new CSWIsoRecord.DataQualityQuantitativeResult();
+        String valueType = null;
+        String valueUnit = null;
+        Text errorStatistic = null;
+        boolean valueTypeFound = false, valueUnitFound = false, errorStatisticFound = false;
+        List<String> values = new ArrayList<>();
+        while (nextChild(reader)) {
+            if (!valueTypeFound && is(reader, GMDNS, "valueType")) {
+                valueType = getText(reader);
+                valueTypeFound = true;
+            } else if (!valueUnitFound && is(reader, GMDNS, "valueUnit")) {
+                valueUnit = getText(reader);
+                valueUnitFound = true;
+            } else if (!errorStatisticFound && is(reader, GMDNS, "errorStatistic")) {
+                errorStatistic = readLocalized(reader, GCONS, "CharacterString");
+                errorStatisticFound = true;
+            } else if (is(reader, GMDNS, "value")) {
+                values.add(getText(reader));
+            } else {
+                skip(reader);
+            }
+        }
+        result.setValueType(valueType);
+        result.setValueUnit(valueUnit);
+        result.setValue(values);
+        final Text errorStatisticValue = errorStatistic;
+        localizedValues.add(() -> result.setErrorStatistic(get(errorStatisticValue)));
+        return result;
+    }
+
+    /**
+     * Value of a gco:* element and its translations from the sibling gmd:PT_FreeText
+     */
+    private class Text {
+        private final String value;
+        private Map<String, String> translations;
+
+        private Text(String value) {
+            this.value = value;
+        }
+
+        private String get() {
+            if (localeId != null && translations != null) {
+                String localized = translations.get("#" + localeId);
+                if (localized != null && !localized.isEmpty()) {
+                    return localized;
+                }
+            }
+            return value;
+        }
+    }
+
+    private static String get(Text text) {
+        return text == null ? null : text.get();
+    }
+
+    /**
+     * Reads a property element like gmd:title
+     * @return value of the first child with given name and its translations, null if there's no such child
+     */
+    private Text readLocalized(XMLStreamReader reader, String ns, String name) throws XMLStreamException {
+        String value = null;
+        boolean found = false;
+        Map<String, String> translations = null;
+        while (nextChild(reader)) {
+            if (!found && is(reader, ns, name)) {
+                value = getText(reader);
+                found = true;
+            } else if (is(reader, GMDNS, "PT_FreeText")) {
+                translations = readTranslations(reader, translations);
+            } else {
+                skip(reader);
+            }
+        }
+        if (!found) {
+            return null;
+        }
+        Text text = new Text(value);
+        text.translations = translations;
+        return text;
+    }
+
+    private Map<String, String> readTranslations(XMLStreamReader reader, Map<String, String> translations) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!is(reader, GMDNS, "textGroup")) {
+                skip(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                if (!is(reader, GMDNS, "LocalisedCharacterString")) {
+                    skip(reader);
+                    continue;
+                }
+                String locale = getAttribute(reader, "locale");
+                String value = getText(reader);
+                if (locale != null) {
+                    if (translations == null) {
+                        translations = new HashMap<>();
+                    }
+                    translations.putIfAbsent(locale, value);
+                }
+            }
+        }
+        return translations;
+    }
+
+    /**
+     * Keeps the first found value like XPath evaluated to a single node
+     */
+    private Text first(Text current, XMLStreamReader reader, String ns, String name) throws XMLStreamException {
+        if (current != null) {
+            skip(reader);
+            return current;
+        }
+        return readLocalized(reader, ns, name);
+    }
+
+    private void addLocalized(final List<String> list, final Text text, final boolean language) {
+        if (text == null) {
+            return;
+        }
+        // keep the order, value is set when the locale is known
+        final int index = list.size();
+        list.add(null);
+        localizedValues.add(() -> list.set(index, language
+                ? getLanguageIfAvailable(text.get()) : text.get()));
+    }
+
+    /**
+     * Reads attribute of the child elements with given name
+     */
+    private static void readAttributes(XMLStreamReader reader, String ns, String name, String attribute, List<String> list) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (is(reader, ns, name)) {
+                addIfNotNull(list, getAttribute(reader, attribute));
+            }
+            skip(reader);
+        }
+    }
+
+    /**
+     * @return attribute of the first child element with given name that has it
+     */
+    private static String readAttribute(XMLStreamReader reader, String ns, String name, String attribute) throws XMLStreamException {
+        List<String> values = new ArrayList<>(1);
+        readAttributes(reader, ns, name, attribute, values);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return trimmed text of the first child element with given name
+     */
+    private static String readChildText(XMLStreamReader reader, String ns, String name) throws XMLStreamException {
+        String ret = null;
+        while (nextChild(reader)) {
+            if (ret == null && is(reader, ns, name)) {
+                ret = getText(reader);
+            } else {
+                skip(reader);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return trimmed value of an attribute without namespace
+     */
+    private static String getAttribute(XMLStreamReader reader, String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (name.equals(reader.getAttributeLocalName(i)) && isEmpty(reader.getAttributePrefix(i))) {
+                return reader.getAttributeValue(i).trim();
+            }
+        }
+        return null;
+    }
+
+    private static <T> void addIfNotNull(List<T> list, T value) {
+        if (value != null) {
+            list.add(value);
+        }
+    }
+
+    private static boolean is(XMLStreamReader reader, String ns, String name) {
+        return name.equals(reader.getLocalName()) && ns.equals(reader.getNamespaceURI());
+    }
+
+    /**
+     * Moves to the next child element
+     * @return false when the end of the current element is reached
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the end of the current element
+     */
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Text content of the current element including child elements, like Node.getTextContent()
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = null;
+        String first = null;
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (first == null) {
+                        first = reader.getText();
+                    } else {
+                        if (text == null) {
+                            text = new StringBuilder(first);
+                        }
+                        text.append(reader.getText());
+                    }
+                    break;
+                default:
+            }
+        }
+        if (text != null) {
+            return text.toString();
+        }
+        return first == null ? "" : first;
+    }
+
+    private static String getText(XMLStreamReader reader) throws XMLStreamException {
+        return readText(reader).trim();
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static String getLanguageIfAvailable(String langCode) {
+        String ret = ISO3letterOskariLangMapping.get(langCode);
+        return ret != null ? ret : langCode;
+    }
+}
@@ -4,29 +4,33 @@ import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.PrecisionModel;
 import fi.nls.oskari.csw.domain.CSWIsoRecord;
 import fi.nls.oskari.csw.helper.CSWISORecordNamespaceContext;
-import fi.nls.oskari.csw.helper.CSWISORecordParser;
+import fi.nls.oskari.csw.helper.CSWISORecordStaxParser;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.XmlHelper;
 import org.geotools.referencing.CRS;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -92,22 +96,138 @@ public class CSWService {
      * @throws TransformException
      */
     public CSWIsoRecord getRecordById(String uuid, String lang) throws SAXException, IOException, URISyntaxException, TransformException, XPathExpressionException, ParseException, ParserConfigurationException {
-        CSWIsoRecord record = null;
-        Node responseElement;
-        Locale locale = new Locale(lang);
         final URL url = getGetRecordByIdUrl(uuid, lang);
-        responseElement = invokeCswGetRecordById(url);
+        try (InputStream in = url.openStream()) {
+            final XMLStreamReader reader = XmlHelper.newXMLInputFactory().createXMLStreamReader(in);
+            try {
+                if (!nextRecord(reader)) {
+                    return null;
+                }
+                CSWIsoRecord record = new CSWISORecordStaxParser().parse(reader, new Locale(lang), transform);
+                record.setMetadataURL(url);
+                return record;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse GetRecordById response", e);
+        }
+    }
+
+    /**
+     * Moves the reader to the start of the next gmd:MD_Metadata element
+     * @return false if there are no more records
+     */
+    private static boolean nextRecord(XMLStreamReader reader) throws XMLStreamException, IOException {
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT || !"MD_Metadata".equals(reader.getLocalName())) {
+                continue;
+            }
+            if (!CSWISORecordNamespaceContext.GMDNS.equals(reader.getNamespaceURI())) {
+                throw new IOException("Invalid response");
+            }
+            return true;
+        }
+        return false;
+    }
 
-        if (responseElement == null) {
-            return null;
+    /**
+     * Loads multiple records with one GetRecords request filtering by identifier.
+     * Not all catalogues support filtering by apiso:Identifier so an empty result might mean
+     * the filter isn't supported.
+     * @return records found
+     */
+    public List<CSWIsoRecord> getRecordsById(Collection<String> ids, String lang) throws IOException, TransformException {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
         }
-        if (CSWISORecordNamespaceContext.GMDNS.equals(responseElement.getNamespaceURI())) {
-            record = mapIsoRecordElementToObject(responseElement, locale);
-        } else {
-            throw new IOException("Invalid response");
+        final HttpURLConnection conn = IOHelper.post(baseURL, IOHelper.CONTENT_TYPE_XML,
+                getGetRecordsPayload(ids).getBytes(IOHelper.CHARSET_UTF8));
+        if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unexpected response code for GetRecords: " + conn.getResponseCode());
+        }
+        try (InputStream in = conn.getInputStream()) {
+            return parseGetRecordsResponse(in, lang);
         }
-        record.setMetadataURL(url);
-        return record;
+    }
+
+    /**
+     * Streams the records of a GetRecords response through the StAX parser without building a DOM
+     * of the whole response.
+     */
+    protected List<CSWIsoRecord> parseGetRecordsResponse(InputStream in, String lang) throws IOException, TransformException {
+        final List<CSWIsoRecord> records = new ArrayList<>();
+        final Locale locale = new Locale(lang);
+        final CSWISORecordStaxParser parser = new CSWISORecordStaxParser();
+        try {
+            final XMLStreamReader reader = XmlHelper.newXMLInputFactory().createXMLStreamReader(in);
+            try {
+                if (!nextSearchResults(reader)) {
+                    throw new IOException("Invalid GetRecords response");
+                }
+                while (nextRecord(reader)) {
+                    CSWIsoRecord record = parser.parse(reader, locale, transform);
+                    if (record.getFileIdentifier() != null) {
+                        record.setMetadataURL(getGetRecordByIdUrl(record.getFileIdentifier(), lang));
+                    }
+                    records.add(record);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse GetRecords response", e);
+        }
+        return records;
+    }
+
+    /**
+     * Moves the reader to the start of csw:SearchResults
+     * @return false if the response has no search results
+     */
+    private static boolean nextSearchResults(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT
+                    && "SearchResults".equals(reader.getLocalName())
+                    && CSWISORecordNamespaceContext.CSWNS.equals(reader.getNamespaceURI())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected static String getGetRecordsPayload(Collection<String> ids) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<csw:GetRecords xmlns:csw=\"").append(CSWISORecordNamespaceContext.CSWNS).append('"')
+                .append(" xmlns:ogc=\"http://www.opengis.net/ogc\"")
+                .append(" xmlns:gmd=\"").append(CSWISORecordNamespaceContext.GMDNS).append('"')
+                .append(" xmlns:apiso=\"http://www.opengis.net/cat/csw/apiso/1.0\"")
+                .append(" service=\"CSW\" version=\"2.0.2\" resultType=\"results\"")
+                .append(" outputSchema=\"").append(CSWISORecordNamespaceContext.GMDNS).append('"')
+                .append(" maxRecords=\"").append(ids.size()).append("\">")
+                .append("<csw:Query typeNames=\"gmd:MD_Metadata\">")
+                .append("<csw:ElementSetName>full</csw:ElementSetName>")
+                .append("<csw:Constraint version=\"1.1.0\"><ogc:Filter>");
+        if (ids.size() > 1) {
+            xml.append("<ogc:Or>");
+        }
+        for (String id : ids) {
+            xml.append("<ogc:PropertyIsEqualTo><ogc:PropertyName>apiso:Identifier</ogc:PropertyName><ogc:Literal>")
+                    .append(escapeXml(id))
+                    .append("</ogc:Literal></ogc:PropertyIsEqualTo>");
+        }
+        if (ids.size() > 1) {
+            xml.append("</ogc:Or>");
+        }
+        xml.append("</ogc:Filter></csw:Constraint></csw:Query></csw:GetRecords>");
+        return xml.toString();
+    }
+
+    private static String escapeXml(String value) {
+        return value.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;");
     }
 
     protected URL getGetRecordByIdUrl(String id, String lang) throws MalformedURLException {
@@ -132,38 +252,4 @@ public class CSWService {
         return url;
     }
 
-    /**
-     * helper to invoke csw query
-     *
-     * @throws URISyntaxException
-     * @throws XMLException
-     * @throws IOException
-     * @throws SAXException
-     * @throws ParserConfigurationException
-     */
-    protected Node invokeCswGetRecordById(final URL url)
-            throws URISyntaxException, IOException, SAXException, ParserConfigurationException {
-        DocumentBuilderFactory dbf = XmlHelper.newDocumentBuilderFactory();
-        dbf.setNamespaceAware(true);
-
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        Document doc = db.parse(url.openStream());
-        Node root = doc.getDocumentElement();
-        NodeList children = root.getChildNodes();
-        Node ret = null;
-        for (int i = 0; i < children.getLength(); i++) {
-            if ("MD_Metadata".equals(children.item(i).getLocalName())) {
-                ret = children.item(i);
-            }
-        }
-        return ret;
-    }
-
-    private CSWIsoRecord mapIsoRecordElementToObject(Node el, Locale locale) throws XPathExpressionException, TransformException, ParseException {
-        CSWISORecordParser parser = new CSWISORecordParser();
-        CSWIsoRecord ret;
-        ret = parser.parse(el, locale, transform);
-        return ret;
-    }
-
 }
\ No newline at end of file
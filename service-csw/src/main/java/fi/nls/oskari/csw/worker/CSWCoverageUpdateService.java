@@ -16,12 +16,31 @@ import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.worker.ScheduledJob;
 
 import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Scheduled job for retrieving coverage data for maplayers having metadataids.
+ *
+ * Records are requested in batches of "csw.harvest.batch.size" ids with a GetRecords query filtered by
+ * identifier. Records missing from the GetRecords response are requested one by one with GetRecordById.
+ * If the catalogue rejects the GetRecords query before any batch has returned records, all records are
+ * requested with GetRecordById.
+ * Responses are streamed through CSWISORecordStaxParser without building a DOM.
+ * Batches are processed with "csw.harvest.threads" concurrent requests. Records whose dateStamp is older than
+ * the previous save are not saved again. Each batch is saved in one transaction.
  */
 @Oskari("CSWCoverageImport")
 public class CSWCoverageUpdateService extends ScheduledJob {
@@ -29,6 +48,15 @@ public class CSWCoverageUpdateService extends ScheduledJob {
 
     final OskariLayerService layerService = new OskariLayerServiceMybatisImpl();
     final private static String PROPERTY_BASE_URL = "service.metadata.url";
+    final private static String PROPERTY_BATCH_SIZE = "csw.harvest.batch.size";
+    final private static String PROPERTY_THREADS = "csw.harvest.threads";
+    // dateStamp has no timezone, don't skip records modified around the previous save
+    final private static long MODIFIED_MARGIN_HOURS = 24;
+
+    // support for GetRecords filtered by identifier
+    final private static int BATCH_UNKNOWN = 0;
+    final private static int BATCH_SUPPORTED = 1;
+    final private static int BATCH_UNSUPPORTED = 2;
 
     @Override
     public void execute(Map<String, Object> params) {
@@ -57,24 +85,111 @@ public class CSWCoverageUpdateService extends ScheduledJob {
             return;
         }
         final OskariLayerMetadataDao dao = new OskariLayerMetadataDao(dataSource);
-        for (String metadataId : metadataIdSet) {
-            final CSWIsoRecord csw = getMetadata(cswService, metadataId);
-            final Geometry geom = getGeometry(csw);
-            if(geom == null) {
-                // no geometry on metadata, move to next
-                log.info("Couldn't get geometry for", metadataId);
-                continue;
+        final Map<String, Date> saved = dao.findTimestamps();
+        final int batchSize = Math.max(1, PropertyUtil.getOptional(PROPERTY_BATCH_SIZE, 50));
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, PropertyUtil.getOptional(PROPERTY_THREADS, 4)));
+        final AtomicInteger batchSupport = new AtomicInteger(BATCH_UNKNOWN);
+        final List<Future<List<OskariLayerMetadataDto>>> batches = new ArrayList<>();
+        try {
+            final List<String> ids = new ArrayList<>(metadataIdSet);
+            for (int i = 0; i < ids.size(); i += batchSize) {
+                final List<String> batch = ids.subList(i, Math.min(ids.size(), i + batchSize));
+                batches.add(executor.submit(() -> harvest(cswService, batch, saved, batchSupport)));
+            }
+            int updated = 0;
+            for (Future<List<OskariLayerMetadataDto>> batch : batches) {
+                try {
+                    updated += dao.saveMetadata(batch.get(), saved.keySet());
+                } catch (ExecutionException e) {
+                    log.error(e.getCause(), "Error updating metadata");
+                }
             }
-            final OskariLayerMetadataDto dto = new OskariLayerMetadataDto();
-            dto.metadataId  = metadataId;
-            // NOTE! wkt is WGS:84
-            dto.wkt = geom.getEnvelope().toText();
-            dto.json = csw.toJSON().toString();
-            dao.saveMetadata(dto);
+            log.info("Updated metadata for", updated, "of", metadataIdSet.size(), "metadata ids");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while updating metadata");
+        } finally {
+            executor.shutdownNow();
         }
         log.info("Done with the CSW coverage update service call");
     }
 
+    private List<OskariLayerMetadataDto> harvest(CSWService cswService, List<String> ids,
+                                                 Map<String, Date> saved, AtomicInteger batchSupport) {
+        final String language = PropertyUtil.getDefaultLanguage();
+        // records by metadata id
+        final Map<String, CSWIsoRecord> records = new HashMap<>();
+        if (batchSupport.get() != BATCH_UNSUPPORTED) {
+            try {
+                for (CSWIsoRecord record : cswService.getRecordsById(ids, language)) {
+                    String metadataId = record.getFileIdentifier();
+                    if (metadataId != null && ids.contains(metadataId)) {
+                        records.put(metadataId, record);
+                    }
+                }
+                if (!records.isEmpty()) {
+                    batchSupport.compareAndSet(BATCH_UNKNOWN, BATCH_SUPPORTED);
+                }
+            } catch (Exception e) {
+                // an empty result doesn't tell if the filter is supported, a failing request before any results does
+                if (batchSupport.compareAndSet(BATCH_UNKNOWN, BATCH_UNSUPPORTED)) {
+                    log.info("GetRecords with identifier filter failed, requesting records one by one:", e.getMessage());
+                } else {
+                    log.warn("GetRecords with identifier filter failed for a batch:", e.getMessage());
+                }
+            }
+        }
+        for (String id : ids) {
+            if (records.containsKey(id)) {
+                continue;
+            }
+            CSWIsoRecord record = getMetadata(cswService, id, language);
+            if (record != null) {
+                records.put(id, record);
+            }
+        }
+        final List<OskariLayerMetadataDto> result = new ArrayList<>();
+        for (Map.Entry<String, CSWIsoRecord> entry : records.entrySet()) {
+            final String metadataId = entry.getKey();
+            if (!isModified(entry.getValue(), saved.get(metadataId))) {
+                log.debug("Metadata not modified:", metadataId);
+                continue;
+            }
+            final OskariLayerMetadataDto dto = toDto(entry.getValue(), metadataId);
+            if (dto != null) {
+                result.add(dto);
+            }
+        }
+        return result;
+    }
+
+    protected static boolean isModified(CSWIsoRecord record, Date lastSaved) {
+        if (lastSaved == null) {
+            return true;
+        }
+        final LocalDateTime dateStamp = record.getMetadataDateStamp();
+        if (dateStamp == null) {
+            return true;
+        }
+        final LocalDateTime saved = LocalDateTime.ofEpochSecond(lastSaved.getTime() / 1000, 0, ZoneOffset.UTC);
+        return !dateStamp.isBefore(saved.minusHours(MODIFIED_MARGIN_HOURS));
+    }
+
+    private OskariLayerMetadataDto toDto(CSWIsoRecord csw, String metadataId) {
+        final Geometry geom = getGeometry(csw);
+        if(geom == null) {
+            // no geometry on metadata, move to next
+            log.info("Couldn't get geometry for", metadataId);
+            return null;
+        }
+        final OskariLayerMetadataDto dto = new OskariLayerMetadataDto();
+        dto.metadataId  = metadataId;
+        // NOTE! wkt is WGS:84
+        dto.wkt = geom.getEnvelope().toText();
+        dto.json = csw.toJSON().toString();
+        return dto;
+    }
+
     private DataSource getDatasource() {
         try {
             return DatasourceHelper.getInstance().getDataSource();
@@ -102,8 +217,7 @@ public class CSWCoverageUpdateService extends ScheduledJob {
     }
 
 
-    private CSWIsoRecord getMetadata(final CSWService cswService, final String metadataId) {
-        final String language = PropertyUtil.getDefaultLanguage();
+    private CSWIsoRecord getMetadata(final CSWService cswService, final String metadataId, final String language) {
         try {
             return cswService.getRecordById(metadataId, language);
         } catch (Exception e) {
@@ -20,6 +20,8 @@ import java.util.*;
 /**
  * Helper class for parsing search results for MetadataCatalogue:
  * Created by TMIKKOLAINEN on 2.9.2014.
+ *
+ * Replaced by CSWISORecordStaxParser, kept for checking that the streaming parser gives the same results.
  */
 public class CSWISORecordParser {
 
@@ -27,8 +29,8 @@ public class CSWISORecordParser {
 
     // we need to map languages from 3-letter codes to 2-letter codes so initialize a global codeMapping property
     private static final Map<String, String> ISO3letterOskariLangMapping = new HashMap<String, String>();
-    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'kk:mm:ss"); // or ISO_DATE_TIME
-    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'kk:mm:ss"); // or ISO_DATE_TIME
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     static {
         for (final String language : Locale.getISOLanguages()) {
@@ -788,7 +790,7 @@ public class CSWISORecordParser {
         }
     }
 
-    private String getLanguageIfAvailable(String langCode) {
+    static String getLanguageIfAvailable(String langCode) {
         String ret = ISO3letterOskariLangMapping.get(langCode);
         return ret != null ? ret : langCode;
     }
@@ -0,0 +1,124 @@
+package fi.nls.oskari.csw.helper;
+
+import fi.nls.oskari.csw.domain.CSWIsoRecord;
+import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.util.XmlHelper;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+public class CSWISORecordStaxParserTest {
+
+    private static final String CSW_INPUT_FILE_NAME = "/fi/nls/oskari/csw/helper/csw.xml";
+    private static final String GET_RECORDS_FILE_NAME = "/fi/nls/oskari/search/channel/GetRecords-response.xml";
+
+    @Test
+    public void testSameResultAsDomParser() throws Exception {
+        assertSameResult(CSW_INPUT_FILE_NAME, 1, "fi", "sv", "en");
+    }
+
+    @Test
+    public void testSameResultAsDomParserForSearchResults() throws Exception {
+        assertSameResult(GET_RECORDS_FILE_NAME, 54, "fi", "en");
+    }
+
+    private void assertSameResult(String resource, int count, String... langs) throws Exception {
+        byte[] xml = read(resource);
+        for (String lang : langs) {
+            Locale locale = new Locale(lang);
+            List<CSWIsoRecord> expected = parseWithDom(xml, locale);
+            List<CSWIsoRecord> actual = parseWithStax(xml, locale);
+            assertEquals(count, expected.size());
+            assertEquals(count, actual.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(lang + " - record " + i,
+                        expected.get(i).toJSON().toString(), actual.get(i).toJSON().toString());
+            }
+        }
+    }
+
+    @Test
+    @Ignore("Benchmark, run manually")
+    public void benchmark() throws Exception {
+        byte[] xml = read(GET_RECORDS_FILE_NAME);
+        Locale locale = new Locale("fi");
+        int n = 5;
+        for (int i = 0; i < 3; i++) {
+            parseWithDom(xml, locale);
+            parseWithStax(xml, locale);
+        }
+        int records = parseWithDom(xml, locale).size() * n;
+
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            parseWithDom(xml, locale);
+        }
+        long domTime = System.nanoTime() - start;
+        long domAllocated = getAllocatedBytes() - allocated;
+
+        allocated = getAllocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            parseWithStax(xml, locale);
+        }
+        long staxTime = System.nanoTime() - start;
+        long staxAllocated = getAllocatedBytes() - allocated;
+
+        System.out.println("DOM + XPath: " + (records * 1000000000L / domTime) + " records/s, "
+                + (domAllocated / records / 1024) + " kB allocated per record");
+        System.out.println("StAX: " + (records * 1000000000L / staxTime) + " records/s, "
+                + (staxAllocated / records / 1024) + " kB allocated per record");
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private byte[] read(String resource) throws Exception {
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            return IOHelper.readBytes(in);
+        }
+    }
+
+    private static List<CSWIsoRecord> parseWithDom(byte[] xml, Locale locale) throws Exception {
+        DocumentBuilderFactory dbf = XmlHelper.newDocumentBuilderFactory();
+        dbf.setNamespaceAware(true);
+        Document doc = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        NodeList nodes = doc.getElementsByTagNameNS(CSWISORecordNamespaceContext.GMDNS, "MD_Metadata");
+        List<CSWIsoRecord> records = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            records.add(new CSWISORecordParser().parse(nodes.item(i), locale, null));
+        }
+        return records;
+    }
+
+    private static List<CSWIsoRecord> parseWithStax(byte[] xml, Locale locale) throws Exception {
+        XMLStreamReader reader = XmlHelper.newXMLInputFactory().createXMLStreamReader(new ByteArrayInputStream(xml));
+        CSWISORecordStaxParser parser = new CSWISORecordStaxParser();
+        List<CSWIsoRecord> records = new ArrayList<>();
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT
+                    && "MD_Metadata".equals(reader.getLocalName())
+                    && CSWISORecordNamespaceContext.GMDNS.equals(reader.getNamespaceURI())) {
+                records.add(parser.parse(reader, locale, null));
+            }
+        }
+        reader.close();
+        return records;
+    }
+}
@@ -0,0 +1,81 @@
+package fi.nls.oskari.csw.service;
+
+import fi.nls.oskari.csw.domain.CSWIsoRecord;
+import fi.nls.oskari.csw.helper.CSWISORecordNamespaceContext;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CSWServiceTest {
+
+    private static final String OGCNS = "http://www.opengis.net/ogc";
+    private static final String GET_RECORDS_FILE_NAME = "/fi/nls/oskari/search/channel/GetRecords-response.xml";
+
+    @Test
+    public void testGetRecordsPayload() throws Exception {
+        Document doc = parse(CSWService.getGetRecordsPayload(Arrays.asList("id-1", "id-2", "a&b")));
+        Element root = doc.getDocumentElement();
+        assertEquals(CSWISORecordNamespaceContext.CSWNS, root.getNamespaceURI());
+        assertEquals("GetRecords", root.getLocalName());
+        assertEquals("Should request all the ids in one page", "3", root.getAttribute("maxRecords"));
+        assertEquals(CSWISORecordNamespaceContext.GMDNS, root.getAttribute("outputSchema"));
+
+        Element filter = (Element) doc.getElementsByTagNameNS(OGCNS, "Filter").item(0);
+        assertEquals("Multiple ids should be combined with Or", 1, filter.getElementsByTagNameNS(OGCNS, "Or").getLength());
+        NodeList literals = filter.getElementsByTagNameNS(OGCNS, "Literal");
+        assertEquals(3, literals.getLength());
+        assertEquals("id-1", literals.item(0).getTextContent());
+        assertEquals("id-2", literals.item(1).getTextContent());
+        assertEquals("Id should be escaped", "a&b", literals.item(2).getTextContent());
+        NodeList properties = filter.getElementsByTagNameNS(OGCNS, "PropertyName");
+        assertEquals("apiso:Identifier", properties.item(0).getTextContent());
+    }
+
+    @Test
+    public void testGetRecordsPayloadSingleId() throws Exception {
+        Document doc = parse(CSWService.getGetRecordsPayload(Collections.singletonList("id-1")));
+        assertEquals("1", doc.getDocumentElement().getAttribute("maxRecords"));
+        assertEquals("Single id shouldn't be wrapped in Or", 0, doc.getElementsByTagNameNS(OGCNS, "Or").getLength());
+        assertEquals(1, doc.getElementsByTagNameNS(OGCNS, "PropertyIsEqualTo").getLength());
+    }
+
+    @Test
+    public void testParseGetRecordsResponse() throws Exception {
+        CSWService service = new CSWService("http://localhost/csw");
+        List<CSWIsoRecord> records;
+        try (InputStream in = getClass().getResourceAsStream(GET_RECORDS_FILE_NAME)) {
+            records = service.parseGetRecordsResponse(in, "fi");
+        }
+        assertEquals(54, records.size());
+        for (CSWIsoRecord record : records) {
+            assertNotNull(record.getFileIdentifier());
+            assertTrue("Metadata URL should point to the record",
+                    record.getMetadataURL().toString().contains("&id=" + record.getFileIdentifier() + "&"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseGetRecordsResponseWithoutSearchResults() throws Exception {
+        String xml = "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows\"/>";
+        new CSWService("http://localhost/csw")
+                .parseGetRecordsResponse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "fi");
+    }
+
+    private static Document parse(String xml) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,34 @@
+package fi.nls.oskari.csw.worker;
+
+import fi.nls.oskari.csw.domain.CSWIsoRecord;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class CSWCoverageUpdateServiceTest {
+
+    @Test
+    public void testIsModified() throws Exception {
+        CSWIsoRecord record = record(LocalDateTime.of(2020, 5, 12, 10, 0));
+        assertTrue("Never saved", CSWCoverageUpdateService.isModified(record, null));
+        assertTrue("Modified after save", CSWCoverageUpdateService.isModified(record, date(2020, 5, 1)));
+        assertFalse("Saved well after modification", CSWCoverageUpdateService.isModified(record, date(2020, 6, 1)));
+        // dateStamp has no timezone so records modified within a day of the save are updated
+        assertTrue("Saved right after modification", CSWCoverageUpdateService.isModified(record, date(2020, 5, 12)));
+        assertTrue("No dateStamp", CSWCoverageUpdateService.isModified(record(null), date(2020, 6, 1)));
+    }
+
+    private static Date date(int year, int month, int day) {
+        return new Date(LocalDateTime.of(year, month, day, 12, 0).toEpochSecond(ZoneOffset.UTC) * 1000);
+    }
+
+    private static CSWIsoRecord record(LocalDateTime dateStamp) {
+        CSWIsoRecord record = new CSWIsoRecord();
+        record.setMetadataDateStamp(dateStamp);
+        return record;
+    }
+}
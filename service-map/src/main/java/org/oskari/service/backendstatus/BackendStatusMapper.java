@@ -18,6 +18,8 @@ public interface BackendStatusMapper {
     static final String insert = "INSERT INTO oskari_backendstatus"
             + " (maplayer_id, status, statusmessage, infourl)"
             + " VALUES (#{mapLayerId}, #{status}, #{statusMessage}, #{infoUrl})";
+    static final String delete = "DELETE FROM oskari_backendstatus"
+            + " WHERE maplayer_id = #{mapLayerId}";
 
     @Select(getAll)
     @Results(value = {
@@ -42,6 +44,9 @@ public interface BackendStatusMapper {
     @Insert(insert)
     void saveStatus(final BackendStatus status);
 
+    @Delete(delete)
+    void delete(final int mapLayerId);
+
     @Update(truncate)
     void truncate();
 
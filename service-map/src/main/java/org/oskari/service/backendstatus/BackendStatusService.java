@@ -9,5 +9,11 @@ public interface BackendStatusService {
     public List<BackendStatus> findAll();
     public List<BackendStatus> findAllWithAlert();
     public void insertAll(List<BackendStatus> statuses);
+    /**
+     * Like insertAll() but only writes statuses that differ from the stored ones
+     * and removes stored statuses for layers not included in the list.
+     * @return number of layers whose status was written or removed
+     */
+    public int update(List<BackendStatus> statuses);
 
 }
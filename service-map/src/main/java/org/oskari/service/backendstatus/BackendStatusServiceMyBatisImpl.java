@@ -8,7 +8,12 @@ import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 
 import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class BackendStatusServiceMyBatisImpl implements BackendStatusService {
 
@@ -50,4 +55,45 @@ public class BackendStatusServiceMyBatisImpl implements BackendStatusService {
         }
     }
 
+    @Override
+    public int update(List<BackendStatus> statuses) {
+        try (SqlSession session = factory.openSession(ExecutorType.BATCH, false)) {
+            BackendStatusMapper mapper = session.getMapper(MAPPER);
+            Map<Integer, BackendStatus> stored = new HashMap<>();
+            // the table has no unique constraint on layer id -> rewrite layers with duplicate rows
+            Set<Integer> duplicates = new HashSet<>();
+            for (BackendStatus status : mapper.getAll()) {
+                if (stored.put(status.getMapLayerId(), status) != null) {
+                    duplicates.add(status.getMapLayerId());
+                }
+            }
+            int changed = 0;
+            for (BackendStatus status : statuses) {
+                int layerId = status.getMapLayerId();
+                BackendStatus previous = stored.remove(layerId);
+                if (previous != null && !duplicates.contains(layerId) && isSameStatus(previous, status)) {
+                    continue;
+                }
+                if (previous != null) {
+                    mapper.delete(layerId);
+                }
+                mapper.saveStatus(status);
+                changed++;
+            }
+            // layers that no longer have a status
+            for (Integer layerId : stored.keySet()) {
+                mapper.delete(layerId);
+                changed++;
+            }
+            session.commit();
+            return changed;
+        }
+    }
+
+    private static boolean isSameStatus(BackendStatus a, BackendStatus b) {
+        return Objects.equals(a.getStatus(), b.getStatus())
+                && Objects.equals(a.getStatusMessage(), b.getStatusMessage())
+                && Objects.equals(a.getInfoUrl(), b.getInfoUrl());
+    }
+
 }
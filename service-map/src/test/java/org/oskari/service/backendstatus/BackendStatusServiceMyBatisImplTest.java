@@ -1,16 +1,26 @@
 package org.oskari.service.backendstatus;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
 
 import org.junit.Ignore;
 import org.junit.Test;
 import org.postgresql.ds.PGSimpleDataSource;
 
 import fi.nls.oskari.domain.map.BackendStatus;
+import fi.nls.test.util.ResourceHelper;
+import fi.nls.test.util.TestHelper;
 
 public class BackendStatusServiceMyBatisImplTest {
 
@@ -47,6 +57,55 @@ public class BackendStatusServiceMyBatisImplTest {
         validate(bar, alerts.get(0)); // bar is the one with ERROR
     }
 
+    @Test
+    public void testUpdateOnlyWritesChangedStatuses() throws Exception {
+        List<String> sqls = ResourceHelper.readSqlStatements(getClass(), "/backendstatus_ddl.sql");
+        DataSource ds = TestHelper.createMemDBforUnitTest(sqls);
+        Timestamp old = Timestamp.valueOf("2020-01-01 00:00:00");
+        try (Connection c = ds.getConnection();
+             Statement s = c.createStatement()) {
+            s.execute("DELETE FROM oskari_backendstatus");
+            s.execute("INSERT INTO oskari_backendstatus (ts, maplayer_id, status, statusmessage, infourl)"
+                    + " VALUES ('" + old + "', 1, 'OK', 'foo', 'https://fake.uri')");
+            s.execute("INSERT INTO oskari_backendstatus (ts, maplayer_id, status, statusmessage, infourl)"
+                    + " VALUES ('" + old + "', 2, 'OK', 'bar', 'https://not.so.fake')");
+            // duplicate rows for a layer are replaced with a single row
+            s.execute("INSERT INTO oskari_backendstatus (ts, maplayer_id, status, statusmessage, infourl)"
+                    + " VALUES ('" + old + "', 3, 'OK', 'baz', null)");
+            s.execute("INSERT INTO oskari_backendstatus (ts, maplayer_id, status, statusmessage, infourl)"
+                    + " VALUES ('" + old + "', 3, 'OK', 'baz', null)");
+            s.execute("INSERT INTO oskari_backendstatus (ts, maplayer_id, status, statusmessage, infourl)"
+                    + " VALUES ('" + old + "', 4, 'DOWN', 'removed', null)");
+        }
+
+        BackendStatusServiceMyBatisImpl bs = new BackendStatusServiceMyBatisImpl(ds);
+
+        BackendStatus unchanged = new BackendStatus(1, "OK", "foo", "https://fake.uri");
+        BackendStatus changed = new BackendStatus(2, "ERROR", "bar", "https://not.so.fake");
+        BackendStatus duplicate = new BackendStatus(3, "OK", "baz", null);
+        BackendStatus added = new BackendStatus(5, "OK", "new", null);
+
+        // 2 changed, 3 rewritten, 4 removed, 5 added
+        assertEquals(4, bs.update(Arrays.asList(unchanged, changed, duplicate, added)));
+
+        List<BackendStatus> found = bs.findAll().stream()
+                .sorted(Comparator.comparingInt(BackendStatus::getMapLayerId))
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(1, 2, 3, 5), found.stream()
+                .map(BackendStatus::getMapLayerId)
+                .collect(Collectors.toList()));
+        validate(unchanged, found.get(0));
+        validate(changed, found.get(1));
+        validate(duplicate, found.get(2));
+        validate(added, found.get(3));
+        assertEquals("Unchanged row is kept as is", old.getTime(), found.get(0).getTimestamp().getTime());
+        assertNotEquals("Changed row is rewritten", old.getTime(), found.get(1).getTimestamp().getTime());
+
+        // nothing to do when statuses don't change
+        assertEquals(0, bs.update(Arrays.asList(unchanged, changed, duplicate, added)));
+        assertEquals(4, bs.findAll().size());
+    }
+
     private void validate(BackendStatus expect, BackendStatus actual) {
         assertEquals(expect.getMapLayerId(), actual.getMapLayerId());
         assertEquals(expect.getStatus(), actual.getStatus());
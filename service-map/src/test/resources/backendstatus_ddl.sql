@@ -0,0 +1,7 @@
+CREATE TABLE oskari_backendstatus (
+    ts timestamp without time zone DEFAULT CURRENT_TIMESTAMP,
+    maplayer_id integer NOT NULL,
+    status character varying(500),
+    statusmessage character varying(2000),
+    infourl character varying(2000)
+);
@@ -57,6 +57,7 @@ import org.oskari.print.request.PDPrintStyle;
 import org.oskari.print.request.PrintLayer;
 import org.oskari.print.request.PrintRequest;
 import org.oskari.print.request.PrintVectorRule;
+import org.oskari.print.util.ImageXObjectFactory;
 import org.oskari.print.util.PDFBoxUtil;
 import org.oskari.print.util.StyleUtil;
 import org.oskari.print.util.Units;
@@ -186,7 +187,11 @@ public class PDF {
         float mapHeight = pixelsToPoints(mapHeightPx);
 
         // Init requests to run in the background
-        Map<Integer, Future<BufferedImage>> layerImages = AsyncImageLoader.initLayers(request, wmtsCapsCache);
+        // Large maps are loaded in strips while drawing instead of loading full size images for all layers,
+        // the first strip of every layer is requested right away
+        Map<Integer, Future<BufferedImage>> layerImages = PrintService.isRenderedInStrips(request)
+                ? AsyncImageLoader.initLayers(PrintService.getStripWithGutter(request, 0), wmtsCapsCache)
+                : AsyncImageLoader.initLayers(request, wmtsCapsCache);
         Map<Integer, Future<SimpleFeatureCollection>> featureCollections = AsyncFeatureLoader.initLayers(request, featureClient);
 
         PDPage page = new PDPage(pageSize);
@@ -202,33 +207,16 @@ public class PDF {
             drawScale(stream, request);
             drawDate(stream, request, pageSize);
             drawTimeseriesTexts(stream, request, pageSize);
-            drawLayers(doc, stream, request, layerImages, featureCollections,
+            drawLayers(doc, stream, request, wmtsCapsCache, layerImages, featureCollections,
                     x, y, mapWidth, mapHeight);
             drawBorder(stream, x, y, mapWidth, mapHeight);
         }
     }
-    protected static BufferedImage getVectorLayerImage (PrintLayer layer, Future<SimpleFeatureCollection> ffc, double [] bbox, int w, int h )
-            throws IOException {
-        float mapWidth = pixelsToPoints(w);
-        float mapHeight = pixelsToPoints(h);
-        PDPage page = new PDPage(new PDRectangle(mapWidth, mapHeight) );
-
-        try (PDDocument doc = new PDDocument()) {
-            doc.addPage(page);
-            try (PDPageContentStream stream = new PDPageContentStream(doc, page, AppendMode.APPEND, false)) {
-                AffineTransformation transformation = getTransform(bbox, mapWidth, mapHeight);
-                drawVectorLayer(doc, stream, layer, ffc, transformation, 0, 0, mapWidth, mapHeight);
-            }
-            PDFRenderer renderer = new PDFRenderer(doc);
-            float scale = h / mapHeight;
-            return renderer.renderImage(0, scale, ImageType.ARGB);
-        }
-    }
 
     /**
      * Convert pixels in OGC DPI => PDF Dots
      */
-    private static float pixelsToPoints(int px) {
+    static float pixelsToPoints(int px) {
         return (float) (Units.PDF_DPI * px / Units.OGC_DPI);
     }
 
@@ -436,6 +424,7 @@ public class PDF {
 
     private static void drawLayers(PDDocument doc, PDPageContentStream stream,
             PrintRequest request,
+            WMTSCapabilitiesCache wmtsCapsCache,
             Map<Integer, Future<BufferedImage>> layerImages,
             Map<Integer, Future<SimpleFeatureCollection>> featureCollections,
             float x, float y, float w, float h) throws IOException {
@@ -444,10 +433,13 @@ public class PDF {
         Collections.sort(layers, Comparator.comparing(PrintLayer::getZIndex));
         AffineTransformation transformation = getTransform(request.getBoundingBox(), w, h);
 
+        boolean strips = PrintService.isRenderedInStrips(request);
         for (PrintLayer layer : layers) {
             int zIndex = layer.getZIndex();
             Future<BufferedImage> futureImage = layerImages.get(zIndex);
-            if (futureImage != null) {
+            if (futureImage != null && strips) {
+                drawImageLayerInStrips(doc, stream, request, wmtsCapsCache, layer, futureImage, x, y, w, h);
+            } else if (futureImage != null) {
                 drawImageLayer(doc, stream, layer, futureImage, x, y, w, h);
             } else {
                 Future<SimpleFeatureCollection> futureFc = featureCollections.get(zIndex);
@@ -459,6 +451,41 @@ public class PDF {
         drawMarkers(doc, stream, request.getMarkers(), transformation, x, y, w, h);
     }
 
+    /**
+     * Draws the layer as image tiles of PrintService.STRIP_HEIGHT rows starting from
+     * the already requested first strip. The next strip is loaded while the previous one is drawn.
+     * Strips are requested with PrintService.STRIP_GUTTER extra rows that are cropped before drawing.
+     */
+    private static void drawImageLayerInStrips(PDDocument doc, PDPageContentStream stream,
+            PrintRequest request, WMTSCapabilitiesCache wmtsCapsCache, PrintLayer layer,
+            Future<BufferedImage> firstStrip, float x, float y, float w, float h) throws IOException {
+        final int heightPx = request.getHeight();
+        final float ptPerPx = h / heightPx;
+        try {
+            Future<BufferedImage> next = firstStrip;
+            for (int row = 0; row < heightPx; row += PrintService.STRIP_HEIGHT) {
+                Future<BufferedImage> current = next;
+                int nextRow = row + PrintService.STRIP_HEIGHT;
+                next = nextRow < heightPx
+                        ? AsyncImageLoader.initLayer(PrintService.getStripWithGutter(request, nextRow), layer, wmtsCapsCache)
+                        : null;
+                // PDF y-axis points up, strips are counted from the top
+                int rows = Math.min(PrintService.STRIP_HEIGHT, heightPx - row);
+                float stripHeight = rows * ptPerPx;
+                float stripY = y + h - row * ptPerPx - stripHeight;
+                BufferedImage strip = PrintService.cropGutter(current.get());
+                if (strip != null) {
+                    drawImageLayer(doc, stream, layer, strip, x, stripY, w, stripHeight);
+                }
+            }
+        } catch (ServiceException e) {
+            throw new IOException(e.getMessage(), e);
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.warn(e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
     private static void drawImageLayer(PDDocument doc, PDPageContentStream stream,
             PrintLayer layer, Future<BufferedImage> future,
             float x, float y, float w, float h) throws IOException {
@@ -476,7 +503,7 @@ public class PDF {
     private static void drawImageLayer(PDDocument doc, PDPageContentStream stream,
             PrintLayer layer, BufferedImage bi,
             float x, float y, float w, float h) throws IOException {
-        PDImageXObject imgObject = LosslessFactory.createFromImage(doc, bi);
+        PDImageXObject imgObject = ImageXObjectFactory.createFromImage(doc, layer, bi);
 
         // Set layer (Optional Content Group)
         PDOptionalContentGroup ocg = PDFBoxUtil.getOCG(doc, layer.getName());
@@ -496,7 +523,7 @@ public class PDF {
         }
     }
 
-    private static AffineTransformation getTransform(double[] bbox, float w, float h) {
+    static AffineTransformation getTransform(double[] bbox, float w, float h) {
         double widthNature = Math.abs((bbox[2] - bbox[0]));
         double heightNature = Math.abs((bbox[3] - bbox[1]));
 
@@ -521,7 +548,7 @@ public class PDF {
         return new AffineTransformation(m00, m01, m02, m10, m11, m12);
     }
 
-    private static void drawVectorLayer(PDDocument doc, PDPageContentStream pageStream,
+    static void drawVectorLayer(PDDocument doc, PDPageContentStream pageStream,
             PrintLayer layer, Future<SimpleFeatureCollection> futureFc,
             AffineTransformation transform, float x, float y, float w, float h) throws IOException {
         SimpleFeatureCollection fc;
@@ -635,7 +662,11 @@ public class PDF {
         }
     }
 
-    private static  List <PrintVectorRule> getRules (PDDocument doc, PDResources resources, PrintLayer layer, String geomName) throws IOException {
+    /**
+     * doc and resources can be null when the rules are used for drawing with Java2D,
+     * in that case icons and fill patterns aren't created as PDF objects
+     */
+    static List <PrintVectorRule> getRules (PDDocument doc, PDResources resources, PrintLayer layer, String geomName) throws IOException {
         Function pointFunc = ff.function("in2", ff.function("geometryType", ff.property(geomName)), ff.literal("Point"), ff.literal("MultiPoint"));
         Function lineFunc = ff.function("in2", ff.function("geometryType", ff.property(geomName)), ff.literal("LineString"), ff.literal("MultiLineString"));
         Function polygonFunc = ff.function("in2", ff.function("geometryType", ff.property(geomName)), ff.literal("Polygon"), ff.literal("MultiPolygon"));
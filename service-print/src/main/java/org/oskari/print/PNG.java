@@ -8,15 +8,21 @@ import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
 
+import javax.imageio.ImageIO;
+
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.oskari.print.loader.AsyncFeatureLoader;
 import org.oskari.print.loader.AsyncImageLoader;
+import org.oskari.print.request.PrintFormat;
 import org.oskari.print.request.PrintLayer;
 import org.oskari.print.request.PrintRequest;
+import org.oskari.print.util.PNGStripWriter;
 import org.oskari.print.wmts.WMTSCapabilitiesCache;
 import org.oskari.service.wfs.client.OskariFeatureClient;
 
@@ -29,6 +35,56 @@ public class PNG {
      */
     protected static BufferedImage getBufferedImage(PrintRequest request, WMTSCapabilitiesCache tmsCache, OskariFeatureClient featureClient)
             throws ServiceException {
+        Map<Integer, Future<SimpleFeatureCollection>> featureCollections = AsyncFeatureLoader.initLayers(request, featureClient);
+        BufferedImage canvas = getCanvas(request, tmsCache, featureCollections);
+        if (canvas == null) {
+            return null;
+        }
+
+        BufferedImage scaled = scale(canvas,
+                request.getTargetWidth(),
+                request.getTargetHeight(),
+                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+
+        return scaled;
+    }
+
+    /**
+     * Renders the map in horizontal strips of PrintService.STRIP_HEIGHT rows and writes
+     * each strip to the PNG before rendering the next one. Image layers are requested
+     * per strip, features are loaded once for the whole map. Each strip is rendered with
+     * PrintService.STRIP_GUTTER extra rows above and below that are cropped before writing.
+     * Scaled maps and maps that fit in one strip are rendered at once.
+     *
+     * This method should be called via PrintService
+     */
+    protected static void writePNG(PrintRequest request, WMTSCapabilitiesCache tmsCache, OskariFeatureClient featureClient,
+            OutputStream out) throws ServiceException, IOException {
+        if (!PrintService.isRenderedInStrips(request)) {
+            BufferedImage bi = getBufferedImage(request, tmsCache, featureClient);
+            if (bi == null) {
+                throw new ServiceException("Failed to create PNG");
+            }
+            ImageIO.write(bi, PrintFormat.PNG.fileExtension, out);
+            return;
+        }
+
+        final int width = request.getWidth();
+        final int height = request.getHeight();
+        Map<Integer, Future<SimpleFeatureCollection>> featureCollections = AsyncFeatureLoader.initLayers(request, featureClient);
+        try (PNGStripWriter writer = new PNGStripWriter(out, width, height)) {
+            for (int y = 0; y < height; y += PrintService.STRIP_HEIGHT) {
+                BufferedImage strip = getCanvas(PrintService.getStripWithGutter(request, y), tmsCache, featureCollections);
+                if (strip == null) {
+                    throw new ServiceException("Failed to create PNG");
+                }
+                writer.write(PrintService.cropGutter(strip));
+            }
+        }
+    }
+
+    private static BufferedImage getCanvas(PrintRequest request, WMTSCapabilitiesCache tmsCache,
+            Map<Integer, Future<SimpleFeatureCollection>> featureCollections) throws ServiceException {
         final int width = request.getWidth();
         final int height = request.getHeight();
         final double [] bbox = request.getBoundingBox();
@@ -36,7 +92,6 @@ public class PNG {
         final List<PrintLayer> layers = request.getLayers();
 
         Map<Integer, Future<BufferedImage>> images = AsyncImageLoader.initLayers(request, tmsCache);
-        Map<Integer, Future<SimpleFeatureCollection>> featureCollections = AsyncFeatureLoader.initLayers(request, featureClient);
         BufferedImage canvas = new BufferedImage(width, height,
                 BufferedImage.TYPE_INT_ARGB);
 
@@ -51,7 +106,10 @@ public class PNG {
                 if (image == null) {
                     // try vectorlayer, opacity handled in vector styles
                     Future<SimpleFeatureCollection> futureFc = featureCollections.get(zIndex);
-                    bi = PDF.getVectorLayerImage(layer, futureFc, bbox, width, height);
+                    if (futureFc == null) {
+                        continue;
+                    }
+                    bi = VectorLayerRenderer.getVectorLayerImage(layer, futureFc, bbox, width, height);
                 } else {
                     bi = image.get();
                     alpha = getAlpha(layer.getOpacity());
@@ -74,13 +132,7 @@ public class PNG {
         } finally {
             g2d.dispose();
         }
-
-        BufferedImage scaled = scale(canvas,
-                request.getTargetWidth(),
-                request.getTargetHeight(),
-                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-
-        return scaled;
+        return canvas;
     }
 
     private static float getAlpha(int opacity) {
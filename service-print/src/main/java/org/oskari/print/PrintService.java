@@ -3,16 +3,28 @@ package org.oskari.print;
 import fi.nls.oskari.service.ServiceException;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.oskari.print.request.PrintFormat;
 import org.oskari.print.request.PrintRequest;
 import org.oskari.print.wmts.WMTSCapabilitiesCache;
 import org.oskari.service.wfs.client.OskariFeatureClient;
 import org.oskari.service.wfs.client.OskariWFSClient;
 
+import fi.nls.oskari.util.PropertyUtil;
+
 public class PrintService {
 
+    // Maps taller than this (in pixels) are rendered in strips to limit memory usage
+    public static final int STRIP_HEIGHT = Math.max(64, PropertyUtil.getOptional("print.tile.height", 1024));
+    // Rows requested above and below each strip and cropped away so that services place labels
+    // and symbols near the strip edges like they would in the full image
+    public static final int STRIP_GUTTER = Math.max(0, PropertyUtil.getOptional("print.tile.gutter", 64));
+
     private final WMTSCapabilitiesCache wmtsCapsCache;
     private final OskariFeatureClient featureClient;
 
@@ -33,6 +45,49 @@ public class PrintService {
         this.featureClient = featureClient;
     }
     
+    /**
+     * @return true if the request is rendered in strips of STRIP_HEIGHT rows instead of
+     * rendering all layers in full size
+     */
+    public static boolean isRenderedInStrips(PrintRequest request) {
+        return request.getHeight() > STRIP_HEIGHT && !isScaled(request);
+    }
+
+    /**
+     * @return true if the map is rendered in full size and then scaled to the target size.
+     * Only PNGs are scaled, PDF ignores the target size.
+     */
+    public static boolean isScaled(PrintRequest request) {
+        return request.getFormat() == PrintFormat.PNG
+                && request.getTargetWidth() > 0 && request.getTargetWidth() != request.getWidth()
+                && request.getTargetHeight() > 0 && request.getTargetHeight() != request.getHeight();
+    }
+
+    /**
+     * @param row first row of the strip, counted from the top of the map
+     * @return request for the strip starting from row extended with STRIP_GUTTER rows above and below
+     */
+    public static PrintRequest getStripWithGutter(PrintRequest request, int row) {
+        int rows = Math.min(STRIP_HEIGHT, request.getHeight() - row);
+        return request.getStrip(row - STRIP_GUTTER, rows + 2 * STRIP_GUTTER);
+    }
+
+    /**
+     * Removes the gutter from an image of a strip requested with getStripWithGutter()
+     * @return a copy of the rows of the strip or null if image is null
+     */
+    public static BufferedImage cropGutter(BufferedImage image) {
+        if (image == null || STRIP_GUTTER == 0) {
+            return image;
+        }
+        int rows = image.getHeight() - 2 * STRIP_GUTTER;
+        // copied so the image doesn't share (and keep in memory) the raster of the larger image
+        ColorModel cm = image.getColorModel();
+        WritableRaster raster = cm.createCompatibleWritableRaster(image.getWidth(), rows);
+        image.getSubimage(0, STRIP_GUTTER, image.getWidth(), rows).copyData(raster);
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+
     private static WMTSCapabilitiesCache getDefaultWMTSCapabilitiesCache() {
         return new WMTSCapabilitiesCache();
     }
@@ -46,6 +101,13 @@ public class PrintService {
         return PNG.getBufferedImage(request, wmtsCapsCache, featureClient);
     }
 
+    /**
+     * Writes the print as PNG rendering it in strips
+     */
+    public void writePNG(PrintRequest request, OutputStream out) throws IOException, ServiceException {
+        PNG.writePNG(request, wmtsCapsCache, featureClient, out);
+    }
+
     public void getPDF(PrintRequest request, PDDocument doc)
             throws IOException, ServiceException {
         PDF.getPDF(request, wmtsCapsCache, featureClient, doc);
@@ -0,0 +1,277 @@
+package org.oskari.print;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.util.AffineTransformation;
+import org.opengis.feature.simple.SimpleFeature;
+import org.oskari.print.request.PDPrintStyle;
+import org.oskari.print.request.PrintLayer;
+import org.oskari.print.request.PrintVectorRule;
+import org.oskari.print.util.StyleUtil;
+import org.oskari.print.util.StyleUtil.MarkerImage;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+/**
+ * Draws vector layers straight to an image with Java2D for PNG output.
+ *
+ * Uses the same PrintVectorRules and PDPrintStyles as the PDF output. Everything is
+ * sized in PDF points and scaled to pixels like PDFRenderer does so the result matches
+ * PDF based rendering without building and re-rasterizing a PDF document per layer.
+ */
+class VectorLayerRenderer {
+
+    private static final Logger LOG = LogFactory.getLogger(VectorLayerRenderer.class);
+
+    // PDF default miter limit
+    private static final float MITER_LIMIT = 10f;
+    private static final Color DEFAULT_STROKE_COLOR = Color.BLACK;
+    private static final Color LABEL_COLOR = Color.BLACK;
+
+    private final Graphics2D g2d;
+    private final AffineTransformation transform;
+    private final double pxPerPt;
+    private final int height;
+    private final Font labelFont;
+
+    private PDPrintStyle style;
+    private Stroke stroke;
+    private Color strokeColor;
+    private Paint fillPaint;
+    private MarkerImage marker;
+
+    private VectorLayerRenderer(Graphics2D g2d, AffineTransformation transform, double pxPerPt, int height) {
+        this.g2d = g2d;
+        this.transform = transform;
+        this.pxPerPt = pxPerPt;
+        this.height = height;
+        this.labelFont = new Font(Font.SANS_SERIF, Font.BOLD, 1).deriveFont((float) (PDPrintStyle.FONT_SIZE * pxPerPt));
+    }
+
+    protected static BufferedImage getVectorLayerImage(PrintLayer layer, Future<SimpleFeatureCollection> ffc, double[] bbox, int w, int h)
+            throws IOException {
+        SimpleFeatureCollection fc;
+        try {
+            fc = ffc.get();
+            if (fc == null || fc.isEmpty()) {
+                return null;
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.warn(e);
+            throw new IOException(e.getMessage());
+        }
+
+        float mapWidth = PDF.pixelsToPoints(w);
+        float mapHeight = PDF.pixelsToPoints(h);
+        AffineTransformation transformation = PDF.getTransform(bbox, mapWidth, mapHeight);
+        String geomName = fc.getSchema().getGeometryDescriptor().getLocalName();
+        List<PrintVectorRule> rules = PDF.getRules(null, null, layer, geomName);
+
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = bi.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            int opacity = layer.getOpacity();
+            if (opacity < 100) {
+                g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.01f * opacity));
+            }
+            VectorLayerRenderer renderer = new VectorLayerRenderer(g2d, transformation, h / mapHeight, h);
+            for (PrintVectorRule rule : rules) {
+                SimpleFeatureCollection subFc = fc.subCollection(rule.getFilter());
+                if (subFc.isEmpty()) continue;
+                renderer.setStyle(rule.getStyle());
+                try (SimpleFeatureIterator it = subFc.features()) {
+                    while (it.hasNext()) {
+                        renderer.drawFeature(it.next());
+                    }
+                }
+            }
+        } finally {
+            g2d.dispose();
+        }
+        return bi;
+    }
+
+    private void setStyle(PDPrintStyle style) throws IOException {
+        this.style = style;
+        float lineWidth = (float) (style.getLineWidth() * pxPerPt);
+        float[] dash = style.getLinePattern().f.apply(style.getLineWidth());
+        for (int i = 0; i < dash.length; i++) {
+            dash[i] *= pxPerPt;
+        }
+        // PDF and Java2D use the same codes for caps and joins
+        stroke = new BasicStroke(lineWidth, style.getLineCap().code, style.getLineJoin().code,
+                MITER_LIMIT, dash.length == 0 ? null : dash, 0f);
+        strokeColor = toColor(style.getStrokeColor());
+        if (style.hasFillPattern()) {
+            fillPaint = StyleUtil.createFillPaint(style.getFillPattern(), style.getFillPatternColor(), pxPerPt, height);
+        } else {
+            fillPaint = toColor(style.getFillColor());
+        }
+        marker = style.hasMarker()
+                ? StyleUtil.getMarkerImage(style.getMarkerShape(), style.getMarkerColor(), style.getMarkerSize(), pxPerPt)
+                : null;
+    }
+
+    private static Color toColor(PDColor color) throws IOException {
+        return color == null ? null : new Color(color.toRGB());
+    }
+
+    private void drawFeature(SimpleFeature f) {
+        Geometry g = (Geometry) f.getDefaultGeometry();
+        if (g == null) {
+            return;
+        }
+        // Transform the Geometry to PDF coordinate space like PDF output does
+        g = transform.transform(g);
+        draw(g);
+        if (style.hasLabels()) {
+            // take first property with content
+            String label = style.getLabelProperty().stream()
+                    .map(it -> f.getAttribute(it))
+                    .filter(it -> it != null)
+                    .map(it -> it.toString())
+                    .filter(it -> !it.isEmpty())
+                    .findFirst()
+                    .orElse("");
+            if (!label.isEmpty()) {
+                drawLabel(g, label);
+            }
+        }
+    }
+
+    private void draw(Geometry g) {
+        if (g instanceof Point) {
+            draw((Point) g);
+        } else if (g instanceof LineString) {
+            draw((LineString) g);
+        } else if (g instanceof Polygon) {
+            draw((Polygon) g);
+        } else if (g instanceof GeometryCollection) {
+            for (int i = 0; i < g.getNumGeometries(); i++) {
+                draw(g.getGeometryN(i));
+            }
+        }
+    }
+
+    private void draw(Point g) {
+        if (marker == null) {
+            return;
+        }
+        Coordinate c = g.getCoordinate();
+        double x = toPixelX(c.x) + marker.getOffsetX();
+        double y = toPixelY(c.y) + marker.getOffsetY();
+        g2d.drawImage(marker.getImage(), AffineTransform.getTranslateInstance(x, y), null);
+    }
+
+    private void draw(LineString g) {
+        Path2D path = new Path2D.Double();
+        add(path, g.getCoordinateSequence(), false);
+        g2d.setStroke(stroke);
+        g2d.setPaint(strokeColor != null ? strokeColor : DEFAULT_STROKE_COLOR);
+        g2d.draw(path);
+    }
+
+    private void draw(Polygon g) {
+        boolean fill = fillPaint != null;
+        boolean stroke = style.hasLineColor();
+        if (!fill && !stroke) return;
+        Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        add(path, g.getExteriorRing().getCoordinateSequence(), true);
+        for (int i = 0; i < g.getNumInteriorRing(); i++) {
+            add(path, g.getInteriorRingN(i).getCoordinateSequence(), true);
+        }
+        if (fill) {
+            g2d.setPaint(fillPaint);
+            g2d.fill(path);
+        }
+        if (stroke) {
+            g2d.setStroke(this.stroke);
+            g2d.setPaint(strokeColor);
+            g2d.draw(path);
+        }
+    }
+
+    private void add(Path2D path, CoordinateSequence csq, boolean closePath) {
+        for (int i = 0; i < csq.size(); i++) {
+            double x = toPixelX(csq.getX(i));
+            double y = toPixelY(csq.getY(i));
+            if (i == 0) {
+                path.moveTo(x, y);
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        if (closePath) {
+            path.closePath();
+        }
+    }
+
+    private void drawLabel(Geometry g, String label) {
+        if (g instanceof MultiPoint || g instanceof MultiPolygon) {
+            for (int i = 0 ; i < g.getNumGeometries(); i++) {
+                drawLabelAt(g.getGeometryN(i).getCentroid().getCoordinate(), label);
+            }
+        } else if (g instanceof LineString) {
+            drawLabelAt(getLineCentroid((LineString) g), label);
+        } else if (g instanceof MultiLineString) {
+            for (int i = 0; i < g.getNumGeometries(); i++) {
+                drawLabelAt(getLineCentroid((LineString) g.getGeometryN(i)), label);
+            }
+        }
+    }
+
+    private static Coordinate getLineCentroid(LineString line) {
+        int i = line.getNumPoints() / 2;
+        return line.getPointN(i).getCoordinate();
+    }
+
+    private void drawLabelAt(Coordinate c, String label) {
+        PDPrintStyle.LabelAlign align = style.getLabelAlign();
+        float x = (float) toPixelX(c.x + align.getLabelX(label));
+        float y = (float) toPixelY(c.y + align.getLabelY());
+        g2d.setFont(labelFont);
+        g2d.setPaint(LABEL_COLOR);
+        g2d.drawString(label, x, y);
+    }
+
+    private double toPixelX(double x) {
+        return x * pxPerPt;
+    }
+
+    private double toPixelY(double y) {
+        // PDF y-axis points up
+        return height - y * pxPerPt;
+    }
+
+}
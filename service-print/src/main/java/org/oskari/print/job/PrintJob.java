@@ -0,0 +1,172 @@
+package org.oskari.print.job;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.oskari.print.request.PrintFormat;
+import org.oskari.print.request.PrintRequest;
+
+import fi.nls.oskari.service.ServiceException;
+
+/**
+ * A print submitted to PrintJobQueue. The result is written to a file on local disk.
+ */
+public class PrintJob {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private final String id;
+    private final String owner;
+    private final PrintFormat format;
+    private final int memoryEstimate;
+    private final long created;
+    private final CompletableFuture<Path> result = new CompletableFuture<>();
+
+    private volatile PrintRequest request;
+    private volatile Status status = Status.QUEUED;
+    private volatile long finished;
+    private volatile String error;
+    private Future<?> task;
+    private boolean cancelled;
+
+    PrintJob(String id, String owner, PrintRequest request, int memoryEstimate) {
+        this.id = id;
+        this.owner = owner;
+        this.request = request;
+        this.format = request.getFormat();
+        this.memoryEstimate = memoryEstimate;
+        this.created = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return true if the job was submitted by the given owner
+     */
+    public boolean isOwnedBy(String owner) {
+        return this.owner != null && this.owner.equals(owner);
+    }
+
+    public PrintFormat getFormat() {
+        return format;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return file of a finished job, null if the job is not done
+     */
+    public Path getFile() {
+        return status == Status.DONE ? result.getNow(null) : null;
+    }
+
+    /**
+     * Waits for the job to finish
+     * @return the file containing the print
+     * @throws ServiceException if the job failed or didn't finish in time
+     */
+    public Path await(long timeoutMs) throws ServiceException {
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while waiting for print", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ServiceException) {
+                throw (ServiceException) e.getCause();
+            }
+            throw new ServiceException("Print failed", e);
+        } catch (TimeoutException e) {
+            throw new ServiceException("Print didn't finish in " + timeoutMs + " ms");
+        }
+    }
+
+    synchronized void setTask(Future<?> task) {
+        this.task = task;
+        if (cancelled) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Cancels the job if it hasn't finished yet
+     * @return true if the job was cancelled
+     */
+    synchronized boolean cancel() {
+        if (cancelled || finished > 0) {
+            return false;
+        }
+        cancelled = true;
+        if (task != null) {
+            task.cancel(true);
+        }
+        return true;
+    }
+
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    int getMemoryEstimate() {
+        return memoryEstimate;
+    }
+
+    PrintRequest getRequest() {
+        return request;
+    }
+
+    void running() {
+        status = Status.RUNNING;
+    }
+
+    /**
+     * @return false if the job was cancelled and the file won't be used
+     */
+    synchronized boolean done(Path file) {
+        if (cancelled) {
+            return false;
+        }
+        finish(Status.DONE);
+        result.complete(file);
+        return true;
+    }
+
+    synchronized void failed(Throwable e) {
+        error = e.getMessage();
+        finish(Status.FAILED);
+        result.completeExceptionally(e);
+    }
+
+    private void finish(Status status) {
+        // request holds references to layers and user, no need to keep them around
+        request = null;
+        finished = System.currentTimeMillis();
+        this.status = status;
+    }
+
+}
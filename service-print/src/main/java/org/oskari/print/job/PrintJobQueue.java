@@ -0,0 +1,235 @@
+package org.oskari.print.job;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.oskari.print.PrintService;
+import org.oskari.print.request.PrintRequest;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.service.ServiceException;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Bounded queue for rendering prints.
+ *
+ * At most "print.queue.threads" prints are rendered concurrently and "print.queue.size" more
+ * can wait in the queue. Each job reserves an estimate of the memory it needs (based on the
+ * map size and layer count) from a budget of "print.queue.memory" megabytes before rendering
+ * so a few large prints can't exhaust the heap. Results are written to "print.queue.dir" and
+ * removed "print.queue.expiration" seconds after the job has finished.
+ *
+ * Results are stored on local disk so polling for a job needs to reach the node it was submitted to.
+ */
+public class PrintJobQueue {
+
+    private static final Logger LOG = LogFactory.getLogger(PrintJobQueue.class);
+
+    private static final String PROPERTY_THREADS = "print.queue.threads";
+    private static final String PROPERTY_SIZE = "print.queue.size";
+    private static final String PROPERTY_MEMORY = "print.queue.memory";
+    private static final String PROPERTY_DIR = "print.queue.dir";
+    private static final String PROPERTY_EXPIRATION = "print.queue.expiration";
+
+    private static final long MB = 1024 * 1024;
+    // canvas + decoded layer images + room for encoding the result
+    private static final int IMAGES_PER_PRINT_OVERHEAD = 2;
+
+    private final PrintService printService;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore memory;
+    private final int memoryLimit;
+    private final Path dir;
+    private final long expiration;
+    private final Map<String, PrintJob> jobs = new ConcurrentHashMap<>();
+
+    public PrintJobQueue(PrintService printService) {
+        this(printService,
+                PropertyUtil.getOptional(PROPERTY_THREADS, 2),
+                PropertyUtil.getOptional(PROPERTY_SIZE, 20),
+                PropertyUtil.getOptional(PROPERTY_MEMORY, (int) (Runtime.getRuntime().maxMemory() / MB / 4)),
+                Paths.get(PropertyUtil.get(PROPERTY_DIR, System.getProperty("java.io.tmpdir") + "/oskari-print")),
+                PropertyUtil.getOptional(PROPERTY_EXPIRATION, 3600) * 1000L);
+    }
+
+    public PrintJobQueue(PrintService printService, int threads, int queueSize, int memoryLimitMb, Path dir, long expirationMs) {
+        this.printService = printService;
+        this.memoryLimit = Math.max(1, memoryLimitMb);
+        this.memory = new Semaphore(memoryLimit, true);
+        this.dir = dir;
+        this.expiration = expirationMs;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                r -> {
+                    Thread t = new Thread(r, "oskari-print-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        LOG.info("Print queue initialized - threads:", threads, "queue size:", queueSize,
+                "memory limit (MB):", memoryLimit, "dir:", dir);
+    }
+
+    /**
+     * Adds the request to the queue
+     * @param owner identifies who can access the job, see PrintJob.isOwnedBy()
+     * @return the job for checking the status and getting the result
+     * @throws PrintQueueFullException if the queue is full
+     * @throws ServiceException if the request is too large
+     */
+    public PrintJob submit(PrintRequest request, String owner) throws ServiceException {
+        removeExpired();
+        int estimate = estimateMemory(request);
+        if (estimate > memoryLimit) {
+            throw new ServiceException("Print request is too large: estimated " + estimate
+                    + " MB, limit " + memoryLimit + " MB");
+        }
+        PrintJob job = new PrintJob(UUID.randomUUID().toString(), owner, request, estimate);
+        jobs.put(job.getId(), job);
+        try {
+            job.setTask(executor.submit(() -> run(job)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new PrintQueueFullException("Print queue is full");
+        }
+        return job;
+    }
+
+    public PrintJob getJob(String id) {
+        if (id == null) {
+            return null;
+        }
+        removeExpired();
+        return jobs.get(id);
+    }
+
+    /**
+     * Removes the job and its result file. A job that hasn't finished is cancelled: a queued
+     * job won't be rendered and a running one is interrupted. If it still finishes, the file is removed then.
+     */
+    public void remove(PrintJob job) {
+        jobs.remove(job.getId());
+        if (job.cancel()) {
+            // free the slot in the queue
+            executor.purge();
+        }
+        deleteResult(job);
+    }
+
+    public int getQueueLength() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return estimated memory in megabytes needed to render the request
+     */
+    static int estimateMemory(PrintRequest request) {
+        long width = Math.max(request.getWidth(), request.getTargetWidth());
+        long height = Math.max(request.getHeight(), request.getTargetHeight());
+        if (PrintService.isRenderedInStrips(request)) {
+            width = request.getWidth();
+            height = PrintService.STRIP_HEIGHT;
+        }
+        int layers = request.getLayers() == null ? 0 : request.getLayers().size();
+        // ARGB images of map (or strip) size
+        long bytes = width * height * 4L * (layers + IMAGES_PER_PRINT_OVERHEAD);
+        return (int) Math.max(1, (bytes + MB - 1) / MB);
+    }
+
+    private void run(PrintJob job) {
+        if (job.isCancelled()) {
+            return;
+        }
+        int permits = job.getMemoryEstimate();
+        try {
+            memory.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.failed(e);
+            return;
+        }
+        try {
+            job.running();
+            Path file = render(job);
+            if (!job.done(file)) {
+                // removed while rendering
+                Files.deleteIfExists(file);
+                job.failed(new ServiceException("Print job was cancelled"));
+            }
+        } catch (Exception e) {
+            LOG.warn(e, "Print job failed:", job.getId());
+            job.failed(e);
+        } finally {
+            memory.release(permits);
+        }
+    }
+
+    private Path render(PrintJob job) throws IOException, ServiceException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(job.getId() + "." + job.getFormat().fileExtension);
+        Path tmp = dir.resolve(job.getId() + ".tmp");
+        PrintRequest request = job.getRequest();
+        try {
+            switch (job.getFormat()) {
+            case PDF:
+                try (PDDocument doc = new PDDocument()) {
+                    printService.getPDF(request, doc);
+                    doc.save(tmp.toFile());
+                }
+                break;
+            case PNG:
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                    printService.writePNG(request, out);
+                }
+                break;
+            default:
+                throw new ServiceException("Unsupported format: " + job.getFormat());
+            }
+            return Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<PrintJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            PrintJob job = it.next();
+            if (job.getFinished() > 0 && job.getFinished() + expiration < now) {
+                it.remove();
+                deleteResult(job);
+            }
+        }
+    }
+
+    private void deleteResult(PrintJob job) {
+        Path file = job.getFile();
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to remove print:", file);
+        }
+    }
+
+}
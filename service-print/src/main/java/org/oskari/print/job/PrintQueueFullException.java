@@ -0,0 +1,16 @@
+package org.oskari.print.job;
+
+import fi.nls.oskari.service.ServiceException;
+
+/**
+ * Thrown when a print can't be queued because the queue is full. The request can be retried later.
+ */
+public class PrintQueueFullException extends ServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PrintQueueFullException(final String message) {
+        super(message);
+    }
+
+}
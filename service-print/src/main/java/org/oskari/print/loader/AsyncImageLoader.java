@@ -26,29 +26,50 @@ public class AsyncImageLoader {
             return images;
         }
 
+        for (PrintLayer layer : requestedLayers) {
+            Future<BufferedImage> image = initLayer(request, layer, wmtsCapsCache);
+            if (image != null) {
+                images.put(layer.getZIndex(), image);
+            }
+        }
+
+        return images;
+    }
+
+    /**
+     * @return future for the layer image or null if the layer isn't an image layer
+     */
+    public static Future<BufferedImage> initLayer(PrintRequest request, PrintLayer layer, WMTSCapabilitiesCache wmtsCapsCache)
+            throws ServiceException {
+        if (!isImageLayer(layer)) {
+            return null;
+        }
         final int width = request.getWidth();
         final int height = request.getHeight();
         final double[] bbox = request.getBoundingBox();
         final String srsName = request.getSrsName();
 
-        for (PrintLayer layer : requestedLayers) {
-            switch (layer.getType()) { 
-            case OskariLayer.TYPE_WMS:
-                images.put(layer.getZIndex(), new CommandLoadImageWMS(layer, 
-                        width, height, bbox, srsName,request.getTime()).queue());
-                break;
-            case OskariLayer.TYPE_WMTS:
-                images.put(layer.getZIndex(), new CommandLoadImageWMTS(layer, width, height, bbox, srsName,
-                        wmtsCapsCache.get(layer), request.getResolution()).queue());
-                break;
-            case OskariLayer.TYPE_ARCGIS93:
-                images.put(layer.getZIndex(), new CommandLoadImageArcGISREST(layer,
-                        width, height, bbox, srsName).queue());
-                break;
-            }
-
+        switch (layer.getType()) {
+        case OskariLayer.TYPE_WMS:
+            return new CommandLoadImageWMS(layer,
+                    width, height, bbox, srsName,request.getTime()).queue();
+        case OskariLayer.TYPE_WMTS:
+            return new CommandLoadImageWMTS(layer, width, height, bbox, srsName,
+                    wmtsCapsCache.get(layer), request.getResolution()).queue();
+        default:
+            return new CommandLoadImageArcGISREST(layer,
+                    width, height, bbox, srsName).queue();
         }
+    }
 
-        return images;
+    public static boolean isImageLayer(PrintLayer layer) {
+        switch (layer.getType()) {
+        case OskariLayer.TYPE_WMS:
+        case OskariLayer.TYPE_WMTS:
+        case OskariLayer.TYPE_ARCGIS93:
+            return true;
+        default:
+            return false;
+        }
     }
 }
@@ -6,22 +6,20 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.command.CommandSettings;
+import org.oskari.command.OskariCommand;
 import org.oskari.print.request.PrintLayer;
 import org.oskari.service.user.UserLayerService;
 import org.oskari.service.wfs.client.OskariFeatureClient;
 
-import com.netflix.hystrix.HystrixCommand;
-import com.netflix.hystrix.HystrixCommandGroupKey;
-import com.netflix.hystrix.HystrixCommandKey;
-import com.netflix.hystrix.HystrixCommandProperties;
-import com.netflix.hystrix.HystrixThreadPoolProperties;
-
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.util.PropertyUtil;
 
-public class CommandLoadFeatureWFS extends HystrixCommand<SimpleFeatureCollection> {
+public class CommandLoadFeatureWFS extends OskariCommand<SimpleFeatureCollection> {
     
     private static final String GROUP_KEY = "print";
+    private static final CommandSettings SETTINGS = CommandSettings.fromProperties("oskari." + GROUP_KEY)
+            .withTimeoutMs(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.timeoutms", 150_000));
     
     private OskariFeatureClient featureClient;
     private PrintLayer layer;
@@ -31,22 +29,7 @@ public class CommandLoadFeatureWFS extends HystrixCommand<SimpleFeatureCollectio
     
     public CommandLoadFeatureWFS(OskariFeatureClient featureClient, PrintLayer layer,
             String uuid, ReferencedEnvelope bbox, CoordinateReferenceSystem crs) {
-        super(Setter
-                .withGroupKey(HystrixCommandGroupKey.Factory.asKey(AsyncImageLoader.GROUP_KEY))
-                .andCommandKey(HystrixCommandKey.Factory.asKey(Integer.toString(layer.getId())))
-                .andThreadPoolPropertiesDefaults(
-                        HystrixThreadPoolProperties.Setter()
-                        .withCoreSize(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.size", 10))
-                        .withMaxQueueSize(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.limit", 100))
-                        .withQueueSizeRejectionThreshold(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.queue", 100)))
-                .andCommandPropertiesDefaults(
-                        HystrixCommandProperties.Setter()
-                        // .withExecutionTimeoutInMilliseconds(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.timeoutms", 15000))
-                        .withExecutionTimeoutInMilliseconds(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.timeoutms", 150_000))
-                        .withCircuitBreakerRequestVolumeThreshold(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".failrequests", 5))
-                        .withMetricsRollingStatisticalWindowInMilliseconds(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".rollingwindow", 100_000))
-                        .withCircuitBreakerSleepWindowInMilliseconds(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".sleepwindow", 20_000)))
-        );
+        super(AsyncImageLoader.GROUP_KEY, Integer.toString(layer.getId()), SETTINGS);
         this.featureClient = featureClient;
         this.layer = layer;
         this.uuid = uuid;
@@ -67,6 +50,11 @@ public class CommandLoadFeatureWFS extends HystrixCommand<SimpleFeatureCollectio
         }
     }
     
+    @Override
+    protected boolean hasFallback() {
+        return true;
+    }
+
     @Override
     protected SimpleFeatureCollection getFallback() {
         return new DefaultFeatureCollection();
@@ -5,7 +5,7 @@ import org.oskari.print.request.PrintLayer;
 import fi.nls.oskari.domain.User;
 
 /**
- * HystrixCommand that loads BufferedImage from Analysis Layer via ProxyService
+ * Command that loads BufferedImage from Analysis Layer via ProxyService
  */
 public class CommandLoadImageAnalysis extends CommandLoadImageProxyService {
 
@@ -6,7 +6,7 @@ import org.oskari.print.request.PrintLayer;
 import org.oskari.print.util.ArcGISMapExportBuilder;
 
 /**
- * HystrixCommand that loads BufferedImage from ArcGIS REST API
+ * Command that loads BufferedImage from ArcGIS REST API
  */
 public class CommandLoadImageArcGISREST extends CommandLoadImageBase {
 
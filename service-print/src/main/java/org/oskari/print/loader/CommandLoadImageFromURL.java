@@ -13,7 +13,7 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.IOHelper;
 
 /**
- * HystrixCommand that loads BufferedImage from URL
+ * Command that loads BufferedImage from URL
  * Retries up to 3 times
  */
 public class CommandLoadImageFromURL extends CommandLoadImageBase {
@@ -5,7 +5,7 @@ import org.oskari.print.request.PrintLayer;
 import fi.nls.oskari.domain.User;
 
 /**
- * HystrixCommand that loads BufferedImage from MyPlaces via ProxyService
+ * Command that loads BufferedImage from MyPlaces via ProxyService
  */
 public class CommandLoadImageMyPlaces extends CommandLoadImageProxyService {
 
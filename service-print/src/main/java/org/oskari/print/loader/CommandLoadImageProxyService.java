@@ -17,7 +17,7 @@ import fi.nls.oskari.domain.User;
 import fi.nls.oskari.service.ProxyService;
 
 /**
- * HystrixCommand that loads BufferedImage from GeoServer via ProxyService
+ * Command that loads BufferedImage from GeoServer via ProxyService
  */
 public abstract class CommandLoadImageProxyService extends CommandLoadImageBase {
 
@@ -5,7 +5,7 @@ import org.oskari.print.request.PrintLayer;
 import fi.nls.oskari.domain.User;
 
 /**
- * HystrixCommand that loads BufferedImage from UserLayer via ProxyService
+ * Command that loads BufferedImage from UserLayer via ProxyService
  */
 public class CommandLoadImageUserLayer extends CommandLoadImageProxyService {
 
@@ -6,7 +6,7 @@ import org.oskari.print.request.PrintLayer;
 import org.oskari.print.util.GetMapBuilder;
 
 /**
- * HystrixCommand that loads BufferedImage from WMS
+ * Command that loads BufferedImage from WMS
  */
 public class CommandLoadImageWMS extends CommandLoadImageBase {
 
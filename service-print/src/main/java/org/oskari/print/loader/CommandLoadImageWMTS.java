@@ -22,7 +22,7 @@ import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
 import org.json.JSONObject;
 
 /**
- * HystrixCommand that loads tiles from a WMTS service and combines them to a
+ * Command that loads tiles from a WMTS service and combines them to a
  * single BufferedImage
  */
 public class CommandLoadImageWMTS extends CommandLoadImageBase {
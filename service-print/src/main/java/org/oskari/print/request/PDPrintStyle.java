@@ -28,6 +28,11 @@ public class PDPrintStyle {
     private PDColor strokeColor;
     private PDColor fillColor;
     private PDFormXObject icon;
+    private int fillPattern = -1;
+    private Color fillPatternColor;
+    private int markerShape = -1;
+    private String markerColor;
+    private int markerSize;
     private List<String> labelProperty;
     private LabelAlign labelAlign;
 
@@ -51,22 +56,42 @@ public class PDPrintStyle {
         }
     }
 
+    public float getLineWidth() {
+        return lineWidth;
+    }
+
     public void setLineWidth(float lineWidth) {
         this.lineWidth = lineWidth;
     }
 
+    public LineJoin getLineJoin() {
+        return lineJoin;
+    }
+
     public void setLineJoin(LineJoin lineJoin) {
         this.lineJoin = lineJoin;
     }
 
+    public LineCap getLineCap() {
+        return lineCap;
+    }
+
     public void setLineCap(LineCap lineCap) {
         this.lineCap = lineCap;
     }
 
+    public LinePattern getLinePattern() {
+        return linePattern;
+    }
+
     public void setLinePattern(LinePattern linePattern) {
         this.linePattern = linePattern;
     }
 
+    public PDColor getStrokeColor() {
+        return strokeColor;
+    }
+
     public void setStrokeColor(PDColor strokeColor) {
         this.strokeColor = strokeColor;
     }
@@ -75,6 +100,10 @@ public class PDPrintStyle {
         setStrokeColor(toRGBColor(strokeColor));
     }
 
+    public PDColor getFillColor() {
+        return fillColor;
+    }
+
     public void setFillColor(PDColor fillColor) {
         this.fillColor = fillColor;
     }
@@ -91,6 +120,48 @@ public class PDPrintStyle {
         this.icon = icon;
     }
 
+    public int getFillPattern() {
+        return fillPattern;
+    }
+
+    public Color getFillPatternColor() {
+        return fillPatternColor;
+    }
+
+    public void setFillPattern(int fillPattern, Color color) {
+        this.fillPattern = fillPattern;
+        this.fillPatternColor = color;
+    }
+
+    public boolean hasFillPattern() {
+        return fillPattern >= 0 && fillPatternColor != null;
+    }
+
+    public int getMarkerShape() {
+        return markerShape;
+    }
+
+    public String getMarkerColor() {
+        return markerColor;
+    }
+
+    public int getMarkerSize() {
+        return markerSize;
+    }
+
+    /**
+     * Marker definition the icon was (or can be) created from
+     */
+    public void setMarker(int shape, String color, int size) {
+        this.markerShape = shape;
+        this.markerColor = color;
+        this.markerSize = size;
+    }
+
+    public boolean hasMarker() {
+        return markerShape >= 0 && markerColor != null;
+    }
+
     public List<String> getLabelProperty() {
         return labelProperty;
     }
@@ -200,6 +200,38 @@ public class PrintRequest {
         };
     }
     
+    /**
+     * Returns a request for a horizontal strip of the map
+     * @param y first row of the strip, counted from the top of the map
+     * @param stripHeight number of rows in the strip
+     */
+    public PrintRequest getStrip(int y, int stripHeight) {
+        PrintRequest strip = new PrintRequest();
+        strip.user = user;
+        strip.east = east;
+        strip.srsName = srsName;
+        strip.crs = crs;
+        strip.resolution = resolution;
+        strip.width = width;
+        strip.format = format;
+        strip.showLogo = showLogo;
+        strip.showScale = showScale;
+        strip.showDate = showDate;
+        strip.showTimeSeriesTime = showTimeSeriesTime;
+        strip.title = title;
+        strip.layers = layers;
+        strip.markers = markers;
+        strip.scaleText = scaleText;
+        strip.time = time;
+        strip.formattedTime = formattedTime;
+        strip.timeseriesLabel = timeseriesLabel;
+
+        double top = north + height * resolution * 0.5;
+        strip.north = top - (y + stripHeight * 0.5) * resolution;
+        strip.height = stripHeight;
+        return strip;
+    }
+
     public String getTime() {
         return time;
     }
@@ -0,0 +1,221 @@
+package org.oskari.print.util;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.json.JSONObject;
+import org.oskari.print.request.PrintLayer;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Creates PDF image objects for map layer images.
+ *
+ * Opaque images of layers that are configured to be printed as JPEG (layer attribute "printFormat": "image/jpeg"
+ * or property "print.image.jpeg.opaque=true" for all layers) are embedded with DCT compression which is
+ * both faster to encode and a lot smaller for photographic content like orthophotos. Everything else is
+ * embedded losslessly. The deflate level for lossless images can be configured with "print.image.deflate.level"
+ * (0-9) to trade file size for encoding speed: with the level set the Flate streams are written here with
+ * a Deflater of that level instead of LosslessFactory which always uses the PDFBox default. The streams written
+ * here don't use PNG predictors so continuous-tone images that need them to compress well are still left to
+ * LosslessFactory which writes them with /DecodeParms /Predictor 15.
+ */
+public class ImageXObjectFactory {
+
+    private static final Logger LOG = LogFactory.getLogger(ImageXObjectFactory.class);
+
+    public static final String FORMAT_JPEG = "image/jpeg";
+    private static final String ATTR_PRINT_FORMAT = "printFormat";
+
+    private static final boolean JPEG_FOR_OPAQUE = PropertyUtil.getOptional("print.image.jpeg.opaque", false);
+    private static final float JPEG_QUALITY = (float) PropertyUtil.getOptional("print.image.jpeg.quality", 0.85);
+
+    // -1 to use LosslessFactory
+    private static final int DEFLATE_LEVEL = getDeflateLevel(PropertyUtil.getOptional("print.image.deflate.level", -1));
+    // rows deflated to check if plain Flate is good enough for an image
+    private static final int SAMPLE_ROWS = 16;
+    private static final double MAX_SAMPLE_RATIO = 0.5;
+
+    private ImageXObjectFactory() {}
+
+    public static PDImageXObject createFromImage(PDDocument doc, PrintLayer layer, BufferedImage bi) throws IOException {
+        if (isJPEGPreferred(layer) && isOpaque(bi)) {
+            LOG.debug("Embedding layer", layer.getName(), "as JPEG");
+            return JPEGFactory.createFromImage(doc, toRGB(bi), JPEG_QUALITY);
+        }
+        if (DEFLATE_LEVEL < 0 || needsPredictor(bi)) {
+            return LosslessFactory.createFromImage(doc, bi);
+        }
+        return createFlate(doc, bi, DEFLATE_LEVEL);
+    }
+
+    /**
+     * Deflates a few rows from the middle of the image without a predictor. Photographic content
+     * compresses poorly that way and is a lot smaller with the PNG predictors PDFBox uses.
+     * @return true if the sample didn't compress to half of its size
+     */
+    static boolean needsPredictor(BufferedImage bi) {
+        final int w = bi.getWidth();
+        final int rows = Math.min(SAMPLE_ROWS, bi.getHeight());
+        final int top = (bi.getHeight() - rows) / 2;
+        final byte[] sample = new byte[w * rows * 3];
+        final int[] argb = new int[w];
+        int i = 0;
+        for (int y = top; y < top + rows; y++) {
+            bi.getRGB(0, y, w, 1, argb, 0, w);
+            for (int px : argb) {
+                sample[i++] = (byte) (px >> 16);
+                sample[i++] = (byte) (px >> 8);
+                sample[i++] = (byte) px;
+            }
+        }
+        final long limit = (long) (sample.length * MAX_SAMPLE_RATIO);
+        // the content decides this, not the configured level
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            final byte[] buf = new byte[8192];
+            long compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(buf);
+                if (compressed > limit) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int getDeflateLevel(int level) {
+        if (level < -1 || level > 9) {
+            LOG.warn("Invalid print.image.deflate.level:", level, "- using default");
+            return -1;
+        }
+        return level;
+    }
+
+    /**
+     * Writes the image as 8 bit RGB with an optional 8 bit alpha soft mask, both compressed with
+     * a Deflater of given level
+     */
+    static PDImageXObject createFlate(PDDocument doc, BufferedImage bi, int level) throws IOException {
+        final int w = bi.getWidth();
+        final int h = bi.getHeight();
+        final boolean hasAlpha = !isOpaque(bi);
+        final ByteArrayOutputStream rgb = new ByteArrayOutputStream(w * h);
+        final ByteArrayOutputStream alpha = new ByteArrayOutputStream(hasAlpha ? w * h / 4 : 0);
+        final Deflater deflater = new Deflater(level);
+        try {
+            try (DeflaterOutputStream rgbOut = new DeflaterOutputStream(rgb, deflater)) {
+                final int[] argb = new int[w];
+                final byte[] rgbRow = new byte[w * 3];
+                final byte[] alphaRow = new byte[w];
+                for (int y = 0; y < h; y++) {
+                    bi.getRGB(0, y, w, 1, argb, 0, w);
+                    for (int x = 0; x < w; x++) {
+                        int px = argb[x];
+                        rgbRow[x * 3] = (byte) (px >> 16);
+                        rgbRow[x * 3 + 1] = (byte) (px >> 8);
+                        rgbRow[x * 3 + 2] = (byte) px;
+                        alphaRow[x] = (byte) (px >>> 24);
+                    }
+                    rgbOut.write(rgbRow);
+                    if (hasAlpha) {
+                        alpha.write(alphaRow);
+                    }
+                }
+            }
+            PDImageXObject image = new PDImageXObject(doc, new ByteArrayInputStream(rgb.toByteArray()),
+                    COSName.FLATE_DECODE, w, h, 8, PDDeviceRGB.INSTANCE);
+            if (hasAlpha) {
+                deflater.reset();
+                final ByteArrayOutputStream mask = new ByteArrayOutputStream(w * h / 4);
+                try (DeflaterOutputStream maskOut = new DeflaterOutputStream(mask, deflater)) {
+                    alpha.writeTo(maskOut);
+                }
+                PDImageXObject smask = new PDImageXObject(doc, new ByteArrayInputStream(mask.toByteArray()),
+                        COSName.FLATE_DECODE, w, h, 8, PDDeviceGray.INSTANCE);
+                image.getCOSObject().setItem(COSName.SMASK, smask);
+            }
+            return image;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static boolean isJPEGPreferred(PrintLayer layer) {
+        if (JPEG_FOR_OPAQUE) {
+            return true;
+        }
+        if (layer.getOskariLayer() == null) {
+            return false;
+        }
+        JSONObject attributes = layer.getOskariLayer().getAttributes();
+        return attributes != null && FORMAT_JPEG.equals(attributes.optString(ATTR_PRINT_FORMAT));
+    }
+
+    /**
+     * @return true if every pixel of the image is fully opaque
+     */
+    public static boolean isOpaque(BufferedImage bi) {
+        if (!bi.getColorModel().hasAlpha()) {
+            return true;
+        }
+        if (bi.getType() == BufferedImage.TYPE_INT_ARGB
+                && bi.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            // fast path for images we compose ourselves
+            for (int px : ((DataBufferInt) bi.getRaster().getDataBuffer()).getData()) {
+                if ((px >>> 24) != 0xFF) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        WritableRaster alpha = bi.getAlphaRaster();
+        if (alpha == null) {
+            return true;
+        }
+        int w = alpha.getWidth();
+        int[] row = new int[w];
+        for (int y = 0; y < alpha.getHeight(); y++) {
+            alpha.getSamples(0, y, w, 1, 0, row);
+            for (int a : row) {
+                if (a != 0xFF) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static BufferedImage toRGB(BufferedImage bi) {
+        if (bi.getType() == BufferedImage.TYPE_INT_RGB) {
+            return bi;
+        }
+        BufferedImage rgb = new BufferedImage(bi.getWidth(), bi.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = rgb.createGraphics();
+        g2d.drawImage(bi, 0, 0, null);
+        g2d.dispose();
+        return rgb;
+    }
+
+}
@@ -0,0 +1,178 @@
+package org.oskari.print.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a 8-bit RGBA PNG one horizontal strip at a time so the whole image
+ * never needs to be in memory. Strips are written from top to bottom and
+ * must have the width of the image.
+ */
+public class PNGStripWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int FILTER_SUB = 1;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream idat;
+    private final byte[] row;
+    private final int[] argb;
+    private int rowsWritten;
+    private boolean closed;
+
+    public PNGStripWriter(OutputStream out, int width, int height) throws IOException {
+        this(out, width, height, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public PNGStripWriter(OutputStream out, int width, int height, int compressionLevel) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+        }
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.deflater = new Deflater(compressionLevel);
+        this.idat = new DeflaterOutputStream(new ChunkOutputStream(), deflater, MAX_CHUNK_SIZE);
+        this.row = new byte[1 + width * BYTES_PER_PIXEL];
+        this.argb = new int[width];
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        out.write(SIGNATURE);
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream(13);
+        DataOutputStream data = new DataOutputStream(ihdr);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8); // bit depth
+        data.writeByte(6); // color type RGBA
+        data.writeByte(0); // compression
+        data.writeByte(0); // filter
+        data.writeByte(0); // interlace
+        writeChunk("IHDR", ihdr.toByteArray(), ihdr.size());
+    }
+
+    /**
+     * Writes the rows of the next strip
+     */
+    public void write(BufferedImage strip) throws IOException {
+        if (strip.getWidth() != width) {
+            throw new IOException("Strip width " + strip.getWidth() + " doesn't match image width " + width);
+        }
+        if (rowsWritten + strip.getHeight() > height) {
+            throw new IOException("Too many rows, image height is " + height);
+        }
+        for (int y = 0; y < strip.getHeight(); y++) {
+            strip.getRGB(0, y, width, 1, argb, 0, width);
+            row[0] = FILTER_SUB;
+            int prevR = 0, prevG = 0, prevB = 0, prevA = 0;
+            for (int x = 0, i = 1; x < width; x++) {
+                int px = argb[x];
+                int r = (px >> 16) & 0xFF;
+                int g = (px >> 8) & 0xFF;
+                int b = px & 0xFF;
+                int a = (px >>> 24);
+                row[i++] = (byte) (r - prevR);
+                row[i++] = (byte) (g - prevG);
+                row[i++] = (byte) (b - prevB);
+                row[i++] = (byte) (a - prevA);
+                prevR = r;
+                prevG = g;
+                prevB = b;
+                prevA = a;
+            }
+            idat.write(row);
+        }
+        rowsWritten += strip.getHeight();
+    }
+
+    /**
+     * Finishes the image. Doesn't close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("Wrote " + rowsWritten + " rows, expected " + height);
+            }
+            idat.close();
+            writeChunk("IEND", new byte[0], 0);
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int len) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, len);
+        out.writeInt(len);
+        out.write(typeBytes);
+        out.write(data, 0, len);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Splits compressed data to IDAT chunks
+     */
+    private class ChunkOutputStream extends OutputStream {
+
+        private final byte[] buf = new byte[MAX_CHUNK_SIZE];
+        private int len;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (len == buf.length) {
+                flush();
+            }
+            buf[len++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int n) throws IOException {
+            while (n > 0) {
+                if (len == buf.length) {
+                    flush();
+                }
+                int copy = Math.min(n, buf.length - len);
+                System.arraycopy(b, off, buf, len, copy);
+                len += copy;
+                off += copy;
+                n -= copy;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (len > 0) {
+                writeChunk("IDAT", buf, len);
+                len = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+}
@@ -1,18 +1,29 @@
 package org.oskari.print.util;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.TexturePaint;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.batik.transcoder.TranscoderException;
 import org.apache.batik.transcoder.TranscoderInput;
 import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
 import org.apache.fop.svg.PDFTranscoder;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.multipdf.LayerUtility;
@@ -44,6 +55,7 @@ public class StyleUtil {
     private static final String ICON_STROKE_COLOR = "#b4b4b4";
     private static final float ICON_SIZE = 32f;
     private static final double ICON_OFFSET = ICON_SIZE/2.0;
+    private static final int FILL_PATTERN_SIZE = 64;
 
     public static final Map<String, PDPrintStyle.LabelAlign> LABEL_ALIGN_MAP = new HashMap<String, PDPrintStyle.LabelAlign>() {{
         put("markers", new PDPrintStyle.LabelAlign("left", 12f, 8f));
@@ -118,7 +130,9 @@ public class StyleUtil {
         JSONObject fillArea = fill.optJSONObject("area");
         int pattern = fillArea != null ? fillArea.optInt("pattern", -1) : -1;
         if (pattern >= 0 && pattern <= 3) {
-            style.setFillColor(createFillPattern(resources, pattern, color));
+            style.setFillPattern(pattern, color);
+            // resources are only available when drawing to PDF
+            style.setFillColor(resources != null ? createFillPattern(resources, pattern, color) : null);
         } else {
             style.setFillColor(color);
         }
@@ -139,7 +153,10 @@ public class StyleUtil {
 
         int shape = image.optInt("shape", 5); // External icons not supported
         int size = image.optInt("size", 3);
-        style.setIcon(getIcon(doc, shape, color, size));
+        style.setMarker(shape, color, size);
+        if (doc != null) {
+            style.setIcon(getIcon(doc, shape, color, size));
+        }
     }
 
     private static void setLabelStyle (PDPrintStyle style, JSONObject oskariStyle) {
@@ -163,7 +180,7 @@ public class StyleUtil {
             JSONObject marker = getMarker(shape);
             return createIcon(doc, marker, fillColor, size);
         } catch (Exception e) {
-            throw new IOException ("Failed to create marker icon: " + shape);
+            throw new IOException ("Failed to create marker icon: " + shape, e);
         }
     }
 
@@ -182,8 +199,8 @@ public class StyleUtil {
     }
 
     private static PDFormXObject createIcon (PDDocument doc, JSONObject marker, String fillColor, int size) throws JSONException, IOException, TranscoderException {
-        String markerData = JSONHelper.getString(marker, "data").replace("$fill", fillColor).replace("$stroke", ICON_STROKE_COLOR);
-        double scale = size < 1 || size > 5 ? 1 : 0.6 +  size /10.0;
+        String markerData = getMarkerData(marker, fillColor);
+        double scale = getMarkerScale(size);
         double x =  marker.optDouble("offsetX", ICON_OFFSET) * scale;
         double y = marker.optDouble("offsetY", ICON_OFFSET) * scale;
 
@@ -206,43 +223,156 @@ public class StyleUtil {
         }
     }
 
+    /**
+     * Rasterizes the marker for drawing with Java2D. The image is sized and offset
+     * like the PDF icon would be when rendered with pxPerPt pixels per PDF point.
+     */
+    public static MarkerImage getMarkerImage(int shape, String fillColor, int size, double pxPerPt) throws IOException {
+        try {
+            JSONObject marker = getMarker(shape);
+            double scale = getMarkerScale(size);
+            double x = marker.optDouble("offsetX", ICON_OFFSET) * scale;
+            double y = marker.optDouble("offsetY", ICON_OFFSET) * scale;
+            double height = ICON_SIZE * scale;
+
+            BufferedImageTranscoder transcoder = new BufferedImageTranscoder();
+            transcoder.addTranscodingHint(ImageTranscoder.KEY_HEIGHT, (float) (height * pxPerPt));
+            TranscoderInput in = new TranscoderInput(new ByteArrayInputStream(getMarkerData(marker, fillColor).getBytes()));
+            transcoder.transcode(in, new TranscoderOutput());
+            // PDF offsets are from the bottom left corner of the icon, Java2D draws from top left
+            return new MarkerImage(transcoder.image, -x * pxPerPt, -(height - y) * pxPerPt);
+        } catch (Exception e) {
+            throw new IOException ("Failed to create marker icon: " + shape, e);
+        }
+    }
+
+    private static String getMarkerData(JSONObject marker, String fillColor) throws JSONException {
+        return JSONHelper.getString(marker, "data").replace("$fill", fillColor).replace("$stroke", ICON_STROKE_COLOR);
+    }
+
+    private static double getMarkerScale(int size) {
+        return size < 1 || size > 5 ? 1 : 0.6 +  size /10.0;
+    }
+
+    /**
+     * Creates a Java2D paint matching the PDF tiling pattern created by createFillPattern()
+     * @param pxPerPt pixels per PDF point
+     * @param height height of the image in pixels, the PDF pattern starts from bottom left corner
+     */
+    public static Paint createFillPaint(int fillPattern, Color fillColor, double pxPerPt, int height) {
+        double tileSize = FILL_PATTERN_SIZE * pxPerPt;
+        int tilePx = Math.max(1, (int) Math.round(tileSize));
+        BufferedImage tile = new BufferedImage(tilePx, tilePx, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = tile.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            // Draw in PDF pattern space (y-axis up)
+            g2d.translate(0, tilePx);
+            g2d.scale((double) tilePx / FILL_PATTERN_SIZE, -(double) tilePx / FILL_PATTERN_SIZE);
+            g2d.setColor(fillColor);
+            g2d.setStroke(new BasicStroke(getFillPatternLineWidth(fillPattern), BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER));
+            for (float[] line : getFillPatternLines(fillPattern)) {
+                g2d.draw(new Line2D.Float(line[0], line[1], line[2], line[3]));
+            }
+        } finally {
+            g2d.dispose();
+        }
+        return new TexturePaint(tile, new Rectangle2D.Double(0, height - tileSize, tileSize, tileSize));
+    }
+
+    private static float getFillPatternLineWidth(int fillPattern) {
+        // thin 1 thick 2.5
+        return fillPattern == 0 || fillPattern == 2 ? 1.0f : 2.5f;
+    }
+
+    /**
+     * @return lines as { x0, y0, x1, y1 } in pattern space
+     */
+    private static List<float[]> getFillPatternLines(int fillPattern) {
+        int size = FILL_PATTERN_SIZE;
+        float lineWidth = getFillPatternLineWidth(fillPattern);
+        boolean isHorizontal = fillPattern == 2 || fillPattern == 3;
+        float numberOfStripes = 9;
+        if (lineWidth > 2) {
+            numberOfStripes = isHorizontal ? 8 : 6;
+        }
+        float bandWidth = size / numberOfStripes;
+        // diagonal line + 2 more diagonals so that corners look good
+        float limit = isHorizontal ? numberOfStripes : numberOfStripes * 2;
+        List<float[]> lines = new ArrayList<>();
+        for (int i = 0 ; i < limit; i ++) {
+            float transition = i * bandWidth+ bandWidth/2;
+            if (isHorizontal)  {
+                lines.add(new float[] { 0, transition, size, transition });
+            } else {
+                lines.add(new float[] { 0, size - transition, transition, size });
+            }
+        }
+        return lines;
+    }
+
     private static PDColor createFillPattern(PDResources resources, int fillPattern, Color fillColor) throws IOException {
         PDPattern pattern = new PDPattern(null, PDDeviceRGB.INSTANCE);
         PDTilingPattern tilingPattern = new PDTilingPattern();
-        int size = 64;
+        int size = FILL_PATTERN_SIZE;
         tilingPattern.setBBox(new PDRectangle(size,size));
         tilingPattern.setPaintType(PDTilingPattern.PAINT_COLORED);
         tilingPattern.setTilingType(PDTilingPattern.TILING_CONSTANT_SPACING);
         tilingPattern.setXStep(size);
         tilingPattern.setYStep(size);
         COSName patternName = resources.add(tilingPattern);
-        // thin 1 thick 2.5
-        float lineWidth = fillPattern == 0 || fillPattern == 2 ? 1.0f : 2.5f;
-        boolean isHorizontal = fillPattern == 2 || fillPattern == 3;
-        float numberOfStripes = 9;
-        if (lineWidth > 2) {
-            numberOfStripes = isHorizontal ? 8 : 6;
-        }
-        float bandWidth = size / numberOfStripes;
         try (PDPatternContentStream pcs = new PDPatternContentStream(tilingPattern))
         {
-            // Set color, draw diagonal line + 2 more diagonals so that corners look good
             pcs.setStrokingColor(fillColor);
-            pcs.setLineWidth(lineWidth);
+            pcs.setLineWidth(getFillPatternLineWidth(fillPattern));
             pcs.setLineCapStyle(LineCap.square.code);
-            float limit = isHorizontal ? numberOfStripes : numberOfStripes * 2;
-            for (int i = 0 ; i < limit; i ++) {
-                float transition = i * bandWidth+ bandWidth/2;
-                if (isHorizontal)  {
-                    pcs.moveTo(0, transition);
-                    pcs.lineTo(size, transition );
-                } else {
-                    pcs.moveTo(0, size - transition);
-                    pcs.lineTo(transition, size);
-                }
+            for (float[] line : getFillPatternLines(fillPattern)) {
+                pcs.moveTo(line[0], line[1]);
+                pcs.lineTo(line[2], line[3]);
                 pcs.stroke();
             }
         }
         return new PDColor(patternName, pattern);
     }
+
+    public static class MarkerImage {
+        private final BufferedImage image;
+        private final double offsetX;
+        private final double offsetY;
+
+        MarkerImage(BufferedImage image, double offsetX, double offsetY) {
+            this.image = image;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        /**
+         * @return offset in pixels from the point to the top left corner of the image
+         */
+        public double getOffsetX() {
+            return offsetX;
+        }
+
+        public double getOffsetY() {
+            return offsetY;
+        }
+    }
+
+    private static class BufferedImageTranscoder extends ImageTranscoder {
+        private BufferedImage image;
+
+        @Override
+        public BufferedImage createImage(int width, int height) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        @Override
+        public void writeImage(BufferedImage img, TranscoderOutput output) {
+            this.image = img;
+        }
+    }
 }
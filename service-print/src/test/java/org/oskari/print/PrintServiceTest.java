@@ -11,6 +11,7 @@ import javax.imageio.ImageIO;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -257,4 +258,27 @@ public class PrintServiceTest {
         Desktop.getDesktop().open(file);
     }
 
+    @Test
+    public void testStripWithGutter() {
+        PrintRequest request = new PrintRequest();
+        request.setNorth(10000);
+        request.setResolution(2);
+        request.setWidth(100);
+        request.setHeight(PrintService.STRIP_HEIGHT * 2 + 100);
+
+        // last strip is 100 rows
+        PrintRequest strip = PrintService.getStripWithGutter(request, PrintService.STRIP_HEIGHT * 2);
+        Assert.assertEquals(100 + 2 * PrintService.STRIP_GUTTER, strip.getHeight());
+        double top = 10000 + request.getHeight();
+        Assert.assertEquals(top - (PrintService.STRIP_HEIGHT * 2 + 50) * 2, strip.getNorth(), 1e-9);
+
+        BufferedImage image = new BufferedImage(10, strip.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, PrintService.STRIP_GUTTER, 0xFF112233);
+        image.setRGB(0, PrintService.STRIP_GUTTER + 99, 0xFF445566);
+        BufferedImage cropped = PrintService.cropGutter(image);
+        Assert.assertEquals(100, cropped.getHeight());
+        Assert.assertEquals(0xFF112233, cropped.getRGB(0, 0));
+        Assert.assertEquals(0xFF445566, cropped.getRGB(0, 99));
+    }
+
 }
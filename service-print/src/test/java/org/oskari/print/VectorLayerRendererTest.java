@@ -0,0 +1,151 @@
+package org.oskari.print;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.util.AffineTransformation;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.oskari.print.request.PrintLayer;
+
+public class VectorLayerRendererTest {
+
+    private static final double[] BBOX = { 0, 0, 1000, 1000 };
+    private static final int SIZE = 512;
+
+    @Test
+    public void testMatchesPDFRendering() throws Exception {
+        PrintLayer layer = getLayer();
+        Future<SimpleFeatureCollection> fc = CompletableFuture.completedFuture(getPolygons(200));
+
+        BufferedImage expected = getPDFVectorLayerImage(layer, fc, BBOX, SIZE, SIZE);
+        BufferedImage actual = VectorLayerRenderer.getVectorLayerImage(layer, fc, BBOX, SIZE, SIZE);
+
+        Assert.assertEquals(expected.getWidth(), actual.getWidth());
+        Assert.assertEquals(expected.getHeight(), actual.getHeight());
+        // Anti-aliasing differs a bit on the edges
+        int differing = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                if (maxChannelDiff(expected.getRGB(x, y), actual.getRGB(x, y)) > 32) {
+                    differing++;
+                }
+            }
+        }
+        Assert.assertTrue("Too many differing pixels: " + differing, differing < SIZE * SIZE / 50);
+    }
+
+    @Test
+    @Ignore("Benchmark, run manually")
+    public void benchmark() throws Exception {
+        PrintLayer layer = getLayer();
+        Future<SimpleFeatureCollection> fc = CompletableFuture.completedFuture(getPolygons(5000));
+        int n = 20;
+        for (int i = 0; i < 5; i++) {
+            getPDFVectorLayerImage(layer, fc, BBOX, SIZE, SIZE);
+            VectorLayerRenderer.getVectorLayerImage(layer, fc, BBOX, SIZE, SIZE);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            getPDFVectorLayerImage(layer, fc, BBOX, SIZE, SIZE);
+        }
+        long pdf = (System.nanoTime() - start) / n / 1000000;
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            VectorLayerRenderer.getVectorLayerImage(layer, fc, BBOX, SIZE, SIZE);
+        }
+        long java2d = (System.nanoTime() - start) / n / 1000000;
+        System.out.println("5000 polygons, PDF: " + pdf + " ms, Java2D: " + java2d + " ms");
+    }
+
+    /**
+     * The way vector layers were rendered for PNG before VectorLayerRenderer: draw the layer
+     * to a single page PDF document and rasterize it
+     */
+    private static BufferedImage getPDFVectorLayerImage(PrintLayer layer, Future<SimpleFeatureCollection> ffc,
+            double[] bbox, int w, int h) throws IOException {
+        float mapWidth = PDF.pixelsToPoints(w);
+        float mapHeight = PDF.pixelsToPoints(h);
+        PDPage page = new PDPage(new PDRectangle(mapWidth, mapHeight));
+
+        try (PDDocument doc = new PDDocument()) {
+            doc.addPage(page);
+            try (PDPageContentStream stream = new PDPageContentStream(doc, page, AppendMode.APPEND, false)) {
+                AffineTransformation transformation = PDF.getTransform(bbox, mapWidth, mapHeight);
+                PDF.drawVectorLayer(doc, stream, layer, ffc, transformation, 0, 0, mapWidth, mapHeight);
+            }
+            PDFRenderer renderer = new PDFRenderer(doc);
+            float scale = h / mapHeight;
+            return renderer.renderImage(0, scale, ImageType.ARGB);
+        }
+    }
+
+    private static int maxChannelDiff(int a, int b) {
+        int max = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int diff = Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF));
+            max = Math.max(max, diff);
+        }
+        return max;
+    }
+
+    private static PrintLayer getLayer() {
+        PrintLayer layer = new PrintLayer(1);
+        layer.setOpacity(80);
+        layer.setCustomStyle(new JSONObject("{"
+                + "\"fill\": { \"color\": \"#3388ff\" },"
+                + "\"stroke\": { \"area\": { \"color\": \"#000000\", \"width\": 2 } }"
+                + "}"));
+        return layer;
+    }
+
+    private static SimpleFeatureCollection getPolygons(int count) {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("polygons");
+        typeBuilder.add("geom", Polygon.class);
+        SimpleFeatureType type = typeBuilder.buildFeatureType();
+
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        List<SimpleFeature> features = new ArrayList<>(count);
+        Random random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble() * 950;
+            double y = random.nextDouble() * 950;
+            double r = 5 + random.nextDouble() * 20;
+            Coordinate[] ring = new Coordinate[7];
+            for (int j = 0; j < 6; j++) {
+                double a = Math.PI * j / 3;
+                ring[j] = new Coordinate(x + r * Math.cos(a), y + r * Math.sin(a));
+            }
+            ring[6] = ring[0];
+            builder.add(gf.createPolygon(ring));
+            features.add(builder.buildFeature(Integer.toString(i)));
+        }
+        return new ListFeatureCollection(type, features);
+    }
+
+}
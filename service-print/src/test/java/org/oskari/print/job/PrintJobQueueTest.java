@@ -0,0 +1,144 @@
+package org.oskari.print.job;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oskari.print.PrintService;
+import org.oskari.print.request.PrintFormat;
+import org.oskari.print.request.PrintLayer;
+import org.oskari.print.request.PrintRequest;
+
+import fi.nls.oskari.service.ServiceException;
+
+public class PrintJobQueueTest {
+
+    @Test
+    public void testEstimateMemory() {
+        PrintRequest request = getRequest(1000, 1000);
+        // 1000x1000 ARGB = ~3.8MB per image, one layer + canvas + result
+        Assert.assertEquals(12, PrintJobQueue.estimateMemory(request));
+
+        request.setTargetWidth(2000);
+        request.setTargetHeight(2000);
+        Assert.assertEquals(46, PrintJobQueue.estimateMemory(request));
+    }
+
+    @Test
+    public void testEstimateMemoryStrips() {
+        // large maps are rendered in strips so only the strip height counts
+        PrintRequest request = getRequest(1000, 100 * PrintService.STRIP_HEIGHT);
+        Assert.assertEquals(PrintJobQueue.estimateMemory(getRequest(1000, PrintService.STRIP_HEIGHT)),
+                PrintJobQueue.estimateMemory(request));
+    }
+
+    @Test(expected = ServiceException.class)
+    public void testRejectTooLarge() throws ServiceException {
+        PrintJobQueue queue = new PrintJobQueue(null, 1, 1, 10, Paths.get("target", "print"), 1000);
+        queue.submit(getRequest(2000, 2000), "owner");
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PrintJobQueue queue = new PrintJobQueue(blockingService(release), 1, 1, 1000, Paths.get("target", "print"), 1000);
+        try {
+            queue.submit(getRequest(100, 100), "owner");
+            queue.submit(getRequest(100, 100), "owner");
+            queue.submit(getRequest(100, 100), "owner");
+            Assert.fail("Should have been rejected");
+        } catch (PrintQueueFullException expected) {
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testRemoveCancelsQueuedJob() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PrintJobQueue queue = new PrintJobQueue(blockingService(release), 1, 1, 1000, Paths.get("target", "print"), 1000);
+        PrintJob running = queue.submit(getRequest(100, 100), "owner");
+        PrintJob queued = queue.submit(getRequest(100, 100), "owner");
+        queue.remove(queued);
+        Assert.assertEquals("Cancelled job should free its slot", 0, queue.getQueueLength());
+        release.countDown();
+        Assert.assertNotNull(running.await(1000));
+        queue.remove(running);
+    }
+
+    @Test
+    public void testRemoveDeletesFileOfCancelledJob() throws Exception {
+        Path dir = Paths.get("target", "print-cancel");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PrintService service = new PrintService(null, null) {
+            @Override
+            public void writePNG(PrintRequest request, OutputStream out) throws IOException {
+                started.countDown();
+                // ignores interrupts like blocking IO does
+                while (release.getCount() > 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                out.write(1);
+            }
+        };
+        PrintJobQueue queue = new PrintJobQueue(service, 1, 1, 1000, dir, 1000);
+        PrintJob job = queue.submit(getRequest(100, 100), "owner");
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+        queue.remove(job);
+        release.countDown();
+        try {
+            job.await(1000);
+            Assert.fail("Removed job shouldn't complete");
+        } catch (ServiceException expected) {
+        }
+        Assert.assertFalse("Result of removed job should be deleted",
+                Files.exists(dir.resolve(job.getId() + "." + PrintFormat.PNG.fileExtension)));
+    }
+
+    @Test
+    public void testJobOwner() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PrintJobQueue queue = new PrintJobQueue(blockingService(release), 1, 1, 1000, Paths.get("target", "print"), 1000);
+        PrintJob job = queue.submit(getRequest(100, 100), "session:a");
+        Assert.assertTrue(job.isOwnedBy("session:a"));
+        Assert.assertFalse("Other guests shouldn't see the job", job.isOwnedBy("session:b"));
+        Assert.assertFalse(job.isOwnedBy(null));
+        release.countDown();
+        queue.remove(job);
+    }
+
+    private static PrintService blockingService(CountDownLatch release) {
+        return new PrintService(null, null) {
+            @Override
+            public void writePNG(PrintRequest request, OutputStream out) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted", e);
+                }
+                out.write(1);
+            }
+        };
+    }
+
+    private static PrintRequest getRequest(int width, int height) {
+        PrintRequest request = new PrintRequest();
+        request.setFormat(PrintFormat.PNG);
+        request.setWidth(width);
+        request.setHeight(height);
+        request.setLayers(Collections.singletonList(new PrintLayer(0)));
+        return request;
+    }
+
+}
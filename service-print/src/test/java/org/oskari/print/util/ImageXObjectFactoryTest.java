@@ -0,0 +1,82 @@
+package org.oskari.print.util;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.Assert;
+import org.junit.Test;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+
+public class ImageXObjectFactoryTest {
+    @Test
+    public void testIsOpaque() {
+        BufferedImage rgb = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        Assert.assertTrue(ImageXObjectFactory.isOpaque(rgb));
+
+        BufferedImage argb = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        Assert.assertFalse(ImageXObjectFactory.isOpaque(argb));
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                argb.setRGB(x, y, 0xFF336699);
+            }
+        }
+        Assert.assertTrue(ImageXObjectFactory.isOpaque(argb));
+        argb.setRGB(3, 3, 0xFE336699);
+        Assert.assertFalse(ImageXObjectFactory.isOpaque(argb));
+    }
+    @Test
+    public void testIsOpaqueAlphaRaster() {
+        BufferedImage abgr = new BufferedImage(4, 4, BufferedImage.TYPE_4BYTE_ABGR);
+        Assert.assertFalse(ImageXObjectFactory.isOpaque(abgr));
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                abgr.setRGB(x, y, 0xFF000000);
+            }
+        }
+        Assert.assertTrue(ImageXObjectFactory.isOpaque(abgr));
+    }
+    @Test
+    public void testCreateFlate() throws Exception {
+        BufferedImage argb = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        argb.setRGB(1, 1, 0xFF336699);
+        try (PDDocument doc = new PDDocument()) {
+            PDImageXObject image = ImageXObjectFactory.createFlate(doc, argb, 1);
+            Assert.assertEquals(4, image.getWidth());
+            Assert.assertNotNull("Transparent image should have a soft mask", image.getSoftMask());
+            BufferedImage decoded = image.getImage();
+            Assert.assertEquals(0xFF336699, decoded.getRGB(1, 1));
+            Assert.assertEquals(0, decoded.getRGB(0, 0) >>> 24);
+
+            BufferedImage rgb = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+            rgb.setRGB(2, 2, 0x336699);
+            image = ImageXObjectFactory.createFlate(doc, rgb, 9);
+            Assert.assertNull("Opaque image shouldn't have a soft mask", image.getSoftMask());
+            Assert.assertEquals(0xFF336699, image.getImage().getRGB(2, 2));
+        }
+    }
+    @Test
+    public void testNeedsPredictor() {
+        BufferedImage flat = new BufferedImage(256, 64, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 256; x++) {
+                // map like content: areas of a few colors
+                flat.setRGB(x, y, x < 128 ? 0xFF336699 : 0xFFEEEEEE);
+            }
+        }
+        Assert.assertFalse(ImageXObjectFactory.needsPredictor(flat));
+
+        BufferedImage photo = new BufferedImage(256, 64, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 256; x++) {
+                // smooth gradient with noise like in aerial images
+                int v = Math.min(255, x / 2 + y + random.nextInt(32));
+                photo.setRGB(x, y, (v << 16) | ((255 - v) << 8) | random.nextInt(256));
+            }
+        }
+        Assert.assertTrue(ImageXObjectFactory.needsPredictor(photo));
+
+        Assert.assertFalse("Empty image", ImageXObjectFactory.needsPredictor(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB)));
+    }
+}
@@ -0,0 +1,49 @@
+package org.oskari.print.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+
+public class PNGStripWriterTest {
+    @Test
+    public void testWriteStrips() throws IOException {
+        int width = 300;
+        int height = 250;
+        BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                expected.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (PNGStripWriter writer = new PNGStripWriter(baos, width, height)) {
+            for (int y = 0; y < height; y += 100) {
+                writer.write(expected.getSubimage(0, y, width, Math.min(100, height - y)));
+            }
+        }
+
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
+        Assert.assertEquals(width, actual.getWidth());
+        Assert.assertEquals(height, actual.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Assert.assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+    @Test(expected = IOException.class)
+    public void testMissingRows() throws IOException {
+        try (PNGStripWriter writer = new PNGStripWriter(new ByteArrayOutputStream(), 10, 10)) {
+            writer.write(new BufferedImage(10, 5, BufferedImage.TYPE_INT_ARGB));
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package fi.nls.oskari.routing;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
+import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.routing.pojo.*;
-import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.PropertyUtil;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -19,6 +21,9 @@ import java.util.*;
 public class RouteParser {
     private static final Logger LOG = LogFactory.getLogger(RouteParser.class);
 
+    // decoded and reprojected leg geometries, used for both itinerary GeoJSON and leg geometry
+    private final Map<Leg, double[]> legCoordinates = new IdentityHashMap<>();
+
     private static final String PARAM_GEOJSON_FEATURES = "features";
     private static final String PARAM_GEOJSON_TYPE = "type";
     private static final String PARAM_GEOJSON_COORDINATES = "coordinates";
@@ -138,436 +143,448 @@ public class RouteParser {
     private static final String PARAM_LEG_STOP_VERTEXTYPE = "vertexType";
 
     /**
-     * Generate route plan
+     * Write route plan
+     * @param json
      * @param route
      * @param params
-     * @return route plan
+     * @throws IOException
      */
-    public JSONObject generatePlan(Route route, RouteParams params){
-        final JSONObject planJSON = new JSONObject();
+    public void writePlan(JsonGenerator json, Route route, RouteParams params) throws IOException {
         final Plan plan = route.getPlan();
-
-        try{
-            // date
-            planJSON.put(PARAM_DATE, plan.getDate());
-
-            // from
-            planJSON.put(PARAM_FROM, getFromJSON(plan, params));
-
-            // to
-            planJSON.put(PARAM_TO, getToJSON(plan, params));
-
-            // itineraries
-            planJSON.put(PARAM_ITINERARIES, getItinerariesJSON(plan, params));
-
-
-        } catch(JSONException ex){
-            LOG.error("Cannot generate routing plan", ex);
-        }
-
-        return planJSON;
+        json.writeStartObject();
+        writeField(json, PARAM_DATE, plan.getDate());
+        json.writeFieldName(PARAM_FROM);
+        writeFrom(json, plan, params);
+        json.writeFieldName(PARAM_TO);
+        writeTo(json, plan, params);
+        json.writeFieldName(PARAM_ITINERARIES);
+        writeItineraries(json, plan, params);
+        json.writeEndObject();
     }
 
     /**
-     * Get from JSON
+     * Write from JSON
+     * @param json
      * @param plan
      * @param params
-     * @return from JSON
+     * @throws IOException
      */
-    private JSONObject getFromJSON(Plan plan, RouteParams params){
+    private void writeFrom(JsonGenerator json, Plan plan, RouteParams params) throws IOException {
         final From from = plan.getFrom();
-        final JSONObject fromJSON = new JSONObject();
         final String sourceSRS = PropertyUtil.get("routing.srs");
         final String targetSRS = params.getSrs();
 
-        try {
-            fromJSON.put(PARAM_FROM_NAME, from.getName());
-            Point newFrom;
-
-            newFrom = ProjectionHelper.transformPoint(from.getLon(), from.getLat(), sourceSRS, targetSRS);
-            fromJSON.put(PARAM_FROM_LON, newFrom.getLon());
-            fromJSON.put(PARAM_FROM_LAT, newFrom.getLat());
-
-            fromJSON.put(PARAM_FROM_ORIG, from.getOrig());
-            fromJSON.put(PARAM_FROM_VERTEX_TYPE, from.getVertexType());
-        } catch (JSONException ex) {
-            LOG.error("Cannot get route from JSON", ex);
-        }
-        return fromJSON;
+        json.writeStartObject();
+        writeField(json, PARAM_FROM_NAME, from.getName());
+        Point newFrom = ProjectionHelper.transformPoint(from.getLon(), from.getLat(), sourceSRS, targetSRS);
+        json.writeNumberField(PARAM_FROM_LON, newFrom.getLon());
+        json.writeNumberField(PARAM_FROM_LAT, newFrom.getLat());
+        writeField(json, PARAM_FROM_ORIG, from.getOrig());
+        writeField(json, PARAM_FROM_VERTEX_TYPE, from.getVertexType());
+        json.writeEndObject();
     }
 
     /**
-     * Get to JSON
+     * Write to JSON
+     * @param json
      * @param plan
      * @param params
-     * @return to JSON
+     * @throws IOException
      */
-    private JSONObject getToJSON(Plan plan, RouteParams params){
+    private void writeTo(JsonGenerator json, Plan plan, RouteParams params) throws IOException {
         final To to = plan.getTo();
-        final JSONObject toJSON = new JSONObject();
         final String sourceSRS = PropertyUtil.get("routing.srs");
         final String targetSRS = params.getSrs();
 
-        try {
-            toJSON.put(PARAM_TO_NAME, to.getName());
-            Point newTo;
-
-            newTo = ProjectionHelper.transformPoint(to.getLon(), to.getLat(), sourceSRS, targetSRS);
-            toJSON.put(PARAM_TO_LON, newTo.getLon());
-            toJSON.put(PARAM_TO_LAT, newTo.getLat());
-
-            toJSON.put(PARAM_TO_ORIG, to.getOrig());
-            toJSON.put(PARAM_TO_VERTEX_TYPE, to.getVertexType());
-        } catch (JSONException ex) {
-            LOG.error("Cannot get route to JSON", ex);
-        }
-        return toJSON;
+        json.writeStartObject();
+        writeField(json, PARAM_TO_NAME, to.getName());
+        Point newTo = ProjectionHelper.transformPoint(to.getLon(), to.getLat(), sourceSRS, targetSRS);
+        json.writeNumberField(PARAM_TO_LON, newTo.getLon());
+        json.writeNumberField(PARAM_TO_LAT, newTo.getLat());
+        writeField(json, PARAM_TO_ORIG, to.getOrig());
+        writeField(json, PARAM_TO_VERTEX_TYPE, to.getVertexType());
+        json.writeEndObject();
     }
 
     /**
-     * Get itineraries JSON
+     * Write itineraries JSON
+     * @param json
      * @param plan
      * @param params
-     * @return itineraries JSON
+     * @throws IOException
      */
-    private JSONArray getItinerariesJSON(Plan plan, RouteParams params){
-        final List<Itinerary> itineraries = plan.getItineraries();
-        final JSONArray itinerariesJSON = new JSONArray();
-
-        try {
-            for (Itinerary itinerary:itineraries) {
-                JSONObject itineraryJSON = new JSONObject();
-                itineraryJSON.put(PARAM_ITINERARIES_DURATION, itinerary.getDuration());
-                itineraryJSON.put(PARAM_ITINERARIES_START_TIME, itinerary.getStartTime());
-                itineraryJSON.put(PARAM_ITINERARIES_END_TIME, itinerary.getEndTime());
-                itineraryJSON.put(PARAM_ITINERARIES_WALK_TIME, itinerary.getWalkTime());
-                itineraryJSON.put(PARAM_ITINERARIES_TRANSIT_TIME, itinerary.getTransitTime());
-                itineraryJSON.put(PARAM_ITINERARIES_WAITING_TIME, itinerary.getWaitingTime());
-                itineraryJSON.put(PARAM_ITINERARIES_WALK_DISTANCE, itinerary.getWalkDistance());
-                itineraryJSON.put(PARAM_ITINERARIES_WALK_LIMIT_EXCEEDED, itinerary.getWalkLimitExceeded());
-                itineraryJSON.put(PARAM_ITINERARIES_ELEVATION_LOST, itinerary.getElevationLost());
-                itineraryJSON.put(PARAM_ITINERARIES_ELEVATION_GAINED, itinerary.getElevationGained());
-                itineraryJSON.put(PARAM_ITINERARIES_TRANSFERS, itinerary.getTransfers());
-                itineraryJSON.put(PARAM_ITINERARIES_TOO_SLOPED, itinerary.getTooSloped());
-                itineraryJSON.put(PARAM_ITINERARIES_GEOJSON, getItinerariesGeoJSON(itinerary, params));
-                itineraryJSON.put(PARAM_ITINERARIES_LEGS, getLegsJSON(itinerary, params));
-                itinerariesJSON.put(itineraryJSON);
-            }
-        } catch (JSONException ex){
-            LOG.error("Cannot get route itineraries JSON", ex);
+    private void writeItineraries(JsonGenerator json, Plan plan, RouteParams params) throws IOException {
+        json.writeStartArray();
+        for (Itinerary itinerary : plan.getItineraries()) {
+            // decode and reproject all leg geometries of the itinerary at once
+            transformLegGeometries(itinerary, params.getSrs());
+            json.writeStartObject();
+            writeField(json, PARAM_ITINERARIES_DURATION, itinerary.getDuration());
+            writeField(json, PARAM_ITINERARIES_START_TIME, itinerary.getStartTime());
+            writeField(json, PARAM_ITINERARIES_END_TIME, itinerary.getEndTime());
+            writeField(json, PARAM_ITINERARIES_WALK_TIME, itinerary.getWalkTime());
+            writeField(json, PARAM_ITINERARIES_TRANSIT_TIME, itinerary.getTransitTime());
+            writeField(json, PARAM_ITINERARIES_WAITING_TIME, itinerary.getWaitingTime());
+            writeField(json, PARAM_ITINERARIES_WALK_DISTANCE, itinerary.getWalkDistance());
+            writeField(json, PARAM_ITINERARIES_WALK_LIMIT_EXCEEDED, itinerary.getWalkLimitExceeded());
+            writeField(json, PARAM_ITINERARIES_ELEVATION_LOST, itinerary.getElevationLost());
+            writeField(json, PARAM_ITINERARIES_ELEVATION_GAINED, itinerary.getElevationGained());
+            writeField(json, PARAM_ITINERARIES_TRANSFERS, itinerary.getTransfers());
+            writeField(json, PARAM_ITINERARIES_TOO_SLOPED, itinerary.getTooSloped());
+            json.writeFieldName(PARAM_ITINERARIES_GEOJSON);
+            writeItineraryGeoJSON(json, itinerary, params);
+            json.writeFieldName(PARAM_ITINERARIES_LEGS);
+            writeLegs(json, itinerary, params);
+            json.writeEndObject();
         }
-        return itinerariesJSON;
+        json.writeEndArray();
     }
 
     /**
-     * Get itineraries GeoJSON
+     * Write itinerary GeoJSON
+     * @param json
      * @param itinerary
      * @param params
-     * @return itineraries geoJSON
+     * @throws IOException
      */
-    public JSONObject getItinerariesGeoJSON(Itinerary itinerary, RouteParams params) {
-        final JSONObject featureCollection = new JSONObject();
-        final List<Leg> legs = itinerary.getLegs();
+    public void writeItineraryGeoJSON(JsonGenerator json, Itinerary itinerary, RouteParams params) throws IOException {
         final String targetSRS = params.getSrs();
-        try {
-            featureCollection.put(PARAM_GEOJSON_TYPE, "FeatureCollection");
-            JSONArray featureList = new JSONArray();
-
-            for (Leg leg: legs) {
-                JSONObject feature = parseGeoJson(leg, targetSRS);
-                featureList.put(feature);
-            }
-            featureCollection.put(PARAM_GEOJSON_FEATURES, featureList);
-
-        } catch (JSONException e) {
-            LOG.error("can't save json object: " + e.toString());
+        json.writeStartObject();
+        json.writeStringField(PARAM_GEOJSON_TYPE, "FeatureCollection");
+        json.writeFieldName(PARAM_GEOJSON_FEATURES);
+        json.writeStartArray();
+        for (Leg leg : itinerary.getLegs()) {
+            writeGeoJson(json, leg, targetSRS);
         }
-        return featureCollection;
+        json.writeEndArray();
+        json.writeEndObject();
     }
 
     /**
-     * Get legs JSON
+     * Write legs JSON
+     * @param json
      * @param itinerary
      * @param params
-     * @return legs JSON
+     * @throws IOException
      */
-    public JSONArray getLegsJSON(Itinerary itinerary, RouteParams params) {
-        final List<Leg> legs = itinerary.getLegs();
-        final JSONArray legsJSON = new JSONArray();
+    public void writeLegs(JsonGenerator json, Itinerary itinerary, RouteParams params) throws IOException {
         final String sourceSRS = PropertyUtil.get("routing.srs");
         final String targetSRS = params.getSrs();
-        try {
-            for (Leg leg:legs) {
-                JSONObject legJSON = new JSONObject();
-
-                legJSON.put(PARAM_LEGS_AGENCY_ID, leg.getAgencyId());
-                legJSON.put(PARAM_LEGS_AGENCY_NAME, leg.getAgencyName());
-                legJSON.put(PARAM_LEGS_AGENCY_TIME_ZONE_OFFSET, leg.getAgencyTimeZoneOffset());
-                legJSON.put(PARAM_LEGS_AGENCY_URL, leg.getAgencyUrl());
-                legJSON.put(PARAM_LEGS_ARRIVAL_DELAY, leg.getArrivalDelay());
-                legJSON.put(PARAM_LEGS_DEPARTURE_DELAY, leg.getDepartureDelay());
-                legJSON.put(PARAM_LEGS_DISTANCE, leg.getDistance());
-                legJSON.put(PARAM_LEGS_DURATION, leg.getDuration());
-                legJSON.put(PARAM_LEGS_END_TIME, leg.getEndTime());
-                legJSON.put(PARAM_LEGS_HEADSIGN, leg.getHeadsign());
-                legJSON.put(PARAM_LEGS_INTERLINE_WIDTH_PREVIOUS_LEG, leg.getInterlineWithPreviousLeg());
-                legJSON.put(PARAM_LEGS_MODE, leg.getMode());
-                legJSON.put(PARAM_LEGS_PATHWAY, leg.getPathway());
-                legJSON.put(PARAM_LEGS_REAL_TIME, leg.getRealTime());
-                legJSON.put(PARAM_LEGS_RENTED_BIKE, leg.getRentedBike());
-                legJSON.put(PARAM_LEGS_ROUTE, leg.getRoute());
-                legJSON.put(PARAM_LEGS_ROUTE_ID, leg.getRouteId());
-                legJSON.put(PARAM_LEGS_ROUTE_LONG_NAME, leg.getRouteLongName());
-                legJSON.put(PARAM_LEGS_ROUTE_SHORT_NAME, leg.getRouteShortName());
-                legJSON.put(PARAM_LEGS_ROUTE_TYPE, leg.getRouteType());
-                legJSON.put(PARAM_LEGS_SERVICE_DATE, leg.getServiceDate());
-                legJSON.put(PARAM_LEGS_START_TIME, leg.getStartTime());
-                legJSON.put(PARAM_LEGS_TRANSIT_LEG, leg.getTransitLeg());
-                legJSON.put(PARAM_LEGS_TRIP_ID, leg.getTripId());
-
-                From_ from = leg.getFrom();
-                JSONObject fromJSON = new JSONObject();
-                fromJSON.put(PARAM_LEGS_FROM_ARRIVAL, from.getArrival());
-                fromJSON.put(PARAM_LEGS_FROM_DEPARTURE, from.getDeparture());
-                Point newFrom;
-
-                newFrom = ProjectionHelper.transformPoint(from.getLon(), from.getLat(), sourceSRS, targetSRS);
-                fromJSON.put(PARAM_LEGS_FROM_LON, newFrom.getLon());
-                fromJSON.put(PARAM_LEGS_FROM_LAT, newFrom.getLat());
-
-                fromJSON.put(PARAM_LEGS_FROM_NAME, from.getName());
-                fromJSON.put(PARAM_LEGS_FROM_STOP_CODE, from.getStopCode());
-                fromJSON.put(PARAM_LEGS_FROM_STOP_ID, from.getStopId());
-                fromJSON.put(PARAM_LEGS_FROM_STOP_INDEX, from.getStopIndex());
-                fromJSON.put(PARAM_LEGS_FROM_STOP_SEQUENCE, from.getStopSequence());
-                fromJSON.put(PARAM_LEGS_FROM_VERTEX_TYPE, from.getVertexType());
-                fromJSON.put(PARAM_LEGS_FROM_ZONE_ID, from.getZoneId());
-                legJSON.put(PARAM_LEGS_FROM, fromJSON);
-
-                To_ to = leg.getTo();
-                JSONObject toJSON = new JSONObject();
-                toJSON.put(PARAM_LEGS_TO_ARRIVAL, to.getArrival());
-                Point newTo;
-
-                newTo = ProjectionHelper.transformPoint(to.getLon(), to.getLat(), sourceSRS, targetSRS);
-                toJSON.put(PARAM_LEGS_TO_LON, newTo.getLon());
-                toJSON.put(PARAM_LEGS_TO_LAT, newTo.getLat());
-
-                toJSON.put(PARAM_LEGS_TO_NAME, to.getName());
-                toJSON.put(PARAM_LEGS_TO_ORIG, to.getOrig());
-                toJSON.put(PARAM_LEGS_TO_STOP_CODE, to.getStopCode());
-                toJSON.put(PARAM_LEGS_TO_STOP_ID, to.getStopId());
-                toJSON.put(PARAM_LEGS_TO_STOP_INDEX, to.getStopIndex());
-                toJSON.put(PARAM_LEGS_TO_STOP_SEQUENCE, to.getStopSequence());
-                toJSON.put(PARAM_LEGS_TO_VERTEX_TYPE, to.getVertexType());
-                toJSON.put(PARAM_LEGS_TO_ZONE_ID, to.getZoneId());
-                legJSON.put(PARAM_LEGS_TO, toJSON);
-                LegGeometry geometry = leg.getLegGeometry();
-                JSONObject geometryJSON = new JSONObject();
-                geometryJSON.put(PARAM_LEGS_LEG_GEOJSON, parseGeoJson(leg, targetSRS));
-                geometryJSON.put(PARAM_LEGS_LEG_GEOMETRY_LENGTH, geometry.getLength());
-                geometryJSON.put(PARAM_LEGS_LEG_GEOMETRY_POINTS, geometry.getPoints());
-                legJSON.put(PARAM_LEGS_LEG_GEOMETRY, geometryJSON);
-
-                List<Object> steps = leg.getSteps();
-                JSONArray stepsJSON = new JSONArray();
-
-                for (int i = 0; i < steps.size(); i++) {
-                    LinkedHashMap lhm = (LinkedHashMap)steps.get(i);
-                    Iterator iterator = lhm.entrySet().iterator();
-                    JSONObject stepJSON = new JSONObject();
-                    while(iterator.hasNext()){
-                        Map.Entry me = (Map.Entry)iterator.next();
-                        stepJSON.put(me.getKey().toString(), me.getValue().toString());
-                    }
-
-                    // convert coordinates
-                    if(stepJSON.has(PARAM_LEGS_STEPS_LON) && stepJSON.has(PARAM_LEGS_STEPS_LAT)){
-                        String stepLon = stepJSON.getString(PARAM_LEGS_STEPS_LON);
-                        String stepLat = stepJSON.getString(PARAM_LEGS_STEPS_LAT);
-
-                        Point stepPoint;
-
-                            stepPoint = ProjectionHelper.transformPoint(stepLon, stepLat, sourceSRS, targetSRS);
-                            stepJSON.put(PARAM_LEGS_STEPS_LON, stepPoint.getLon());
-                            stepJSON.put(PARAM_LEGS_STEPS_LAT, stepPoint.getLat());
-
-                    }
-
-                    stepsJSON.put(stepJSON);
-                }
-
-                legJSON.put(PARAM_LEGS_STEPS, stepsJSON);
-
-                // Intermediate stops
-                List<IntermediateStop> stops = leg.getIntermediateStops();
-                JSONArray stopsJSON = new JSONArray();
-                for (IntermediateStop intermediateStop : stops) {
-                    JSONObject stopJSON = new JSONObject();
-                    // convert coordinates
-                    if (intermediateStop.getLat() != null && intermediateStop.getLon() != null) {
-                        Point stopPoint;
-                        stopPoint = ProjectionHelper.transformPoint(intermediateStop.getLon(), intermediateStop.getLat(), sourceSRS, targetSRS);
-                        stopJSON.put(PARAM_LEG_STOP_LON, stopPoint.getLon());
-                        stopJSON.put(PARAM_LEG_STOP_LAT, stopPoint.getLat());
-                    }
-
-                    stopJSON.put(PARAM_LEG_STOP_NAME, intermediateStop.getName());
-                    stopJSON.put(PARAM_LEG_STOP_STOPID, intermediateStop.getStopId());
-                    stopJSON.put(PARAM_LEG_STOP_STOPCODE, intermediateStop.getStopCode());
-                    stopJSON.put(PARAM_LEG_STOP_ARRIVAL, intermediateStop.getArrival());
-                    stopJSON.put(PARAM_LEG_STOP_DEPARTURE, intermediateStop.getDeparture());
-                    stopJSON.put(PARAM_LEG_STOP_ZONEID, intermediateStop.getZoneId());
-                    stopJSON.put(PARAM_LEG_STOP_STOPINDEX, intermediateStop.getStopIndex());
-                    stopJSON.put(PARAM_LEG_STOP_STOPSEQUENCE, intermediateStop.getStopSequence());
-                    stopJSON.put(PARAM_LEG_STOP_VERTEXTYPE, intermediateStop.getVertexType());
-
-                    stopsJSON.put(stopJSON);
+        json.writeStartArray();
+        for (Leg leg : itinerary.getLegs()) {
+            json.writeStartObject();
+            writeField(json, PARAM_LEGS_AGENCY_ID, leg.getAgencyId());
+            writeField(json, PARAM_LEGS_AGENCY_NAME, leg.getAgencyName());
+            writeField(json, PARAM_LEGS_AGENCY_TIME_ZONE_OFFSET, leg.getAgencyTimeZoneOffset());
+            writeField(json, PARAM_LEGS_AGENCY_URL, leg.getAgencyUrl());
+            writeField(json, PARAM_LEGS_ARRIVAL_DELAY, leg.getArrivalDelay());
+            writeField(json, PARAM_LEGS_DEPARTURE_DELAY, leg.getDepartureDelay());
+            writeField(json, PARAM_LEGS_DISTANCE, leg.getDistance());
+            writeField(json, PARAM_LEGS_DURATION, leg.getDuration());
+            writeField(json, PARAM_LEGS_END_TIME, leg.getEndTime());
+            writeField(json, PARAM_LEGS_HEADSIGN, leg.getHeadsign());
+            writeField(json, PARAM_LEGS_INTERLINE_WIDTH_PREVIOUS_LEG, leg.getInterlineWithPreviousLeg());
+            writeField(json, PARAM_LEGS_MODE, leg.getMode());
+            writeField(json, PARAM_LEGS_PATHWAY, leg.getPathway());
+            writeField(json, PARAM_LEGS_REAL_TIME, leg.getRealTime());
+            writeField(json, PARAM_LEGS_RENTED_BIKE, leg.getRentedBike());
+            writeField(json, PARAM_LEGS_ROUTE, leg.getRoute());
+            writeField(json, PARAM_LEGS_ROUTE_ID, leg.getRouteId());
+            writeField(json, PARAM_LEGS_ROUTE_LONG_NAME, leg.getRouteLongName());
+            writeField(json, PARAM_LEGS_ROUTE_SHORT_NAME, leg.getRouteShortName());
+            writeField(json, PARAM_LEGS_ROUTE_TYPE, leg.getRouteType());
+            writeField(json, PARAM_LEGS_SERVICE_DATE, leg.getServiceDate());
+            writeField(json, PARAM_LEGS_START_TIME, leg.getStartTime());
+            writeField(json, PARAM_LEGS_TRANSIT_LEG, leg.getTransitLeg());
+            writeField(json, PARAM_LEGS_TRIP_ID, leg.getTripId());
+
+            From_ from = leg.getFrom();
+            json.writeFieldName(PARAM_LEGS_FROM);
+            json.writeStartObject();
+            writeField(json, PARAM_LEGS_FROM_ARRIVAL, from.getArrival());
+            writeField(json, PARAM_LEGS_FROM_DEPARTURE, from.getDeparture());
+            Point newFrom = ProjectionHelper.transformPoint(from.getLon(), from.getLat(), sourceSRS, targetSRS);
+            json.writeNumberField(PARAM_LEGS_FROM_LON, newFrom.getLon());
+            json.writeNumberField(PARAM_LEGS_FROM_LAT, newFrom.getLat());
+            writeField(json, PARAM_LEGS_FROM_NAME, from.getName());
+            writeField(json, PARAM_LEGS_FROM_STOP_CODE, from.getStopCode());
+            writeField(json, PARAM_LEGS_FROM_STOP_ID, from.getStopId());
+            writeField(json, PARAM_LEGS_FROM_STOP_INDEX, from.getStopIndex());
+            writeField(json, PARAM_LEGS_FROM_STOP_SEQUENCE, from.getStopSequence());
+            writeField(json, PARAM_LEGS_FROM_VERTEX_TYPE, from.getVertexType());
+            writeField(json, PARAM_LEGS_FROM_ZONE_ID, from.getZoneId());
+            json.writeEndObject();
+
+            To_ to = leg.getTo();
+            json.writeFieldName(PARAM_LEGS_TO);
+            json.writeStartObject();
+            writeField(json, PARAM_LEGS_TO_ARRIVAL, to.getArrival());
+            Point newTo = ProjectionHelper.transformPoint(to.getLon(), to.getLat(), sourceSRS, targetSRS);
+            json.writeNumberField(PARAM_LEGS_TO_LON, newTo.getLon());
+            json.writeNumberField(PARAM_LEGS_TO_LAT, newTo.getLat());
+            writeField(json, PARAM_LEGS_TO_NAME, to.getName());
+            writeField(json, PARAM_LEGS_TO_ORIG, to.getOrig());
+            writeField(json, PARAM_LEGS_TO_STOP_CODE, to.getStopCode());
+            writeField(json, PARAM_LEGS_TO_STOP_ID, to.getStopId());
+            writeField(json, PARAM_LEGS_TO_STOP_INDEX, to.getStopIndex());
+            writeField(json, PARAM_LEGS_TO_STOP_SEQUENCE, to.getStopSequence());
+            writeField(json, PARAM_LEGS_TO_VERTEX_TYPE, to.getVertexType());
+            writeField(json, PARAM_LEGS_TO_ZONE_ID, to.getZoneId());
+            json.writeEndObject();
+
+            LegGeometry geometry = leg.getLegGeometry();
+            json.writeFieldName(PARAM_LEGS_LEG_GEOMETRY);
+            json.writeStartObject();
+            json.writeFieldName(PARAM_LEGS_LEG_GEOJSON);
+            writeGeoJson(json, leg, targetSRS);
+            writeField(json, PARAM_LEGS_LEG_GEOMETRY_LENGTH, geometry.getLength());
+            writeField(json, PARAM_LEGS_LEG_GEOMETRY_POINTS, geometry.getPoints());
+            json.writeEndObject();
+
+            json.writeFieldName(PARAM_LEGS_STEPS);
+            json.writeStartArray();
+            for (Object step : leg.getSteps()) {
+                writeStep(json, (Map<?, ?>) step, sourceSRS, targetSRS);
+            }
+            json.writeEndArray();
+
+            // Intermediate stops
+            json.writeFieldName(PARAM_LEG_STOPS);
+            json.writeStartArray();
+            for (IntermediateStop intermediateStop : leg.getIntermediateStops()) {
+                json.writeStartObject();
+                // convert coordinates
+                if (intermediateStop.getLat() != null && intermediateStop.getLon() != null) {
+                    Point stopPoint = ProjectionHelper.transformPoint(intermediateStop.getLon(), intermediateStop.getLat(), sourceSRS, targetSRS);
+                    json.writeNumberField(PARAM_LEG_STOP_LON, stopPoint.getLon());
+                    json.writeNumberField(PARAM_LEG_STOP_LAT, stopPoint.getLat());
                 }
+                writeField(json, PARAM_LEG_STOP_NAME, intermediateStop.getName());
+                writeField(json, PARAM_LEG_STOP_STOPID, intermediateStop.getStopId());
+                writeField(json, PARAM_LEG_STOP_STOPCODE, intermediateStop.getStopCode());
+                writeField(json, PARAM_LEG_STOP_ARRIVAL, intermediateStop.getArrival());
+                writeField(json, PARAM_LEG_STOP_DEPARTURE, intermediateStop.getDeparture());
+                writeField(json, PARAM_LEG_STOP_ZONEID, intermediateStop.getZoneId());
+                writeField(json, PARAM_LEG_STOP_STOPINDEX, intermediateStop.getStopIndex());
+                writeField(json, PARAM_LEG_STOP_STOPSEQUENCE, intermediateStop.getStopSequence());
+                writeField(json, PARAM_LEG_STOP_VERTEXTYPE, intermediateStop.getVertexType());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
 
-                legJSON.put(PARAM_LEG_STOPS, stopsJSON);
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
 
-                legsJSON.put(legJSON);
+    /**
+     * Writes a step with its values as strings like the routing service gave them, except coordinates
+     * which are transformed to numbers in the target projection.
+     */
+    private static void writeStep(JsonGenerator json, Map<?, ?> step, String sourceSRS, String targetSRS) throws IOException {
+        Object stepLon = step.get(PARAM_LEGS_STEPS_LON);
+        Object stepLat = step.get(PARAM_LEGS_STEPS_LAT);
+        Point stepPoint = null;
+        if (stepLon != null && stepLat != null) {
+            stepPoint = ProjectionHelper.transformPoint(stepLon.toString(), stepLat.toString(), sourceSRS, targetSRS);
+        }
+        json.writeStartObject();
+        for (Map.Entry<?, ?> entry : step.entrySet()) {
+            String key = entry.getKey().toString();
+            if (stepPoint != null && PARAM_LEGS_STEPS_LON.equals(key)) {
+                json.writeNumberField(key, stepPoint.getLon());
+            } else if (stepPoint != null && PARAM_LEGS_STEPS_LAT.equals(key)) {
+                json.writeNumberField(key, stepPoint.getLat());
+            } else {
+                json.writeStringField(key, String.valueOf(entry.getValue()));
             }
-        } catch (JSONException ex){
-            LOG.error("Cannot get itineraries legs JSON", ex);
         }
-
-        return legsJSON;
+        json.writeEndObject();
     }
 
     /**
-     * Generate request parameters
+     * Write request parameters
+     * @param json
      * @param route
      * @param params
-     * @return request parameters
+     * @throws IOException
      */
-    public JSONObject generateRequestParameters(Route route, RouteParams params){
-        final JSONObject requestParameters = new JSONObject();
+    public void writeRequestParameters(JsonGenerator json, Route route, RouteParams params) throws IOException {
         final RequestParameters rp = route.getRequestParameters();
         final String sourceSRS = PropertyUtil.get("routing.srs");
         final String targetSRS = params.getSrs();
 
-        try{
-            requestParameters.put(PARAM_DATE, rp.getDate());
-            requestParameters.put(PARAM_WHEELCHAIR, rp.getWheelchair());
-            requestParameters.put(PARAM_ARRIVE_BY, rp.getArriveBy());
-            requestParameters.put(PARAM_MAX_WALK_DISTANCE, rp.getMaxWalkDistance());
-            requestParameters.put(PARAM_TIME, rp.getTime());
-            requestParameters.put(PARAM_LOCALE, rp.getLocale());
-
-            // Routing service uses lat,lon order in point string and in service url params
-            final String[] fromPoints = rp.getFromPlace().split(",");
-            final String[] toPoints = rp.getToPlace().split(",");
-
-            Point newFrom;
-            Point newTo;
-            // Must be lon,lat order
-            newFrom = ProjectionHelper.transformPoint(fromPoints[1], fromPoints[0], sourceSRS, targetSRS);
-            newTo = ProjectionHelper.transformPoint(toPoints[1], toPoints[0], sourceSRS, targetSRS);
-            requestParameters.put(PARAM_FROM_PLACE, getPointJSON(newFrom.getLon(), newFrom.getLat()));
-            requestParameters.put(PARAM_TO_PLACE, getPointJSON(newTo.getLon(), newTo.getLat()));
-
-        } catch (JSONException ex) {
-            LOG.error("Cannot generate routing request parameters", ex);
-        }
-
-        return requestParameters;
+        json.writeStartObject();
+        writeField(json, PARAM_DATE, rp.getDate());
+        writeField(json, PARAM_WHEELCHAIR, rp.getWheelchair());
+        writeField(json, PARAM_ARRIVE_BY, rp.getArriveBy());
+        writeField(json, PARAM_MAX_WALK_DISTANCE, rp.getMaxWalkDistance());
+        writeField(json, PARAM_TIME, rp.getTime());
+        writeField(json, PARAM_LOCALE, rp.getLocale());
+
+        // Routing service uses lat,lon order in point string and in service url params
+        final String[] fromPoints = rp.getFromPlace().split(",");
+        final String[] toPoints = rp.getToPlace().split(",");
+
+        // Must be lon,lat order
+        Point newFrom = ProjectionHelper.transformPoint(fromPoints[1], fromPoints[0], sourceSRS, targetSRS);
+        Point newTo = ProjectionHelper.transformPoint(toPoints[1], toPoints[0], sourceSRS, targetSRS);
+        json.writeFieldName(PARAM_FROM_PLACE);
+        writePoint(json, newFrom);
+        json.writeFieldName(PARAM_TO_PLACE);
+        writePoint(json, newTo);
+        json.writeEndObject();
     }
 
     /**
-     * Get point JSON
-     * @param x
-     * @param y
-     * @return
+     * Write point JSON
+     * @param json
+     * @param point
+     * @throws IOException
      */
-    private JSONObject getPointJSON(final Double x, final Double y){
-        JSONObject pointJSON = new JSONObject();
-
-        try {
-            pointJSON.put(PARAM_LON, x);
-            pointJSON.put(PARAM_LAT, y);
-        } catch (JSONException e) {
-            LOG.error("can't save json object: " + e.toString());
-        }
-
-        return pointJSON;
+    private static void writePoint(JsonGenerator json, Point point) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField(PARAM_LON, point.getLon());
+        json.writeNumberField(PARAM_LAT, point.getLat());
+        json.writeEndObject();
     }
 
     /**
-     * Parse geoJSON
+     * Write leg geoJSON
+     * @param json
      * @param leg
      * @param targetSRS
-     * @return leg geoJSON
+     * @throws IOException
      */
-    public JSONObject parseGeoJson(Leg leg, String targetSRS) {
-        JSONObject feature = new JSONObject();
-
-        try {
-
-            JSONObject line = new JSONObject();
-            line.put(PARAM_GEOJSON_TYPE, "LineString");
-
-            LegGeometry legGeom = leg.getLegGeometry();
-            String encodedPolyLine = legGeom.getPoints();
-            JSONArray coordinates = decode(encodedPolyLine, targetSRS);
-            line.put(PARAM_GEOJSON_COORDINATES, coordinates);
-            feature.put(PARAM_GEOJSON_TYPE, "Feature");
-            feature.put(PARAM_GEOJSON_GEOMETRY, line);
-
-            JSONObject properties = new JSONObject();
-            properties.put(PARAM_LEGS_MODE, leg.getMode());
-            properties.put(PARAM_LEGS_DISTANCE, leg.getDistance());
-            properties.put(PARAM_LEGS_START_TIME, leg.getStartTime());
-            properties.put(PARAM_LEGS_END_TIME, leg.getEndTime());
-            feature.put(PARAM_GEOJSON_PROPERTIES, properties);
-        } catch (JSONException e) {
-            LOG.error(e + "can't save json object: " + e.getMessage());
+    public void writeGeoJson(JsonGenerator json, Leg leg, String targetSRS) throws IOException {
+        json.writeStartObject();
+        json.writeStringField(PARAM_GEOJSON_TYPE, "Feature");
+        json.writeFieldName(PARAM_GEOJSON_GEOMETRY);
+        json.writeStartObject();
+        json.writeStringField(PARAM_GEOJSON_TYPE, "LineString");
+        json.writeFieldName(PARAM_GEOJSON_COORDINATES);
+        double[] coords = getCoordinates(leg, targetSRS);
+        json.writeStartArray();
+        for (int i = 0; i < coords.length; i += 2) {
+            json.writeArray(coords, i, 2);
         }
+        json.writeEndArray();
+        json.writeEndObject();
+
+        json.writeFieldName(PARAM_GEOJSON_PROPERTIES);
+        json.writeStartObject();
+        writeField(json, PARAM_LEGS_MODE, leg.getMode());
+        writeField(json, PARAM_LEGS_DISTANCE, leg.getDistance());
+        writeField(json, PARAM_LEGS_START_TIME, leg.getStartTime());
+        writeField(json, PARAM_LEGS_END_TIME, leg.getEndTime());
+        json.writeEndObject();
+        json.writeEndObject();
+    }
 
-        LOG.debug(feature.toString());
+    /**
+     * Writes a field with a String, Number or Boolean value. Null values are left out like
+     * JSONObject.put() did.
+     */
+    private static void writeField(JsonGenerator json, String name, Object value) throws IOException {
+        if (value != null) {
+            json.writeObjectField(name, value);
+        }
+    }
 
-        return feature;
+    /**
+     * Decodes and reprojects the geometries for all legs in an itinerary with a single transform call.
+     * The results are reused when the same legs are written as itinerary GeoJSON and leg geometries.
+     * @param itinerary
+     * @param targetSRS
+     */
+    void transformLegGeometries(Itinerary itinerary, String targetSRS) {
+        final List<Leg> legs = itinerary.getLegs();
+        if (legs == null || legs.isEmpty()) {
+            return;
+        }
+        final List<double[]> decoded = new ArrayList<>(legs.size());
+        int size = 0;
+        for (Leg leg : legs) {
+            double[] coords = decodePolyline(leg.getLegGeometry().getPoints());
+            decoded.add(coords);
+            size += coords.length;
+        }
+        final double[] all = new double[size];
+        int offset = 0;
+        for (double[] coords : decoded) {
+            System.arraycopy(coords, 0, all, offset, coords.length);
+            offset += coords.length;
+        }
+        transform(all, targetSRS);
+        offset = 0;
+        for (int i = 0; i < legs.size(); i++) {
+            int length = decoded.get(i).length;
+            legCoordinates.put(legs.get(i), Arrays.copyOfRange(all, offset, offset + length));
+            offset += length;
+        }
     }
 
+    private double[] getCoordinates(Leg leg, String targetSRS) {
+        double[] coords = legCoordinates.get(leg);
+        if (coords != null) {
+            return coords;
+        }
+        coords = decodePolyline(leg.getLegGeometry().getPoints());
+        transform(coords, targetSRS);
+        legCoordinates.put(leg, coords);
+        return coords;
+    }
 
+    /**
+     * Transforms lon,lat ordered coordinates in place from routing service projection to target projection
+     * @param coords
+     * @param targetSRS
+     * @throws ServiceRuntimeException if the coordinates can't be transformed
+     */
+    private static void transform(double[] coords, String targetSRS) {
+        final String sourceSRS = PropertyUtil.get("routing.srs");
+        if (coords.length == 0 || sourceSRS.equals(targetSRS)) {
+            return;
+        }
+        try {
+            // use always lon coordinate 1st order
+            CoordinateReferenceSystem sourceCrs = CRS.decode(sourceSRS, true);
+            CoordinateReferenceSystem targetCrs = CRS.decode(targetSRS, true);
+            MathTransform transform = CRS.findMathTransform(sourceCrs, targetCrs, false);
+            transform.transform(coords, 0, coords, 0, coords.length / 2);
+        } catch (Exception e) {
+            // coordinates would be left partially or wholly in routing service projection
+            throw new ServiceRuntimeException("Transform failed! Params: sourceSRS " + sourceSRS
+                    + " targetSRS " + targetSRS, e);
+        }
+    }
 
     /**
-     * Decode Google encoded polyline to points
+     * Decode Google encoded polyline to lon,lat ordered coordinates
      * @param pointString
-     * @param targetSRS
-     * @return JSONArray of points
+     * @return array of coordinates as [lon1, lat1, lon2, lat2, ...]
      */
-    private static JSONArray decode(String pointString, String targetSRS) {
+    private static double[] decodePolyline(String pointString) {
         double lat = 0;
         double lon = 0;
 
         int strIndex = 0;
-        JSONArray coordinates = new JSONArray();
-        try {
-            final String currentSRS = PropertyUtil.get("routing.srs");
-
-            while (strIndex < pointString.length()) {
-                int[] rLat = decodeSignedNumberWithIndex(pointString, strIndex);
-                lat = lat + rLat[0] * 1e-5;
-                strIndex = rLat[1];
-
-                int[] rLon = decodeSignedNumberWithIndex(pointString, strIndex);
-                lon = lon + rLon[0] * 1e-5;
-                strIndex = rLon[1];
-
-                Point coordsInAppSRS;
-                JSONArray coordinate;
-                coordsInAppSRS = ProjectionHelper.transformPoint(lon, lat, currentSRS, targetSRS);
-                coordinate = new JSONArray("[" + coordsInAppSRS.getLonToString() + "," + coordsInAppSRS.getLatToString() + "]");
-
-                coordinates.put(coordinate);
-            }
-        } catch (JSONException e){
-            LOG.error(e + "can't get points: " + e.getMessage());
+        // each coordinate takes at least two characters
+        double[] coords = new double[pointString.length()];
+        int count = 0;
+        while (strIndex < pointString.length()) {
+            int[] rLat = decodeSignedNumberWithIndex(pointString, strIndex);
+            lat = lat + rLat[0] * 1e-5;
+            strIndex = rLat[1];
+
+            int[] rLon = decodeSignedNumberWithIndex(pointString, strIndex);
+            lon = lon + rLon[0] * 1e-5;
+            strIndex = rLon[1];
+
+            coords[count++] = lon;
+            coords[count++] = lat;
         }
-
-        return coordinates;
+        return Arrays.copyOf(coords, count);
     }
 
     /**
@@ -1,71 +1,106 @@
 package fi.nls.oskari.routing;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.routing.pojo.Route;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  * Created by HVELLONEN on 1.7.2015.
+ *
+ * Immutable so the same response can be cached and shared between requests. A successful response
+ * is kept serialized as it's written out as is.
  */
 public class RouteResponse {
     private static final Logger LOGGER = LogFactory.getLogger(RouteResponse.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     private static final String PARAM_PLAN = "plan";
     private static final String PARAM_REQUEST_PARAMETERS = "requestParameters";
     private static final String PARAM_ERROR_MESSAGE = "errorMessage";
     private static final String PARAM_SUCCESS = "success";
 
+    private final byte[] json;
+    private final boolean success;
+    private final String errorMessage;
+    private final String requestUrl;
 
-    private JSONObject requestParameters;
-    private JSONObject plan;
-    private boolean success;
-    private String errorMessage;
-    private String requestUrl;
-
-    public JSONObject toJSON() {
-        JSONObject json = new JSONObject();
-        try{
-            if(success){
-                json.put(PARAM_SUCCESS, true);
-                json.put(PARAM_PLAN, plan);
-                json.put(PARAM_REQUEST_PARAMETERS, requestParameters);
-            } else {
-                json.put(PARAM_SUCCESS, false);
-                json.put(PARAM_ERROR_MESSAGE, errorMessage);
-                json.put(PARAM_REQUEST_PARAMETERS, requestParameters);
-            }
-        } catch(JSONException ex){
-            LOGGER.error("Cannot get JSON route response", ex);
-        }
-        return json;
+    private RouteResponse(byte[] json, boolean success, String errorMessage, String requestUrl) {
+        this.json = json;
+        this.success = success;
+        this.errorMessage = errorMessage;
+        this.requestUrl = requestUrl;
     }
 
+    /**
+     * @param json serialized response from serialize(), not copied so it must not be modified afterwards
+     * @param requestUrl routing service url for debugging
+     */
+    public static RouteResponse success(byte[] json, String requestUrl) {
+        return new RouteResponse(json, true, null, requestUrl);
+    }
 
-    public JSONObject getRequestParameters() {
-        return requestParameters;
+    public static RouteResponse error(String errorMessage, String requestUrl) {
+        return new RouteResponse(null, false, errorMessage, requestUrl);
     }
 
-    public void setRequestParameters(JSONObject requestParameters) {
-        this.requestParameters = requestParameters;
+    /**
+     * Serializes a successful response with the plan and request parameters written straight from the route
+     */
+    public static byte[] serialize(RouteParser parser, Route route, RouteParams params) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeBooleanField(PARAM_SUCCESS, true);
+            gen.writeFieldName(PARAM_PLAN);
+            parser.writePlan(gen, route, params);
+            gen.writeFieldName(PARAM_REQUEST_PARAMETERS);
+            parser.writeRequestParameters(gen, route, params);
+            gen.writeEndObject();
+        }
+        return out.toByteArray();
     }
 
-    public JSONObject getPlan() {
-        return plan;
+    /**
+     * @return new JSONObject on each call, changes to it don't affect this response
+     */
+    public JSONObject toJSON() {
+        try {
+            if (success) {
+                return new JSONObject(new String(json, StandardCharsets.UTF_8));
+            }
+            JSONObject ret = new JSONObject();
+            ret.put(PARAM_SUCCESS, false);
+            ret.put(PARAM_ERROR_MESSAGE, errorMessage);
+            return ret;
+        } catch (JSONException ex) {
+            LOGGER.error("Cannot get JSON route response", ex);
+        }
+        return new JSONObject();
     }
 
-    public void setPlan(JSONObject plan) {
-        this.plan = plan;
+    /**
+     * @return response as UTF-8 encoded JSON
+     */
+    public byte[] toBytes() {
+        if (success) {
+            return Arrays.copyOf(json, json.length);
+        }
+        return toJSON().toString().getBytes(StandardCharsets.UTF_8);
     }
 
     public boolean isSuccess() {
         return success;
     }
 
-    public void setSuccess(boolean success) {
-        this.success = success;
-    }
-
     public String getErrorMessage() {
         return errorMessage;
     }
@@ -74,13 +109,4 @@ public class RouteResponse {
         return requestUrl;
     }
 
-    public void setRequestUrl(String requestUrl) {
-        this.requestUrl = requestUrl;
-    }
-
-    public void setErrorMessage(String errorMessage) {
-        this.errorMessage = errorMessage;
-    }
-
-
 }
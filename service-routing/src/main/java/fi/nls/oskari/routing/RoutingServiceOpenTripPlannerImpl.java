@@ -1,6 +1,8 @@
 package fi.nls.oskari.routing;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -13,6 +15,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -37,8 +41,27 @@ public class RoutingServiceOpenTripPlannerImpl implements RoutingService {
 
     private static final String PROPERTY_USER = "routing.user";
     private static final String PROPERTY_PASSWORD = "routing.password";
+    // seconds to keep routes in cache, 0 disables caching
+    private static final String PROPERTY_CACHE_EXPIRATION = "routing.cache.expiration";
+    // departure/arrival times within the same bucket share cached routes. Request times have minute precision.
+    private static final String PROPERTY_CACHE_TIME_BUCKET = "routing.cache.timeBucketMinutes";
+    // coordinates (in routing.srs) are rounded to this many decimals for the cache key
+    private static final String PROPERTY_CACHE_COORD_DECIMALS = "routing.cache.coordinateDecimals";
 
     ObjectMapper mapper = new ObjectMapper();
+    // serialized responses, each hit gets its own RouteResponse
+    private final Cache<byte[]> cache = CacheManager.getCache(RoutingServiceOpenTripPlannerImpl.class.getName());
+    private final boolean cacheEnabled;
+    private final long timeBucketMs;
+    private final int coordinateDecimals;
+
+    public RoutingServiceOpenTripPlannerImpl() {
+        int expirationSeconds = PropertyUtil.getOptional(PROPERTY_CACHE_EXPIRATION, 300);
+        cacheEnabled = expirationSeconds > 0;
+        cache.setExpiration(expirationSeconds * 1000L);
+        timeBucketMs = Math.max(1, PropertyUtil.getOptional(PROPERTY_CACHE_TIME_BUCKET, 1)) * 60_000L;
+        coordinateDecimals = PropertyUtil.getOptional(PROPERTY_CACHE_COORD_DECIMALS, 5);
+    }
 
     @Override
     public RouteResponse getRoute(RouteParams params) {
@@ -68,9 +91,14 @@ public class RoutingServiceOpenTripPlannerImpl implements RoutingService {
         requestParams.put(PARAM_LOCALE, params.getLang());
 
         final String requestUrl = IOHelper.constructUrl(PropertyUtil.get("routing.url"), requestParams);
-        RouteResponse result = new RouteResponse();
-        // for debugging
-        result.setRequestUrl(requestUrl);
+
+        final String cacheKey = cacheEnabled ? getCacheKey(newFrom, newTo, params) : null;
+        if (cacheKey != null) {
+            byte[] cached = cache.get(cacheKey);
+            if (cached != null) {
+                return RouteResponse.success(cached, requestUrl);
+            }
+        }
 
         try {
             LOGGER.debug(requestUrl);
@@ -88,27 +116,55 @@ public class RoutingServiceOpenTripPlannerImpl implements RoutingService {
             Route route = mapper.readValue(routeJson,Route.class);
 
             if(!isErrorMessage(routeJson)){
-                result.setRequestParameters(parser.generateRequestParameters(route, params));
-                result.setPlan(parser.generatePlan(route, params));
-                result.setSuccess(true);
-            } else {
-                result.setSuccess(false);
-                try {
-                    JSONObject error = new JSONObject(routeJson);
-                    if(error.has(PARAM_ERROR_MESSAGE)) {
-                        result.setErrorMessage(error.getString(PARAM_ERROR_MESSAGE));
-                    } else {
-                        result.setErrorMessage("ERROR");
-                    }
-                } catch (JSONException ex){
-                    LOGGER.warn("Cannot set error message to route response", ex);
+                byte[] json = RouteResponse.serialize(parser, route, params);
+                if (cacheKey != null) {
+                    cache.put(cacheKey, json);
                 }
+                return RouteResponse.success(json, requestUrl);
             }
+            return RouteResponse.error(getErrorMessage(routeJson), requestUrl);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+    }
+
+    private String getErrorMessage(String routeJson) {
+        try {
+            JSONObject error = new JSONObject(routeJson);
+            if(error.has(PARAM_ERROR_MESSAGE)) {
+                return error.getString(PARAM_ERROR_MESSAGE);
+            }
+            return "ERROR";
+        } catch (JSONException ex){
+            LOGGER.warn("Cannot set error message to route response", ex);
+        }
+        return null;
+    }
+
+    /**
+     * Key for cached routes. Points are rounded and the time is bucketed so nearby requests share
+     * the cached route. The client projection is part of the key as the response is already transformed.
+     */
+    protected String getCacheKey(Point from, Point to, RouteParams params) {
+        StringBuilder key = new StringBuilder();
+        key.append(round(from.getLon())).append(',').append(round(from.getLat()))
+                .append('|').append(round(to.getLon())).append(',').append(round(to.getLat()))
+                .append('|');
+        if (params.getDate() != null) {
+            key.append(params.getDate().getTime() / timeBucketMs);
+        }
+        key.append('|').append(params.getIsArriveBy())
+                .append('|').append(params.getMode())
+                .append('|').append(params.getMaxWalkDistance())
+                .append('|').append(params.getIsWheelChair())
+                .append('|').append(params.getIsShowIntermediateStops())
+                .append('|').append(params.getLang())
+                .append('|').append(params.getSrs());
+        return key.toString();
+    }
 
-        return result;
+    private String round(double value) {
+        return BigDecimal.valueOf(value).setScale(coordinateDecimals, RoundingMode.HALF_UP).toPlainString();
     }
 
     /**
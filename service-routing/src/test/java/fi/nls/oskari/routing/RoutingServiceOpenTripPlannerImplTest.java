@@ -2,16 +2,25 @@ package fi.nls.oskari.routing;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.routing.pojo.Itinerary;
+import fi.nls.oskari.routing.pojo.Leg;
+import fi.nls.oskari.routing.pojo.LegGeometry;
 import fi.nls.oskari.routing.pojo.Route;
+import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.PropertyUtil;
-import org.json.JSONException;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 
+import java.util.Collections;
+import java.util.Date;
+
 public class RoutingServiceOpenTripPlannerImplTest {
     private static final Logger LOGGER = LogFactory.getLogger(RoutingServiceOpenTripPlannerImplTest.class);
     private static final RoutingServiceOpenTripPlannerImpl ROUTING_SERVICE = new RoutingServiceOpenTripPlannerImpl();
@@ -44,64 +53,70 @@ public class RoutingServiceOpenTripPlannerImplTest {
 
         Route route = mapper.readValue(routeJson, Route.class);
 
-        RouteResponse response = new RouteResponse();
-
-        if(!ROUTING_SERVICE.isErrorMessage(routeJson)){
-            response.setRequestParameters(parser.generateRequestParameters(route, routeparams));
-            response.setPlan(parser.generatePlan(route, routeparams));
-            response.setSuccess(true);
-        } else {
-            response.setSuccess(false);
-            try {
-                JSONObject error = new JSONObject(routeJson);
-                if(error.has(RoutingServiceOpenTripPlannerImpl.PARAM_ERROR_MESSAGE)) {
-                    response.setErrorMessage(error.getString(RoutingServiceOpenTripPlannerImpl.PARAM_ERROR_MESSAGE));
-                } else {
-                    response.setErrorMessage("ERROR");
-                }
-            } catch (JSONException ex){
-                LOGGER.warn("Cannot set error message to route response", ex);
-            }
-        }
+        Assert.assertFalse(ROUTING_SERVICE.isErrorMessage(routeJson));
+        RouteResponse response = RouteResponse.success(RouteResponse.serialize(parser, route, routeparams), null);
         LOGGER.debug(response.toJSON());
 
+        JSONObject json = response.toJSON();
+        Assert.assertTrue(json.getBoolean("success"));
+        JSONArray itineraries = json.getJSONObject("plan").getJSONArray("itineraries");
+        Assert.assertEquals(route.getPlan().getItineraries().size(), itineraries.length());
+        JSONObject leg = itineraries.getJSONObject(0).getJSONArray("legs").getJSONObject(0);
+        JSONArray coordinates = leg.getJSONObject("legGeometry").getJSONObject("geoJSON")
+                .getJSONObject("geometry").getJSONArray("coordinates");
+        Assert.assertEquals(2, coordinates.getJSONArray(0).length());
+        Assert.assertTrue(json.getJSONObject("requestParameters").has("fromPlace"));
+
+        // the response is shared through the cache so callers must not be able to change it
+        json.remove("plan");
+        Assert.assertTrue(response.toJSON().has("plan"));
+        response.toBytes()[0] = ' ';
+        Assert.assertEquals('{', response.toBytes()[0]);
     }
 
     @org.junit.Test
     public void testParseRouteThatIsNok() throws Exception {
-
-        RouteParser parser = new RouteParser();
-        ObjectMapper mapper = new ObjectMapper();
-
-        RouteParams routeparams = new RouteParams();
-        routeparams.setSrs(MAP_SRS);
-
         String routeJson = IOHelper.readString(getClass().getResourceAsStream("route_error.json"), JSON_ENCODING);
         routeJson = routeJson.replaceAll("\\\\", "\\\\\\\\");
 
-
-        Route route = mapper.readValue(routeJson, Route.class);
-
-        RouteResponse response = new RouteResponse();
-
-        if(!ROUTING_SERVICE.isErrorMessage(routeJson)){
-            response.setRequestParameters(parser.generateRequestParameters(route, routeparams));
-            response.setPlan(parser.generatePlan(route, routeparams));
-            response.setSuccess(true);
-        } else {
-            response.setSuccess(false);
-            try {
-                JSONObject error = new JSONObject(routeJson);
-                if(error.has(RoutingServiceOpenTripPlannerImpl.PARAM_ERROR_MESSAGE)) {
-                    response.setErrorMessage(error.getString(RoutingServiceOpenTripPlannerImpl.PARAM_ERROR_MESSAGE));
-                } else {
-                    response.setErrorMessage("ERROR");
-                }
-            } catch (JSONException ex){
-                LOGGER.warn("Cannot set error message to route response", ex);
-            }
-        }
+        Assert.assertTrue(ROUTING_SERVICE.isErrorMessage(routeJson));
+        JSONObject error = new JSONObject(routeJson);
+        RouteResponse response = RouteResponse.error(
+                error.optString(RoutingServiceOpenTripPlannerImpl.PARAM_ERROR_MESSAGE, "ERROR"), null);
         LOGGER.debug(response.toJSON());
+        Assert.assertFalse(response.toJSON().getBoolean("success"));
+    }
+
+    @org.junit.Test
+    public void testCacheKey() {
+        RouteParams params = new RouteParams();
+        params.setSrs(MAP_SRS);
+        params.setMode("TRANSIT,WALK");
+        params.setDate(new Date(1_600_000_000_000L));
+
+        String key = ROUTING_SERVICE.getCacheKey(new Point(24.9384, 60.1699), new Point(25.0, 60.2), params);
+        String near = ROUTING_SERVICE.getCacheKey(new Point(24.938401, 60.169899), new Point(25.0, 60.2), params);
+        Assert.assertEquals("Points are rounded for the cache key", key, near);
+
+        params.setMode("BICYCLE");
+        String otherMode = ROUTING_SERVICE.getCacheKey(new Point(24.9384, 60.1699), new Point(25.0, 60.2), params);
+        Assert.assertNotEquals(key, otherMode);
+
+        params.setMode("TRANSIT,WALK");
+        params.setDate(new Date(1_600_000_000_000L + 60_000L));
+        String otherTime = ROUTING_SERVICE.getCacheKey(new Point(24.9384, 60.1699), new Point(25.0, 60.2), params);
+        Assert.assertNotEquals(key, otherTime);
+    }
 
+    @org.junit.Test(expected = ServiceRuntimeException.class)
+    public void testLegTransformFailure() {
+        LegGeometry geometry = new LegGeometry();
+        geometry.setPoints("_p~iF~ps|U_ulLnnqC_mqNvxq`@");
+        Leg leg = new Leg();
+        leg.setLegGeometry(geometry);
+        Itinerary itinerary = new Itinerary();
+        itinerary.setLegs(Collections.singletonList(leg));
+        // coordinates must not be returned in routing service projection
+        new RouteParser().transformLegGeometries(itinerary, "EPSG:NOT_A_CODE");
     }
 }
@@ -0,0 +1,74 @@
+package org.oskari.spatineo.monitor;
+
+import org.oskari.spatineo.monitor.api.model.Meter;
+import org.oskari.spatineo.monitor.api.model.Result;
+import org.oskari.spatineo.monitor.api.model.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Lookup for meters in a Spatineo Monitor response by service type, service url and layer name.
+ * Built once per response so matching layers doesn't require scanning all results for each layer.
+ */
+class MeterIndex {
+
+    private final Map<String, Meter> meters = new HashMap<>();
+
+    MeterIndex(List<Result> results) {
+        if (results == null) {
+            return;
+        }
+        for (Result r : results) {
+            Service s = r.getService();
+            if (s == null || s.getServiceUrl() == null || s.getMeters() == null) {
+                continue;
+            }
+            boolean isWFS = Service.TYPE_WFS.equals(s.getServiceType());
+            if (!isWFS && !Service.TYPE_WMS.equals(s.getServiceType())) {
+                continue;
+            }
+            for (Meter m : s.getMeters()) {
+                if (m.getLayerName() == null) {
+                    continue;
+                }
+                String layerName = getLayerNameToCompare(m.getLayerName(), isWFS);
+                if (layerName == null) {
+                    continue;
+                }
+                // first match wins like it did with the linear search
+                meters.putIfAbsent(getKey(s.getServiceType(), s.getServiceUrl(), layerName), m);
+            }
+        }
+    }
+
+    Meter find(String name, String url, boolean isWFS) {
+        if (name == null || url == null) {
+            return null;
+        }
+        final String type = isWFS ? Service.TYPE_WFS : Service.TYPE_WMS;
+        return meters.get(getKey(type, url, name));
+    }
+
+    int size() {
+        return meters.size();
+    }
+
+    private static String getKey(String type, String url, String layerName) {
+        // urls are compared case-insensitively
+        return type + '|' + url.toLowerCase(Locale.ROOT) + '|' + layerName;
+    }
+
+    private static String getLayerNameToCompare(String layerName, boolean isWFS) {
+        // layerName may consist of two parts, separated by a ':', e.g. layerName:layerTarget
+        // For WFS layers we are interested in layerTarget
+        // For other layers the layerName part
+        final int i = layerName.indexOf(':');
+        if (isWFS) {
+            return i < 0 ? null : layerName.substring(i + 1);
+        }
+        return i < 0 ? layerName : layerName.substring(0, i);
+    }
+}
@@ -46,26 +46,27 @@ public class UpdateBackendStatusJob {
             return;
         }
 
+        final MeterIndex meters = new MeterIndex(response.getResult());
         final List<BackendStatus> statuses = new ArrayList<>();
         for (MapLayer layer : mapLayerDao.findWMSMapLayers()) {
-            BackendStatus status = getStatus(layer, response.getResult(), false);
+            BackendStatus status = getStatus(layer, meters, false);
             if (status != null) {
                 statuses.add(status);
             }
         }
         for (MapLayer layer : mapLayerDao.findWFSMapLayers()) {
-            BackendStatus status = getStatus(layer, response.getResult(), true);
+            BackendStatus status = getStatus(layer, meters, true);
             if (status != null) {
                 statuses.add(status);
             }
         }
-        statusService.insertAll(statuses);
+        int changed = statusService.update(statuses);
 
-        LOG.info("Done with the Spatineo Monitor update service call");
+        LOG.info("Done with the Spatineo Monitor update service call. Statuses:", statuses.size(), "- changed:", changed);
     }
     
-    private static BackendStatus getStatus(MapLayer layer, List<Result> results, boolean isWFS) {
-        Meter meter = findMeter(results, layer.getName(), layer.getUrl(), isWFS);
+    private static BackendStatus getStatus(MapLayer layer, MeterIndex meters, boolean isWFS) {
+        Meter meter = meters.find(layer.getName(), layer.getUrl(), isWFS);
         if (meter == null) {
             LOG.info("Could not find meter for layer: ", layer.getName());
             return null;
@@ -73,37 +74,6 @@ public class UpdateBackendStatusJob {
         return getStatus(layer.getId(), meter);
     }
 
-    private static Meter findMeter(List<Result> results, String name, String url, boolean isWFS) {
-        final String type = isWFS ? Service.TYPE_WFS : Service.TYPE_WMS;
-        for (Result r : results) {
-            Service s = r.getService();
-            if (s == null 
-                    || !type.equals(s.getServiceType()) 
-                    || !url.equalsIgnoreCase(s.getServiceUrl())) {
-                // Wrong service
-                continue;
-            }
-            for (Meter m : s.getMeters()) {
-                String layerName = getLayerNameToCompare(m.getLayerName(), isWFS);
-                if (name.equals(layerName)) {
-                    return m;
-                }
-            }
-        }
-        return null;
-    }
-    
-    private static String getLayerNameToCompare(String layerName, boolean isWFS) {
-        // layerName may consist of two parts, separated by a ':', e.g. layerName:layerTarget
-        // For WFS layers we are interested in layerTarget
-        // For other layers the layerName part
-        final int i = layerName.indexOf(':');
-        if (isWFS) {
-            return i < 0 ? null : layerName.substring(i + 1);
-        }
-        return i < 0 ? layerName : layerName.substring(0, i);
-    }
-
     private static BackendStatus getStatus(int mapLayerId, Meter meter) {
         Indicator indicator = meter.getIndicator();
         String statusMessage = indicator.getStatus();
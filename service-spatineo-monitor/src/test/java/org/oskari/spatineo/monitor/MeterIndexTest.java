@@ -0,0 +1,55 @@
+package org.oskari.spatineo.monitor;
+
+import org.junit.Test;
+import org.oskari.spatineo.monitor.api.model.Meter;
+import org.oskari.spatineo.monitor.api.model.Result;
+import org.oskari.spatineo.monitor.api.model.Service;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class MeterIndexTest {
+
+    @Test
+    public void testFind() {
+        Meter wmsMeter = createMeter("layer:target");
+        Meter wfsMeter = createMeter("ns:feature");
+        Meter duplicate = createMeter("layer");
+        MeterIndex index = new MeterIndex(Arrays.asList(
+                createResult(Service.TYPE_WMS, "https://Example.com/wms", wmsMeter, duplicate),
+                createResult(Service.TYPE_WFS, "https://example.com/wfs", wfsMeter),
+                createResult("WMTS", "https://example.com/wmts", createMeter("layer")),
+                new Result()));
+
+        assertEquals(2, index.size());
+        assertSame("Url is compared case-insensitively", wmsMeter, index.find("layer", "https://example.com/WMS", false));
+        assertSame(wfsMeter, index.find("feature", "https://example.com/wfs", true));
+        assertNull("Service type must match", index.find("feature", "https://example.com/wfs", false));
+        assertNull(index.find("target", "https://example.com/wms", false));
+        assertNull(index.find(null, "https://example.com/wms", false));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, new MeterIndex(null).size());
+        assertEquals(0, new MeterIndex(Collections.emptyList()).size());
+    }
+
+    private Meter createMeter(String layerName) {
+        Meter m = new Meter();
+        m.setLayerName(layerName);
+        return m;
+    }
+
+    private Result createResult(String type, String url, Meter... meters) {
+        Service s = new Service();
+        s.setServiceType(type);
+        s.setServiceUrl(url);
+        s.setMeters(Arrays.asList(meters));
+        Result r = new Result();
+        r.setService(s);
+        return r;
+    }
+}
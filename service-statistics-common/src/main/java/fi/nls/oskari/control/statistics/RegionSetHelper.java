@@ -46,12 +46,46 @@ public class RegionSetHelper {
 
     public static List<Region> getRegions(RegionSet regionset, String requestedSRS)
             throws FactoryException, MismatchedDimensionException, TransformException, ServiceException, IOException {
+        return getRegions(regionset, requestedSRS, 0);
+    }
+
+    /**
+     * @param tolerance simplification tolerance in units of requestedSRS, 0 for full resolution
+     */
+    public static List<Region> getRegions(RegionSet regionset, String requestedSRS, double tolerance)
+            throws FactoryException, MismatchedDimensionException, TransformException, ServiceException, IOException {
         SimpleFeatureCollection fc = getFeatureCollection(regionset, requestedSRS);
+        if (tolerance > 0) {
+            fc = simplify(fc, tolerance);
+        }
         final String propId = regionset.getIdProperty();
         final String propName = regionset.getNameProperty();
         return parse(fc, propId, propName);
     }
 
+    /**
+     * Simplifies the geometries of all regions together so shared borders stay aligned
+     */
+    protected static SimpleFeatureCollection simplify(SimpleFeatureCollection fc, double tolerance) {
+        List<SimpleFeature> features = new ArrayList<>();
+        List<Geometry> geometries = new ArrayList<>();
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                features.add(f);
+                geometries.add((Geometry) f.getDefaultGeometry());
+            }
+        }
+        List<Geometry> simplified = RegionSimplifier.simplify(geometries, tolerance);
+        DefaultFeatureCollection result = new DefaultFeatureCollection();
+        for (int i = 0; i < features.size(); i++) {
+            SimpleFeature f = features.get(i);
+            f.setDefaultGeometry(simplified.get(i));
+            result.add(f);
+        }
+        return result;
+    }
+
     protected static SimpleFeatureCollection getFeatureCollection(RegionSet regionset, String requestedSRS)
             throws FactoryException, MismatchedDimensionException, TransformException, ServiceException, IOException {
         String url = regionset.getFeaturesUrl();
@@ -0,0 +1,252 @@
+package fi.nls.oskari.control.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineSegment;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+/**
+ * Simplifies the geometries of a regionset (like municipalities) together so that borders
+ * shared by neighbouring regions are simplified the same way and stay aligned.
+ *
+ * Rings are split at vertices where the set of regions using the vertex changes (junctions
+ * and the ends of shared borders). These vertices are kept and the sections between them are
+ * simplified with Douglas-Peucker in a canonical direction so a shared section gives the same
+ * result regardless of which region it's read from.
+ *
+ * Islands and enclaves that would collapse keep their original coordinates. If any other ring
+ * would collapse or any geometry would become invalid, the original geometries are returned for
+ * the whole regionset: falling back for just one region would leave gaps and overlaps with
+ * its neighbours.
+ *
+ * Limitations: borders are only recognized as shared when the neighbours have exactly the same
+ * vertices on them. Validity is checked per region, so sections of different regions that cross
+ * each other after simplification (for example a narrow bay next to a neighbour's border) are not
+ * detected and can leave small overlaps or gaps between regions.
+ */
+public class RegionSimplifier {
+
+    private static final Logger LOG = LogFactory.getLogger(RegionSimplifier.class);
+
+    private final double tolerance;
+    private final Map<Coordinate, Set<Integer>> owners = new HashMap<>();
+    private final Set<Coordinate> nodes = new HashSet<>();
+    private boolean failed;
+
+    private RegionSimplifier(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @param geometries geometries of the regions, non-polygonal geometries are returned as is
+     * @param tolerance distance tolerance in the units of the geometries
+     * @return simplified geometries in the same order
+     */
+    public static List<Geometry> simplify(List<Geometry> geometries, double tolerance) {
+        if (tolerance <= 0) {
+            return geometries;
+        }
+        RegionSimplifier simplifier = new RegionSimplifier(tolerance);
+        for (int i = 0; i < geometries.size(); i++) {
+            for (Coordinate[] ring : getRings(geometries.get(i))) {
+                simplifier.addOwner(ring, i);
+            }
+        }
+        for (Geometry geom : geometries) {
+            for (Coordinate[] ring : getRings(geom)) {
+                simplifier.findNodes(ring);
+            }
+        }
+        List<Geometry> result = new ArrayList<>(geometries.size());
+        for (Geometry geom : geometries) {
+            result.add(simplifier.simplify(geom));
+            if (simplifier.failed) {
+                LOG.debug("Simplified region geometry is invalid, using the original geometries");
+                return geometries;
+            }
+        }
+        return result;
+    }
+
+    private static List<Coordinate[]> getRings(Geometry geom) {
+        if (!(geom instanceof Polygon || geom instanceof MultiPolygon)) {
+            return Collections.emptyList();
+        }
+        List<Coordinate[]> rings = new ArrayList<>();
+        for (int i = 0; i < geom.getNumGeometries(); i++) {
+            Polygon polygon = (Polygon) geom.getGeometryN(i);
+            rings.add(polygon.getExteriorRing().getCoordinates());
+            for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                rings.add(polygon.getInteriorRingN(j).getCoordinates());
+            }
+        }
+        return rings;
+    }
+
+    private void addOwner(Coordinate[] ring, int owner) {
+        // last coordinate closes the ring
+        for (int i = 0; i < ring.length - 1; i++) {
+            owners.computeIfAbsent(ring[i], __ -> new HashSet<>()).add(owner);
+        }
+    }
+
+    private void findNodes(Coordinate[] ring) {
+        int n = ring.length - 1;
+        if (n < 3) {
+            return;
+        }
+        boolean found = false;
+        Coordinate min = ring[0];
+        for (int i = 0; i < n; i++) {
+            Set<Integer> current = owners.get(ring[i]);
+            if (!current.equals(owners.get(ring[(i + n - 1) % n]))
+                    || !current.equals(owners.get(ring[(i + 1) % n]))) {
+                nodes.add(ring[i]);
+                found = true;
+            }
+            if (ring[i].compareTo(min) < 0) {
+                min = ring[i];
+            }
+        }
+        if (!found) {
+            // islands and enclaves: start from the same vertex on every ring using these coordinates
+            nodes.add(min);
+        }
+    }
+
+    private Geometry simplify(Geometry geom) {
+        if (!(geom instanceof Polygon || geom instanceof MultiPolygon)) {
+            return geom;
+        }
+        GeometryFactory gf = geom.getFactory();
+        Polygon[] polygons = new Polygon[geom.getNumGeometries()];
+        for (int i = 0; i < polygons.length; i++) {
+            Polygon polygon = (Polygon) geom.getGeometryN(i);
+            LinearRing shell = simplify(gf, (LinearRing) polygon.getExteriorRing());
+            LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
+            for (int j = 0; j < holes.length; j++) {
+                holes[j] = simplify(gf, (LinearRing) polygon.getInteriorRingN(j));
+            }
+            polygons[i] = gf.createPolygon(shell, holes);
+        }
+        Geometry simplified = geom instanceof Polygon ? polygons[0] : gf.createMultiPolygon(polygons);
+        if (!simplified.isValid()) {
+            failed = true;
+        }
+        return simplified;
+    }
+
+    private LinearRing simplify(GeometryFactory gf, LinearRing ring) {
+        Coordinate[] coords = ring.getCoordinates();
+        int n = coords.length - 1;
+        List<Integer> nodeIndexes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (nodes.contains(coords[i])) {
+                nodeIndexes.add(i);
+            }
+        }
+        if (nodeIndexes.isEmpty()) {
+            return ring;
+        }
+        List<Coordinate> result = new ArrayList<>();
+        for (int i = 0; i < nodeIndexes.size(); i++) {
+            int start = nodeIndexes.get(i);
+            int end = i + 1 < nodeIndexes.size() ? nodeIndexes.get(i + 1) : nodeIndexes.get(0) + n;
+            Coordinate[] section = new Coordinate[end - start + 1];
+            for (int j = start; j <= end; j++) {
+                section[j - start] = coords[j % n];
+            }
+            Coordinate[] simplified = simplifySection(section);
+            // last coordinate is the first one of the next section
+            result.addAll(Arrays.asList(simplified).subList(0, simplified.length - 1));
+        }
+        result.add(result.get(0));
+        if (result.size() < 4) {
+            // a ring with a single node is simplified the same way on every region using it
+            failed |= nodeIndexes.size() > 1;
+            return ring;
+        }
+        return gf.createLinearRing(result.toArray(new Coordinate[0]));
+    }
+
+    private Coordinate[] simplifySection(Coordinate[] section) {
+        if (section.length < 3) {
+            return section;
+        }
+        boolean reverse = isReversed(section);
+        Coordinate[] pts = section;
+        if (reverse) {
+            pts = section.clone();
+            Collections.reverse(Arrays.asList(pts));
+        }
+        Coordinate[] simplified = douglasPeucker(pts);
+        if (reverse) {
+            Collections.reverse(Arrays.asList(simplified));
+        }
+        return simplified;
+    }
+
+    private static boolean isReversed(Coordinate[] section) {
+        int cmp = section[0].compareTo(section[section.length - 1]);
+        if (cmp != 0) {
+            return cmp > 0;
+        }
+        // closed section
+        return section[1].compareTo(section[section.length - 2]) > 0;
+    }
+
+    private Coordinate[] douglasPeucker(Coordinate[] pts) {
+        boolean[] keep = new boolean[pts.length];
+        keep[0] = true;
+        keep[pts.length - 1] = true;
+        LineSegment seg = new LineSegment();
+        int[] stack = new int[pts.length * 2];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = pts.length - 1;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            seg.setCoordinates(pts[start], pts[end]);
+            double maxDistance = -1;
+            int maxIndex = -1;
+            for (int i = start + 1; i < end; i++) {
+                double d = seg.distance(pts[i]);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    maxIndex = i;
+                }
+            }
+            if (maxIndex != -1 && maxDistance > tolerance) {
+                keep[maxIndex] = true;
+                stack[top++] = start;
+                stack[top++] = maxIndex;
+                stack[top++] = maxIndex;
+                stack[top++] = end;
+            }
+        }
+        List<Coordinate> result = new ArrayList<>();
+        for (int i = 0; i < pts.length; i++) {
+            if (keep[i]) {
+                result.add(pts[i]);
+            }
+        }
+        return result.toArray(new Coordinate[0]);
+    }
+
+}
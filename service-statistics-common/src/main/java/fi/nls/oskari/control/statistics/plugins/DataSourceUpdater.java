@@ -45,6 +45,9 @@ public abstract class DataSourceUpdater implements Runnable {
         DataStatus status = plugin.getStatus();
         status.finishUpdate();
         JedisManager.setex(plugin.getStatusKey(), JedisManager.EXPIRY_TIME_DAY * 7, status.toString());
+        // cached data might be outdated after update, old keys expire on their own
+        JedisManager.invalidateGeneration(
+                StatisticalDatasourcePlugin.getIndicatorDataCacheNamespace(plugin.getSource().getId()));
     }
 
     /**
@@ -3,6 +3,8 @@ package fi.nls.oskari.control.statistics.plugins;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.statistics.data.*;
 import fi.nls.oskari.control.statistics.plugins.db.StatisticalDatasource;
@@ -10,6 +12,7 @@ import fi.nls.oskari.domain.User;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -66,6 +69,14 @@ public abstract class StatisticalDatasourcePlugin {
     // update at most 4 datasources at a time
     private static final ExecutorService UPDATE_SCHEDULER = Executors.newFixedThreadPool(4);
 
+    // deserialized indicator metadata in front of Redis, keyed by the Redis key
+    private static final Cache<StatisticalIndicator> INDICATOR_CACHE =
+            CacheManager.getCache(StatisticalDatasourcePlugin.class.getName() + ".indicators");
+    static {
+        INDICATOR_CACHE.setLimit(500);
+        INDICATOR_CACHE.setExpiration(PropertyUtil.getOptional("statistics.indicator.cache.expiration", 1800) * 1000L);
+    }
+
     /**
      * This is called when datasource should start processing the indicators. Processed indicators
      */
@@ -174,26 +185,67 @@ public abstract class StatisticalDatasourcePlugin {
         return set;
     }
 
+    /**
+     * Returns the indicator from an in-memory cache or from Redis. Cached indicators are shared
+     * between requests so callers must not modify the returned object.
+     * @return indicator or null if not found or user doesn't have permission to it
+     */
     public StatisticalIndicator getIndicator(User user, String indicatorId) {
+        final String key = getIndicatorMetadataKey(indicatorId);
+        StatisticalIndicator indicator = INDICATOR_CACHE.get(key);
+        if (indicator == null) {
+            indicator = readIndicator(key);
+            if (indicator == null) {
+                return null;
+            }
+            INDICATOR_CACHE.put(key, indicator);
+        }
+        if (hasPermission(indicator, user)) {
+            return indicator;
+        }
+        LOG.error("User doesn't have permissions to indicator ", indicatorId);
+        return null;
+    }
+
+    private StatisticalIndicator readIndicator(String key) {
+        String json = JedisManager.get(key);
+        if (json == null) {
+            LOG.info("Indicator metadata not found:", key);
+            return null;
+        }
         try {
-            String json = JedisManager.get(getIndicatorMetadataKey(indicatorId));
             StatisticalIndicator indicator = MAPPER.readValue(json, StatisticalIndicator.class);
-            if(hasPermission(indicator, user)) {
-                // sort dimensions etc
-                try {
-                    handleHints(indicator);
-                } catch (Exception ex) {
-                    LOG.info("Problem handling hints for indicator");
-                }
-                return indicator;
+            // sort dimensions etc
+            try {
+                handleHints(indicator);
+            } catch (Exception ex) {
+                LOG.info("Problem handling hints for indicator");
             }
-            LOG.error("User doesn't have permissions to indicator ", indicatorId);
+            return indicator;
         } catch (IOException ex) {
-            LOG.error(ex, "Couldn't read indicator data for is:", indicatorId);
+            LOG.error(ex, "Couldn't read indicator data for key:", key);
         }
         return null;
     }
 
+    /**
+     * @return number of getIndicator() calls served from the in-memory cache
+     */
+    public static long getIndicatorCacheHits() {
+        return INDICATOR_CACHE.getHitCount();
+    }
+
+    /**
+     * @return number of getIndicator() calls that needed to read the indicator from Redis
+     */
+    public static long getIndicatorCacheMisses() {
+        return INDICATOR_CACHE.getMissCount();
+    }
+
+    public static long getIndicatorCacheSize() {
+        return INDICATOR_CACHE.getSize();
+    }
+
     /**
      * Datasource config can have hints like this to for example sort out allowed values:
      * {
@@ -239,7 +291,10 @@ public abstract class StatisticalDatasourcePlugin {
     private void writeToCache(StatisticalIndicator indicator) {
         try {
             String json = MAPPER.writeValueAsString(indicator);
-            JedisManager.setex(getIndicatorMetadataKey(indicator.getId()), JedisManager.EXPIRY_TIME_DAY * 7, json);
+            String key = getIndicatorMetadataKey(indicator.getId());
+            JedisManager.setex(key, JedisManager.EXPIRY_TIME_DAY * 7, json);
+            // drops the cached copy on this node and notifies other nodes in a clustered env
+            INDICATOR_CACHE.remove(key);
         } catch (JsonProcessingException ex) {
             LOG.error(ex, "Error updating indicator metadata");
         }
@@ -276,6 +331,14 @@ public abstract class StatisticalDatasourcePlugin {
         return CACHE_PREFIX + getSource().getId() + CACHE_POSTFIX_METADATA + id;
     }
 
+    /**
+     * Returns the namespace for cached indicator data of a datasource. Keys in it are prefixed with
+     * a generation (see JedisManager.getGenerationPrefix()) that is incremented when the datasource is updated.
+     */
+    public static String getIndicatorDataCacheNamespace(long datasourceId) {
+        return CACHE_PREFIX + datasourceId + ":data:";
+    }
+
     /**
      * Returns a Redis key that should status information as JSON for this datasource:
      * { complete : [true|false], updateStart : [timestamp], lastUpdate : [timestamp] }
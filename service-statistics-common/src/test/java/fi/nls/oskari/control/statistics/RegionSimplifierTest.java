@@ -0,0 +1,87 @@
+package fi.nls.oskari.control.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+public class RegionSimplifierTest {
+
+    private static final GeometryFactory GF = new GeometryFactory();
+
+    @Test
+    public void testSharedBorderStaysAligned() {
+        // two squares sharing a jagged border along x=10
+        Coordinate[] border = new Coordinate[21];
+        for (int i = 0; i <= 20; i++) {
+            border[i] = new Coordinate(10 + (i % 2 == 0 ? 0 : 0.1 * (i % 4 == 1 ? 1 : -1)), i * 0.5);
+        }
+        Geometry left = polygon(border, 0);
+        Geometry right = polygon(border, 20);
+
+        List<Geometry> simplified = RegionSimplifier.simplify(Arrays.asList(left, right), 0.5);
+        Geometry l = simplified.get(0);
+        Geometry r = simplified.get(1);
+
+        assertTrue(l.isValid());
+        assertTrue(r.isValid());
+        assertTrue(l.getNumPoints() < left.getNumPoints());
+        assertTrue(r.getNumPoints() < right.getNumPoints());
+        // no gaps or overlaps between the regions
+        assertEquals(0, l.intersection(r).getArea(), 1e-9);
+        assertEquals(left.union(right).getArea(), l.union(r).getArea(), 1e-9);
+    }
+
+    @Test
+    public void testInvalidRegionKeepsRegionsetAligned() {
+        // the border bulges to the right by less than the tolerance and the left region
+        // has a hole inside the bulge that the straightened border would leave outside
+        Coordinate[] border = {
+                new Coordinate(10, 0), new Coordinate(10.4, 5), new Coordinate(10, 10) };
+        LinearRing hole = GF.createLinearRing(new Coordinate[] {
+                new Coordinate(10.1, 4.8), new Coordinate(10.3, 4.8), new Coordinate(10.3, 5.2),
+                new Coordinate(10.1, 5.2), new Coordinate(10.1, 4.8) });
+        Polygon shell = (Polygon) polygon(border, 0);
+        Geometry left = GF.createPolygon((LinearRing) shell.getExteriorRing(), new LinearRing[] { hole });
+        Geometry right = polygon(border, 20);
+        assertTrue(left.isValid());
+
+        List<Geometry> simplified = RegionSimplifier.simplify(Arrays.asList(left, right), 0.5);
+        Geometry l = simplified.get(0);
+        Geometry r = simplified.get(1);
+        assertTrue(l.isValid());
+        assertTrue(r.isValid());
+        // no gaps or overlaps between the regions
+        assertEquals(0, l.intersection(r).getArea(), 1e-9);
+        assertEquals(left.union(right).getArea(), l.union(r).getArea(), 1e-9);
+    }
+
+    @Test
+    public void testFullResolution() {
+        List<Geometry> geometries = Arrays.asList(polygon(new Coordinate[] {
+                new Coordinate(10, 0), new Coordinate(10, 10) }, 0));
+        assertTrue(geometries == RegionSimplifier.simplify(geometries, 0));
+    }
+
+    private static Geometry polygon(Coordinate[] border, double x) {
+        Coordinate[] ring = new Coordinate[border.length + 3];
+        for (int i = 0; i < border.length; i++) {
+            ring[i] = border[i];
+        }
+        double top = border[border.length - 1].y;
+        ring[border.length] = new Coordinate(x, top);
+        ring[border.length + 1] = new Coordinate(x, 0);
+        ring[border.length + 2] = border[0];
+        Geometry polygon = GF.createPolygon(ring);
+        return polygon.isValid() ? polygon : polygon.reverse();
+    }
+
+}
@@ -0,0 +1,122 @@
+package fi.nls.oskari.control.statistics.plugins;
+
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.control.statistics.data.IndicatorValue;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicator;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicatorDataModel;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicatorLayer;
+import fi.nls.oskari.control.statistics.plugins.db.StatisticalDatasource;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.util.IOHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.oskari.cluster.ClusterClient;
+import org.oskari.cluster.ClusterManager;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.ArgumentMatchers.eq;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({JedisManager.class, ClusterManager.class})
+@PowerMockIgnore({"javax.management.*"})
+public class StatisticalDatasourcePluginTest {
+
+    private static final String CACHE_NAME = StatisticalDatasourcePlugin.class.getName() + ".indicators";
+
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private ClusterClient cluster;
+    private String indicatorJSON;
+
+    @Before
+    public void setUp() throws Exception {
+        indicatorJSON = IOHelper.readString(getClass().getResourceAsStream("indicator_full.json"));
+
+        PowerMockito.mockStatic(JedisManager.class);
+        PowerMockito.when(JedisManager.get(anyString())).thenAnswer(inv -> redis.get(inv.<String>getArgument(0)));
+        PowerMockito.when(JedisManager.setex(anyString(), anyInt(), anyString())).thenAnswer(inv ->
+                redis.put(inv.getArgument(0), inv.getArgument(2)));
+
+        cluster = Mockito.mock(ClusterClient.class);
+        PowerMockito.mockStatic(ClusterManager.class);
+        PowerMockito.when(ClusterManager.isClustered()).thenReturn(true);
+        PowerMockito.when(ClusterManager.getClientFor(anyString())).thenReturn(cluster);
+    }
+
+    @Test
+    public void testIndicatorIsCached() {
+        StatisticalDatasourcePlugin plugin = plugin(1);
+        String key = plugin.getIndicatorMetadataKey("3056");
+        redis.put(key, indicatorJSON);
+        long hits = StatisticalDatasourcePlugin.getIndicatorCacheHits();
+        long misses = StatisticalDatasourcePlugin.getIndicatorCacheMisses();
+
+        StatisticalIndicator first = plugin.getIndicator(new User(), "3056");
+        assertNotNull(first);
+        assertEquals("3056", first.getId());
+        assertEquals(hits, StatisticalDatasourcePlugin.getIndicatorCacheHits());
+        assertEquals(misses + 1, StatisticalDatasourcePlugin.getIndicatorCacheMisses());
+
+        assertSame("Second call is served from memory", first, plugin.getIndicator(new User(), "3056"));
+        assertEquals(hits + 1, StatisticalDatasourcePlugin.getIndicatorCacheHits());
+        assertEquals(misses + 1, StatisticalDatasourcePlugin.getIndicatorCacheMisses());
+        PowerMockito.verifyStatic(JedisManager.class, Mockito.times(1));
+        JedisManager.get(key);
+
+        assertNull("Unknown indicator", plugin.getIndicator(new User(), "missing"));
+        assertEquals(misses + 2, StatisticalDatasourcePlugin.getIndicatorCacheMisses());
+        assertTrue(StatisticalDatasourcePlugin.getIndicatorCacheSize() >= 1);
+    }
+
+    @Test
+    public void testProcessedIndicatorReplacesCached() {
+        StatisticalDatasourcePlugin plugin = plugin(2);
+        String key = plugin.getIndicatorMetadataKey("3056");
+        redis.put(key, indicatorJSON);
+
+        StatisticalIndicator cached = plugin.getIndicator(new User(), "3056");
+        assertSame(cached, plugin.getIndicator(new User(), "3056"));
+
+        plugin.onIndicatorProcessed(cached);
+        assertNotNull("Indicator is written to Redis", redis.get(key));
+
+        // other nodes are told to drop their copy
+        Mockito.verify(cluster).sendBatched(eq(CACHE_NAME), endsWith(key));
+        StatisticalIndicator reloaded = plugin.getIndicator(new User(), "3056");
+        assertNotNull(reloaded);
+        assertNotSame("Indicator is read again after processing", cached, reloaded);
+        assertSame(reloaded, plugin.getIndicator(new User(), "3056"));
+        PowerMockito.verifyStatic(JedisManager.class, Mockito.times(2));
+        JedisManager.get(key);
+    }
+
+    private static StatisticalDatasourcePlugin plugin(long id) {
+        StatisticalDatasource source = new StatisticalDatasource();
+        source.setId(id);
+        StatisticalDatasourcePlugin plugin = new StatisticalDatasourcePlugin() {
+            @Override
+            public void update() {
+            }
+
+            @Override
+            public Map<String, IndicatorValue> getIndicatorValues(StatisticalIndicator indicator,
+                                                                  StatisticalIndicatorDataModel params,
+                                                                  StatisticalIndicatorLayer regionset) {
+                return null;
+            }
+        };
+        plugin.init(source);
+        return plugin;
+    }
+}
@@ -1,5 +1,7 @@
 package fi.nls.oskari.control.statistics.plugins.pxweb;
 
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.ComputeOnceCache;
 import fi.nls.oskari.control.statistics.data.*;
 import fi.nls.oskari.control.statistics.plugins.APIException;
 import fi.nls.oskari.control.statistics.plugins.StatisticalDatasourcePlugin;
@@ -20,6 +22,7 @@ import java.net.HttpURLConnection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class PxwebStatisticalDatasourcePlugin extends StatisticalDatasourcePlugin {
 
@@ -27,6 +30,11 @@ public class PxwebStatisticalDatasourcePlugin extends StatisticalDatasourcePlugi
     private PxwebIndicatorsParser indicatorsParser;
     private static final ValueProcessor DEFAULT_PROCESSOR = new ValueProcessor();
     private Map<String, ValueProcessor> processors = new HashMap<>();
+    // Parsed responses keyed by url + query. Regions are always requested with "*" so the same response
+    // can be used for all regionsets sharing the table.
+    private static final ComputeOnceCache<PxwebDataset> DATASET_CACHE = CacheManager.getCache(
+            PxwebStatisticalDatasourcePlugin.class.getName() + ".datasets",
+            () -> new ComputeOnceCache<>(50, TimeUnit.HOURS.toMillis(1)));
 
     private PxwebConfig config;
 
@@ -171,6 +179,28 @@ public class PxwebStatisticalDatasourcePlugin extends StatisticalDatasourcePlugi
                 .findFirst()
                 .orElseThrow(() -> new ServiceRuntimeException("Invalid regionset: " + regionset.getOskariLayerId()));
         ValueProcessor processor = getValueProcessor(layer);
+        final String cacheKey = url + "|" + payload.toString();
+        PxwebDataset dataset;
+        try {
+            dataset = DATASET_CACHE.get(cacheKey, __ -> fetchDataset(url, payload, regionKey));
+        } catch (APIException e) {
+            LOG.info("Tried querying url:\n", url, "\n with payload:\n", payload);
+            throw e;
+        }
+        JSONArray names = dataset.regionIndex.names();
+        for (int i = 0; i < names.length(); ++i) {
+            String region = names.optString(i);
+            processor.getRegionValue(dataset.values, region, dataset.regionIndex.optInt(region), layer)
+                .ifPresent(v -> values.put(v.getRegion(), v.getValue()));
+        }
+
+        return values;
+    }
+
+    /**
+     * Requests the dataset from the Pxweb API. Results are cached by getIndicatorValues().
+     */
+    PxwebDataset fetchDataset(String url, JSONObject payload, String regionKey) {
         try {
             final HttpURLConnection con = IOHelper.getConnection(url);
             IOHelper.writeHeader(con, IOHelper.HEADER_CONTENTTYPE, IOHelper.CONTENT_TYPE_JSON + ";  charset=utf-8");
@@ -188,18 +218,23 @@ public class PxwebStatisticalDatasourcePlugin extends StatisticalDatasourcePlugi
             //dataset.dimension.Alue.category.index -> key==region id & value == index pointer to dataset.value
             JSONObject stats = json.optJSONObject("dataset").optJSONObject("dimension").optJSONObject(regionKey).optJSONObject("category").optJSONObject("index");
             JSONArray responseValues = json.optJSONObject("dataset").optJSONArray("value");
-            JSONArray names = stats.names();
-            for (int i = 0; i < names.length(); ++i) {
-                String region = names.optString(i);
-                processor.getRegionValue(responseValues, region, stats.optInt(region), layer)
-                    .ifPresent(v -> values.put(v.getRegion(), v.getValue()));
-            }
+            return new PxwebDataset(stats, responseValues);
         } catch (IOException e) {
-            LOG.info("Tried querying url:\n", url, "\n with payload:\n", payload);
             throw new APIException("Couldn't get data from service/parsing failed", e);
         }
+    }
 
-        return values;
+    /**
+     * Region index and values of a json-stat response. Shared between requests, not modified after creation.
+     */
+    static class PxwebDataset {
+        private final JSONObject regionIndex;
+        private final JSONArray values;
+
+        PxwebDataset(JSONObject regionIndex, JSONArray values) {
+            this.regionIndex = regionIndex;
+            this.values = values;
+        }
     }
 
     private String createUrl(String baseUrl, String pathId) {
@@ -0,0 +1,123 @@
+package fi.nls.oskari.control.statistics.plugins.pxweb;
+
+import fi.nls.oskari.control.statistics.data.IndicatorValue;
+import fi.nls.oskari.control.statistics.data.IndicatorValueFloat;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicator;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicatorDataDimension;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicatorDataModel;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicatorLayer;
+import fi.nls.oskari.control.statistics.plugins.db.DatasourceLayer;
+import fi.nls.oskari.control.statistics.plugins.db.StatisticalDatasource;
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PxwebStatisticalDatasourcePluginTest {
+
+    private static final long LAYER_ID = 9;
+
+    @Test
+    public void testConcurrentRequestsFetchOnce() throws Exception {
+        CountingPlugin plugin = new CountingPlugin(200);
+        final CountDownLatch start = new CountDownLatch(1);
+        final int threads = 6;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Map<String, IndicatorValue>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return plugin.getIndicatorValues(indicator("table.px"), params("2015"),
+                            regionset("http://concurrent.example.com"));
+                }));
+            }
+            start.countDown();
+            for (Future<Map<String, IndicatorValue>> result : results) {
+                Map<String, IndicatorValue> values = result.get();
+                assertEquals(2, values.size());
+                assertEquals(1.5, ((IndicatorValueFloat) values.get("091")).getDouble(), 0.0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Dataset is fetched once", 1, plugin.fetches.get());
+    }
+
+    @Test
+    public void testCacheKey() {
+        CountingPlugin plugin = new CountingPlugin(0);
+        final String url = "http://keys.example.com";
+        plugin.getIndicatorValues(indicator("table.px"), params("2015"), regionset(url));
+        plugin.getIndicatorValues(indicator("table.px"), params("2015"), regionset(url));
+        assertEquals(1, plugin.fetches.get());
+
+        plugin.getIndicatorValues(indicator("other.px"), params("2015"), regionset(url));
+        assertEquals("Different table", 2, plugin.fetches.get());
+        plugin.getIndicatorValues(indicator("table.px"), params("2016"), regionset(url));
+        assertEquals("Different payload", 3, plugin.fetches.get());
+        plugin.getIndicatorValues(indicator("table.px"), params("2015"), regionset("http://other.example.com"));
+        assertEquals("Different service", 4, plugin.fetches.get());
+        assertEquals(4, plugin.requests.size());
+    }
+
+    private static StatisticalIndicator indicator(String id) {
+        StatisticalIndicator indicator = new StatisticalIndicator();
+        indicator.setId(id);
+        return indicator;
+    }
+
+    private static StatisticalIndicatorDataModel params(String year) {
+        StatisticalIndicatorDataModel params = new StatisticalIndicatorDataModel();
+        params.addDimension(new StatisticalIndicatorDataDimension("Vuosi", year));
+        return params;
+    }
+
+    private static StatisticalIndicatorLayer regionset(String baseUrl) {
+        StatisticalIndicatorLayer regionset = new StatisticalIndicatorLayer(LAYER_ID, "table.px");
+        regionset.addParam("baseUrl", baseUrl);
+        return regionset;
+    }
+
+    private static class CountingPlugin extends PxwebStatisticalDatasourcePlugin {
+        private final AtomicInteger fetches = new AtomicInteger();
+        private final Map<String, String> requests = new ConcurrentHashMap<>();
+        private final long delay;
+
+        CountingPlugin(long delay) {
+            this.delay = delay;
+            DatasourceLayer layer = new DatasourceLayer();
+            layer.setMaplayerId(LAYER_ID);
+            StatisticalDatasource source = new StatisticalDatasource();
+            source.setId(1);
+            source.setConfig("{\"url\": \"http://example.com\", \"regionKey\": \"Alue\"}");
+            source.setLayers(Collections.singletonList(layer));
+            init(source);
+        }
+
+        @Override
+        PxwebDataset fetchDataset(String url, JSONObject payload, String regionKey) {
+            fetches.incrementAndGet();
+            requests.put(url + "|" + payload, regionKey);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            return new PxwebDataset(JSONHelper.createJSONObject("{\"091\": 0, \"049\": 1}"),
+                    JSONHelper.createJSONArray("[1.5, 2.5]"));
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package fi.nls.oskari.control.statistics.plugins.sotka;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.ComputeOnceCache;
 import fi.nls.oskari.control.statistics.data.IndicatorValueFloat;
 import fi.nls.oskari.control.statistics.plugins.sotka.requests.IndicatorDataJSON;
 import fi.nls.oskari.service.ServiceRuntimeException;
@@ -28,9 +32,14 @@ import org.json.JSONObject;
 public class SotkaIndicatorValuesFetcher {
     private SotkaRegionParser regionParser;
     private SotkaConfig config;
+    // Values for all region categories keyed by url, indicator and selectors so switching between
+    // regionsets doesn't require fetching the data again.
+    private static final ComputeOnceCache<Map<Integer, IndicatorValue>> ALL_REGIONS_CACHE = CacheManager.getCache(
+            SotkaIndicatorValuesFetcher.class.getName(),
+            () -> new ComputeOnceCache<>(100, TimeUnit.HOURS.toMillis(1)));
 
     public void init(SotkaConfig config) {
-        this.config = config;
+        setConfig(config);
         // We need to filter by region category and index by codes. Codes are unique within
         if (this.regionParser == null) {
             this.regionParser = new SotkaRegionParser(config);
@@ -38,6 +47,13 @@ public class SotkaIndicatorValuesFetcher {
         regionParser.getData();
     }
 
+    /**
+     * Sets the config without loading the regions
+     */
+    void setConfig(SotkaConfig config) {
+        this.config = config;
+    }
+
     /**
      * @param selectors        Used to query SotkaNET with.
      * @param indicator        The indicator we want.
@@ -72,14 +88,13 @@ public class SotkaIndicatorValuesFetcher {
     /**
      * This returns the indicator data for all the layers, for every region category, from "maakunta" to "kunta", etc.
      * Note: Indexed by id, because id is unique, code is not.
+     * The result is cached and shared between requests so it's not modifiable.
      *
      * @param selectors
      * @param indicator
      * @return
      */
     protected Map<Integer, IndicatorValue> fetchDataForAllRegionsets(StatisticalIndicatorDataModel selectors, String indicator) {
-        SotkaRequest request = SotkaRequest.getInstance(IndicatorDataJSON.NAME);
-        request.setBaseURL(config.getUrl());
         // If there is no defined values for gender or year, we will use "total" and an empty list.
         String gender = "total";
         List<String> years = new ArrayList<>();
@@ -96,11 +111,23 @@ public class SotkaIndicatorValuesFetcher {
                 default:
             }
         }
+        final String cacheKey = config.getUrl() + "|" + indicator + "|" + gender + "|" + String.join(",", years);
+        final String selectedGender = gender;
+        return ALL_REGIONS_CACHE.get(cacheKey,
+                __ -> Collections.unmodifiableMap(fetchData(indicator, selectedGender, years)));
+    }
+
+    /**
+     * Requests the values from SotkaNET
+     * @return values indexed by region id
+     */
+    protected Map<Integer, IndicatorValue> fetchData(String indicator, String gender, List<String> years) {
+        SotkaRequest request = SotkaRequest.getInstance(IndicatorDataJSON.NAME);
+        request.setBaseURL(config.getUrl());
+        request.setGender(gender);
+        request.setYears(years.toArray(new String[years.size()]));
+        request.setIndicator(indicator);
         try {
-            request.setGender(gender);
-            String[] yearsArray = years.toArray(new String[years.size()]);
-            request.setYears(yearsArray);
-            request.setIndicator(indicator);
             return parseJSON(request.getData());
         } catch (JSONException e) {
             throw new APIException("Something went wrong parsing JSON from SotkaNET getIndicatorValues API.", e);
@@ -0,0 +1,106 @@
+package fi.nls.oskari.control.statistics.plugins.sotka;
+
+import fi.nls.oskari.control.statistics.data.IndicatorValue;
+import fi.nls.oskari.control.statistics.data.IndicatorValueFloat;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicatorDataDimension;
+import fi.nls.oskari.control.statistics.data.StatisticalIndicatorDataModel;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SotkaIndicatorValuesFetcherTest {
+
+    @Test
+    public void testConcurrentRequestsFetchOnce() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher("http://concurrent.example.com", 200);
+        StatisticalIndicatorDataModel selectors = selectors("total", "2015");
+        final CountDownLatch start = new CountDownLatch(1);
+        final int threads = 6;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Map<Integer, IndicatorValue>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return fetcher.fetchDataForAllRegionsets(selectors, "4");
+                }));
+            }
+            start.countDown();
+            Map<Integer, IndicatorValue> first = results.get(0).get();
+            for (Future<Map<Integer, IndicatorValue>> result : results) {
+                assertSame("Requests share the fetched values", first, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Values are fetched once", 1, fetcher.fetches.get());
+    }
+
+    @Test
+    public void testCacheKey() {
+        CountingFetcher fetcher = new CountingFetcher("http://keys.example.com", 0);
+        Map<Integer, IndicatorValue> values = fetcher.fetchDataForAllRegionsets(selectors("total", "2015"), "4");
+        assertSame(values, fetcher.fetchDataForAllRegionsets(selectors("total", "2015"), "4"));
+        assertEquals(1, fetcher.fetches.get());
+
+        fetcher.fetchDataForAllRegionsets(selectors("total", "2015"), "5");
+        assertEquals("Different indicator", 2, fetcher.fetches.get());
+        fetcher.fetchDataForAllRegionsets(selectors("male", "2015"), "4");
+        assertEquals("Different gender", 3, fetcher.fetches.get());
+        fetcher.fetchDataForAllRegionsets(selectors("total", "2016"), "4");
+        assertEquals("Different year", 4, fetcher.fetches.get());
+        fetcher.fetchDataForAllRegionsets(new StatisticalIndicatorDataModel(), "4");
+        assertEquals("No selectors", 5, fetcher.fetches.get());
+
+        CountingFetcher other = new CountingFetcher("http://other.example.com", 0);
+        other.fetchDataForAllRegionsets(selectors("total", "2015"), "4");
+        assertEquals("Different service", 1, other.fetches.get());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCachedValuesAreUnmodifiable() {
+        CountingFetcher fetcher = new CountingFetcher("http://unmodifiable.example.com", 0);
+        fetcher.fetchDataForAllRegionsets(selectors("total", "2015"), "4").clear();
+    }
+
+    private static StatisticalIndicatorDataModel selectors(String gender, String year) {
+        StatisticalIndicatorDataModel selectors = new StatisticalIndicatorDataModel();
+        selectors.addDimension(new StatisticalIndicatorDataDimension("sex", gender));
+        selectors.addDimension(new StatisticalIndicatorDataDimension("year", year));
+        return selectors;
+    }
+
+    private static class CountingFetcher extends SotkaIndicatorValuesFetcher {
+        private final AtomicInteger fetches = new AtomicInteger();
+        private final long delay;
+
+        CountingFetcher(String url, long delay) {
+            this.delay = delay;
+            SotkaConfig config = new SotkaConfig(new JSONObject(), 1);
+            config.setUrl(url);
+            setConfig(config);
+        }
+
+        @Override
+        protected Map<Integer, IndicatorValue> fetchData(String indicator, String gender, List<String> years) {
+            fetches.incrementAndGet();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.singletonMap(231, new IndicatorValueFloat(3.4));
+        }
+    }
+}
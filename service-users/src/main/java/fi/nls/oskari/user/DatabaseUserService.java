@@ -95,19 +95,21 @@ public class DatabaseUserService extends UserService {
     @Override
     public List<User> getUsersWithRoles() throws ServiceException {
         log.info("getUsersWithRoles");
-        List<User> users = userService.findAll();
-        
-        List<User> newUserList = new ArrayList<User>();
-        
-        for(User user : users){
-        	log.debug("userid: " + user.getId());
-        	List<Role> roles = roleService.findByUserId(user.getId());
-        	Set<Role> hashsetRoles = new HashSet<Role>(roles);
-        	user.setRoles(hashsetRoles);
-        	newUserList.add(user);
+        return getUsersWithRoles(-1, 0, null);
+    }
+
+    @Override
+    public List<User> getUsersWithRoles(int limit, int offset, String search) throws ServiceException {
+        List<User> users = userService.findAllWithRoles(limit, offset, search);
+        if (users == null) {
+            throw new ServiceException("Unable to list users");
         }
-        
-        return newUserList;
+        return users;
+    }
+
+    @Override
+    public int getUserCount(String search) throws ServiceException {
+        return userService.countUsers(search);
     }
 
     @Override
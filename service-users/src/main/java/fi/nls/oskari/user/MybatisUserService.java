@@ -37,12 +37,17 @@ public class MybatisUserService {
         factory = initializeMyBatis(dataSource);
     }
 
+    public MybatisUserService(DataSource dataSource) {
+        factory = initializeMyBatis(dataSource);
+    }
+
     private SqlSessionFactory initializeMyBatis(final DataSource dataSource) {
         final TransactionFactory transactionFactory = new JdbcTransactionFactory();
         final Environment environment = new Environment("development", transactionFactory, dataSource);
 
         final Configuration configuration = new Configuration(environment);
         configuration.getTypeAliasRegistry().registerAlias(User.class);
+        configuration.getTypeAliasRegistry().registerAlias(Role.class);
         configuration.setLazyLoadingEnabled(true);
         configuration.addMapper(UsersMapper.class);
 
@@ -65,6 +70,60 @@ public class MybatisUserService {
         return userList;
     }
 
+    /**
+     * Finds users with their roles in a single query.
+     * @param limit max number of users to return, -1 for all
+     * @param offset number of users to skip
+     * @param search optional text to match against username, names and email
+     */
+    public List<User> findAllWithRoles(int limit, int offset, String search) {
+        final SqlSession session = factory.openSession();
+        List<User> userList = null;
+        try {
+            log.debug("Find users with roles. Limit:", limit, "offset:", offset, "search:", search);
+            final UsersMapper mapper = session.getMapper(UsersMapper.class);
+            final Map<String, Object> params = getSearchParams(search);
+            if (limit > -1) {
+                params.put("limit", limit);
+            }
+            if (offset > 0) {
+                params.put("offset", offset);
+            }
+            userList = mapper.findAllWithRoles(params);
+        } catch (Exception e) {
+            log.warn(e, "Exception when trying to find users with roles");
+        } finally {
+            session.close();
+        }
+        return userList;
+    }
+
+    public int countUsers(String search) {
+        final SqlSession session = factory.openSession();
+        int count = 0;
+        try {
+            final UsersMapper mapper = session.getMapper(UsersMapper.class);
+            count = mapper.countUsers(getSearchParams(search));
+        } catch (Exception e) {
+            log.warn(e, "Exception when trying to count users");
+        } finally {
+            session.close();
+        }
+        return count;
+    }
+
+    private Map<String, Object> getSearchParams(String search) {
+        final Map<String, Object> params = new HashMap<>();
+        if (search != null && !search.trim().isEmpty()) {
+            String escaped = search.trim().toLowerCase()
+                    .replace("\\", "\\\\")
+                    .replace("%", "\\%")
+                    .replace("_", "\\_");
+            params.put("search", "%" + escaped + "%");
+        }
+        return params;
+    }
+
     public Long addUser(User user) {
         final SqlSession session = factory.openSession();
         try {
@@ -7,6 +7,8 @@ import java.util.Map;
 
 public interface UsersMapper {
     List<User> findAll();
+    List<User> findAllWithRoles(Map<String, Object> params);
+    int countUsers(Map<String, Object> params);
     Long addUser(User user);
     void updateUser(User user);
     User find(long id);
@@ -0,0 +1,86 @@
+package fi.nls.oskari.user;
+
+import fi.nls.oskari.domain.Role;
+import fi.nls.oskari.domain.User;
+import fi.nls.test.util.ResourceHelper;
+import fi.nls.test.util.TestHelper;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MybatisUserServiceTest {
+
+    private static MybatisUserService service;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        List<String> sqls = ResourceHelper.readSqlStatements(MybatisUserServiceTest.class, "/users_ddl.sql");
+        DataSource ds = TestHelper.createMemDBforUnitTest(sqls);
+        try (Connection c = ds.getConnection();
+             Statement s = c.createStatement()) {
+            // roles: 1 = Admin, 2 = User
+            addUser(s, 1, "alice", "Alice", "Smith", 1, 2);
+            addUser(s, 2, "bob", "Bob", "Jones", 2);
+            addUser(s, 3, "carol", "Carol", "Smith");
+            addUser(s, 4, "dave_x", "Dave", "Brown", 2);
+        }
+        service = new MybatisUserService(ds);
+    }
+
+    private static void addUser(Statement s, long id, String name, String first, String last, long... roles)
+            throws Exception {
+        s.execute("INSERT INTO oskari_users (id, user_name, first_name, last_name, email, uuid) VALUES ("
+                + id + ", '" + name + "', '" + first + "', '" + last + "', '" + name + "@example.com', 'uuid-" + id + "')");
+        for (long role : roles) {
+            s.execute("INSERT INTO oskari_users_roles (user_id, role_id) VALUES (" + id + ", " + role + ")");
+        }
+    }
+
+    @Test
+    public void testFindAllWithRoles() {
+        List<User> users = service.findAllWithRoles(-1, 0, null);
+        assertEquals("[alice, bob, carol, dave_x]", names(users).toString());
+        assertEquals("[Admin, User]", roles(users.get(0)).toString());
+        assertEquals("[User]", roles(users.get(1)).toString());
+        assertTrue("User without roles is listed", users.get(2).getRoles().isEmpty());
+        assertEquals(4, service.countUsers(null));
+    }
+
+    @Test
+    public void testPaging() {
+        List<User> firstPage = service.findAllWithRoles(2, 0, null);
+        assertEquals("[alice, bob]", names(firstPage).toString());
+        assertEquals("Paging is done for users, not roles", "[Admin, User]", roles(firstPage.get(0)).toString());
+        assertEquals("[carol, dave_x]", names(service.findAllWithRoles(2, 2, null)).toString());
+        assertTrue(service.findAllWithRoles(2, 4, null).isEmpty());
+        assertEquals("[bob, carol, dave_x]", names(service.findAllWithRoles(-1, 1, null)).toString());
+    }
+
+    @Test
+    public void testSearch() {
+        assertEquals("[alice, carol]", names(service.findAllWithRoles(-1, 0, "SMITH")).toString());
+        assertEquals(2, service.countUsers(" smith "));
+        assertEquals("[carol]", names(service.findAllWithRoles(1, 1, "smith")).toString());
+        assertEquals("[Admin, User]", roles(service.findAllWithRoles(1, 0, "smith").get(0)).toString());
+        // LIKE wildcards are matched literally
+        assertEquals("[dave_x]", names(service.findAllWithRoles(-1, 0, "_")).toString());
+        assertEquals(0, service.countUsers("%"));
+        assertEquals("Email is searched", "[bob]", names(service.findAllWithRoles(-1, 0, "bob@")).toString());
+    }
+
+    private static List<String> names(List<User> users) {
+        return users.stream().map(User::getScreenname).collect(Collectors.toList());
+    }
+
+    private static List<String> roles(User user) {
+        return user.getRoles().stream().map(Role::getName).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,29 @@
+CREATE TABLE oskari_users
+(
+    id SERIAL NOT NULL,
+    user_name character varying(128) NOT NULL,
+    first_name character varying(128),
+    last_name character varying(128),
+    email character varying(256),
+    uuid character varying(64),
+    attributes text DEFAULT '{}',
+    CONSTRAINT oskari_users_pkey PRIMARY KEY (id)
+);
+
+CREATE TABLE oskari_roles
+(
+    id SERIAL NOT NULL,
+    name text NOT NULL,
+    is_guest boolean DEFAULT false,
+    CONSTRAINT oskari_roles_pkey PRIMARY KEY (id)
+);
+
+CREATE TABLE oskari_users_roles
+(
+    id SERIAL NOT NULL,
+    role_id integer,
+    user_id bigint
+);
+
+INSERT INTO oskari_roles (name) VALUES ('Admin');
+INSERT INTO oskari_roles (name) VALUES ('User');
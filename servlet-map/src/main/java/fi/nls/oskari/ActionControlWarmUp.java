@@ -0,0 +1,42 @@
+package fi.nls.oskari;
+
+import fi.nls.oskari.annotation.Oskari;
+import fi.nls.oskari.control.ActionControl;
+import org.oskari.status.AppStatus;
+
+/**
+ * Reports the app as not ready until action handlers have been initialized on startup.
+ * Disable warm-up with "actioncontrol.warmup=false" to initialize handlers on the first request instead.
+ * If the warm-up fails the check is reported with low severity as handlers are still initialized on
+ * the first request.
+ */
+@Oskari
+public class ActionControlWarmUp extends AppStatus {
+
+    public boolean isEnabled() {
+        return ActionControl.isWarmUpStarted();
+    }
+
+    public Level getLevel() {
+        // requests are handled during warm-up but they might need to wait for handlers to initialize
+        return ActionControl.isWarmedUp() ? Level.OK : Level.PARTIAL;
+    }
+
+    public String getDescription() {
+        return "Checks that action handlers have been initialized on startup.";
+    }
+
+    public String getReason() {
+        if (isOk()) {
+            return "";
+        }
+        if (ActionControl.isWarmUpFailed()) {
+            return "Action handler warm-up failed, handlers are initialized on first request";
+        }
+        return "Action handlers are being initialized";
+    }
+
+    public Severity getSeverity() {
+        return ActionControl.isWarmUpFailed() ? Severity.LOW : Severity.HIGH;
+    }
+}
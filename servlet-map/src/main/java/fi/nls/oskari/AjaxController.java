@@ -4,6 +4,7 @@ import fi.nls.oskari.control.*;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.spring.extension.OskariParam;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.ResponseHelper;
 import org.oskari.log.AuditLog;
 import org.springframework.stereotype.Controller;
@@ -11,8 +12,11 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Handles ajax routing to Oskari Action handlers
@@ -22,34 +26,90 @@ public class AjaxController {
 
     private final static Logger log = LogFactory.getLogger(AjaxController.class);
 
+    private static final long ASYNC_TIMEOUT_MS = PropertyUtil.getOptional("actioncontrol.async.timeout", 120000);
+
     @RequestMapping("/action/{route}")
     @ResponseBody
-    public void handleRoute(@OskariParam ActionParameters params, @PathVariable String route) {
-        handleAction(params, route);
+    public DeferredResult<Void> handleRoute(@OskariParam ActionParameters params, @PathVariable String route) {
+        return handleAction(params, route);
     }
 
     @RequestMapping("/action")
     @ResponseBody
-    public void handleAction(@OskariParam ActionParameters params, @RequestParam("action_route") String route) {
+    public DeferredResult<Void> handleAction(@OskariParam ActionParameters params, @RequestParam("action_route") String route) {
         // ActionHandlers write the response internally.
-        // ResponseBody with void return type is needed so Spring doesn't try to show a view/JSP.
+        // ResponseBody is needed so Spring doesn't try to show a view/JSP.
+        // Returning null means the request was handled synchronously.
 
         if(!ActionControl.hasAction(route)) {
             ResponseHelper.writeError(params, "No such route registered: " + route, HttpServletResponse.SC_NOT_IMPLEMENTED);
-            return;
+            return null;
+        }
+        if (ActionControl.isAsync(route)) {
+            return handleAsync(params, route);
         }
         try {
             ActionControl.routeAction(route, params);
             // TODO:  HANDLE THE EXCEPTION, LOG USER AGENT ETC. on exceptions
-        } catch (ActionParamsException e) {
+        } catch (ActionException e) {
+            handleError(params, route, e);
+        }
+        return null;
+    }
+
+    /**
+     * Releases the container thread while the handler is waiting for backend services.
+     * The result is completed after the handler has written the response.
+     *
+     * On timeout ("actioncontrol.async.timeout", should be longer than the timeouts for backend services)
+     * the handler is cancelled and its response is closed so late writes from the handler
+     * can't end up in a response the container has recycled for another request.
+     */
+    private DeferredResult<Void> handleAsync(ActionParameters params, String route) {
+        final DeferredResult<Void> result = new DeferredResult<>(ASYNC_TIMEOUT_MS);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        // errors on timeout are written to the actual response, the handler writes through the guard
+        final ActionParameters errorParams = new ActionParameters();
+        errorParams.setRequest(params.getRequest());
+        errorParams.setResponse(params.getResponse());
+        errorParams.setUser(params.getUser());
+        errorParams.setLocale(params.getLocale());
+        final GuardedResponse response = new GuardedResponse(params.getResponse());
+        params.setResponse(response);
+
+        final CompletableFuture<Void> handled = ActionControl.routeActionAsync(route, params).toCompletableFuture();
+        result.onTimeout(() -> {
+            if (done.compareAndSet(false, true)) {
+                response.complete();
+                handled.cancel(true);
+                log.warn("Action timed out:", route, ". Parameters: ", params.getRequest().getParameterMap());
+                ResponseHelper.writeError(errorParams, "Request timed out", HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                result.setResult(null);
+            }
+        });
+        handled.whenComplete((ignored, error) -> {
+            if (!done.compareAndSet(false, true)) {
+                // timed out, response already written
+                return;
+            }
+            if (error != null) {
+                handleError(params, route, AsyncActionHandler.toActionException(error));
+            }
+            result.setResult(null);
+        });
+        return result;
+    }
+
+    private void handleError(ActionParameters params, String route, ActionException e) {
+        if (e instanceof ActionParamsException) {
             // For cases where we dont want a stack trace
             log.error("Couldn't handle action:", route, ". Message: ", e.getMessage(), ". Parameters: ", params.getRequest().getParameterMap());
             AuditLog.user(params.getClientIp(), params.getUser())
                     .withParams(params.getRequest().getParameterMap())
                     .withMsg(e.getMessage())
                     .usedInvalidParams(AuditLog.ResourceType.GENERIC);
-            ResponseHelper.writeError(params, e.getMessage(), HttpServletResponse.SC_BAD_REQUEST, e.getOptions());
-        } catch (ActionDeniedException e) {
+            ResponseHelper.writeError(params, e.getMessage(), HttpServletResponse.SC_BAD_REQUEST, ((ActionParamsException) e).getOptions());
+        } else if (e instanceof ActionDeniedException) {
             // User tried to execute action he/she is not authorized to execute or session had expired
             if(params.getUser().isGuest()) {
                 log.error("Action was denied:", route, ", Error msg:", e.getMessage(), ". Parameters: ", params.getRequest().getParameterMap());
@@ -61,8 +121,13 @@ public class AjaxController {
                     .withParams(params.getRequest().getParameterMap())
                     .withMsg(e.getMessage())
                     .wasDenied(AuditLog.ResourceType.GENERIC);
-            ResponseHelper.writeError(params, e.getMessage(), HttpServletResponse.SC_FORBIDDEN, e.getOptions());
-        } catch (ActionCommonException e) {
+            ResponseHelper.writeError(params, e.getMessage(), HttpServletResponse.SC_FORBIDDEN, ((ActionDeniedException) e).getOptions());
+        } else if (e instanceof ActionRejectedException) {
+            // Too many concurrent requests for the route -> shed load without logging each request
+            log.debug("Rejected action:", route, "-", e.getMessage());
+            params.getResponse().setHeader("Retry-After", Integer.toString(((ActionRejectedException) e).getRetryAfterSeconds()));
+            ResponseHelper.writeError(params, e.getMessage(), HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } else if (e instanceof ActionCommonException) {
             Throwable error = e;
             if (e.getCause() != null) {
                 error = e.getCause();
@@ -74,7 +139,7 @@ public class AjaxController {
             }
             // Not AuditLogging here since this is for common errors like map layer proxying
             ResponseHelper.writeError(params, e.getMessage());
-        } catch (ActionException e) {
+        } else {
             // Internal failure -> print stack trace
         	Throwable error = e;
         	if(e.getCause() != null) {
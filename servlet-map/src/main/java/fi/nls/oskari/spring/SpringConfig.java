@@ -48,6 +48,10 @@ public class SpringConfig implements WebMvcConfigurer, ApplicationListener<Conte
     public void oskariInit() {
         // check DB connections/content
         WebappHelper.init();
+        if (PropertyUtil.getOptional("actioncontrol.warmup", true)) {
+            // initialize action handlers before the first requests, /health reports when it's done
+            ActionControl.warmUpAsync();
+        }
     }
 
     //  --------- locale handling -------------
@@ -0,0 +1,212 @@
+package fi.nls.oskari.spring.session;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.control.ActionControl;
+import fi.nls.oskari.domain.Role;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.service.ServiceException;
+import fi.nls.oskari.service.UserService;
+import fi.nls.oskari.util.PropertyUtil;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Serializer for session attributes stored in Redis.
+ *
+ * The logged in Oskari user is written as a small versioned record with the user id and role ids. The full
+ * user is resolved from UserService through a local cache when the session is read. Any other attribute
+ * (and users that can't be written in compact form) use the default JDK serialization so sessions written
+ * with either format can be read.
+ */
+public class OskariSessionSerializer implements RedisSerializer<Object> {
+
+    private static final Logger LOG = LogFactory.getLogger(OskariSessionSerializer.class);
+
+    private static final String METRICS_PREFIX = "Oskari.Session";
+    // seconds to keep users resolved by id in local cache
+    private static final String PROPERTY_USER_CACHE_EXPIRATION = "oskari.session.user.cache.expiration";
+
+    // JDK serialization streams start with 0xACED so this can't be mixed with them
+    private static final byte MAGIC = 'O';
+    private static final byte VERSION = 1;
+    private static final byte TYPE_USER = 1;
+    // cached for role ids that no longer exist so they don't trigger loading all roles on every read
+    private static final Role MISSING_ROLE = new Role();
+
+    private final RedisSerializer<Object> fallback;
+    private final Cache<User> userCache = CacheManager.getCache(OskariSessionSerializer.class.getName() + ".users");
+    private final Cache<Role> roleCache = CacheManager.getCache(OskariSessionSerializer.class.getName() + ".roles");
+
+    private final Timer readTimer;
+    private final Timer writeTimer;
+    private final Histogram readSize;
+    private final Histogram writeSize;
+
+    public OskariSessionSerializer() {
+        this(new JdkSerializationRedisSerializer());
+    }
+
+    public OskariSessionSerializer(RedisSerializer<Object> fallback) {
+        this.fallback = fallback;
+        long expiration = PropertyUtil.getOptional(PROPERTY_USER_CACHE_EXPIRATION, 60) * 1000L;
+        userCache.setExpiration(expiration);
+        roleCache.setExpiration(expiration);
+
+        MetricRegistry metrics = ActionControl.getMetrics();
+        readTimer = metrics.timer(METRICS_PREFIX + ".read");
+        writeTimer = metrics.timer(METRICS_PREFIX + ".write");
+        readSize = metrics.histogram(METRICS_PREFIX + ".read.bytes");
+        writeSize = metrics.histogram(METRICS_PREFIX + ".write.bytes");
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        final Timer.Context timer = writeTimer.time();
+        try {
+            byte[] bytes = canWriteCompact(value) ? writeUser((User) value) : fallback.serialize(value);
+            writeSize.update(bytes == null ? 0 : bytes.length);
+            return bytes;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        final Timer.Context timer = readTimer.time();
+        try {
+            readSize.update(bytes.length);
+            if (bytes[0] == MAGIC) {
+                return readUser(bytes);
+            }
+            return fallback.deserialize(bytes);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private boolean canWriteCompact(Object value) {
+        // subclasses like GuestUser are written as is
+        if (value.getClass() != User.class) {
+            return false;
+        }
+        User user = (User) value;
+        if (user.getId() <= 0) {
+            return false;
+        }
+        // all roles need to be resolvable by id when reading
+        return user.getRoles().stream().allMatch(r -> r.getId() > 0);
+    }
+
+    private byte[] writeUser(User user) {
+        Set<Role> roles = user.getRoles();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(16 + roles.size() * 8);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(TYPE_USER);
+            out.writeLong(user.getId());
+            out.writeInt(roles.size());
+            for (Role role : roles) {
+                out.writeLong(role.getId());
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Unable to write user to session", e);
+        }
+        return baos.toByteArray();
+    }
+
+    private User readUser(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            in.readByte();
+            byte version = in.readByte();
+            byte type = in.readByte();
+            if (version != VERSION || type != TYPE_USER) {
+                // written by another Oskari version -> user needs to login again
+                LOG.warn("Unsupported session value version:", version, "type:", type);
+                return null;
+            }
+            long userId = in.readLong();
+            int roleCount = in.readInt();
+            Set<Role> roles = new LinkedHashSet<>(roleCount);
+            for (int i = 0; i < roleCount; i++) {
+                Role role = getRole(in.readLong());
+                if (role != null) {
+                    roles.add(role);
+                }
+            }
+            User user = getUser(userId);
+            if (user != null) {
+                user.setRoles(roles);
+            }
+            return user;
+        } catch (IOException | ServiceException e) {
+            throw new SerializationException("Unable to read user from session", e);
+        }
+    }
+
+    /**
+     * Returns a copy of the user so requests don't share the instance.
+     */
+    private User getUser(long id) throws ServiceException {
+        final String key = Long.toString(id);
+        User cached = userCache.get(key);
+        if (cached == null) {
+            cached = UserService.getInstance().getUser(id);
+            if (cached == null) {
+                LOG.info("User in session not found:", id);
+                return null;
+            }
+            userCache.put(key, cached);
+        }
+        User user = new User();
+        user.setId(cached.getId());
+        user.setUuid(cached.getUuid());
+        user.setScreenname(cached.getScreenname());
+        user.setFirstname(cached.getFirstname());
+        user.setLastname(cached.getLastname());
+        user.setEmail(cached.getEmail());
+        user.setAttributes(cached.getAttributes());
+        return user;
+    }
+
+    private Role getRole(long id) throws ServiceException {
+        final String key = Long.toString(id);
+        Role role = roleCache.get(key);
+        if (role == null) {
+            for (Role r : UserService.getInstance().getRoles()) {
+                roleCache.put(Long.toString(r.getId()), r);
+                if (r.getId() == id) {
+                    role = r;
+                }
+            }
+            if (role == null) {
+                LOG.info("Role in session not found:", id);
+                role = MISSING_ROLE;
+                roleCache.put(key, role);
+            }
+        }
+        return role == MISSING_ROLE ? null : role;
+    }
+}
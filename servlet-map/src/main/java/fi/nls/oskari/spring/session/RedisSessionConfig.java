@@ -7,6 +7,8 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisHttpSession;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
@@ -25,4 +27,16 @@ public class RedisSessionConfig extends WebMvcConfigurerAdapter {
         JedisConnectionFactory jedis = new JedisConnectionFactory(config);
         return jedis;
     }
+
+    /**
+     * Session attributes are serialized with OskariSessionSerializer which writes the Oskari user
+     * in a compact form. Set "oskari.session.serializer.compact=false" to use plain JDK serialization.
+     */
+    @Bean("springSessionDefaultRedisSerializer")
+    public RedisSerializer<Object> springSessionDefaultRedisSerializer() {
+        if (!PropertyUtil.getOptional("oskari.session.serializer.compact", true)) {
+            return new JdkSerializationRedisSerializer();
+        }
+        return new OskariSessionSerializer();
+    }
 }
@@ -0,0 +1,154 @@
+package fi.nls.oskari.spring.session;
+
+import fi.nls.oskari.domain.GuestUser;
+import fi.nls.oskari.domain.Role;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.service.UserService;
+import fi.nls.oskari.util.PropertyUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class OskariSessionSerializerTest {
+
+    private static final long USER_ID = 42;
+
+    private static final AtomicInteger ROLE_LOADS = new AtomicInteger();
+
+    public static class TestUserService extends UserService {
+        @Override
+        public User login(String user, String pass) {
+            return null;
+        }
+
+        @Override
+        public Role[] getRoles(Map<Object, Object> platformSpecificParams) {
+            ROLE_LOADS.incrementAndGet();
+            return new Role[] { role(1, "User"), role(2, "Admin"), role(3, "Other") };
+        }
+
+        @Override
+        public User getUser(long id) {
+            return id == USER_ID ? testUser() : null;
+        }
+    }
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        PropertyUtil.addProperty("oskari.user.service", TestUserService.class.getName(), true);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        PropertyUtil.clearProperties();
+    }
+
+    @Test
+    public void testUserRoundTrip() {
+        OskariSessionSerializer serializer = new OskariSessionSerializer();
+        User user = testUser();
+        user.addRole(role(1, "User"));
+        user.addRole(role(2, "Admin"));
+
+        byte[] bytes = serializer.serialize(user);
+        assertEquals("User should be written in compact form", 'O', bytes[0]);
+        assertTrue("Compact form should be small", bytes.length < 64);
+
+        User read = (User) serializer.deserialize(bytes);
+        assertEquals(USER_ID, read.getId());
+        assertEquals(user.getUuid(), read.getUuid());
+        assertEquals(user.getScreenname(), read.getScreenname());
+        assertEquals(user.getEmail(), read.getEmail());
+        assertEquals("value", read.getAttribute("key"));
+        Set<Long> roles = read.getRoles().stream().map(Role::getId).collect(Collectors.toSet());
+        assertEquals(2, roles.size());
+        assertTrue(roles.contains(1L));
+        assertTrue(roles.contains(2L));
+        assertNotSame("Each read should get its own instance", read, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void testRemovedRoleIsNotReloaded() {
+        OskariSessionSerializer serializer = new OskariSessionSerializer();
+        User user = testUser();
+        user.addRole(role(1, "User"));
+        user.addRole(role(99, "Removed"));
+        byte[] bytes = serializer.serialize(user);
+
+        User read = (User) serializer.deserialize(bytes);
+        assertEquals("Removed role is dropped", 1, read.getRoles().size());
+        assertEquals(1L, read.getRoles().iterator().next().getId());
+
+        int loads = ROLE_LOADS.get();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1, ((User) serializer.deserialize(bytes)).getRoles().size());
+        }
+        assertEquals("Missing role should be cached", loads, ROLE_LOADS.get());
+    }
+
+    @Test
+    public void testOtherAttributesRoundTrip() {
+        OskariSessionSerializer serializer = new OskariSessionSerializer();
+        HashMap<String, String> attribute = new HashMap<>();
+        attribute.put("lang", "fi");
+        assertEquals(attribute, serializer.deserialize(serializer.serialize(attribute)));
+        assertEquals("text", serializer.deserialize(serializer.serialize("text")));
+
+        GuestUser guest = new GuestUser();
+        assertTrue("Guest should be written as is", serializer.deserialize(serializer.serialize(guest)) instanceof GuestUser);
+        assertNull(serializer.deserialize(serializer.serialize(null)));
+    }
+
+    @Test
+    public void testReadJdkSerializedUser() throws Exception {
+        // sessions written before the compact format
+        User user = testUser();
+        user.addRole(role(3, "Other"));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+            out.writeObject(user);
+        }
+        User read = (User) new OskariSessionSerializer().deserialize(baos.toByteArray());
+        assertEquals(USER_ID, read.getId());
+        assertEquals(user.getScreenname(), read.getScreenname());
+        assertEquals(1, read.getRoles().size());
+    }
+
+    @Test
+    public void testUnknownVersion() {
+        OskariSessionSerializer serializer = new OskariSessionSerializer();
+        User user = testUser();
+        byte[] bytes = serializer.serialize(user);
+        bytes[1] = 99;
+        assertNull("Value written by another version should be dropped", serializer.deserialize(bytes));
+    }
+
+    private static User testUser() {
+        User user = new User();
+        user.setId(USER_ID);
+        user.setUuid("uuid-42");
+        user.setScreenname("tester");
+        user.setFirstname("Test");
+        user.setLastname("User");
+        user.setEmail("tester@example.com");
+        user.setAttribute("key", "value");
+        return user;
+    }
+
+    private static Role role(long id, String name) {
+        Role role = new Role();
+        role.setId(id);
+        role.setName(name);
+        return role;
+    }
+}